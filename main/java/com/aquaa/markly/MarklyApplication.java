@@ -0,0 +1,64 @@
+package com.aquaa.markly;
+
+import android.app.Application;
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+
+import com.aquaa.markly.data.database.AppDatabase;
+import com.aquaa.markly.utils.MarklyLog;
+import com.aquaa.markly.utils.Metrics;
+import com.aquaa.markly.utils.NotificationHelper;
+import com.aquaa.markly.utils.SmsDispatcher;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Application entry point. Keeps cold start light: only the log level is set on the main thread, while
+ * notification channels and the database (open and migrations) are prepared on a
+ * background thread so that the first screen's queries find a warm connection.
+ */
+public class MarklyApplication extends Application {
+
+    private static final String TAG = "MarklyApplication";
+
+    private static volatile long startUptimeMillis;
+    private static boolean firstDrawRecorded;
+
+    private final ExecutorService startupExecutor = Executors.newSingleThreadExecutor();
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        // Process start is earlier than onCreate and includes class loading, use it where the platform has it
+        startUptimeMillis = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N
+                ? Process.getStartUptimeMillis() : SystemClock.uptimeMillis();
+        MarklyLog.init(this); // Debug logging only for debuggable builds
+
+        startupExecutor.execute(() -> {
+            Metrics.timer("startup.notificationChannels").time(() -> NotificationHelper.createNotificationChannels(this));
+            Metrics.timer("startup.databaseOpen").time(() -> {
+                // Opening the writable database runs pending migrations and reads the schema once
+                AppDatabase.getDatabase(this).getOpenHelper().getWritableDatabase();
+            });
+            SmsDispatcher.getInstance(this).start(); // Resumes messages left in the outbox by an earlier process
+            MarklyLog.i(TAG, "Startup warm-up finished.");
+        });
+        startupExecutor.shutdown(); // Lets the thread end once the warm-up is done
+    }
+
+    /**
+     * Records the time from process start to the first frame of the launcher screen, once per process.
+     * Call on the main thread from the first draw callback.
+     */
+    public static void recordFirstDraw() {
+        if (firstDrawRecorded || startUptimeMillis == 0) {
+            return;
+        }
+        firstDrawRecorded = true;
+        long elapsedMillis = SystemClock.uptimeMillis() - startUptimeMillis;
+        Metrics.timer("startup.timeToFirstDraw").record(elapsedMillis * 1_000_000L);
+        MarklyLog.i(TAG, "Time to first draw: {} ms", elapsedMillis);
+    }
+}
@@ -3,18 +3,21 @@ package com.aquaa.markly.data.database;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
-import android.util.Log;
 
 import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
 import androidx.sqlite.db.SupportSQLiteDatabase;
 
-import com.aquaa.markly.utils.NotificationHelper;
+import com.aquaa.markly.utils.CsvUtils;
+import com.aquaa.markly.utils.ExcelUtils;
+import com.aquaa.markly.utils.MarklyLog;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.reflect.TypeToken;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -25,9 +28,10 @@ import java.util.concurrent.Executors;
 
 /**
  * Room Database class for Markly application.
- * Defines the database entities and DAOs.
+ * Defines the database entities and DAOs. Schema changes need a migration in Migrations; the exported
+ * schema JSON (room.schemaLocation) keeps a history of every version for review.
  */
-@Database(entities = {Student.class, Attendance.class, Notification.class}, version = 11, exportSchema = false)
+@Database(entities = {Student.class, Attendance.class, Notification.class, SmsOutboxMessage.class, SmsOutboxCoverage.class, StudentFts.class, StudentStreak.class, SemesterPlan.class, SemesterAttendance.class, SyncMeta.class, SyncTombstone.class, SyncPeer.class, SyncAlias.class}, version = 19, exportSchema = true)
 public abstract class AppDatabase extends RoomDatabase {
 
     private static final String TAG = "AppDatabase";
@@ -35,6 +39,13 @@ public abstract class AppDatabase extends RoomDatabase {
     public abstract StudentDao studentDao();
     public abstract AttendanceDao attendanceDao();
     public abstract NotificationDao notificationDao();
+    public abstract SmsOutboxDao smsOutboxDao();
+    public abstract StreakDao streakDao();
+    public abstract EligibilityDao eligibilityDao();
+    public abstract SyncDao syncDao();
+
+    // File name under the app's databases directory, ArchiveStore attaches it by path
+    public static final String DATABASE_NAME = "markly_database";
 
     private static volatile AppDatabase INSTANCE;
     private static final int NUMBER_OF_THREADS = 5;
@@ -42,7 +53,8 @@ public abstract class AppDatabase extends RoomDatabase {
             Executors.newFixedThreadPool(NUMBER_OF_THREADS);
 
     /**
-     * Gets the singleton instance of the AppDatabase.
+     * Gets the singleton instance of the AppDatabase. Building it is cheap, the file is opened (and migrated)
+     * on first use; MarklyApplication does that on a background thread at startup.
      * @param context The application context.
      * @return The singleton AppDatabase instance.
      */
@@ -51,10 +63,12 @@ public abstract class AppDatabase extends RoomDatabase {
             synchronized (AppDatabase.class) {
                 if (INSTANCE == null) {
                     INSTANCE = Room.databaseBuilder(context.getApplicationContext(),
-                                    AppDatabase.class, "markly_database")
-                            .fallbackToDestructiveMigration()
+                                    AppDatabase.class, DATABASE_NAME)
+                            .addMigrations(Migrations.ALL)
+                            .addCallback(SyncSchema.CALLBACK)
+                            // Versions before 11 predate any user data worth keeping
+                            .fallbackToDestructiveMigrationFrom(Migrations.destructiveVersions())
                             .build();
-                    NotificationHelper.createNotificationChannels(context.getApplicationContext());
                 }
             }
         }
@@ -92,7 +106,8 @@ public abstract class AppDatabase extends RoomDatabase {
                                 "mobile AS 'Mobile', " +
                                 "guardian_mobile AS 'Guardian Mobile', " +
                                 "current_semester AS 'Current Semester', " +
-                                "section AS 'Section' " +
+                                "section AS 'Section', " +
+                                "uuid AS 'UUID' " + // Confirms the Student ID when the backup is merged back
                                 "FROM students ORDER BY name ASC"
                 );
                 if (studentsCursor != null && studentsCursor.moveToFirst()) {
@@ -166,7 +181,7 @@ public abstract class AppDatabase extends RoomDatabase {
             // Return the consolidated JSON
             return gson.toJson(databaseContent);
         } catch (Exception e) {
-            Log.e(TAG, "Error exporting database to JSON: " + e.getMessage(), e);
+            MarklyLog.e(TAG, "Error exporting database to JSON: " + e.getMessage(), e);
             return null;
         } finally {
             // Room manages its database connection lifecycle, no explicit close needed here.
@@ -174,6 +189,31 @@ public abstract class AppDatabase extends RoomDatabase {
     }
 
 
+    /**
+     * Streams the students table to CSV straight from a cursor.
+     * @param outputStream The stream to write to. Not closed by this method.
+     * @return The number of students written.
+     * @throws IOException If an I/O error occurs.
+     */
+    public int exportStudentsToCsv(OutputStream outputStream) throws IOException {
+        try (Cursor cursor = getOpenHelper().getReadableDatabase().query(CsvUtils.STUDENTS_EXPORT_QUERY)) {
+            return CsvUtils.exportStudentsToCSV(cursor, outputStream);
+        }
+    }
+
+    /**
+     * Streams the attendance table to CSV straight from a cursor.
+     * @param outputStream The stream to write to. Not closed by this method.
+     * @return The number of attendance records written.
+     * @throws IOException If an I/O error occurs.
+     */
+    public int exportAttendanceToCsv(OutputStream outputStream) throws IOException {
+        try (Cursor cursor = getOpenHelper().getReadableDatabase().query(CsvUtils.ATTENDANCE_EXPORT_QUERY)) {
+            return CsvUtils.exportAttendanceToCSV(cursor, outputStream);
+        }
+    }
+
+
     /**
      * Data class to hold the comprehensive result of an import operation.
      * This class needs to be public static so it can be accessed from other classes.
@@ -212,12 +252,12 @@ public abstract class AppDatabase extends RoomDatabase {
             databaseContent = gson.fromJson(jsonString, type);
             if (databaseContent == null) {
                 result.errorMessage = "Failed to parse JSON. It might be empty or malformed.";
-                Log.e(TAG, result.errorMessage);
+                MarklyLog.e(TAG, result.errorMessage);
                 return result;
             }
         } catch (Exception e) {
             result.errorMessage = "Error parsing JSON data: " + e.getMessage();
-            Log.e(TAG, result.errorMessage, e);
+            MarklyLog.e(TAG, result.errorMessage, e);
             return result;
         }
 
@@ -242,12 +282,14 @@ public abstract class AppDatabase extends RoomDatabase {
         try {
             // Disable foreign key checks for bulk delete/insert
             db.execSQL("PRAGMA foreign_keys = OFF;");
-            Log.d(TAG, "Foreign keys OFF.");
+            MarklyLog.d(TAG, "Foreign keys OFF.");
+            // A restore replaces this device's data, it must not reach other devices as deletions
+            SyncSchema.setApplying(db, true);
 
             // 1. Clear existing data in reverse order
             for (String tableName : roomTableNamesInReverseOrder) {
                 db.execSQL("DELETE FROM " + tableName);
-                Log.d(TAG, "Cleared table: " + tableName);
+                MarklyLog.d(TAG, "Cleared table: " + tableName);
             }
 
             // 2. Reset AUTOINCREMENT sequence numbers (if applicable)
@@ -256,7 +298,7 @@ public abstract class AppDatabase extends RoomDatabase {
             db.execSQL("DELETE FROM sqlite_sequence WHERE name = 'students';");
             db.execSQL("DELETE FROM sqlite_sequence WHERE name = 'attendance';");
             db.execSQL("DELETE FROM sqlite_sequence WHERE name = 'notifications';"); // Also reset notifications sequence
-            Log.d(TAG, "Resetting sqlite_sequence.");
+            MarklyLog.d(TAG, "Resetting sqlite_sequence.");
 
 
             // Create a mapping from old student IDs from the backup to new internal student IDs (if IDs change during import).
@@ -267,10 +309,10 @@ public abstract class AppDatabase extends RoomDatabase {
             for (String jsonKey : jsonTableKeysInImportOrder) { // Iterate using the JSON keys
                 List<Map<String, Object>> tableData = databaseContent.get(jsonKey);
                 if (tableData == null) {
-                    Log.w(TAG, "No data found for JSON key: " + jsonKey + " in JSON.");
+                    MarklyLog.w(TAG, "No data found for JSON key: " + jsonKey + " in JSON.");
                     continue;
                 }
-                Log.d(TAG, "Importing data for JSON key: " + jsonKey + ", records: " + tableData.size());
+                MarklyLog.d(TAG, "Importing data for JSON key: " + jsonKey + ", records: " + tableData.size());
 
                 String roomTableName = null; // To store the actual Room table name
                 if ("Students".equals(jsonKey)) {
@@ -278,7 +320,7 @@ public abstract class AppDatabase extends RoomDatabase {
                 } else if ("Attendance".equals(jsonKey)) {
                     roomTableName = "attendance";
                 } else {
-                    Log.w(TAG, "Skipping import for unknown JSON key: " + jsonKey);
+                    MarklyLog.w(TAG, "Skipping import for unknown JSON key: " + jsonKey);
                     continue;
                 }
 
@@ -301,12 +343,14 @@ public abstract class AppDatabase extends RoomDatabase {
 
                             // FIX: Add explicit logging before conversion for debugging
                             Object currentSemesterValue = row.get("Current Semester");
-                            Log.d(TAG, "Importing student ID: " + row.get("Student ID") + ", Raw 'Current Semester' value: " + currentSemesterValue + " (Type: " + (currentSemesterValue != null ? currentSemesterValue.getClass().getName() : "null") + ")");
+                            if (MarklyLog.isDebugEnabled()) {
+                                MarklyLog.d(TAG, "Importing student ID: " + row.get("Student ID") + ", Raw 'Current Semester' value: " + currentSemesterValue + " (Type: " + (currentSemesterValue != null ? currentSemesterValue.getClass().getName() : "null") + ")");
+                            }
                             Integer semester = convertToInteger(currentSemesterValue);
 
                             if (semester == null) { // If conversion results in null, provide a default
                                 semester = 0; // Default to 0 or another sensible default if null is not allowed
-                                Log.w(TAG, "Current Semester for student ID " + row.get("Student ID") + " was null/invalid after conversion, defaulting to 0.");
+                                MarklyLog.w(TAG, "Current Semester for student ID " + row.get("Student ID") + " was null/invalid after conversion, defaulting to 0.");
                             }
                             args.add(semester); // JSON key 'Current Semester'
 
@@ -325,7 +369,7 @@ public abstract class AppDatabase extends RoomDatabase {
                             Long oldStudentId = convertToLong(row.get("Student ID")); // JSON key 'Student ID'
                             Long newStudentId = oldStudentIdToNewStudentIdMap.get(oldStudentId);
                             if (newStudentId == null) {
-                                Log.w(TAG, "Skipping attendance record for Student ID " + oldStudentId + " as student was not imported.");
+                                MarklyLog.w(TAG, "Skipping attendance record for Student ID " + oldStudentId + " as student was not imported.");
                                 result.skippedAttendance.add("Attendance for Student ID " + oldStudentId + " (Student not found/imported)");
                                 continue; // Skip this attendance record if student not imported
                             }
@@ -338,16 +382,20 @@ public abstract class AppDatabase extends RoomDatabase {
 
                         } else {
                             // This block should ideally not be reached if jsonTableKeysInImportOrder is correctly defined
-                            Log.e(TAG, "Attempted to import data for unexpected JSON key: " + jsonKey);
+                            MarklyLog.e(TAG, "Attempted to import data for unexpected JSON key: " + jsonKey);
                             continue;
                         }
 
                         // Use SQL INSERT OR REPLACE INTO to handle existing IDs and ensure conflicts resolve
                         db.execSQL("INSERT OR REPLACE INTO " + roomTableName + " (" + columns.toString() + ") VALUES (" + values.toString() + ");", args.toArray());
-                        Log.d(TAG, "Imported row into " + roomTableName);
+                        if (MarklyLog.isDebugEnabled()) {
+                            MarklyLog.d(TAG, "Imported row into " + roomTableName);
+                        }
 
                     } catch (Exception e) {
-                        Log.e(TAG, "Error importing row into " + roomTableName + ": " + e.getMessage() + " for row data: " + gson.toJson(row), e);
+                        // Serialising the row is only worth it when someone is reading debug logs
+                        MarklyLog.e(TAG, "Error importing row into " + roomTableName + ": " + e.getMessage()
+                                + (MarklyLog.isDebugEnabled() ? " for row data: " + gson.toJson(row) : ""), e);
                         if ("students".equals(roomTableName)) {
                             result.skippedStudents.add("Student ID: " + row.get("Student ID") + ", Name: " + row.get("Name") + " (Error: " + e.getMessage() + ")");
                         } else if ("attendance".equals(roomTableName)) {
@@ -357,21 +405,84 @@ public abstract class AppDatabase extends RoomDatabase {
                 }
             }
 
+            // Restored rows bypass the repository, so the absence streaks are recomputed in one pass
+            int streaks = StudentStreak.rebuildAll(db);
+            MarklyLog.d(TAG, "Rebuilt absence streaks of " + streaks + " students.");
+            SemesterAttendance.rebuildAll(db); // Semester plans are settings, not part of the backup, and stay as they are
+            SyncSchema.stampUnsynced(db);
+            SyncSchema.setApplying(db, false);
+
             db.setTransactionSuccessful();
-            Log.d(TAG, "Database import transaction successful.");
+            MarklyLog.d(TAG, "Database import transaction successful.");
 
         } catch (Exception e) {
             result.errorMessage = "Database import transaction failed: " + e.getMessage();
-            Log.e(TAG, result.errorMessage, e);
+            MarklyLog.e(TAG, result.errorMessage, e);
         } finally {
             db.endTransaction();
             // Re-enable foreign key checks
             db.execSQL("PRAGMA foreign_keys = ON;");
-            Log.d(TAG, "Foreign keys ON.");
+            MarklyLog.d(TAG, "Foreign keys ON.");
         }
         return result;
     }
 
+    /**
+     * Parses a JSON backup into the same intermediate rows used by the spreadsheet import,
+     * so it can be applied with a merge instead of a full restore.
+     * @param jsonString The JSON string produced by exportDatabaseToJson.
+     * @return A map with "students" (List of StudentImport) and "attendances" (List of AttendanceImport, or null).
+     * @throws IllegalArgumentException If the JSON is empty or malformed.
+     */
+    public Map<String, Object> parseJsonBackup(String jsonString) {
+        Type type = new TypeToken<Map<String, List<Map<String, Object>>>>(){}.getType();
+        Map<String, List<Map<String, Object>>> databaseContent;
+        try {
+            databaseContent = new Gson().fromJson(jsonString, type);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Error parsing JSON data: " + e.getMessage(), e);
+        }
+        if (databaseContent == null) {
+            throw new IllegalArgumentException("Failed to parse JSON. It might be empty or malformed.");
+        }
+
+        List<ExcelUtils.StudentImport> students = new ArrayList<>();
+        List<Map<String, Object>> studentRows = databaseContent.get("Students");
+        if (studentRows != null) {
+            for (Map<String, Object> row : studentRows) {
+                Long oldStudentId = convertToLong(row.get("Student ID"));
+                ExcelUtils.StudentImport student = new ExcelUtils.StudentImport(oldStudentId != null ? oldStudentId : -1,
+                        convertToString(row.get("Name")),
+                        convertToString(row.get("Gender")),
+                        convertToString(row.get("Mobile")),
+                        convertToString(row.get("Guardian Mobile")),
+                        convertToInteger(row.get("Current Semester")),
+                        convertToString(row.get("Section")));
+                student.uuid = convertToString(row.get("UUID")); // Absent from backups of older versions
+                students.add(student);
+            }
+        }
+
+        List<ExcelUtils.AttendanceImport> attendances = null; // Stays null if the backup has no attendance part
+        List<Map<String, Object>> attendanceRows = databaseContent.get("Attendance");
+        if (attendanceRows != null) {
+            attendances = new ArrayList<>();
+            for (Map<String, Object> row : attendanceRows) {
+                Long oldStudentId = convertToLong(row.get("Student ID"));
+                Long date = convertToLong(row.get("Date (Timestamp)"));
+                if (oldStudentId == null || date == null) {
+                    continue; // Cannot be linked to a student or a day
+                }
+                attendances.add(new ExcelUtils.AttendanceImport(oldStudentId, date, convertToBoolean(row.get("Is Present"))));
+            }
+        }
+
+        Map<String, Object> parsed = new HashMap<>();
+        parsed.put("students", students);
+        parsed.put("attendances", attendances);
+        return parsed;
+    }
+
     // --- Helper methods for type conversion from JSON Map values ---
     private Long convertToLong(Object value) {
         if (value == null) {
@@ -389,10 +500,12 @@ public abstract class AppDatabase extends RoomDatabase {
 
     private Integer convertToInteger(Object value) {
         if (value == null) {
-            Log.w(TAG, "convertToInteger: Received null value for integer. Returning 0 to satisfy NOT NULL constraint.");
+            MarklyLog.w(TAG, "convertToInteger: Received null value for integer. Returning 0 to satisfy NOT NULL constraint.");
             return 0; // Return 0 as a fallback if null is not allowed
         }
-        Log.d(TAG, "convertToInteger: Attempting to convert value: " + value + " (Type: " + value.getClass().getName() + ")");
+        if (MarklyLog.isDebugEnabled()) {
+            MarklyLog.d(TAG, "convertToInteger: Attempting to convert value: " + value + " (Type: " + value.getClass().getName() + ")");
+        }
         if (value instanceof Double) {
             // Use Math.round to handle potential floating point inaccuracies before converting to int
             // Then cast to Integer
@@ -400,7 +513,7 @@ public abstract class AppDatabase extends RoomDatabase {
                 // Safely convert Double to Integer, handling potential precision issues for values like 4.0
                 return (int) Math.round((Double) value);
             } catch (ClassCastException | NumberFormatException e) {
-                Log.e(TAG, "convertToInteger: Error converting Double to Integer: " + value + ", returning 0.", e);
+                MarklyLog.e(TAG, "convertToInteger: Error converting Double to Integer: " + value + ", returning 0.", e);
                 return 0;
             }
         } else if (value instanceof Long) {
@@ -416,12 +529,12 @@ public abstract class AppDatabase extends RoomDatabase {
                     // If direct integer parsing fails, try parsing as a double and then convert to int
                     return (int) Math.round(Double.parseDouble((String) value));
                 } catch (NumberFormatException e2) {
-                    Log.e(TAG, "convertToInteger: Error parsing String to Integer/Double: " + value + ", returning 0.", e2);
+                    MarklyLog.e(TAG, "convertToInteger: Error parsing String to Integer/Double: " + value + ", returning 0.", e2);
                     return 0;
                 }
             }
         }
-        Log.e(TAG, "convertToInteger: Unhandled type for conversion: " + value.getClass().getName() + " with value: " + value + ". Returning 0.");
+        MarklyLog.e(TAG, "convertToInteger: Unhandled type for conversion: " + value.getClass().getName() + " with value: " + value + ". Returning 0.");
         return 0; // Final fallback
     }
 
@@ -0,0 +1,176 @@
+package com.aquaa.markly.data.database;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.aquaa.markly.utils.AcademicYear;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The archive of closed academic years: a second SQLite file next to the live database holding the attendance moved
+ * out of it, plus a snapshot of every student that attendance belongs to, so history survives the student's removal.
+ *
+ * Room cannot model a second file, so this is plain SQLite on its own connection, which attaches the live database
+ * as "live" while it is open. Attaching to Room's connection instead would turn write-ahead logging off for the life
+ * of the process (the framework does that for any database with something attached) and stall roll call behind
+ * every report. Only reads go through the attachment, writes to the live database stay with Room.
+ */
+public final class ArchiveStore implements Closeable {
+
+    public static final String FILE_NAME = "markly_archive.db";
+    private static final int SCHEMA_VERSION = 1;
+
+    // Same key as SyncSchema's tombstones; rows of databases without sync_meta fall back to their local id
+    private static final String STUDENT_KEY = "COALESCE(s.`uuid`, 'id:' || s.`student_id`)";
+
+    private static final String[] SCHEMA = {
+            "CREATE TABLE IF NOT EXISTS `archived_students` (`uuid` TEXT NOT NULL PRIMARY KEY, `name` TEXT, `gender` TEXT, "
+                    + "`mobile` TEXT, `guardian_mobile` TEXT, `current_semester` INTEGER NOT NULL, `section` TEXT, "
+                    + "`archived_at` INTEGER NOT NULL)",
+            // Keyed like sync, by student and day, so archiving a year again replaces rather than duplicates
+            "CREATE TABLE IF NOT EXISTS `archived_attendance` (`student_uuid` TEXT NOT NULL, `date` INTEGER NOT NULL, "
+                    + "`is_present` INTEGER NOT NULL, `is_sms_sent` INTEGER NOT NULL, `row_version` INTEGER NOT NULL, "
+                    + "`row_origin` TEXT, PRIMARY KEY (`student_uuid`, `date`))",
+            "CREATE INDEX IF NOT EXISTS `index_archived_attendance_date` ON `archived_attendance` (`date`)",
+    };
+
+    // Live and archived attendance as one table. A temporary view is the only kind that may span attached files,
+    // it lasts as long as this connection. A record synced back into the live table after archiving wins.
+    private static final String HISTORY_VIEW = "CREATE TEMP VIEW IF NOT EXISTS `attendance_history` AS "
+            + "SELECT " + STUDENT_KEY + " AS `student_uuid`, s.`name` AS `name`, s.`current_semester` AS `semester`, "
+            + "s.`section` AS `section`, a.`date` AS `date`, a.`is_present` AS `is_present`, 0 AS `archived` "
+            + "FROM live.`attendance` a JOIN live.`students` s ON s.`student_id` = a.`student_id` "
+            + "UNION ALL "
+            + "SELECT h.`student_uuid`, st.`name`, st.`current_semester`, st.`section`, h.`date`, h.`is_present`, 1 "
+            + "FROM main.`archived_attendance` h LEFT JOIN main.`archived_students` st ON st.`uuid` = h.`student_uuid` "
+            + "WHERE NOT EXISTS (SELECT 1 FROM live.`students` s JOIN live.`attendance` a ON a.`student_id` = s.`student_id` "
+            + "WHERE s.`uuid` = h.`student_uuid` AND a.`date` = h.`date`)";
+
+    private final SQLiteDatabase db;
+
+    private ArchiveStore(SQLiteDatabase db) {
+        this.db = db;
+    }
+
+    /**
+     * Opens (creating it on first use) the archive and attaches the live database. Call off the main thread,
+     * after Room has opened the live database, and close when done.
+     */
+    public static ArchiveStore open(Context context) {
+        File file = context.getDatabasePath(FILE_NAME);
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(file, null);
+        try {
+            if (db.getVersion() < SCHEMA_VERSION) {
+                db.beginTransaction();
+                try {
+                    for (String statement : SCHEMA) {
+                        db.execSQL(statement);
+                    }
+                    db.setVersion(SCHEMA_VERSION);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+            }
+            db.execSQL("ATTACH DATABASE ? AS live", new Object[]{context.getDatabasePath(AppDatabase.DATABASE_NAME).getPath()});
+            db.execSQL(HISTORY_VIEW);
+        } catch (RuntimeException e) {
+            db.close();
+            throw e;
+        }
+        return new ArchiveStore(db);
+    }
+
+    /**
+     * Same as AttendanceDao.getRangeFingerprint(), read through the attachment.
+     */
+    public AttendanceDao.RangeFingerprint liveFingerprint(long startDate, long endDate) {
+        AttendanceDao.RangeFingerprint fingerprint = new AttendanceDao.RangeFingerprint();
+        try (Cursor cursor = db.rawQuery("SELECT COUNT(*), COALESCE(SUM(`change_seq`), 0) FROM live.`attendance` "
+                + "WHERE `date` >= ? AND `date` < ?", new String[]{String.valueOf(startDate), String.valueOf(endDate)})) {
+            if (cursor.moveToFirst()) {
+                fingerprint.recordCount = cursor.getInt(0);
+                fingerprint.seqTotal = cursor.getLong(1);
+            }
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Copies the live attendance of one academic year and its students into the archive. Leaves the live database
+     * as it is: each statement reads one consistent snapshot of it without taking its write lock, and copying
+     * again only replaces what is already there, so an interrupted copy is simply repeated.
+     * @return The number of records copied.
+     */
+    public int copyYear(int year, long archivedAt) {
+        long startDate = AcademicYear.startOf(year);
+        long endDate = AcademicYear.endOf(year);
+        try (SQLiteStatement students = db.compileStatement("INSERT OR REPLACE INTO main.`archived_students` (`uuid`, `name`, "
+                + "`gender`, `mobile`, `guardian_mobile`, `current_semester`, `section`, `archived_at`) "
+                + "SELECT " + STUDENT_KEY + ", s.`name`, s.`gender`, s.`mobile`, s.`guardian_mobile`, s.`current_semester`, "
+                + "s.`section`, ? FROM live.`students` s WHERE s.`student_id` IN "
+                + "(SELECT `student_id` FROM live.`attendance` WHERE `date` >= ? AND `date` < ?)")) {
+            students.bindLong(1, archivedAt);
+            students.bindLong(2, startDate);
+            students.bindLong(3, endDate);
+            students.executeUpdateDelete();
+        }
+        try (SQLiteStatement attendance = db.compileStatement("INSERT OR REPLACE INTO main.`archived_attendance` (`student_uuid`, "
+                + "`date`, `is_present`, `is_sms_sent`, `row_version`, `row_origin`) "
+                + "SELECT " + STUDENT_KEY + ", a.`date`, a.`is_present`, a.`is_sms_sent`, a.`row_version`, a.`row_origin` "
+                + "FROM live.`attendance` a JOIN live.`students` s ON s.`student_id` = a.`student_id` "
+                + "WHERE a.`date` >= ? AND a.`date` < ?")) {
+            attendance.bindLong(1, startDate);
+            attendance.bindLong(2, endDate);
+            return attendance.executeUpdateDelete();
+        }
+    }
+
+    /**
+     * Attendance per academic year from the attendance_history view, newest year first.
+     */
+    public List<YearSummary> getYearSummaries() {
+        List<YearSummary> summaries = new ArrayList<>();
+        String year = AcademicYear.sqlOf("`date`");
+        try (Cursor cursor = db.rawQuery("SELECT " + year + " AS `academic_year`, COUNT(*), SUM(`is_present`), SUM(`archived`), "
+                + "COUNT(DISTINCT `student_uuid`) FROM `attendance_history` GROUP BY `academic_year` "
+                + "ORDER BY `academic_year` DESC", null)) {
+            while (cursor.moveToNext()) {
+                YearSummary summary = new YearSummary();
+                summary.academicYear = cursor.getInt(0);
+                summary.recordedCount = cursor.getInt(1);
+                summary.presentCount = cursor.getInt(2);
+                summary.archivedCount = cursor.getInt(3);
+                summary.studentCount = cursor.getInt(4);
+                summaries.add(summary);
+            }
+        }
+        return summaries;
+    }
+
+    @Override
+    public void close() {
+        db.close(); // Detaches, and drops the temporary view
+    }
+
+    /**
+     * Recorded, present and archived records of one academic year, and the students they belong to.
+     */
+    public static class YearSummary {
+        public int academicYear;
+        public int recordedCount;
+        public int presentCount;
+        public int archivedCount;
+        public int studentCount;
+
+        public int getLiveCount() {
+            return recordedCount - archivedCount;
+        }
+    }
+}
@@ -18,7 +18,9 @@ import static androidx.room.ForeignKey.CASCADE;
                 parentColumns = "student_id",
                 childColumns = "student_id",
                 onDelete = CASCADE), // If a student is deleted, their attendance records are also deleted.
-        indices = {@Index(value = {"student_id", "date"}, unique = true)}) // Composite index for performance, ensuring unique attendance per student per day
+        indices = {@Index(value = {"student_id", "date"}, unique = true), // Composite index for performance, ensuring unique attendance per student per day
+                @Index(value = {"date", "is_present", "is_sms_sent", "student_id"}), // Covers the per-day and per-month lookups, including the absent-for-SMS query
+                @Index(value = {"change_seq"})}) // Changes since a sync cursor
 public class Attendance {
 
     // Primary key for the attendance record, auto-generated by Room
@@ -42,6 +44,17 @@ public class Attendance {
     @ColumnInfo(name = "is_sms_sent", defaultValue = "0") // Default to false (0)
     public boolean isSmsSent;
 
+    // Sync stamps, written by the triggers in SyncSchema on every local change, see Student.
+    // Across devices a record is identified by its student's uuid and its date.
+    @ColumnInfo(name = "row_version", defaultValue = "0")
+    public long rowVersion;
+
+    @ColumnInfo(name = "row_origin")
+    public String rowOrigin;
+
+    @ColumnInfo(name = "change_seq", defaultValue = "0")
+    public long changeSeq;
+
     /**
      * Constructor for the Attendance entity.
      *
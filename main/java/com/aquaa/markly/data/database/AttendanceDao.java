@@ -1,6 +1,7 @@
 package com.aquaa.markly.data.database;
 
 import androidx.lifecycle.LiveData;
+import androidx.room.ColumnInfo;
 import androidx.room.Dao;
 import androidx.room.Insert;
 import androidx.room.Query;
@@ -14,10 +15,22 @@ public interface AttendanceDao {
     @Insert
     long insertAttendance(Attendance attendance);
 
+    // Inserts a batch of attendance records in one statement loop
+    @Insert
+    List<Long> insertAttendances(List<Attendance> attendances);
+
     // Updates an existing attendance record
     @Update
     void updateAttendance(Attendance attendance);
 
+    // Updates a batch of attendance records
+    @Update
+    void updateAttendances(List<Attendance> attendances);
+
+    // Deletes a batch of attendance records by ID
+    @Query("DELETE FROM attendance WHERE attendance_id IN (:attendanceIds)")
+    void deleteAttendanceByIds(List<Long> attendanceIds);
+
     // Deletes an attendance record by ID
     @Query("DELETE FROM attendance WHERE attendance_id = :attendanceId")
     void deleteAttendance(long attendanceId);
@@ -55,14 +68,97 @@ public interface AttendanceDao {
     @Query("SELECT * FROM attendance WHERE date BETWEEN :startDate AND :endDate ORDER BY date ASC, student_id ASC")
     LiveData<List<Attendance>> getAllAttendanceForMonth(long startDate, long endDate);
 
+    // The records of a date range, for tallies over every student. Read from the date index.
+    @Query("SELECT * FROM attendance WHERE date BETWEEN :startDate AND :endDate")
+    List<Attendance> getAttendanceInRangeSync(long startDate, long endDate);
+
+    // The same for the students of a semester, or of one section of it (matched as stored). Each student's records
+    // are read from the (student_id, date) index, so other semesters and dates outside the range are never touched.
+    @Query("SELECT a.* FROM attendance a JOIN students s ON s.student_id = a.student_id "
+            + "WHERE s.current_semester = :semester AND a.date BETWEEN :startDate AND :endDate")
+    List<Attendance> getAttendanceForSemesterInRangeSync(int semester, long startDate, long endDate);
+
+    @Query("SELECT a.* FROM attendance a JOIN students s ON s.student_id = a.student_id "
+            + "WHERE s.current_semester = :semester AND s.section = :section AND a.date BETWEEN :startDate AND :endDate")
+    List<Attendance> getAttendanceForSectionInRangeSync(int semester, String section, long startDate, long endDate);
+
     // Query to get the latest attendance date (max timestamp)
     @Query("SELECT MAX(date) FROM attendance")
     Long getLatestAttendanceDate();
 
     // Query to get student IDs of absent students on a specific date AND for whom SMS has NOT been sent
-    @Query("SELECT student_id FROM attendance WHERE date = :date AND is_present = 0 AND is_sms_sent = 0")
+    // Students whose notice is already waiting in the SMS outbox are left out, so they are not queued twice
+    @Query("SELECT student_id FROM attendance WHERE date = :date AND is_present = 0 AND is_sms_sent = 0 "
+            + "AND NOT EXISTS (SELECT 1 FROM sms_outbox_coverage c JOIN sms_outbox o ON o.outbox_id = c.outbox_id "
+            + "WHERE c.student_id = attendance.student_id AND c.attendance_date = attendance.date AND o.status IN (0, 1))")
     List<Long> getAbsentStudentIdsOnDateForSms(long date); // This is the missing method
 
+    // Pending absences (no SMS sent or queued yet) of the given students within a date range, for consolidation.
+    // Callers keep studentIds under SQLite's 999 bound-variable limit.
+    @Query("SELECT * FROM attendance WHERE student_id IN (:studentIds) AND date BETWEEN :startDate AND :endDate "
+            + "AND is_present = 0 AND is_sms_sent = 0 "
+            + "AND NOT EXISTS (SELECT 1 FROM sms_outbox_coverage c JOIN sms_outbox o ON o.outbox_id = c.outbox_id "
+            + "WHERE c.student_id = attendance.student_id AND c.attendance_date = attendance.date AND o.status IN (0, 1)) "
+            + "ORDER BY date ASC, student_id ASC")
+    List<Attendance> getPendingAbsencesForStudents(List<Long> studentIds, long startDate, long endDate);
+
+    // Flags every absence covered by one outbox message as SMS sent
+    @Query("UPDATE attendance SET is_sms_sent = 1 WHERE attendance_id IN (SELECT a.attendance_id FROM sms_outbox_coverage c "
+            + "JOIN attendance a ON a.student_id = c.student_id AND a.date = c.attendance_date WHERE c.outbox_id = :outboxId)")
+    int setSmsSentForOutbox(long outboxId);
+
+    // Attendance figures up to a date for the {attendance} and {streak} SMS placeholders. The streak counts the
+    // absences after the last day the student was present. Callers chunk the ids to stay under SQLite's variable limit.
+    @Query("SELECT student_id, SUM(is_present) AS present_days, COUNT(*) AS recorded_days, "
+            + "SUM(CASE WHEN is_present = 0 AND date > IFNULL((SELECT MAX(p.date) FROM attendance p "
+            + "WHERE p.student_id = attendance.student_id AND p.date <= :date AND p.is_present = 1), 0) THEN 1 ELSE 0 END) AS absence_streak "
+            + "FROM attendance WHERE student_id IN (:studentIds) AND date <= :date GROUP BY student_id")
+    List<StudentAttendanceStats> getAttendanceStatsForStudents(List<Long> studentIds, long date);
+
+    // Present and recorded counts per day for the students of a semester (0 for all) and section (null for all),
+    // oldest day first. Read from the covering (date, is_present, ...) index, one row per day however many students
+    // there are.
+    @Query("SELECT a.date AS date, SUM(a.is_present) AS present_count, COUNT(*) AS recorded_count FROM attendance a "
+            + "JOIN students s ON s.student_id = a.student_id "
+            + "WHERE a.date BETWEEN :startDate AND :endDate AND (:semester = 0 OR s.current_semester = :semester) "
+            + "AND (:section IS NULL OR s.section = :section COLLATE NOCASE) "
+            + "GROUP BY a.date ORDER BY a.date ASC")
+    List<DailyCount> getDailyCounts(int semester, String section, long startDate, long endDate);
+
+    // The same per week, each row dated by the first recorded day of its week. The days are counted first so that
+    // only one row per day is sorted into weeks. weekOrigin is the midnight a week starts on; half a day of slack keeps
+    // a midnight moved by a daylight saving change in its week.
+    @Query("SELECT MIN(d.date) AS date, SUM(d.present_count) AS present_count, SUM(d.recorded_count) AS recorded_count FROM ("
+            + "SELECT a.date AS date, SUM(a.is_present) AS present_count, COUNT(*) AS recorded_count FROM attendance a "
+            + "JOIN students s ON s.student_id = a.student_id "
+            + "WHERE a.date BETWEEN :startDate AND :endDate AND (:semester = 0 OR s.current_semester = :semester) "
+            + "AND (:section IS NULL OR s.section = :section COLLATE NOCASE) "
+            + "GROUP BY a.date) d "
+            + "GROUP BY (d.date - :weekOrigin + 43200000) / 604800000 ORDER BY MIN(d.date) ASC")
+    List<DailyCount> getWeeklyCounts(int semester, String section, long startDate, long endDate, long weekOrigin);
+
+    // The same per calendar month of the device's time zone, each row dated by the first recorded day of its month
+    @Query("SELECT MIN(d.date) AS date, SUM(d.present_count) AS present_count, SUM(d.recorded_count) AS recorded_count FROM ("
+            + "SELECT a.date AS date, SUM(a.is_present) AS present_count, COUNT(*) AS recorded_count FROM attendance a "
+            + "JOIN students s ON s.student_id = a.student_id "
+            + "WHERE a.date BETWEEN :startDate AND :endDate AND (:semester = 0 OR s.current_semester = :semester) "
+            + "AND (:section IS NULL OR s.section = :section COLLATE NOCASE) "
+            + "GROUP BY a.date) d "
+            + "GROUP BY strftime('%Y-%m', d.date / 1000, 'unixepoch', 'localtime') ORDER BY MIN(d.date) ASC")
+    List<DailyCount> getMonthlyCounts(int semester, String section, long startDate, long endDate);
+
+    // One student's counts per bucket of bucketMillis (a day or a week) starting at origin, see getWeeklyCounts()
+    @Query("SELECT MIN(date) AS date, SUM(is_present) AS present_count, COUNT(*) AS recorded_count FROM attendance "
+            + "WHERE student_id = :studentId AND date BETWEEN :startDate AND :endDate "
+            + "GROUP BY (date - :origin + 43200000) / :bucketMillis ORDER BY MIN(date) ASC")
+    List<DailyCount> getStudentCountsPerBucket(long studentId, long startDate, long endDate, long origin, long bucketMillis);
+
+    // One student's counts per calendar month, see getMonthlyCounts()
+    @Query("SELECT MIN(date) AS date, SUM(is_present) AS present_count, COUNT(*) AS recorded_count FROM attendance "
+            + "WHERE student_id = :studentId AND date BETWEEN :startDate AND :endDate "
+            + "GROUP BY strftime('%Y-%m', date / 1000, 'unixepoch', 'localtime') ORDER BY MIN(date) ASC")
+    List<DailyCount> getStudentMonthlyCounts(long studentId, long startDate, long endDate);
+
     // Get all attendance records synchronously (for export)
     @Query("SELECT * FROM attendance ORDER BY date ASC, student_id ASC")
     List<Attendance> getAllAttendanceRecordsSync();
@@ -70,4 +166,67 @@ public interface AttendanceDao {
     // Delete all attendance records
     @Query("DELETE FROM attendance")
     void deleteAllAttendance();
+
+    // Earliest recorded day, where the closed academic years to archive begin
+    @Query("SELECT MIN(date) FROM attendance")
+    Long getEarliestAttendanceDate();
+
+    // What ArchiveStore copied: any insert, update or delete in the range since changes the count or the change_seq total
+    @Query("SELECT COUNT(*) AS record_count, COALESCE(SUM(change_seq), 0) AS seq_total FROM attendance "
+            + "WHERE date >= :startDate AND date < :endDate")
+    RangeFingerprint getRangeFingerprint(long startDate, long endDate);
+
+    // Removes archived records, the end is exclusive
+    @Query("DELETE FROM attendance WHERE date >= :startDate AND date < :endDate")
+    int deleteAttendanceInRange(long startDate, long endDate);
+
+    /**
+     * Present and recorded attendance of one day.
+     */
+    class DailyCount {
+        @ColumnInfo(name = "date")
+        public long date;
+
+        @ColumnInfo(name = "present_count")
+        public int presentCount;
+
+        @ColumnInfo(name = "recorded_count")
+        public int recordedCount;
+    }
+
+    /**
+     * Number of records in a date range and the total of their change_seq.
+     */
+    class RangeFingerprint {
+        @ColumnInfo(name = "record_count")
+        public int recordCount;
+
+        @ColumnInfo(name = "seq_total")
+        public long seqTotal;
+
+        public boolean matches(RangeFingerprint other) {
+            return other != null && recordCount == other.recordCount && seqTotal == other.seqTotal;
+        }
+    }
+
+    /**
+     * Present and recorded days of one student, and the current run of absences.
+     */
+    class StudentAttendanceStats {
+        @ColumnInfo(name = "student_id")
+        public long studentId;
+
+        @ColumnInfo(name = "present_days")
+        public int presentDays;
+
+        @ColumnInfo(name = "recorded_days")
+        public int recordedDays;
+
+        @ColumnInfo(name = "absence_streak")
+        public int absenceStreak;
+
+        public double getPercentage() {
+            return recordedDays == 0 ? 0 : (double) presentDays / recordedDays * 100;
+        }
+    }
 }
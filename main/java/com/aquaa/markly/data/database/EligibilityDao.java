@@ -0,0 +1,65 @@
+package com.aquaa.markly.data.database;
+
+import androidx.room.ColumnInfo;
+import androidx.room.Dao;
+import androidx.room.Embedded;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import java.util.List;
+
+@Dao
+public interface EligibilityDao {
+
+    @Query("SELECT * FROM semester_plans WHERE semester = :semester LIMIT 1")
+    SemesterPlan getPlan(int semester);
+
+    // The plan of the semester a student is currently in, null if it has none
+    @Query("SELECT p.* FROM semester_plans p JOIN students s ON s.current_semester = p.semester "
+            + "WHERE s.student_id = :studentId LIMIT 1")
+    SemesterPlan getPlanOfStudent(long studentId);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void upsertPlan(SemesterPlan plan);
+
+    @Query("DELETE FROM semester_plans WHERE semester = :semester")
+    void deletePlan(int semester);
+
+    @Insert
+    void insertCounts(SemesterAttendance counts);
+
+    // Adds one record to a student's counts, returns 0 if the student has no row yet
+    @Query("UPDATE semester_attendance SET present_count = present_count + :presentDelta, "
+            + "absent_count = absent_count + :absentDelta WHERE student_id = :studentId")
+    int addToCounts(long studentId, int presentDelta, int absentDelta);
+
+    @Query("DELETE FROM semester_attendance WHERE semester = :semester")
+    void deleteCountsOfSemester(int semester);
+
+    @Query("DELETE FROM semester_attendance")
+    void deleteAllCounts();
+
+    // Students of a semester (and section, null for all) still in it with at least minAbsent absences this term,
+    // most absences first. With a fixed number of working days, more absences always means less slack.
+    @Query("SELECT s.*, c.present_count, c.absent_count FROM semester_attendance c "
+            + "JOIN students s ON s.student_id = c.student_id "
+            + "WHERE c.semester = :semester AND c.absent_count >= :minAbsent AND s.current_semester = :semester "
+            + "AND (:section IS NULL OR s.section = :section COLLATE NOCASE) "
+            + "ORDER BY c.absent_count DESC, s.name ASC LIMIT :limit")
+    List<Standing> getStandings(int semester, int minAbsent, String section, int limit);
+
+    /**
+     * A student with their counts this term.
+     */
+    class Standing {
+        @Embedded
+        public Student student;
+
+        @ColumnInfo(name = "present_count")
+        public int presentCount;
+
+        @ColumnInfo(name = "absent_count")
+        public int absentCount;
+    }
+}
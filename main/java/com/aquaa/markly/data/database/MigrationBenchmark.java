@@ -0,0 +1,139 @@
+package com.aquaa.markly.data.database;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import androidx.room.Room;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteOpenHelper;
+import androidx.sqlite.db.framework.FrameworkSQLiteOpenHelperFactory;
+
+import com.aquaa.markly.utils.AggregationBenchmark;
+import com.aquaa.markly.utils.BenchmarkRunner;
+import com.aquaa.markly.utils.SyntheticDataGenerator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Times the upgrade from the oldest migratable schema (version 11) to the current one on large synthetic databases.
+ * Every sample builds a fresh version 11 file with the exact DDL Room generated for it, fills it, then measures
+ * opening it through Room with Migrations.ALL. Row counts are compared before and after, so a migration that
+ * loses data fails the run just like a slow one.
+ */
+public final class MigrationBenchmark {
+
+    public static final String SUITE = "migrations";
+
+    private static final String DATABASE_NAME = "markly_bench_migration.db";
+    private static final int[][] SCALES = {{300, 365}, {1000, 365}, {3000, 365}}; // {students, days}
+    private static final int SAMPLES = 3;
+
+    /**
+     * Budget for the median upgrade at the largest scale (about a million attendance rows).
+     */
+    public static final Map<String, Double> THRESHOLDS_MS = new HashMap<>();
+    static {
+        THRESHOLDS_MS.put("migration.from11", 8000.0);
+    }
+
+    // Schema version 11 as created by Room, before any migration existed
+    private static final String[] VERSION_11_SCHEMA = {
+            "CREATE TABLE IF NOT EXISTS `students` (`student_id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, `name` TEXT, `gender` TEXT, `mobile` TEXT, `guardian_mobile` TEXT, `current_semester` INTEGER NOT NULL, `section` TEXT)",
+            "CREATE TABLE IF NOT EXISTS `attendance` (`attendance_id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, `student_id` INTEGER NOT NULL, `date` INTEGER NOT NULL, `is_present` INTEGER NOT NULL, `is_sms_sent` INTEGER NOT NULL DEFAULT 0, FOREIGN KEY(`student_id`) REFERENCES `students`(`student_id`) ON UPDATE NO ACTION ON DELETE CASCADE )",
+            "CREATE UNIQUE INDEX IF NOT EXISTS `index_attendance_student_id_date` ON `attendance` (`student_id`, `date`)",
+            "CREATE TABLE IF NOT EXISTS `notifications` (`notification_id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, `title` TEXT, `message` TEXT, `timestamp` INTEGER NOT NULL, `is_read` INTEGER NOT NULL, `type` TEXT)",
+    };
+
+    private static final String[] PRESERVED_TABLES = {"students", "attendance", "notifications"};
+
+    private MigrationBenchmark() {
+        // Static suite
+    }
+
+    /**
+     * Runs the upgrade at every scale.
+     * @param failures Receives a line for every upgrade that lost or gained rows.
+     */
+    public static List<BenchmarkRunner.Result> run(Context context, AggregationBenchmark.ProgressListener listener,
+                                                   List<String> failures) {
+        List<BenchmarkRunner.Result> results = new ArrayList<>();
+        for (int[] scale : SCALES) {
+            int studentCount = scale[0];
+            int dayCount = scale[1];
+            long[] samples = new long[SAMPLES];
+            for (int i = 0; i < SAMPLES; i++) {
+                listener.onProgress("Building version 11 database, " + studentCount + " x " + dayCount
+                        + " (" + (i + 1) + "/" + SAMPLES + ")...");
+                context.deleteDatabase(DATABASE_NAME);
+                long[] before = createVersion11(context, new SyntheticDataGenerator(studentCount, dayCount, 42L));
+
+                listener.onProgress("Migrating, " + studentCount + " x " + dayCount + " (" + (i + 1) + "/" + SAMPLES + ")...");
+                AppDatabase db = Room.databaseBuilder(context.getApplicationContext(), AppDatabase.class, DATABASE_NAME)
+                        .addMigrations(Migrations.ALL)
+                        .build();
+                try {
+                    long start = System.nanoTime();
+                    SupportSQLiteDatabase sqlite = db.getOpenHelper().getWritableDatabase(); // Runs the migrations
+                    samples[i] = System.nanoTime() - start;
+                    long[] after = countRows(sqlite);
+                    for (int t = 0; t < PRESERVED_TABLES.length; t++) {
+                        if (before[t] != after[t]) {
+                            failures.add("migration.from11 at " + studentCount + " x " + dayCount + ": " + PRESERVED_TABLES[t]
+                                    + " had " + before[t] + " rows before and " + after[t] + " after");
+                        }
+                    }
+                } finally {
+                    db.close();
+                    context.deleteDatabase(DATABASE_NAME);
+                }
+            }
+            results.add(BenchmarkRunner.fromSamples("migration.from11",
+                    BenchmarkRunner.params("students", studentCount, "days", dayCount), samples));
+        }
+        return results;
+    }
+
+    /**
+     * Creates DATABASE_NAME at version 11 and fills it.
+     * @return Row counts of PRESERVED_TABLES.
+     */
+    private static long[] createVersion11(Context context, SyntheticDataGenerator generator) {
+        SupportSQLiteOpenHelper.Configuration configuration = SupportSQLiteOpenHelper.Configuration.builder(context)
+                .name(DATABASE_NAME)
+                .callback(new SupportSQLiteOpenHelper.Callback(11) {
+                    @Override
+                    public void onCreate(SupportSQLiteDatabase db) {
+                        for (String statement : VERSION_11_SCHEMA) {
+                            db.execSQL(statement);
+                        }
+                    }
+
+                    @Override
+                    public void onUpgrade(SupportSQLiteDatabase db, int oldVersion, int newVersion) {
+                        // Always created fresh
+                    }
+                })
+                .build();
+        SupportSQLiteOpenHelper helper = new FrameworkSQLiteOpenHelperFactory().create(configuration);
+        try {
+            SupportSQLiteDatabase db = helper.getWritableDatabase();
+            QueryBenchmark.populate(db, generator);
+            return countRows(db);
+        } finally {
+            helper.close();
+        }
+    }
+
+    private static long[] countRows(SupportSQLiteDatabase db) {
+        long[] counts = new long[PRESERVED_TABLES.length];
+        for (int t = 0; t < PRESERVED_TABLES.length; t++) {
+            try (Cursor cursor = db.query("SELECT COUNT(*) FROM `" + PRESERVED_TABLES[t] + "`")) {
+                counts[t] = cursor.moveToFirst() ? cursor.getLong(0) : 0;
+            }
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,244 @@
+package com.aquaa.markly.data.database;
+
+import android.database.Cursor;
+
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteStatement;
+
+import com.aquaa.markly.utils.MarklyLog;
+import com.aquaa.markly.utils.Metrics;
+
+/**
+ * Every schema migration from version 11 onwards. A schema change must come with a migration here and be added
+ * to ALL; the destructive fallback only covers versions that predate any user data.
+ * Each migration is timed into the "db.migration.&lt;from&gt;_&lt;to&gt;" metric and logged, and MigrationBenchmark
+ * runs them against large synthetic databases.
+ */
+public final class Migrations {
+
+    private static final String TAG = "Migrations";
+
+    /**
+     * Version 12 adds the index set audited by QueryPlanAuditor. Index names follow Room's
+     * "index_&lt;table&gt;_&lt;columns&gt;" scheme so that the migrated schema matches a freshly created one.
+     */
+    static final Migration MIGRATION_11_12 = new TimedMigration(11, 12) {
+        @Override
+        void apply(SupportSQLiteDatabase database) {
+            createIndex(database, "students", "current_semester", "name");
+            createIndex(database, "attendance", "date", "is_present", "is_sms_sent", "student_id");
+            createIndex(database, "notifications", "is_read", "timestamp");
+            createIndex(database, "notifications", "timestamp");
+            database.execSQL("ANALYZE");
+        }
+    };
+
+    /**
+     * Version 13 adds the persistent SMS outbox worked off by SmsDispatcher.
+     */
+    static final Migration MIGRATION_12_13 = new TimedMigration(12, 13) {
+        @Override
+        void apply(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `sms_outbox` (`outbox_id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`batch_id` INTEGER NOT NULL, `student_id` INTEGER NOT NULL, `attendance_date` INTEGER NOT NULL, "
+                    + "`phone_number` TEXT, `message` TEXT, `status` INTEGER NOT NULL, `attempts` INTEGER NOT NULL, "
+                    + "`next_attempt_at` INTEGER NOT NULL, `created_at` INTEGER NOT NULL, `updated_at` INTEGER NOT NULL, "
+                    + "`last_error` TEXT, FOREIGN KEY(`student_id`) REFERENCES `students`(`student_id`) "
+                    + "ON UPDATE NO ACTION ON DELETE CASCADE )");
+            createIndex(database, "sms_outbox", "status", "next_attempt_at");
+            createIndex(database, "sms_outbox", "batch_id");
+            createIndex(database, "sms_outbox", "student_id", "attendance_date");
+        }
+    };
+
+    /**
+     * Version 14 lets one outbox message cover several absences (siblings, several days). Messages queued before
+     * the upgrade cover exactly the one absence they were created for.
+     */
+    static final Migration MIGRATION_13_14 = new TimedMigration(13, 14) {
+        @Override
+        void apply(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `sms_outbox_coverage` (`outbox_id` INTEGER NOT NULL, "
+                    + "`student_id` INTEGER NOT NULL, `attendance_date` INTEGER NOT NULL, "
+                    + "PRIMARY KEY(`outbox_id`, `student_id`, `attendance_date`), "
+                    + "FOREIGN KEY(`outbox_id`) REFERENCES `sms_outbox`(`outbox_id`) ON UPDATE NO ACTION ON DELETE CASCADE , "
+                    + "FOREIGN KEY(`student_id`) REFERENCES `students`(`student_id`) ON UPDATE NO ACTION ON DELETE CASCADE )");
+            createIndex(database, "sms_outbox_coverage", "student_id", "attendance_date");
+            database.execSQL("INSERT OR IGNORE INTO `sms_outbox_coverage` (`outbox_id`, `student_id`, `attendance_date`) "
+                    + "SELECT `outbox_id`, `student_id`, `attendance_date` FROM `sms_outbox`");
+        }
+    };
+
+    /**
+     * Version 15 adds student search: the phone_search_key column and the students_fts full-text table with the
+     * content sync triggers Room would create for a new database. SQLite has no function to reverse a string, so
+     * the key is backfilled row by row from Student.reversedDigits(); the index is then built in one 'rebuild'.
+     */
+    static final Migration MIGRATION_14_15 = new TimedMigration(14, 15) {
+        @Override
+        void apply(SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE `students` ADD COLUMN `phone_search_key` TEXT");
+            SupportSQLiteStatement update = database.compileStatement(
+                    "UPDATE `students` SET `phone_search_key` = ? WHERE `student_id` = ?");
+            try (Cursor cursor = database.query("SELECT `student_id`, `mobile`, `guardian_mobile` FROM `students`")) {
+                while (cursor.moveToNext()) {
+                    Student student = new Student(null, null, cursor.getString(1), cursor.getString(2), 0, null);
+                    update.bindString(1, student.getPhoneSearchKey());
+                    update.bindLong(2, cursor.getLong(0));
+                    update.executeUpdateDelete();
+                }
+            }
+            database.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS `students_fts` USING FTS4(`name` TEXT, `section` TEXT, "
+                    + "`phone_search_key` TEXT, tokenize=unicode61, content=`students`)");
+            database.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_students_fts_BEFORE_UPDATE BEFORE UPDATE ON `students` "
+                    + "BEGIN DELETE FROM `students_fts` WHERE `docid`=OLD.`rowid`; END");
+            database.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_students_fts_BEFORE_DELETE BEFORE DELETE ON `students` "
+                    + "BEGIN DELETE FROM `students_fts` WHERE `docid`=OLD.`rowid`; END");
+            database.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_students_fts_AFTER_UPDATE AFTER UPDATE ON `students` "
+                    + "BEGIN INSERT INTO `students_fts`(`docid`, `name`, `section`, `phone_search_key`) "
+                    + "VALUES (NEW.`rowid`, NEW.`name`, NEW.`section`, NEW.`phone_search_key`); END");
+            database.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_students_fts_AFTER_INSERT AFTER INSERT ON `students` "
+                    + "BEGIN INSERT INTO `students_fts`(`docid`, `name`, `section`, `phone_search_key`) "
+                    + "VALUES (NEW.`rowid`, NEW.`name`, NEW.`section`, NEW.`phone_search_key`); END");
+            database.execSQL("INSERT INTO `students_fts`(`students_fts`) VALUES('rebuild')");
+        }
+    };
+
+    /**
+     * Version 16 adds the per-student absence streaks kept by StudentRepository, computed once here from the
+     * existing attendance in a single ordered pass.
+     */
+    static final Migration MIGRATION_15_16 = new TimedMigration(15, 16) {
+        @Override
+        void apply(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `student_streaks` (`student_id` INTEGER NOT NULL, "
+                    + "`current_absent_run` INTEGER NOT NULL, `longest_absent_run` INTEGER NOT NULL, "
+                    + "`last_recorded_date` INTEGER NOT NULL, PRIMARY KEY(`student_id`), "
+                    + "FOREIGN KEY(`student_id`) REFERENCES `students`(`student_id`) ON UPDATE NO ACTION ON DELETE CASCADE )");
+            createIndex(database, "student_streaks", "current_absent_run");
+            int streaks = StudentStreak.rebuildAll(database);
+            MarklyLog.d(TAG, "Computed absence streaks of {} students", streaks);
+        }
+    };
+
+    static final Migration MIGRATION_16_17 = new TimedMigration(16, 17) {
+        @Override
+        void apply(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `semester_plans` (`semester` INTEGER NOT NULL, "
+                    + "`start_date` INTEGER NOT NULL, `working_days` INTEGER NOT NULL, "
+                    + "`min_attendance_percent` INTEGER NOT NULL, PRIMARY KEY(`semester`))");
+            database.execSQL("CREATE TABLE IF NOT EXISTS `semester_attendance` (`student_id` INTEGER NOT NULL, "
+                    + "`semester` INTEGER NOT NULL, `present_count` INTEGER NOT NULL, `absent_count` INTEGER NOT NULL, "
+                    + "PRIMARY KEY(`student_id`), "
+                    + "FOREIGN KEY(`student_id`) REFERENCES `students`(`student_id`) ON UPDATE NO ACTION ON DELETE CASCADE )");
+            createIndex(database, "semester_attendance", "semester", "absent_count");
+            // No semester has a plan yet, so there is nothing to count
+        }
+    };
+
+    /**
+     * Version 18 adds the sync stamps and tables used by LAN sync. Existing rows are stamped as one local change,
+     * so the first sync sends everything.
+     */
+    static final Migration MIGRATION_17_18 = new TimedMigration(17, 18) {
+        @Override
+        void apply(SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE `students` ADD COLUMN `uuid` TEXT");
+            database.execSQL("ALTER TABLE `students` ADD COLUMN `row_version` INTEGER NOT NULL DEFAULT 0");
+            database.execSQL("ALTER TABLE `students` ADD COLUMN `row_origin` TEXT");
+            database.execSQL("ALTER TABLE `students` ADD COLUMN `change_seq` INTEGER NOT NULL DEFAULT 0");
+            database.execSQL("ALTER TABLE `attendance` ADD COLUMN `row_version` INTEGER NOT NULL DEFAULT 0");
+            database.execSQL("ALTER TABLE `attendance` ADD COLUMN `row_origin` TEXT");
+            database.execSQL("ALTER TABLE `attendance` ADD COLUMN `change_seq` INTEGER NOT NULL DEFAULT 0");
+            database.execSQL("CREATE TABLE IF NOT EXISTS `sync_meta` (`id` INTEGER NOT NULL, `device_id` TEXT NOT NULL, "
+                    + "`lamport` INTEGER NOT NULL, `last_seq` INTEGER NOT NULL, `applying` INTEGER NOT NULL, PRIMARY KEY(`id`))");
+            database.execSQL("CREATE TABLE IF NOT EXISTS `sync_tombstones` (`kind` INTEGER NOT NULL, `sync_key` TEXT NOT NULL, "
+                    + "`row_version` INTEGER NOT NULL, `row_origin` TEXT NOT NULL, `change_seq` INTEGER NOT NULL, "
+                    + "PRIMARY KEY(`kind`, `sync_key`))");
+            database.execSQL("CREATE TABLE IF NOT EXISTS `sync_peers` (`peer_id` TEXT NOT NULL, `last_pulled_seq` INTEGER NOT NULL, "
+                    + "`last_pushed_seq` INTEGER NOT NULL, `last_sync_at` INTEGER NOT NULL, PRIMARY KEY(`peer_id`))");
+            database.execSQL("CREATE TABLE IF NOT EXISTS `sync_aliases` (`alias_uuid` TEXT NOT NULL, "
+                    + "`student_uuid` TEXT NOT NULL, PRIMARY KEY(`alias_uuid`))");
+            database.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_students_uuid` ON `students` (`uuid`)");
+            createIndex(database, "students", "change_seq");
+            createIndex(database, "attendance", "change_seq");
+            createIndex(database, "sync_tombstones", "change_seq");
+            SyncSchema.install(database);
+        }
+    };
+
+    static final Migration MIGRATION_18_19 = new TimedMigration(18, 19) {
+        @Override
+        void apply(SupportSQLiteDatabase database) {
+            createIndex(database, "students", "current_semester", "section", "name");
+        }
+    };
+
+    /**
+     * All migrations, in version order, for Room.Builder.addMigrations().
+     */
+    public static final Migration[] ALL = {MIGRATION_11_12, MIGRATION_12_13, MIGRATION_13_14, MIGRATION_14_15, MIGRATION_15_16,
+            MIGRATION_16_17, MIGRATION_17_18, MIGRATION_18_19};
+
+    /**
+     * Oldest version that can be migrated without data loss.
+     */
+    public static final int FIRST_MIGRATABLE_VERSION = 11;
+
+    private Migrations() {
+        // Static holder
+    }
+
+    /**
+     * @return The versions below FIRST_MIGRATABLE_VERSION, for fallbackToDestructiveMigrationFrom().
+     */
+    public static int[] destructiveVersions() {
+        int[] versions = new int[FIRST_MIGRATABLE_VERSION - 1];
+        for (int i = 0; i < versions.length; i++) {
+            versions[i] = i + 1;
+        }
+        return versions;
+    }
+
+    /**
+     * Migration that records its duration and logs it, so that slow upgrades show up in diagnostics.
+     */
+    abstract static class TimedMigration extends Migration {
+
+        TimedMigration(int startVersion, int endVersion) {
+            super(startVersion, endVersion);
+        }
+
+        abstract void apply(SupportSQLiteDatabase database);
+
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            Metrics.Timer timer = Metrics.timer("db.migration." + startVersion + "_" + endVersion);
+            long start = timer.start();
+            try {
+                apply(database);
+            } finally {
+                timer.stop(start);
+            }
+            MarklyLog.i(TAG, "Migrated database from version {} to {}", startVersion, endVersion);
+        }
+    }
+
+    /**
+     * Creates an index with Room's naming scheme if it does not exist yet. SQLite builds it in a single sorted pass
+     * over the table, which is much faster than inserting into an existing index row by row.
+     */
+    static void createIndex(SupportSQLiteDatabase database, String table, String... columns) {
+        StringBuilder name = new StringBuilder("index_").append(table);
+        StringBuilder columnList = new StringBuilder();
+        for (String column : columns) {
+            name.append('_').append(column);
+            if (columnList.length() > 0) {
+                columnList.append(", ");
+            }
+            columnList.append('`').append(column).append('`');
+        }
+        database.execSQL("CREATE INDEX IF NOT EXISTS `" + name + "` ON `" + table + "` (" + columnList + ")");
+    }
+}
@@ -2,12 +2,15 @@ package com.aquaa.markly.data.database;
 
 import androidx.room.ColumnInfo;
 import androidx.room.Entity;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
 /**
  * Room Entity for storing in-app notifications.
  */
-@Entity(tableName = "notifications")
+@Entity(tableName = "notifications",
+        indices = {@Index(value = {"is_read", "timestamp"}), // Unread count and mark-all-read
+                @Index(value = {"timestamp"})}) // Newest-first list without a sort step
 public class Notification {
 
     @PrimaryKey(autoGenerate = true)
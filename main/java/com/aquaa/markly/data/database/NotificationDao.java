@@ -14,6 +14,10 @@ public interface NotificationDao {
     @Insert
     void insertNotification(Notification notification);
 
+    // One transaction for a whole NotificationBus window
+    @Insert
+    void insertAll(List<Notification> notifications);
+
     @Update
     void updateNotification(Notification notification);
 
@@ -25,12 +29,16 @@ public interface NotificationDao {
     @Query("SELECT COUNT(*) FROM notifications WHERE is_read = 0")
     LiveData<Integer> getUnreadNotificationCount();
 
+    // Get the newest unread notification, for the home screen pop-up
+    @Query("SELECT * FROM notifications WHERE is_read = 0 ORDER BY timestamp DESC LIMIT 1")
+    LiveData<Notification> getLatestUnreadNotification();
+
     // Mark a specific notification as read
     @Query("UPDATE notifications SET is_read = 1 WHERE notification_id = :notificationId")
     void markNotificationAsRead(long notificationId);
 
     // Mark all notifications as read
-    @Query("UPDATE notifications SET is_read = 1")
+    @Query("UPDATE notifications SET is_read = 1 WHERE is_read = 0") // Only touches unread rows, found through the is_read index
     void markAllNotificationsAsRead();
 
     // Delete a specific notification
@@ -0,0 +1,306 @@
+package com.aquaa.markly.data.database;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import androidx.room.Room;
+import androidx.sqlite.db.SimpleSQLiteQuery;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteStatement;
+
+import com.aquaa.markly.utils.AggregationBenchmark;
+import com.aquaa.markly.utils.AttendanceAggregator;
+import com.aquaa.markly.utils.BenchmarkRunner;
+import com.aquaa.markly.utils.SyntheticDataGenerator;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Macro-benchmark of every DAO query and the main repository flows against a synthetic database.
+ * Runs on a separate Room database (in memory, or on disk as "markly_bench_*.db", deleted afterwards) so the
+ * user's data is never touched. Scales go from roughly today's size to ten times that, and every median is
+ * checked against THRESHOLDS_MS so that a slow query shows up as a failure before release.
+ * LiveData queries are timed through the same SQL as their @Query, since Room only runs them on observation.
+ */
+public final class QueryBenchmark {
+
+    public static final String SUITE_IN_MEMORY = "queries-memory";
+    public static final String SUITE_ON_DISK = "queries-disk";
+
+    private static final int[][] SCALES = {{300, 180}, {1000, 180}, {3000, 180}}; // {students, days}
+    private static final long MAX_JSON_EXPORT_ROWS = 200_000L;
+    private static final int SEARCH_LIMIT = 50; // As used by StudentRepository
+
+    /**
+     * Budget for the median of each case on a mid-range phone at the largest scale.
+     */
+    public static final Map<String, Double> THRESHOLDS_MS = new HashMap<>();
+    static {
+        // Point lookups
+        THRESHOLDS_MS.put("student.getStudentById", 2.0);
+        THRESHOLDS_MS.put("attendance.getAttendanceByStudentAndDate", 2.0);
+        THRESHOLDS_MS.put("attendance.getLatestAttendanceDate", 5.0);
+        // Search as you type has to keep up with the keyboard
+        THRESHOLDS_MS.put("student.searchStudents.name", 10.0);
+        THRESHOLDS_MS.put("student.searchStudents.phone", 10.0);
+        // One day or one student
+        THRESHOLDS_MS.put("attendance.getAbsentStudentIdsOnDateForSms", 20.0);
+        THRESHOLDS_MS.put("attendance.getAttendanceByDate", 30.0);
+        THRESHOLDS_MS.put("attendance.getAttendanceForStudent", 10.0);
+        THRESHOLDS_MS.put("attendance.getMonthlyAttendanceForStudent", 5.0);
+        THRESHOLDS_MS.put("attendance.getPresentCountForStudentMonth", 5.0);
+        THRESHOLDS_MS.put("attendance.getAbsentCountForStudentMonth", 5.0);
+        THRESHOLDS_MS.put("attendance.updateAttendance", 10.0);
+        // Lists for a screen
+        THRESHOLDS_MS.put("student.getAllStudentsSync", 60.0);
+        THRESHOLDS_MS.put("student.getStudentsBySemesterSync", 20.0);
+        THRESHOLDS_MS.put("student.getAllSemestersSync", 10.0);
+        THRESHOLDS_MS.put("student.getStudentsWithoutAttendanceForDateAndSemester", 30.0);
+        THRESHOLDS_MS.put("attendance.getAllAttendanceForMonth", 250.0);
+        THRESHOLDS_MS.put("attendance.getAllStudentIdsWithAttendance", 100.0);
+        THRESHOLDS_MS.put("notification.getAllNotifications", 30.0);
+        THRESHOLDS_MS.put("notification.getUnreadNotificationCount", 5.0);
+        THRESHOLDS_MS.put("notification.getLatestUnreadNotification", 2.0);
+        THRESHOLDS_MS.put("notification.markAllNotificationsAsRead", 30.0);
+        // Whole-database reads and repository flows
+        THRESHOLDS_MS.put("attendance.getAllAttendanceRecordsSync", 3000.0);
+        THRESHOLDS_MS.put("flow.absentStudentsForSms", 30.0);
+        THRESHOLDS_MS.put("flow.trackMonthly", 3000.0);
+        THRESHOLDS_MS.put("flow.exportCsv", 6000.0);
+        THRESHOLDS_MS.put("flow.exportJson", 6000.0);
+    }
+
+    private QueryBenchmark() {
+        // Static suite
+    }
+
+    /**
+     * Runs every case at every scale.
+     * @param onDisk True to benchmark a file-backed database (real I/O), false for an in-memory one.
+     * @param skipped Receives a note for every case that was not run.
+     */
+    public static List<BenchmarkRunner.Result> run(Context context, boolean onDisk,
+                                                   AggregationBenchmark.ProgressListener listener,
+                                                   List<String> skipped) throws Exception {
+        List<BenchmarkRunner.Result> results = new ArrayList<>();
+        for (int[] scale : SCALES) {
+            int studentCount = scale[0];
+            int dayCount = scale[1];
+            String name = "markly_bench_" + studentCount + "x" + dayCount + ".db";
+            context.deleteDatabase(name);
+            AppDatabase db = onDisk
+                    ? Room.databaseBuilder(context.getApplicationContext(), AppDatabase.class, name).build()
+                    : Room.inMemoryDatabaseBuilder(context.getApplicationContext(), AppDatabase.class).build();
+            try {
+                listener.onProgress("Populating " + studentCount + " students x " + dayCount + " days...");
+                SyntheticDataGenerator generator = new SyntheticDataGenerator(studentCount, dayCount, 42L);
+                long rows = populate(db.getOpenHelper().getWritableDatabase(), generator);
+                runScale(db, generator, studentCount, dayCount, rows, listener, skipped, results);
+            } finally {
+                db.close();
+                if (onDisk) {
+                    context.deleteDatabase(name);
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Bulk-loads the generated data with prepared statements in a single transaction.
+     * Only uses columns that exist since schema version 11, so MigrationBenchmark can load old schemas too.
+     * Also seeds the devices of SyncBenchmark.
+     * @return The number of attendance rows written.
+     */
+    public static long populate(SupportSQLiteDatabase sqlite, SyntheticDataGenerator generator) {
+        long[] attendanceRows = new long[1];
+        sqlite.beginTransaction();
+        try {
+            SupportSQLiteStatement insertStudent = sqlite.compileStatement(
+                    "INSERT INTO students (student_id, name, gender, mobile, guardian_mobile, current_semester, section, phone_search_key) VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
+            SupportSQLiteStatement insertAttendance = sqlite.compileStatement(
+                    "INSERT INTO attendance (student_id, date, is_present, is_sms_sent) VALUES (?, ?, ?, ?)");
+            SupportSQLiteStatement insertNotification = sqlite.compileStatement(
+                    "INSERT INTO notifications (title, message, timestamp, is_read, type) VALUES (?, ?, ?, ?, ?)");
+            generator.generate(new SyntheticDataGenerator.Sink() {
+                @Override
+                public void student(Student student) {
+                    insertStudent.bindLong(1, student.getStudentId());
+                    insertStudent.bindString(2, student.getName());
+                    insertStudent.bindString(3, student.getGender());
+                    insertStudent.bindString(4, student.getMobile());
+                    insertStudent.bindString(5, student.getGuardianMobile());
+                    insertStudent.bindLong(6, student.getCurrentSemester());
+                    insertStudent.bindString(7, student.getSection());
+                    insertStudent.bindString(8, student.getPhoneSearchKey());
+                    insertStudent.executeInsert();
+                }
+
+                @Override
+                public void attendance(long studentId, long date, boolean isPresent, boolean isSmsSent) {
+                    insertAttendance.bindLong(1, studentId);
+                    insertAttendance.bindLong(2, date);
+                    insertAttendance.bindLong(3, isPresent ? 1 : 0);
+                    insertAttendance.bindLong(4, isSmsSent ? 1 : 0);
+                    insertAttendance.executeInsert();
+                    attendanceRows[0]++;
+                }
+
+                @Override
+                public void notification(Notification notification) {
+                    insertNotification.bindString(1, notification.getTitle());
+                    insertNotification.bindString(2, notification.getMessage());
+                    insertNotification.bindLong(3, notification.getTimestamp());
+                    insertNotification.bindLong(4, notification.isRead() ? 1 : 0);
+                    insertNotification.bindString(5, notification.getType());
+                    insertNotification.executeInsert();
+                }
+            });
+            sqlite.setTransactionSuccessful();
+        } finally {
+            sqlite.endTransaction();
+        }
+        sqlite.execSQL("ANALYZE"); // Give the planner the same statistics a long-lived database would have
+        return attendanceRows[0];
+    }
+
+    private static void runScale(AppDatabase db, SyntheticDataGenerator generator, int studentCount, int dayCount,
+                                 long rows, AggregationBenchmark.ProgressListener listener, List<String> skipped,
+                                 List<BenchmarkRunner.Result> results) throws Exception {
+        StudentDao studentDao = db.studentDao();
+        AttendanceDao attendanceDao = db.attendanceDao();
+        Map<String, Object> params = BenchmarkRunner.params("students", studentCount, "days", dayCount);
+
+        long lastDay = latestSchoolDay(generator, dayCount);
+        long monthStart = lastDay - 29 * SyntheticDataGenerator.DAY_MILLIS;
+        long studentId = studentCount / 2;
+        int semester = 3;
+
+        listener.onProgress("Student queries, " + studentCount + " x " + dayCount);
+        results.add(BenchmarkRunner.measure("student.getStudentById", params, 20, 200, () -> studentDao.getStudentById(studentId).getStudentId()));
+        results.add(BenchmarkRunner.measure("student.getAllStudentsSync", params, 2, 10, () -> studentDao.getAllStudentsSync().size()));
+        results.add(BenchmarkRunner.measure("student.getStudentsBySemesterSync", params, 3, 20, () -> studentDao.getStudentsBySemesterSync(semester).size()));
+        results.add(BenchmarkRunner.measure("student.getAllSemestersSync", params, 3, 20, () -> studentDao.getAllSemestersSync().size()));
+        results.add(BenchmarkRunner.measure("student.searchStudents.name", params, 5, 50,
+                () -> studentDao.searchStudents("ra*", "ra%", SEARCH_LIMIT).size()));
+        results.add(BenchmarkRunner.measure("student.searchStudents.phone", params, 5, 50,
+                () -> studentDao.searchStudents("phone_search_key:" + Student.reversedDigits("45") + "*", "%", SEARCH_LIMIT).size()));
+        results.add(BenchmarkRunner.measure("student.getStudentsWithoutAttendanceForDateAndSemester", params, 3, 20,
+                () -> studentDao.getStudentsWithoutAttendanceForDateAndSemester(semester, lastDay + SyntheticDataGenerator.DAY_MILLIS).size()));
+
+        listener.onProgress("Attendance queries, " + studentCount + " x " + dayCount);
+        results.add(BenchmarkRunner.measure("attendance.getAttendanceByStudentAndDate", params, 20, 200,
+                () -> attendanceDao.getAttendanceByStudentAndDate(studentId, lastDay) != null ? 1 : 0));
+        results.add(BenchmarkRunner.measure("attendance.getLatestAttendanceDate", params, 3, 20, () -> {
+            Long latest = attendanceDao.getLatestAttendanceDate();
+            return latest != null ? latest : 0;
+        }));
+        results.add(BenchmarkRunner.measure("attendance.getAbsentStudentIdsOnDateForSms", params, 3, 20,
+                () -> attendanceDao.getAbsentStudentIdsOnDateForSms(lastDay).size()));
+        results.add(rawQuery(db, "attendance.getAttendanceForStudent", params,
+                "SELECT * FROM attendance WHERE student_id = ? ORDER BY date DESC", studentId));
+        results.add(rawQuery(db, "attendance.getMonthlyAttendanceForStudent", params,
+                "SELECT * FROM attendance WHERE student_id = ? AND date BETWEEN ? AND ? ORDER BY date ASC", studentId, monthStart, lastDay));
+        results.add(rawQuery(db, "attendance.getAllStudentIdsWithAttendance", params,
+                "SELECT DISTINCT student_id FROM attendance"));
+        results.add(rawQuery(db, "attendance.getAttendanceByDate", params,
+                "SELECT * FROM attendance WHERE date = ? ORDER BY student_id ASC", lastDay));
+        results.add(rawQuery(db, "attendance.getPresentCountForStudentMonth", params,
+                "SELECT COUNT(*) FROM attendance WHERE student_id = ? AND date BETWEEN ? AND ? AND is_present = 1", studentId, monthStart, lastDay));
+        results.add(rawQuery(db, "attendance.getAbsentCountForStudentMonth", params,
+                "SELECT COUNT(*) FROM attendance WHERE student_id = ? AND date BETWEEN ? AND ? AND is_present = 0", studentId, monthStart, lastDay));
+        results.add(rawQuery(db, "attendance.getAllAttendanceForMonth", params,
+                "SELECT * FROM attendance WHERE date BETWEEN ? AND ? ORDER BY date ASC, student_id ASC", monthStart, lastDay));
+        results.add(BenchmarkRunner.measure("attendance.getAllAttendanceRecordsSync", params, 1, 3,
+                () -> attendanceDao.getAllAttendanceRecordsSync().size()));
+        Attendance sample = attendanceDao.getAttendanceByStudentAndDate(studentId, lastDay);
+        if (sample != null) {
+            results.add(BenchmarkRunner.measure("attendance.updateAttendance", params, 5, 50, () -> {
+                db.beginTransaction();
+                try {
+                    attendanceDao.updateAttendance(sample);
+                    return 1;
+                } finally {
+                    db.endTransaction(); // Rolled back, the data set stays the same for every iteration
+                }
+            }));
+        }
+
+        listener.onProgress("Notification queries, " + studentCount + " x " + dayCount);
+        results.add(rawQuery(db, "notification.getAllNotifications", params,
+                "SELECT * FROM notifications ORDER BY timestamp DESC"));
+        results.add(rawQuery(db, "notification.getUnreadNotificationCount", params,
+                "SELECT COUNT(*) FROM notifications WHERE is_read = 0"));
+        results.add(rawQuery(db, "notification.getLatestUnreadNotification", params,
+                "SELECT * FROM notifications WHERE is_read = 0 ORDER BY timestamp DESC LIMIT 1"));
+        results.add(BenchmarkRunner.measure("notification.markAllNotificationsAsRead", params, 2, 10, () -> {
+            db.beginTransaction();
+            try {
+                db.notificationDao().markAllNotificationsAsRead();
+                return 1;
+            } finally {
+                db.endTransaction();
+            }
+        }));
+
+        listener.onProgress("Repository flows, " + studentCount + " x " + dayCount);
+        // Same shape as StudentRepository.getAbsentStudentsOnDate: the id query, then one lookup per student
+        results.add(BenchmarkRunner.measure("flow.absentStudentsForSms", params, 2, 10, () -> {
+            long found = 0;
+            for (long id : attendanceDao.getAbsentStudentIdsOnDateForSms(lastDay)) {
+                found += studentDao.getStudentById(id) != null ? 1 : 0;
+            }
+            return found;
+        }));
+        // Same shape as TrackAttendanceViewModel.updateMonthlyAttendanceRecords
+        results.add(BenchmarkRunner.measure("flow.trackMonthly", params, 1, 3, () -> AttendanceAggregator.aggregate(
+                studentDao.getAllStudentsSync(), attendanceDao.getAllAttendanceRecordsSync(), monthStart, lastDay).totalPresentDays));
+        results.add(BenchmarkRunner.measure("flow.exportCsv", params, 1, 3, () -> {
+            OutputStream discard = new OutputStream() {
+                @Override
+                public void write(int b) {
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                }
+            };
+            return db.exportStudentsToCsv(discard) + db.exportAttendanceToCsv(discard);
+        }));
+        if (rows <= MAX_JSON_EXPORT_ROWS) {
+            results.add(BenchmarkRunner.measure("flow.exportJson", params, 1, 3, () -> db.exportDatabaseToJson().length()));
+        } else {
+            skipped.add("flow.exportJson at " + studentCount + " x " + dayCount + " (" + rows + " rows)");
+        }
+    }
+
+    /**
+     * Times a query the way a LiveData observer would run it: execute and read every row.
+     */
+    private static BenchmarkRunner.Result rawQuery(AppDatabase db, String name, Map<String, Object> params,
+                                                   String sql, Object... args) throws Exception {
+        SimpleSQLiteQuery query = new SimpleSQLiteQuery(sql, args);
+        return BenchmarkRunner.measure(name, params, 3, 20, () -> {
+            long checksum = 0;
+            try (Cursor cursor = db.query(query)) {
+                while (cursor.moveToNext()) {
+                    checksum += cursor.getLong(0);
+                }
+            }
+            return checksum;
+        });
+    }
+
+    private static long latestSchoolDay(SyntheticDataGenerator generator, int dayCount) {
+        for (int day = dayCount - 1; day >= 0; day--) {
+            if (generator.isSchoolDay(day)) {
+                return SyntheticDataGenerator.FIRST_DAY + day * SyntheticDataGenerator.DAY_MILLIS;
+            }
+        }
+        return SyntheticDataGenerator.FIRST_DAY;
+    }
+}
@@ -0,0 +1,358 @@
+package com.aquaa.markly.data.database;
+
+import android.database.Cursor;
+
+import androidx.sqlite.db.SimpleSQLiteQuery;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs EXPLAIN QUERY PLAN for every DAO query and flags the ones that read a whole table.
+ * The SQL mirrors the @Query strings of every DAO (named parameters
+ * replaced by ?), so a new DAO query should be added here as well. Queries that return or delete every row
+ * are listed with fullScanAllowed, a full scan is the cheapest plan for them.
+ * Only reads plans, never data, so it is safe to run against the user's database.
+ */
+public final class QueryPlanAuditor {
+
+    private static final long SAMPLE_DATE = 1_700_000_000_000L;
+
+    private static final Check[] CHECKS = {
+            // StudentDao
+            new Check("student.getAllStudents", true, "SELECT * FROM students ORDER BY name ASC"),
+            new Check("student.getStudentsBySemester", false, "SELECT * FROM students WHERE current_semester = ? ORDER BY name ASC", 1),
+            new Check("student.getAllSemesters", false, "SELECT DISTINCT current_semester FROM students ORDER BY current_semester ASC"),
+            new Check("student.getStudentById", false, "SELECT * FROM students WHERE student_id = ? LIMIT 1", 1L),
+            new Check("student.deleteStudentsByIds", false, "DELETE FROM students WHERE student_id IN (?, ?)", 1L, 2L),
+            new Check("student.deleteAllStudents", true, "DELETE FROM students"),
+            new Check("student.getStudentsByIds", false, "SELECT * FROM students WHERE student_id IN (?, ?)", 1L, 2L),
+            new Check("student.getStudentIdsBySemester", false, "SELECT student_id FROM students WHERE current_semester = ?", 1),
+            new Check("student.promoteStudents", false,
+                    "UPDATE students SET current_semester = current_semester + 1 WHERE student_id IN (?, ?)", 1L, 2L),
+            new Check("student.searchStudents", false,
+                    "SELECT students.* FROM students JOIN students_fts ON students.student_id = students_fts.rowid "
+                            + "WHERE students_fts MATCH ? "
+                            + "ORDER BY CASE WHEN students.name LIKE ? THEN 0 ELSE 1 END, students.name ASC LIMIT ?", "ra*", "ra%", 50),
+            new Check("student.getStudentsWithoutAttendanceForDateAndSemester", false,
+                    "SELECT s.* FROM students s LEFT JOIN attendance a ON s.student_id = a.student_id AND a.date = ? WHERE s.current_semester = ? AND a.attendance_id IS NULL ORDER BY s.name ASC",
+                    SAMPLE_DATE, 1),
+            new Check("student.getStudentsBySemesterAndSection", false,
+                    "SELECT * FROM students WHERE current_semester = ? AND section = ? ORDER BY name ASC", 1, "A"),
+            new Check("student.getSectionsBySemester", false,
+                    "SELECT DISTINCT section FROM students WHERE current_semester = ? AND section IS NOT NULL AND section != '' "
+                            + "ORDER BY section ASC", 1),
+            new Check("student.getStudentIdsBySemesterAndSection", false,
+                    "SELECT student_id FROM students WHERE current_semester = ? AND section = ?", 1, "A"),
+            new Check("student.getStudentsWithoutAttendanceForDateSemesterAndSection", false,
+                    "SELECT s.* FROM students s LEFT JOIN attendance a ON s.student_id = a.student_id AND a.date = ? "
+                            + "WHERE s.current_semester = ? AND s.section = ? AND a.attendance_id IS NULL ORDER BY s.name ASC",
+                    SAMPLE_DATE, 1, "A"),
+            new Check("student.getPendingSmsAbsentees", false,
+                    "SELECT s.* FROM students s JOIN attendance a ON a.student_id = s.student_id AND a.date = ? "
+                            + "WHERE s.current_semester = ? AND a.is_present = 0 AND a.is_sms_sent = 0 AND NOT EXISTS (SELECT 1 FROM sms_outbox_coverage c JOIN sms_outbox o ON o.outbox_id = c.outbox_id "
+                            + "WHERE c.student_id = a.student_id AND c.attendance_date = a.date AND o.status IN (0, 1)) "
+                            + "ORDER BY s.name ASC", SAMPLE_DATE, 1),
+            new Check("student.getPendingSmsAbsenteesInSection", false,
+                    "SELECT s.* FROM students s JOIN attendance a ON a.student_id = s.student_id AND a.date = ? "
+                            + "WHERE s.current_semester = ? AND s.section = ? AND a.is_present = 0 AND a.is_sms_sent = 0 AND NOT EXISTS (SELECT 1 FROM sms_outbox_coverage c JOIN sms_outbox o ON o.outbox_id = c.outbox_id "
+                            + "WHERE c.student_id = a.student_id AND c.attendance_date = a.date AND o.status IN (0, 1)) "
+                            + "ORDER BY s.name ASC", SAMPLE_DATE, 1, "A"),
+            new Check("student.getAbsenteesOnDate", false,
+                    "SELECT s.* FROM attendance a JOIN students s ON s.student_id = a.student_id "
+                            + "WHERE a.date = ? AND a.is_present = 0 AND (? = 0 OR s.current_semester = ?) ORDER BY s.name ASC",
+                    SAMPLE_DATE, 0, 0),
+            // AttendanceDao
+            new Check("attendance.deleteAttendanceByIds", false, "DELETE FROM attendance WHERE attendance_id IN (?, ?)", 1L, 2L),
+            new Check("attendance.deleteAttendance", false, "DELETE FROM attendance WHERE attendance_id = ?", 1L),
+            new Check("attendance.getAttendanceForStudent", false, "SELECT * FROM attendance WHERE student_id = ? ORDER BY date DESC", 1L),
+            new Check("attendance.getMonthlyAttendanceForStudent", false,
+                    "SELECT * FROM attendance WHERE student_id = ? AND date BETWEEN ? AND ? ORDER BY date ASC", 1L, SAMPLE_DATE, SAMPLE_DATE),
+            new Check("attendance.getAllStudentIdsWithAttendance", false, "SELECT DISTINCT student_id FROM attendance"),
+            new Check("attendance.getAttendanceByDate", false, "SELECT * FROM attendance WHERE date = ? ORDER BY student_id ASC", SAMPLE_DATE),
+            new Check("attendance.getAttendanceByStudentAndDate", false,
+                    "SELECT * FROM attendance WHERE student_id = ? AND date = ? LIMIT 1", 1L, SAMPLE_DATE),
+            new Check("attendance.getPresentCountForStudentMonth", false,
+                    "SELECT COUNT(*) FROM attendance WHERE student_id = ? AND date BETWEEN ? AND ? AND is_present = 1", 1L, SAMPLE_DATE, SAMPLE_DATE),
+            new Check("attendance.getAbsentCountForStudentMonth", false,
+                    "SELECT COUNT(*) FROM attendance WHERE student_id = ? AND date BETWEEN ? AND ? AND is_present = 0", 1L, SAMPLE_DATE, SAMPLE_DATE),
+            new Check("attendance.getAllAttendanceForMonth", false,
+                    "SELECT * FROM attendance WHERE date BETWEEN ? AND ? ORDER BY date ASC, student_id ASC", SAMPLE_DATE, SAMPLE_DATE),
+            new Check("attendance.getAttendanceInRangeSync", false,
+                    "SELECT * FROM attendance WHERE date BETWEEN ? AND ?", SAMPLE_DATE, SAMPLE_DATE),
+            new Check("attendance.getAttendanceForSemesterInRangeSync", false,
+                    "SELECT a.* FROM attendance a JOIN students s ON s.student_id = a.student_id "
+                            + "WHERE s.current_semester = ? AND a.date BETWEEN ? AND ?", 1, SAMPLE_DATE, SAMPLE_DATE),
+            new Check("attendance.getAttendanceForSectionInRangeSync", false,
+                    "SELECT a.* FROM attendance a JOIN students s ON s.student_id = a.student_id "
+                            + "WHERE s.current_semester = ? AND s.section = ? AND a.date BETWEEN ? AND ?", 1, "A", SAMPLE_DATE, SAMPLE_DATE),
+            new Check("attendance.getLatestAttendanceDate", false, "SELECT MAX(date) FROM attendance"),
+            new Check("attendance.getAbsentStudentIdsOnDateForSms", false,
+                    "SELECT student_id FROM attendance WHERE date = ? AND is_present = 0 AND is_sms_sent = 0 "
+                            + "AND NOT EXISTS (SELECT 1 FROM sms_outbox_coverage c JOIN sms_outbox o ON o.outbox_id = c.outbox_id "
+                            + "WHERE c.student_id = attendance.student_id AND c.attendance_date = attendance.date AND o.status IN (0, 1))",
+                    SAMPLE_DATE),
+            new Check("attendance.getPendingAbsencesForStudents", false,
+                    "SELECT * FROM attendance WHERE student_id IN (?, ?) AND date BETWEEN ? AND ? AND is_present = 0 AND is_sms_sent = 0 "
+                            + "AND NOT EXISTS (SELECT 1 FROM sms_outbox_coverage c JOIN sms_outbox o ON o.outbox_id = c.outbox_id "
+                            + "WHERE c.student_id = attendance.student_id AND c.attendance_date = attendance.date AND o.status IN (0, 1)) "
+                            + "ORDER BY date ASC, student_id ASC", 1L, 2L, SAMPLE_DATE, SAMPLE_DATE),
+            new Check("attendance.setSmsSentForOutbox", false,
+                    "UPDATE attendance SET is_sms_sent = 1 WHERE attendance_id IN (SELECT a.attendance_id FROM sms_outbox_coverage c "
+                            + "JOIN attendance a ON a.student_id = c.student_id AND a.date = c.attendance_date WHERE c.outbox_id = ?)", 1L),
+            new Check("attendance.getAttendanceStatsForStudents", false,
+                    "SELECT student_id, SUM(is_present) AS present_days, COUNT(*) AS recorded_days, "
+                            + "SUM(CASE WHEN is_present = 0 AND date > IFNULL((SELECT MAX(p.date) FROM attendance p "
+                            + "WHERE p.student_id = attendance.student_id AND p.date <= ? AND p.is_present = 1), 0) THEN 1 ELSE 0 END) AS absence_streak "
+                            + "FROM attendance WHERE student_id IN (?, ?) AND date <= ? GROUP BY student_id", SAMPLE_DATE, 1L, 2L, SAMPLE_DATE),
+            new Check("attendance.getDailyCounts", false,
+                    "SELECT a.date AS date, SUM(a.is_present) AS present_count, COUNT(*) AS recorded_count FROM attendance a "
+                            + "JOIN students s ON s.student_id = a.student_id "
+                            + "WHERE a.date BETWEEN ? AND ? AND (? = 0 OR s.current_semester = ?) "
+                            + "AND (? IS NULL OR s.section = ? COLLATE NOCASE) "
+                            + "GROUP BY a.date ORDER BY a.date ASC", SAMPLE_DATE, SAMPLE_DATE, 0, 0, null, null),
+            // The weekly and monthly counts scan their per-day subquery, which is read from the date index
+            new Check("attendance.getWeeklyCounts", true,
+                    "SELECT MIN(d.date) AS date, SUM(d.present_count) AS present_count, SUM(d.recorded_count) AS recorded_count FROM ("
+                            + "SELECT a.date AS date, SUM(a.is_present) AS present_count, COUNT(*) AS recorded_count FROM attendance a "
+                            + "JOIN students s ON s.student_id = a.student_id "
+                            + "WHERE a.date BETWEEN ? AND ? AND (? = 0 OR s.current_semester = ?) "
+                            + "AND (? IS NULL OR s.section = ? COLLATE NOCASE) "
+                            + "GROUP BY a.date) d "
+                            + "GROUP BY (d.date - ? + 43200000) / 604800000 ORDER BY MIN(d.date) ASC",
+                    SAMPLE_DATE, SAMPLE_DATE, 0, 0, null, null, SAMPLE_DATE),
+            new Check("attendance.getMonthlyCounts", true,
+                    "SELECT MIN(d.date) AS date, SUM(d.present_count) AS present_count, SUM(d.recorded_count) AS recorded_count FROM ("
+                            + "SELECT a.date AS date, SUM(a.is_present) AS present_count, COUNT(*) AS recorded_count FROM attendance a "
+                            + "JOIN students s ON s.student_id = a.student_id "
+                            + "WHERE a.date BETWEEN ? AND ? AND (? = 0 OR s.current_semester = ?) "
+                            + "AND (? IS NULL OR s.section = ? COLLATE NOCASE) "
+                            + "GROUP BY a.date) d "
+                            + "GROUP BY strftime('%Y-%m', d.date / 1000, 'unixepoch', 'localtime') ORDER BY MIN(d.date) ASC",
+                    SAMPLE_DATE, SAMPLE_DATE, 0, 0, null, null),
+            new Check("attendance.getStudentCountsPerBucket", false,
+                    "SELECT MIN(date) AS date, SUM(is_present) AS present_count, COUNT(*) AS recorded_count FROM attendance "
+                            + "WHERE student_id = ? AND date BETWEEN ? AND ? "
+                            + "GROUP BY (date - ? + 43200000) / ? ORDER BY MIN(date) ASC", 1L, SAMPLE_DATE, SAMPLE_DATE, SAMPLE_DATE, 86_400_000L),
+            new Check("attendance.getStudentMonthlyCounts", false,
+                    "SELECT MIN(date) AS date, SUM(is_present) AS present_count, COUNT(*) AS recorded_count FROM attendance "
+                            + "WHERE student_id = ? AND date BETWEEN ? AND ? "
+                            + "GROUP BY strftime('%Y-%m', date / 1000, 'unixepoch', 'localtime') ORDER BY MIN(date) ASC", 1L, SAMPLE_DATE, SAMPLE_DATE),
+            new Check("attendance.getAllAttendanceRecordsSync", true, "SELECT * FROM attendance ORDER BY date ASC, student_id ASC"),
+            new Check("attendance.deleteAllAttendance", true, "DELETE FROM attendance"),
+            new Check("attendance.getEarliestAttendanceDate", false, "SELECT MIN(date) FROM attendance"),
+            new Check("attendance.getRangeFingerprint", false, "SELECT COUNT(*) AS record_count, COALESCE(SUM(change_seq), 0) AS seq_total "
+                    + "FROM attendance WHERE date >= ? AND date < ?", SAMPLE_DATE, SAMPLE_DATE + 86_400_000L),
+            new Check("attendance.deleteAttendanceInRange", false, "DELETE FROM attendance WHERE date >= ? AND date < ?",
+                    SAMPLE_DATE, SAMPLE_DATE + 86_400_000L),
+            // NotificationDao
+            new Check("notification.getAllNotifications", false, "SELECT * FROM notifications ORDER BY timestamp DESC"),
+            new Check("notification.getUnreadNotificationCount", false, "SELECT COUNT(*) FROM notifications WHERE is_read = 0"),
+            new Check("notification.getLatestUnreadNotification", false,
+                    "SELECT * FROM notifications WHERE is_read = 0 ORDER BY timestamp DESC LIMIT 1"),
+            new Check("notification.markNotificationAsRead", false, "UPDATE notifications SET is_read = 1 WHERE notification_id = ?", 1L),
+            new Check("notification.markAllNotificationsAsRead", false, "UPDATE notifications SET is_read = 1 WHERE is_read = 0"),
+            new Check("notification.deleteNotification", false, "DELETE FROM notifications WHERE notification_id = ?", 1L),
+            new Check("notification.deleteAllNotifications", true, "DELETE FROM notifications"),
+            // SmsOutboxDao
+            new Check("smsOutbox.getDueMessages", false,
+                    "SELECT * FROM sms_outbox WHERE status = 0 AND next_attempt_at <= ? ORDER BY next_attempt_at ASC LIMIT ?", SAMPLE_DATE, 20),
+            new Check("smsOutbox.getNextAttemptTime", false, "SELECT MIN(next_attempt_at) FROM sms_outbox WHERE status = 0"),
+            new Check("smsOutbox.getById", false, "SELECT * FROM sms_outbox WHERE outbox_id = ? LIMIT 1", 1L),
+            new Check("smsOutbox.markSending", false,
+                    "UPDATE sms_outbox SET status = 1, attempts = attempts + 1, updated_at = ? WHERE outbox_id = ? AND status = 0", SAMPLE_DATE, 1L),
+            new Check("smsOutbox.getStaleSending", false,
+                    "SELECT * FROM sms_outbox WHERE status = 1 AND updated_at < ? LIMIT ?", SAMPLE_DATE, 20),
+            new Check("smsOutbox.getOldestSendingTime", false, "SELECT MIN(updated_at) FROM sms_outbox WHERE status = 1"),
+            new Check("smsOutbox.countUnfinishedInBatch", false,
+                    "SELECT COUNT(*) FROM sms_outbox WHERE batch_id = ? AND status IN (0, 1)", 1L),
+            new Check("smsOutbox.getBatchStatusCounts", false,
+                    "SELECT status, COUNT(*) AS count FROM sms_outbox WHERE batch_id = ? GROUP BY status", 1L),
+            new Check("smsOutbox.getPendingCount", false, "SELECT COUNT(*) FROM sms_outbox WHERE status IN (0, 1)"),
+            new Check("smsOutbox.deleteFinishedBefore", false,
+                    "DELETE FROM sms_outbox WHERE status IN (2, 3, 4) AND updated_at < ?", SAMPLE_DATE),
+            // StreakDao
+            new Check("streak.getStreak", false, "SELECT * FROM student_streaks WHERE student_id = ? LIMIT 1", 1L),
+            new Check("streak.deleteStreak", false, "DELETE FROM student_streaks WHERE student_id = ?", 1L),
+            new Check("streak.deleteAllStreaks", true, "DELETE FROM student_streaks"),
+            new Check("streak.getStudentIdOfAttendance", false, "SELECT student_id FROM attendance WHERE attendance_id = ?", 1L),
+            new Check("streak.getRecordedDays", false,
+                    "SELECT date, is_present FROM attendance WHERE student_id = ? ORDER BY date ASC", 1L),
+            new Check("streak.getChronicAbsentees", false,
+                    "SELECT s.*, k.current_absent_run, k.longest_absent_run, k.last_recorded_date FROM student_streaks k "
+                            + "JOIN students s ON s.student_id = k.student_id "
+                            + "WHERE k.current_absent_run >= ? AND (? = 0 OR s.current_semester = ?) "
+                            + "AND (? IS NULL OR s.section = ? COLLATE NOCASE) "
+                            + "ORDER BY k.current_absent_run DESC, s.name ASC LIMIT ?", 3, 0, 0, null, null, 20),
+            new Check("streak.rebuildAll", true,
+                    "SELECT student_id, date, is_present FROM attendance ORDER BY student_id, date"),
+            // EligibilityDao and SemesterAttendance
+            new Check("eligibility.getPlan", false, "SELECT * FROM semester_plans WHERE semester = ? LIMIT 1", 1),
+            new Check("eligibility.getPlanOfStudent", false,
+                    "SELECT p.* FROM semester_plans p JOIN students s ON s.current_semester = p.semester "
+                            + "WHERE s.student_id = ? LIMIT 1", 1L),
+            new Check("eligibility.deletePlan", false, "DELETE FROM semester_plans WHERE semester = ?", 1),
+            new Check("eligibility.addToCounts", false,
+                    "UPDATE semester_attendance SET present_count = present_count + ?, "
+                            + "absent_count = absent_count + ? WHERE student_id = ?", 1, 0, 1L),
+            new Check("eligibility.deleteCountsOfSemester", false, "DELETE FROM semester_attendance WHERE semester = ?", 1),
+            new Check("eligibility.deleteAllCounts", true, "DELETE FROM semester_attendance"),
+            new Check("eligibility.getStandings", false,
+                    "SELECT s.*, c.present_count, c.absent_count FROM semester_attendance c "
+                            + "JOIN students s ON s.student_id = c.student_id "
+                            + "WHERE c.semester = ? AND c.absent_count >= ? AND s.current_semester = ? "
+                            + "AND (? IS NULL OR s.section = ? COLLATE NOCASE) "
+                            + "ORDER BY c.absent_count DESC, s.name ASC LIMIT ?", 1, 3, 1, null, null, 20),
+            new Check("eligibility.recount", false,
+                    "SELECT s.student_id, s.current_semester, SUM(a.is_present), COUNT(*) - SUM(a.is_present) FROM students s "
+                            + "JOIN semester_plans p ON p.semester = s.current_semester "
+                            + "JOIN attendance a ON a.student_id = s.student_id AND a.date >= p.start_date "
+                            + "WHERE s.student_id = ? GROUP BY s.student_id", 1L),
+            new Check("eligibility.rebuildSemester", false,
+                    "SELECT s.student_id, s.current_semester, SUM(a.is_present), COUNT(*) - SUM(a.is_present) FROM students s "
+                            + "JOIN semester_plans p ON p.semester = s.current_semester "
+                            + "JOIN attendance a ON a.student_id = s.student_id AND a.date >= p.start_date "
+                            + "WHERE s.current_semester = ? GROUP BY s.student_id", 1),
+            new Check("eligibility.rebuildAll", true,
+                    "SELECT s.student_id, s.current_semester, SUM(a.is_present), COUNT(*) - SUM(a.is_present) FROM students s "
+                            + "JOIN semester_plans p ON p.semester = s.current_semester "
+                            + "JOIN attendance a ON a.student_id = s.student_id AND a.date >= p.start_date "
+                            + "GROUP BY s.student_id"),
+            // SyncDao and SyncSchema
+            new Check("sync.getMeta", false, "SELECT * FROM sync_meta WHERE id = 1 LIMIT 1"),
+            new Check("sync.updateClock", false, "UPDATE sync_meta SET lamport = ?, last_seq = ? WHERE id = 1", 1L, 1L),
+            new Check("sync.getStudentChanges", false,
+                    "SELECT uuid, name, gender, mobile, guardian_mobile, current_semester, section, row_version, row_origin, change_seq "
+                            + "FROM students WHERE change_seq > ? ORDER BY change_seq ASC LIMIT ?", 0L, 500),
+            new Check("sync.getAttendanceChanges", false,
+                    "SELECT s.uuid AS student_uuid, a.date, a.is_present, a.is_sms_sent, a.row_version, a.row_origin, a.change_seq "
+                            + "FROM attendance a JOIN students s ON s.student_id = a.student_id "
+                            + "WHERE a.change_seq > ? ORDER BY a.change_seq ASC LIMIT ?", 0L, 500),
+            new Check("sync.getTombstones", false,
+                    "SELECT * FROM sync_tombstones WHERE change_seq > ? ORDER BY change_seq ASC LIMIT ?", 0L, 500),
+            new Check("sync.getTombstone", false, "SELECT * FROM sync_tombstones WHERE kind = ? AND sync_key = ? LIMIT 1", 0, "0"),
+            new Check("sync.getStudentByUuid", false, "SELECT * FROM students WHERE uuid = ? LIMIT 1", "0"),
+            new Check("sync.findSameStudent", false,
+                    "SELECT * FROM students WHERE current_semester = ? AND name = ? AND mobile = ? "
+                            + "AND uuid != ? LIMIT 1", 1, "a", "0", "0"),
+            new Check("sync.getAliasTarget", false, "SELECT student_uuid FROM sync_aliases WHERE alias_uuid = ? LIMIT 1", "0"),
+            new Check("sync.getPeer", false, "SELECT * FROM sync_peers WHERE peer_id = ? LIMIT 1", "0"),
+            new Check("sync.getAllPeers", true, "SELECT * FROM sync_peers ORDER BY last_sync_at DESC"),
+            new Check("sync.stampUnsynced", false, "UPDATE attendance SET change_seq = 1 WHERE change_seq = 0"),
+    };
+
+    private QueryPlanAuditor() {
+        // Static helpers
+    }
+
+    private static final class Check {
+        final String name;
+        final boolean fullScanAllowed;
+        final String sql;
+        final Object[] args;
+
+        Check(String name, boolean fullScanAllowed, String sql, Object... args) {
+            this.name = name;
+            this.fullScanAllowed = fullScanAllowed;
+            this.sql = sql;
+            this.args = args;
+        }
+    }
+
+    /**
+     * Plan of one query and whether it passed.
+     */
+    public static final class Finding {
+        public final String name;
+        public final List<String> plan = new ArrayList<>();
+        public boolean fullScan;
+        public boolean tempSort;
+        public boolean failed;
+
+        Finding(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * Explains every known DAO query against the given database.
+     * @return One finding per query, in DAO order.
+     */
+    public static List<Finding> audit(AppDatabase db) {
+        List<Finding> findings = new ArrayList<>();
+        for (Check check : CHECKS) {
+            Finding finding = new Finding(check.name);
+            try (Cursor cursor = db.query(new SimpleSQLiteQuery("EXPLAIN QUERY PLAN " + check.sql, check.args))) {
+                int detailColumn = cursor.getColumnIndex("detail");
+                while (cursor.moveToNext()) {
+                    String detail = cursor.getString(detailColumn);
+                    finding.plan.add(detail);
+                    if (isFullTableScan(detail)) {
+                        finding.fullScan = true;
+                    }
+                    if (detail.startsWith("USE TEMP B-TREE")) {
+                        finding.tempSort = true;
+                    }
+                }
+            }
+            finding.failed = finding.fullScan && !check.fullScanAllowed;
+            findings.add(finding);
+        }
+        return findings;
+    }
+
+    /**
+     * "SCAN students" (or "SCAN TABLE students" on older SQLite) reads the table itself. Scans of a covering index,
+     * and SEARCH steps, do not count. A full-text table reports "SCAN students_fts VIRTUAL TABLE INDEX n:", where
+     * index 0 reads every document and any other number is a MATCH or rowid lookup.
+     */
+    static boolean isFullTableScan(String detail) {
+        if (detail.contains(" VIRTUAL TABLE INDEX ")) {
+            return detail.contains(" VIRTUAL TABLE INDEX 0:");
+        }
+        return detail.startsWith("SCAN") && !detail.contains(" USING COVERING INDEX ") && !detail.contains(" USING INDEX ");
+    }
+
+    /**
+     * @return True if any query regressed to a full table scan.
+     */
+    public static boolean hasFailures(List<Finding> findings) {
+        for (Finding finding : findings) {
+            if (finding.failed) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Formats the findings as PASS/FAIL lines with their plans, failures first.
+     */
+    public static String toText(List<Finding> findings) {
+        StringBuilder builder = new StringBuilder();
+        int failures = 0;
+        for (Finding finding : findings) {
+            if (finding.failed) {
+                failures++;
+            }
+        }
+        builder.append(failures == 0 ? "PASS: no DAO query scans a whole table unexpectedly.\n\n"
+                : "FAIL: " + failures + " quer" + (failures == 1 ? "y scans" : "ies scan") + " a whole table.\n\n");
+        for (int pass = 0; pass < 2; pass++) {
+            for (Finding finding : findings) {
+                if (finding.failed != (pass == 0)) {
+                    continue;
+                }
+                builder.append(finding.failed ? "FAIL " : "ok   ").append(finding.name);
+                if (finding.tempSort) {
+                    builder.append(" (sorts in a temp b-tree)");
+                }
+                builder.append('\n');
+                for (String step : finding.plan) {
+                    builder.append("       ").append(step).append('\n');
+                }
+            }
+        }
+        return builder.toString();
+    }
+}
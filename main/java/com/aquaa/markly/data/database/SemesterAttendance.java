@@ -0,0 +1,92 @@
+package com.aquaa.markly.data.database;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.ForeignKey;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+import static androidx.room.ForeignKey.CASCADE;
+
+/**
+ * Room Entity holding the running present and absent counts of one student in the current term of their semester
+ * (see SemesterPlan). Kept up to date by StudentRepository on every save, so that eligibility is projected without
+ * scanning the attendance history. Students of a semester without a plan, or without a record this term, have no row.
+ */
+@Entity(tableName = "semester_attendance",
+        foreignKeys = @ForeignKey(entity = Student.class,
+                parentColumns = "student_id",
+                childColumns = "student_id",
+                onDelete = CASCADE),
+        indices = {@Index(value = {"semester", "absent_count"})}) // At-risk list of a semester, most absences first
+public class SemesterAttendance {
+
+    // Counts every student's records since the start of the plan of their current semester
+    private static final String COUNT_SELECT = "SELECT s.`student_id`, s.`current_semester`, SUM(a.`is_present`), "
+            + "COUNT(*) - SUM(a.`is_present`) FROM `students` s "
+            + "JOIN `semester_plans` p ON p.`semester` = s.`current_semester` "
+            + "JOIN `attendance` a ON a.`student_id` = s.`student_id` AND a.`date` >= p.`start_date` ";
+    private static final String INSERT = "INSERT INTO `semester_attendance` "
+            + "(`student_id`, `semester`, `present_count`, `absent_count`) ";
+
+    @PrimaryKey
+    @ColumnInfo(name = "student_id")
+    public long studentId;
+
+    // The student's current semester when counted
+    @ColumnInfo(name = "semester")
+    public int semester;
+
+    @ColumnInfo(name = "present_count")
+    public int presentCount;
+
+    @ColumnInfo(name = "absent_count")
+    public int absentCount;
+
+    public SemesterAttendance(long studentId, int semester, int presentCount, int absentCount) {
+        this.studentId = studentId;
+        this.semester = semester;
+        this.presentCount = presentCount;
+        this.absentCount = absentCount;
+    }
+
+    public long getStudentId() { return studentId; }
+    public int getSemester() { return semester; }
+    public int getPresentCount() { return presentCount; }
+    public int getAbsentCount() { return absentCount; }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "SemesterAttendance{studentId=" + studentId + ", semester=" + semester
+                + ", presentCount=" + presentCount + ", absentCount=" + absentCount + '}';
+    }
+
+    /**
+     * Recounts one student from their records of this term, after an edit or removal, a promotion or a change of
+     * semester. Reads at most a term of the (student_id, date) index. Call inside a transaction.
+     */
+    public static void recount(SupportSQLiteDatabase database, long studentId) {
+        database.execSQL("DELETE FROM `semester_attendance` WHERE `student_id` = ?", new Object[]{studentId});
+        database.execSQL(INSERT + COUNT_SELECT + "WHERE s.`student_id` = ? GROUP BY s.`student_id`", new Object[]{studentId});
+    }
+
+    /**
+     * Recounts every student of one semester, after its plan was set or removed. Call inside a transaction.
+     */
+    public static void rebuildSemester(SupportSQLiteDatabase database, int semester) {
+        database.execSQL("DELETE FROM `semester_attendance` WHERE `semester` = ?", new Object[]{semester});
+        database.execSQL(INSERT + COUNT_SELECT + "WHERE s.`current_semester` = ? GROUP BY s.`student_id`", new Object[]{semester});
+    }
+
+    /**
+     * Recounts every student in one statement, for bulk imports where replaying each record through the repository
+     * would cost more. Call inside a transaction.
+     */
+    public static void rebuildAll(SupportSQLiteDatabase database) {
+        database.execSQL("DELETE FROM `semester_attendance`");
+        database.execSQL(INSERT + COUNT_SELECT + "GROUP BY s.`student_id`");
+    }
+}
@@ -0,0 +1,50 @@
+package com.aquaa.markly.data.database;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * Room Entity describing the current term of one semester: when it started, how many working days it has in total
+ * and the attendance needed for exam eligibility. Set by the teacher; without a plan a semester is not projected.
+ */
+@Entity(tableName = "semester_plans")
+public class SemesterPlan {
+
+    public static final int DEFAULT_MIN_ATTENDANCE_PERCENT = 75;
+
+    @PrimaryKey
+    @ColumnInfo(name = "semester")
+    public int semester;
+
+    // First day of the term (Unix timestamp in milliseconds); earlier records belong to a previous term
+    @ColumnInfo(name = "start_date")
+    public long startDate;
+
+    // Working days of the whole term, past and remaining
+    @ColumnInfo(name = "working_days")
+    public int workingDays;
+
+    @ColumnInfo(name = "min_attendance_percent")
+    public int minAttendancePercent;
+
+    public SemesterPlan(int semester, long startDate, int workingDays, int minAttendancePercent) {
+        this.semester = semester;
+        this.startDate = startDate;
+        this.workingDays = workingDays;
+        this.minAttendancePercent = minAttendancePercent;
+    }
+
+    public int getSemester() { return semester; }
+    public long getStartDate() { return startDate; }
+    public int getWorkingDays() { return workingDays; }
+    public int getMinAttendancePercent() { return minAttendancePercent; }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "SemesterPlan{semester=" + semester + ", startDate=" + startDate + ", workingDays=" + workingDays
+                + ", minAttendancePercent=" + minAttendancePercent + '}';
+    }
+}
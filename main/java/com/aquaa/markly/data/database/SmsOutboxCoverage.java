@@ -0,0 +1,41 @@
+package com.aquaa.markly.data.database;
+
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.ForeignKey;
+import androidx.room.Index;
+
+import static androidx.room.ForeignKey.CASCADE;
+
+/**
+ * Room Entity linking a queued SMS to every absence it reports. A consolidated message to one guardian can cover
+ * several siblings and several days; when it is sent, all covered attendance rows are flagged in one statement.
+ */
+@Entity(tableName = "sms_outbox_coverage",
+        primaryKeys = {"outbox_id", "student_id", "attendance_date"},
+        foreignKeys = {@ForeignKey(entity = SmsOutboxMessage.class,
+                parentColumns = "outbox_id",
+                childColumns = "outbox_id",
+                onDelete = CASCADE),
+                @ForeignKey(entity = Student.class,
+                        parentColumns = "student_id",
+                        childColumns = "student_id",
+                        onDelete = CASCADE)},
+        indices = {@Index(value = {"student_id", "attendance_date"})}) // "Is this absence already queued?"
+public class SmsOutboxCoverage {
+
+    @ColumnInfo(name = "outbox_id")
+    public long outboxId;
+
+    @ColumnInfo(name = "student_id")
+    public long studentId;
+
+    @ColumnInfo(name = "attendance_date")
+    public long attendanceDate;
+
+    public SmsOutboxCoverage(long outboxId, long studentId, long attendanceDate) {
+        this.outboxId = outboxId;
+        this.studentId = studentId;
+        this.attendanceDate = attendanceDate;
+    }
+}
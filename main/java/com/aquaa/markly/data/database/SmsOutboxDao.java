@@ -0,0 +1,80 @@
+package com.aquaa.markly.data.database;
+
+import androidx.lifecycle.LiveData;
+import androidx.room.ColumnInfo;
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.Query;
+
+import java.util.List;
+
+@Dao
+public interface SmsOutboxDao {
+
+    @Insert
+    long insert(SmsOutboxMessage message);
+
+    @Insert
+    void insertCoverage(List<SmsOutboxCoverage> coverage);
+
+    // Pending messages whose retry time has come, oldest first
+    @Query("SELECT * FROM sms_outbox WHERE status = 0 AND next_attempt_at <= :now ORDER BY next_attempt_at ASC LIMIT :limit")
+    List<SmsOutboxMessage> getDueMessages(long now, int limit);
+
+    // When the next pending message becomes due, null if none is pending
+    @Query("SELECT MIN(next_attempt_at) FROM sms_outbox WHERE status = 0")
+    Long getNextAttemptTime();
+
+    @Query("SELECT * FROM sms_outbox WHERE outbox_id = :outboxId LIMIT 1")
+    SmsOutboxMessage getById(long outboxId);
+
+    // Claims a pending message, returns 0 if another pass already claimed it
+    @Query("UPDATE sms_outbox SET status = 1, attempts = attempts + 1, updated_at = :now WHERE outbox_id = :outboxId AND status = 0")
+    int markSending(long outboxId, long now);
+
+    // Also accepts a pending row: a message timed out and rescheduled may still report that it went out
+    @Query("UPDATE sms_outbox SET status = 2, last_error = NULL, updated_at = :now WHERE outbox_id = :outboxId AND status IN (0, 1)")
+    int markSent(long outboxId, long now);
+
+    // A delivery report can arrive before the sent callback has been processed
+    @Query("UPDATE sms_outbox SET status = 3, updated_at = :now WHERE outbox_id = :outboxId AND status IN (0, 1, 2)")
+    int markDelivered(long outboxId, long now);
+
+    @Query("UPDATE sms_outbox SET status = 0, next_attempt_at = :nextAttemptAt, last_error = :error, updated_at = :now WHERE outbox_id = :outboxId")
+    void scheduleRetry(long outboxId, long nextAttemptAt, String error, long now);
+
+    @Query("UPDATE sms_outbox SET status = 4, last_error = :error, updated_at = :now WHERE outbox_id = :outboxId")
+    void markFailed(long outboxId, String error, long now);
+
+    // Messages handed to the radio whose sent result has not come back since before the cut-off
+    @Query("SELECT * FROM sms_outbox WHERE status = 1 AND updated_at < :before LIMIT :limit")
+    List<SmsOutboxMessage> getStaleSending(long before, int limit);
+
+    // When the oldest message still waiting for its sent result was handed over, null if none is
+    @Query("SELECT MIN(updated_at) FROM sms_outbox WHERE status = 1")
+    Long getOldestSendingTime();
+
+    @Query("SELECT COUNT(*) FROM sms_outbox WHERE batch_id = :batchId AND status IN (0, 1)")
+    int countUnfinishedInBatch(long batchId);
+
+    @Query("SELECT status, COUNT(*) AS count FROM sms_outbox WHERE batch_id = :batchId GROUP BY status")
+    List<StatusCount> getBatchStatusCounts(long batchId);
+
+    @Query("SELECT COUNT(*) FROM sms_outbox WHERE status IN (0, 1)")
+    LiveData<Integer> getPendingCount();
+
+    // Finished rows older than the cut-off are only history
+    @Query("DELETE FROM sms_outbox WHERE status IN (2, 3, 4) AND updated_at < :before")
+    int deleteFinishedBefore(long before);
+
+    /**
+     * Number of messages in one status.
+     */
+    class StatusCount {
+        @ColumnInfo(name = "status")
+        public int status;
+
+        @ColumnInfo(name = "count")
+        public int count;
+    }
+}
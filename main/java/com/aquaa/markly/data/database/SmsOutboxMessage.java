@@ -0,0 +1,115 @@
+package com.aquaa.markly.data.database;
+
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.ForeignKey;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+import static androidx.room.ForeignKey.CASCADE;
+
+/**
+ * Room Entity for one queued SMS. Rows are written when the user sends absence notices and are worked off by
+ * SmsDispatcher, so a send survives leaving the screen and process death.
+ * Status moves PENDING -> SENDING -> SENT -> DELIVERED, or back to PENDING with a later next_attempt_at on a
+ * retryable failure, or to FAILED once the attempts are used up.
+ */
+@Entity(tableName = "sms_outbox",
+        foreignKeys = @ForeignKey(entity = Student.class,
+                parentColumns = "student_id",
+                childColumns = "student_id",
+                onDelete = CASCADE), // Nothing left to notify once the student is deleted
+        indices = {@Index(value = {"status", "next_attempt_at"}), // The dispatcher's "what is due" query
+                @Index(value = {"batch_id"}), // Per-batch report
+                @Index(value = {"student_id", "attendance_date"})}) // Excludes queued students from the absent list
+public class SmsOutboxMessage {
+
+    public static final int STATUS_PENDING = 0;
+    public static final int STATUS_SENDING = 1;
+    public static final int STATUS_SENT = 2;
+    public static final int STATUS_DELIVERED = 3;
+    public static final int STATUS_FAILED = 4;
+
+    @PrimaryKey(autoGenerate = true)
+    @ColumnInfo(name = "outbox_id")
+    public long outboxId;
+
+    // All messages queued by one tap of "Send" share a batch id, for the summary report
+    @ColumnInfo(name = "batch_id")
+    public long batchId;
+
+    @ColumnInfo(name = "student_id")
+    public long studentId;
+
+    // The attendance date this notice is about, its is_sms_sent flag is set once the message is sent
+    @ColumnInfo(name = "attendance_date")
+    public long attendanceDate;
+
+    @ColumnInfo(name = "phone_number")
+    public String phoneNumber;
+
+    @ColumnInfo(name = "message")
+    public String message;
+
+    @ColumnInfo(name = "status")
+    public int status;
+
+    @ColumnInfo(name = "attempts")
+    public int attempts;
+
+    // Earliest time (ms) the dispatcher may try this message again
+    @ColumnInfo(name = "next_attempt_at")
+    public long nextAttemptAt;
+
+    @ColumnInfo(name = "created_at")
+    public long createdAt;
+
+    @ColumnInfo(name = "updated_at")
+    public long updatedAt;
+
+    @ColumnInfo(name = "last_error")
+    public String lastError;
+
+    /**
+     * Creates a pending message that is due immediately.
+     */
+    public SmsOutboxMessage(long batchId, long studentId, long attendanceDate, String phoneNumber, String message, long createdAt) {
+        this.batchId = batchId;
+        this.studentId = studentId;
+        this.attendanceDate = attendanceDate;
+        this.phoneNumber = phoneNumber;
+        this.message = message;
+        this.status = STATUS_PENDING;
+        this.createdAt = createdAt;
+        this.updatedAt = createdAt;
+        this.nextAttemptAt = createdAt;
+    }
+
+    public long getOutboxId() {
+        return outboxId;
+    }
+
+    public long getStudentId() {
+        return studentId;
+    }
+
+    public long getAttendanceDate() {
+        return attendanceDate;
+    }
+
+    public String getPhoneNumber() {
+        return phoneNumber;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+}
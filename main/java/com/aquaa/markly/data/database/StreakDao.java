@@ -0,0 +1,70 @@
+package com.aquaa.markly.data.database;
+
+import androidx.room.ColumnInfo;
+import androidx.room.Dao;
+import androidx.room.Embedded;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import java.util.List;
+
+@Dao
+public interface StreakDao {
+
+    @Query("SELECT * FROM student_streaks WHERE student_id = :studentId LIMIT 1")
+    StudentStreak getStreak(long studentId);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void upsert(StudentStreak streak);
+
+    @Query("DELETE FROM student_streaks WHERE student_id = :studentId")
+    void deleteStreak(long studentId);
+
+    @Query("DELETE FROM student_streaks")
+    void deleteAllStreaks();
+
+    @Query("SELECT student_id FROM attendance WHERE attendance_id = :attendanceId")
+    Long getStudentIdOfAttendance(long attendanceId);
+
+    // One student's history, oldest first, to recompute a streak after an edit in the past
+    @Query("SELECT date, is_present FROM attendance WHERE student_id = :studentId ORDER BY date ASC")
+    List<RecordedDay> getRecordedDays(long studentId);
+
+    // Students absent at least minRun recorded days in a row up to now, of one semester (0 for all) and
+    // section (null for all), longest runs first
+    @Query("SELECT s.*, k.current_absent_run, k.longest_absent_run, k.last_recorded_date FROM student_streaks k "
+            + "JOIN students s ON s.student_id = k.student_id "
+            + "WHERE k.current_absent_run >= :minRun AND (:semester = 0 OR s.current_semester = :semester) "
+            + "AND (:section IS NULL OR s.section = :section COLLATE NOCASE) "
+            + "ORDER BY k.current_absent_run DESC, s.name ASC LIMIT :limit")
+    List<ChronicAbsentee> getChronicAbsentees(int minRun, int semester, String section, int limit);
+
+    /**
+     * The date and presence of one attendance record.
+     */
+    class RecordedDay {
+        @ColumnInfo(name = "date")
+        public long date;
+
+        @ColumnInfo(name = "is_present")
+        public boolean isPresent;
+    }
+
+    /**
+     * A student with their current absence streak.
+     */
+    class ChronicAbsentee {
+        @Embedded
+        public Student student;
+
+        @ColumnInfo(name = "current_absent_run")
+        public int currentAbsentRun;
+
+        @ColumnInfo(name = "longest_absent_run")
+        public int longestAbsentRun;
+
+        @ColumnInfo(name = "last_recorded_date")
+        public long lastRecordedDate;
+    }
+}
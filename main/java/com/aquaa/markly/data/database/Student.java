@@ -2,6 +2,7 @@ package com.aquaa.markly.data.database;
 
 import androidx.room.ColumnInfo;
 import androidx.room.Entity;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
 import java.util.Objects; // Import for Objects.equals and Objects.hash
@@ -9,7 +10,11 @@ import java.util.Objects; // Import for Objects.equals and Objects.hash
 /**
  * Room Entity for storing student information.
  */
-@Entity(tableName = "students")
+@Entity(tableName = "students",
+        indices = {@Index(value = {"current_semester", "name"}), // Semester lists are filtered by semester and sorted by name
+                @Index(value = {"current_semester", "section", "name"}), // The same for one section
+                @Index(value = {"uuid"}, unique = true), // Identifies the student across synced devices
+                @Index(value = {"change_seq"})}) // Changes since a sync cursor
 public class Student {
 
     @PrimaryKey(autoGenerate = true)
@@ -34,6 +39,26 @@ public class Student {
     @ColumnInfo(name = "section")
     private String section; // Added section field
 
+    // Derived from mobile and guardianMobile, see getPhoneSearchKey(). Indexed by students_fts.
+    @ColumnInfo(name = "phone_search_key")
+    private String phoneSearchKey;
+
+    // Sync stamps, written by the triggers in SyncSchema on every local change; see SyncEngine.
+    // Same student on every device; assigned on insert when left null.
+    @ColumnInfo(name = "uuid")
+    private String uuid;
+
+    // Lamport clock of the latest change, with the device that made it as the tie-breaker
+    @ColumnInfo(name = "row_version", defaultValue = "0")
+    private long rowVersion;
+
+    @ColumnInfo(name = "row_origin")
+    private String rowOrigin;
+
+    // Position in this device's change log, what a peer's sync cursor is compared against
+    @ColumnInfo(name = "change_seq", defaultValue = "0")
+    private long changeSeq;
+
     /**
      * Constructor for the Student entity.
      *
@@ -111,6 +136,71 @@ public class Student {
         this.section = section;
     }
 
+    /**
+     * The digits of both phone numbers, each reversed: "98300 12345" becomes "5432100389". A full-text prefix
+     * query on this key finds numbers by their last digits, which is how people usually look a number up.
+     * Always derived from the current numbers, so that every insert and update writes a matching key.
+     */
+    public String getPhoneSearchKey() {
+        String studentKey = reversedDigits(mobile);
+        String guardianKey = reversedDigits(guardianMobile);
+        if (studentKey.isEmpty() || guardianKey.isEmpty()) {
+            return studentKey + guardianKey;
+        }
+        return studentKey + " " + guardianKey;
+    }
+
+    // Only used by Room when reading a row, the getter ignores the stored value
+    public void setPhoneSearchKey(String phoneSearchKey) {
+        this.phoneSearchKey = phoneSearchKey;
+    }
+
+    public String getUuid() {
+        return uuid;
+    }
+
+    public void setUuid(String uuid) {
+        this.uuid = uuid;
+    }
+
+    public long getRowVersion() {
+        return rowVersion;
+    }
+
+    public void setRowVersion(long rowVersion) {
+        this.rowVersion = rowVersion;
+    }
+
+    public String getRowOrigin() {
+        return rowOrigin;
+    }
+
+    public void setRowOrigin(String rowOrigin) {
+        this.rowOrigin = rowOrigin;
+    }
+
+    public long getChangeSeq() {
+        return changeSeq;
+    }
+
+    public void setChangeSeq(long changeSeq) {
+        this.changeSeq = changeSeq;
+    }
+
+    public static String reversedDigits(String phoneNumber) {
+        if (phoneNumber == null) {
+            return "";
+        }
+        StringBuilder digits = new StringBuilder(phoneNumber.length());
+        for (int i = phoneNumber.length() - 1; i >= 0; i--) {
+            char c = phoneNumber.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            }
+        }
+        return digits.toString();
+    }
+
     // --- Override equals() and hashCode() for proper object comparison ---
     // This is crucial for RecyclerView selection logic to work correctly
 
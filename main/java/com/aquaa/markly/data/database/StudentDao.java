@@ -19,9 +19,16 @@ public interface StudentDao {
     @Update
     void updateStudent(Student student);
 
+    @Update
+    void updateStudents(List<Student> students);
+
     @Delete
     void deleteStudent(Student student);
 
+    // Deletes a batch of students by ID; their attendance is removed by ON DELETE CASCADE
+    @Query("DELETE FROM students WHERE student_id IN (:studentIds)")
+    void deleteStudentsByIds(List<Long> studentIds);
+
     @Query("SELECT * FROM students ORDER BY name ASC")
     LiveData<List<Student>> getAllStudents();
 
@@ -36,6 +43,22 @@ public interface StudentDao {
     @Query("SELECT * FROM students WHERE current_semester = :semester ORDER BY name ASC")
     List<Student> getStudentsBySemesterSync(int semester);
 
+    // One section of a semester, read in name order straight from the (current_semester, section, name) index
+    @Query("SELECT * FROM students WHERE current_semester = :semester AND section = :section ORDER BY name ASC")
+    LiveData<List<Student>> getStudentsBySemesterAndSection(int semester, String section);
+
+    @Query("SELECT * FROM students WHERE current_semester = :semester AND section = :section ORDER BY name ASC")
+    List<Student> getStudentsBySemesterAndSectionSync(int semester, String section);
+
+    // Sections as stored, so that filtering on one is an exact match the index can serve
+    @Query("SELECT DISTINCT section FROM students WHERE current_semester = :semester AND section IS NOT NULL AND section != '' "
+            + "ORDER BY section ASC")
+    LiveData<List<String>> getSectionsBySemester(int semester);
+
+    @Query("SELECT DISTINCT section FROM students WHERE current_semester = :semester AND section IS NOT NULL AND section != '' "
+            + "ORDER BY section ASC")
+    List<String> getSectionsBySemesterSync(int semester);
+
     @Query("SELECT DISTINCT current_semester FROM students ORDER BY current_semester ASC")
     LiveData<List<Integer>> getAllSemesters();
 
@@ -43,6 +66,21 @@ public interface StudentDao {
     @Query("SELECT DISTINCT current_semester FROM students ORDER BY current_semester ASC")
     List<Integer> getAllSemestersSync();
 
+    // Bulk screens work on ids; callers chunk the ids to stay under SQLite's variable limit and sort the chunks together
+    @Query("SELECT * FROM students WHERE student_id IN (:studentIds)")
+    List<Student> getStudentsByIds(long[] studentIds);
+
+    // Ids only, for "select all" without loading the students
+    @Query("SELECT student_id FROM students WHERE current_semester = :semester")
+    long[] getStudentIdsBySemester(int semester);
+
+    @Query("SELECT student_id FROM students WHERE current_semester = :semester AND section = :section")
+    long[] getStudentIdsBySemesterAndSection(int semester, String section);
+
+    // Moves the students up one semester in a single statement
+    @Query("UPDATE students SET current_semester = current_semester + 1 WHERE student_id IN (:studentIds)")
+    int promoteStudents(long[] studentIds);
+
     // Get a student by their ID (synchronous)
     @Query("SELECT * FROM students WHERE student_id = :studentId LIMIT 1")
     Student getStudentById(long studentId);
@@ -51,6 +89,17 @@ public interface StudentDao {
     @Query("SELECT * FROM students WHERE student_id = :studentId LIMIT 1")
     LiveData<Student> getStudentByIdLiveData(long studentId);
 
+    /**
+     * Full-text search over name, section and phone numbers; see StudentRepository.buildSearchQuery() for the syntax.
+     * Names starting with namePrefix come first, then the rest alphabetically.
+     * @param match An FTS4 MATCH expression.
+     * @param namePrefix A LIKE pattern such as "ra%".
+     */
+    @Query("SELECT students.* FROM students JOIN students_fts ON students.student_id = students_fts.rowid "
+            + "WHERE students_fts MATCH :match "
+            + "ORDER BY CASE WHEN students.name LIKE :namePrefix THEN 0 ELSE 1 END, students.name ASC LIMIT :limit")
+    List<Student> searchStudents(String match, String namePrefix, int limit);
+
     // NEW: Method to delete all students
     @Query("DELETE FROM students")
     void deleteAllStudents();
@@ -64,4 +113,28 @@ public interface StudentDao {
      */
     @Query("SELECT s.* FROM students s LEFT JOIN attendance a ON s.student_id = a.student_id AND a.date = :dateMillis WHERE s.current_semester = :semester AND a.attendance_id IS NULL ORDER BY s.name ASC")
     List<Student> getStudentsWithoutAttendanceForDateAndSemester(int semester, long dateMillis);
+
+    // The same for one section of the semester
+    @Query("SELECT s.* FROM students s LEFT JOIN attendance a ON s.student_id = a.student_id AND a.date = :dateMillis "
+            + "WHERE s.current_semester = :semester AND s.section = :section AND a.attendance_id IS NULL ORDER BY s.name ASC")
+    List<Student> getStudentsWithoutAttendanceForDateSemesterAndSection(int semester, String section, long dateMillis);
+
+    // Students of a semester absent on a date whose notice is neither sent nor waiting in the SMS outbox
+    @Query("SELECT s.* FROM students s JOIN attendance a ON a.student_id = s.student_id AND a.date = :date "
+            + "WHERE s.current_semester = :semester AND a.is_present = 0 AND a.is_sms_sent = 0 AND NOT EXISTS (SELECT 1 FROM sms_outbox_coverage c JOIN sms_outbox o ON o.outbox_id = c.outbox_id "
+            + "WHERE c.student_id = a.student_id AND c.attendance_date = a.date AND o.status IN (0, 1)) "
+            + "ORDER BY s.name ASC")
+    List<Student> getPendingSmsAbsentees(int semester, long date);
+
+    // The same for one section of the semester
+    @Query("SELECT s.* FROM students s JOIN attendance a ON a.student_id = s.student_id AND a.date = :date "
+            + "WHERE s.current_semester = :semester AND s.section = :section AND a.is_present = 0 AND a.is_sms_sent = 0 AND NOT EXISTS (SELECT 1 FROM sms_outbox_coverage c JOIN sms_outbox o ON o.outbox_id = c.outbox_id "
+            + "WHERE c.student_id = a.student_id AND c.attendance_date = a.date AND o.status IN (0, 1)) "
+            + "ORDER BY s.name ASC")
+    List<Student> getPendingSmsAbsenteesInSection(int semester, String section, long date);
+
+    // Students of a semester (0 for all) marked absent on a date, for the heatmap tap-through
+    @Query("SELECT s.* FROM attendance a JOIN students s ON s.student_id = a.student_id "
+            + "WHERE a.date = :date AND a.is_present = 0 AND (:semester = 0 OR s.current_semester = :semester) ORDER BY s.name ASC")
+    List<Student> getAbsenteesOnDate(int semester, long date);
 }
@@ -0,0 +1,26 @@
+package com.aquaa.markly.data.database;
+
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Fts4;
+import androidx.room.FtsOptions;
+
+/**
+ * Full-text index over the searchable columns of students, used by StudentDao.searchStudents().
+ * An external-content FTS4 table: it stores no copy of the text, and Room keeps it in sync with the
+ * students table through triggers (room_fts_content_sync_students_fts_*). The rowid is the student_id.
+ */
+@Fts4(contentEntity = Student.class, tokenizer = FtsOptions.TOKENIZER_UNICODE61)
+@Entity(tableName = "students_fts")
+public class StudentFts {
+
+    @ColumnInfo(name = "name")
+    public String name;
+
+    @ColumnInfo(name = "section")
+    public String section;
+
+    // Reversed phone digits, so that a suffix of the number becomes a prefix query
+    @ColumnInfo(name = "phone_search_key")
+    public String phoneSearchKey;
+}
@@ -0,0 +1,132 @@
+package com.aquaa.markly.data.database;
+
+import android.database.Cursor;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.ForeignKey;
+import androidx.room.Ignore;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteStatement;
+
+import static androidx.room.ForeignKey.CASCADE;
+
+/**
+ * Room Entity holding the absence streak of one student: the absences in a row up to the latest recorded day,
+ * and the longest such run so far. Attendance is only recorded on working days, so consecutive records are
+ * consecutive working days. Kept up to date by StudentRepository on every save, so that finding chronic
+ * absentees never scans the attendance history. Students without any attendance record have no row.
+ */
+@Entity(tableName = "student_streaks",
+        foreignKeys = @ForeignKey(entity = Student.class,
+                parentColumns = "student_id",
+                childColumns = "student_id",
+                onDelete = CASCADE),
+        indices = {@Index(value = {"current_absent_run"})}) // Chronic absentee list, longest runs first
+public class StudentStreak {
+
+    @PrimaryKey
+    @ColumnInfo(name = "student_id")
+    public long studentId;
+
+    // Absences in a row, ending at lastRecordedDate; 0 if the student was present that day
+    @ColumnInfo(name = "current_absent_run")
+    public int currentAbsentRun;
+
+    @ColumnInfo(name = "longest_absent_run")
+    public int longestAbsentRun;
+
+    // Date of the latest attendance record (Unix timestamp in milliseconds)
+    @ColumnInfo(name = "last_recorded_date")
+    public long lastRecordedDate;
+
+    public StudentStreak(long studentId, int currentAbsentRun, int longestAbsentRun, long lastRecordedDate) {
+        this.studentId = studentId;
+        this.currentAbsentRun = currentAbsentRun;
+        this.longestAbsentRun = longestAbsentRun;
+        this.lastRecordedDate = lastRecordedDate;
+    }
+
+    /**
+     * An empty streak, for a student whose first record is about to be added.
+     */
+    @Ignore
+    public StudentStreak(long studentId) {
+        this(studentId, 0, 0, Long.MIN_VALUE);
+    }
+
+    public long getStudentId() { return studentId; }
+    public int getCurrentAbsentRun() { return currentAbsentRun; }
+    public int getLongestAbsentRun() { return longestAbsentRun; }
+    public long getLastRecordedDate() { return lastRecordedDate; }
+
+    /**
+     * @return True if a record on this date comes after every recorded day, so that record() applies.
+     */
+    public boolean canAppend(long date) {
+        return date > lastRecordedDate;
+    }
+
+    /**
+     * Extends the streak by the record of a day after every recorded one (see canAppend()).
+     */
+    public void record(boolean isPresent, long date) {
+        if (isPresent) {
+            currentAbsentRun = 0;
+        } else {
+            currentAbsentRun++;
+            longestAbsentRun = Math.max(longestAbsentRun, currentAbsentRun);
+        }
+        lastRecordedDate = date;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "StudentStreak{studentId=" + studentId + ", currentAbsentRun=" + currentAbsentRun
+                + ", longestAbsentRun=" + longestAbsentRun + ", lastRecordedDate=" + lastRecordedDate + '}';
+    }
+
+    /**
+     * Recomputes every streak from the attendance table in one ordered pass, for migrations and bulk imports
+     * where replaying each record through the repository would cost more. Call inside a transaction.
+     * @return The number of students with a streak.
+     */
+    public static int rebuildAll(SupportSQLiteDatabase database) {
+        database.execSQL("DELETE FROM `student_streaks`");
+        SupportSQLiteStatement insert = database.compileStatement("INSERT INTO `student_streaks` "
+                + "(`student_id`, `current_absent_run`, `longest_absent_run`, `last_recorded_date`) VALUES (?, ?, ?, ?)");
+        int count = 0;
+        // Served in order by the unique (student_id, date) index, no sort needed
+        try (Cursor cursor = database.query("SELECT `student_id`, `date`, `is_present` FROM `attendance` ORDER BY `student_id`, `date`")) {
+            StudentStreak streak = null;
+            while (cursor.moveToNext()) {
+                long studentId = cursor.getLong(0);
+                if (streak == null || streak.studentId != studentId) {
+                    if (streak != null) {
+                        insert(insert, streak);
+                        count++;
+                    }
+                    streak = new StudentStreak(studentId);
+                }
+                streak.record(cursor.getInt(2) != 0, cursor.getLong(1));
+            }
+            if (streak != null) {
+                insert(insert, streak);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void insert(SupportSQLiteStatement insert, StudentStreak streak) {
+        insert.bindLong(1, streak.studentId);
+        insert.bindLong(2, streak.currentAbsentRun);
+        insert.bindLong(3, streak.longestAbsentRun);
+        insert.bindLong(4, streak.lastRecordedDate);
+        insert.executeInsert();
+    }
+}
@@ -0,0 +1,29 @@
+package com.aquaa.markly.data.database;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * Room Entity mapping a uuid another device gave a student to the uuid that student has here. Written when two
+ * devices added the same student independently (see SyncEngine), so that records still sent under the other uuid
+ * land on the right student until every device has adopted one uuid.
+ */
+@Entity(tableName = "sync_aliases")
+public class SyncAlias {
+
+    @PrimaryKey
+    @NonNull
+    @ColumnInfo(name = "alias_uuid")
+    public String aliasUuid;
+
+    @NonNull
+    @ColumnInfo(name = "student_uuid")
+    public String studentUuid;
+
+    public SyncAlias(@NonNull String aliasUuid, @NonNull String studentUuid) {
+        this.aliasUuid = aliasUuid;
+        this.studentUuid = studentUuid;
+    }
+}
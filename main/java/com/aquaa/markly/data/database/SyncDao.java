@@ -0,0 +1,124 @@
+package com.aquaa.markly.data.database;
+
+import androidx.lifecycle.LiveData;
+import androidx.room.ColumnInfo;
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import java.util.List;
+
+@Dao
+public interface SyncDao {
+
+    @Query("SELECT * FROM sync_meta WHERE id = 1 LIMIT 1")
+    SyncMeta getMeta();
+
+    // Saves the clock and change log position SyncEngine advanced while applying a batch
+    @Query("UPDATE sync_meta SET lamport = :lamport, last_seq = :lastSeq WHERE id = 1")
+    void updateClock(long lamport, long lastSeq);
+
+    // Changes made or received here after a peer's cursor, in change log order
+    @Query("SELECT uuid, name, gender, mobile, guardian_mobile, current_semester, section, row_version, row_origin, change_seq "
+            + "FROM students WHERE change_seq > :since ORDER BY change_seq ASC LIMIT :limit")
+    List<StudentChange> getStudentChanges(long since, int limit);
+
+    @Query("SELECT s.uuid AS student_uuid, a.date, a.is_present, a.is_sms_sent, a.row_version, a.row_origin, a.change_seq "
+            + "FROM attendance a JOIN students s ON s.student_id = a.student_id "
+            + "WHERE a.change_seq > :since ORDER BY a.change_seq ASC LIMIT :limit")
+    List<AttendanceChange> getAttendanceChanges(long since, int limit);
+
+    @Query("SELECT * FROM sync_tombstones WHERE change_seq > :since ORDER BY change_seq ASC LIMIT :limit")
+    List<SyncTombstone> getTombstones(long since, int limit);
+
+    @Query("SELECT * FROM sync_tombstones WHERE kind = :kind AND sync_key = :syncKey LIMIT 1")
+    SyncTombstone getTombstone(int kind, String syncKey);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void upsertTombstone(SyncTombstone tombstone);
+
+    @Query("SELECT * FROM students WHERE uuid = :uuid LIMIT 1")
+    Student getStudentByUuid(String uuid);
+
+    // The same person added on two devices before they synced: same semester, name and mobile, another uuid
+    @Query("SELECT * FROM students WHERE current_semester = :semester AND name = :name AND mobile = :mobile "
+            + "AND uuid != :uuid LIMIT 1")
+    Student findSameStudent(int semester, String name, String mobile, String uuid);
+
+    @Query("SELECT student_uuid FROM sync_aliases WHERE alias_uuid = :aliasUuid LIMIT 1")
+    String getAliasTarget(String aliasUuid);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void upsertAlias(SyncAlias alias);
+
+    @Query("SELECT * FROM sync_peers WHERE peer_id = :peerId LIMIT 1")
+    SyncPeer getPeer(String peerId);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void upsertPeer(SyncPeer peer);
+
+    @Query("SELECT * FROM sync_peers ORDER BY last_sync_at DESC")
+    LiveData<List<SyncPeer>> getAllPeers();
+
+    /**
+     * A student as sent to another device: everything but the local ids, keyed by uuid.
+     */
+    class StudentChange {
+        @ColumnInfo(name = "uuid")
+        public String uuid;
+
+        @ColumnInfo(name = "name")
+        public String name;
+
+        @ColumnInfo(name = "gender")
+        public String gender;
+
+        @ColumnInfo(name = "mobile")
+        public String mobile;
+
+        @ColumnInfo(name = "guardian_mobile")
+        public String guardianMobile;
+
+        @ColumnInfo(name = "current_semester")
+        public int currentSemester;
+
+        @ColumnInfo(name = "section")
+        public String section;
+
+        @ColumnInfo(name = "row_version")
+        public long rowVersion;
+
+        @ColumnInfo(name = "row_origin")
+        public String rowOrigin;
+
+        @ColumnInfo(name = "change_seq")
+        public long changeSeq;
+    }
+
+    /**
+     * An attendance record as sent to another device, keyed by its student's uuid and its date.
+     */
+    class AttendanceChange {
+        @ColumnInfo(name = "student_uuid")
+        public String studentUuid;
+
+        @ColumnInfo(name = "date")
+        public long date;
+
+        @ColumnInfo(name = "is_present")
+        public boolean isPresent;
+
+        @ColumnInfo(name = "is_sms_sent")
+        public boolean isSmsSent;
+
+        @ColumnInfo(name = "row_version")
+        public long rowVersion;
+
+        @ColumnInfo(name = "row_origin")
+        public String rowOrigin;
+
+        @ColumnInfo(name = "change_seq")
+        public long changeSeq;
+    }
+}
@@ -0,0 +1,44 @@
+package com.aquaa.markly.data.database;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * Room Entity holding this device's sync state in a single row (id 1), read by the triggers in SyncSchema.
+ */
+@Entity(tableName = "sync_meta")
+public class SyncMeta {
+
+    public static final int ID = 1;
+
+    @PrimaryKey
+    @ColumnInfo(name = "id")
+    public int id;
+
+    // Random id of this device, the tie-breaker between changes with the same version
+    @NonNull
+    @ColumnInfo(name = "device_id")
+    public String deviceId;
+
+    // Lamport clock: above every version made here or received from a peer
+    @ColumnInfo(name = "lamport")
+    public long lamport;
+
+    // Last position handed out in the change log
+    @ColumnInfo(name = "last_seq")
+    public long lastSeq;
+
+    // 1 while SyncEngine writes received changes, so that the triggers leave their stamps alone
+    @ColumnInfo(name = "applying")
+    public int applying;
+
+    public SyncMeta(int id, @NonNull String deviceId, long lamport, long lastSeq, int applying) {
+        this.id = id;
+        this.deviceId = deviceId;
+        this.lamport = lamport;
+        this.lastSeq = lastSeq;
+        this.applying = applying;
+    }
+}
@@ -0,0 +1,36 @@
+package com.aquaa.markly.data.database;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * Room Entity holding the sync vector with one hub: how far each side's change log has been exchanged.
+ */
+@Entity(tableName = "sync_peers")
+public class SyncPeer {
+
+    @PrimaryKey
+    @NonNull
+    @ColumnInfo(name = "peer_id")
+    public String peerId;
+
+    // Position in the hub's change log up to which its changes were applied here
+    @ColumnInfo(name = "last_pulled_seq")
+    public long lastPulledSeq;
+
+    // Position in this device's change log up to which changes were sent to the hub
+    @ColumnInfo(name = "last_pushed_seq")
+    public long lastPushedSeq;
+
+    @ColumnInfo(name = "last_sync_at")
+    public long lastSyncAt;
+
+    public SyncPeer(@NonNull String peerId, long lastPulledSeq, long lastPushedSeq, long lastSyncAt) {
+        this.peerId = peerId;
+        this.lastPulledSeq = lastPulledSeq;
+        this.lastPushedSeq = lastPushedSeq;
+        this.lastSyncAt = lastSyncAt;
+    }
+}
@@ -0,0 +1,121 @@
+package com.aquaa.markly.data.database;
+
+import android.database.Cursor;
+
+import androidx.annotation.NonNull;
+import androidx.room.RoomDatabase;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+import java.util.UUID;
+
+/**
+ * Triggers that stamp every local change to students and attendance for sync: a new Lamport version, this device
+ * as its origin and the next position in the change log, plus a tombstone for every deletion. They do nothing while
+ * sync_meta.applying is set, when SyncEngine writes changes received from another device with their own stamps,
+ * and on databases without a sync_meta row (the benchmark databases).
+ */
+public final class SyncSchema {
+
+    private static final String NOT_APPLYING = "(SELECT `applying` FROM `sync_meta` WHERE `id` = 1) = 0";
+    private static final String NEXT_STAMP = "UPDATE `sync_meta` SET `lamport` = `lamport` + 1, `last_seq` = `last_seq` + 1 WHERE `id` = 1; ";
+    private static final String STAMP_COLUMNS = "`row_version` = (SELECT `lamport` FROM `sync_meta` WHERE `id` = 1), "
+            + "`row_origin` = (SELECT `device_id` FROM `sync_meta` WHERE `id` = 1), "
+            + "`change_seq` = (SELECT `last_seq` FROM `sync_meta` WHERE `id` = 1)";
+    private static final String STAMP_VALUES = "(SELECT `lamport` FROM `sync_meta` WHERE `id` = 1), "
+            + "(SELECT `device_id` FROM `sync_meta` WHERE `id` = 1), (SELECT `last_seq` FROM `sync_meta` WHERE `id` = 1)";
+
+    private static final String[] TRIGGERS = {
+            // An insert only fills in the uuid; the update this makes is stamped by the update trigger
+            "CREATE TRIGGER IF NOT EXISTS `sync_students_after_insert` AFTER INSERT ON `students` WHEN " + NOT_APPLYING + " BEGIN "
+                    + "UPDATE `students` SET `uuid` = COALESCE(NEW.`uuid`, lower(hex(randomblob(16)))) WHERE `student_id` = NEW.`student_id`; END",
+            // Room writes whole rows, so an entity read before the last stamp must not clear the uuid
+            "CREATE TRIGGER IF NOT EXISTS `sync_students_after_update` AFTER UPDATE ON `students` WHEN " + NOT_APPLYING + " BEGIN "
+                    + NEXT_STAMP
+                    + "UPDATE `students` SET `uuid` = COALESCE(NEW.`uuid`, OLD.`uuid`), " + STAMP_COLUMNS
+                    + " WHERE `student_id` = NEW.`student_id`; END",
+            "CREATE TRIGGER IF NOT EXISTS `sync_students_after_delete` AFTER DELETE ON `students` WHEN " + NOT_APPLYING
+                    + " AND OLD.`uuid` IS NOT NULL BEGIN "
+                    + NEXT_STAMP
+                    + "INSERT OR REPLACE INTO `sync_tombstones` (`kind`, `sync_key`, `row_version`, `row_origin`, `change_seq`) "
+                    + "VALUES (" + SyncTombstone.KIND_STUDENT + ", OLD.`uuid`, " + STAMP_VALUES + "); END",
+            "CREATE TRIGGER IF NOT EXISTS `sync_attendance_after_insert` AFTER INSERT ON `attendance` WHEN " + NOT_APPLYING + " BEGIN "
+                    + "UPDATE `attendance` SET `change_seq` = `change_seq` WHERE `attendance_id` = NEW.`attendance_id`; END",
+            "CREATE TRIGGER IF NOT EXISTS `sync_attendance_after_update` AFTER UPDATE ON `attendance` WHEN " + NOT_APPLYING + " BEGIN "
+                    + NEXT_STAMP
+                    + "UPDATE `attendance` SET " + STAMP_COLUMNS + " WHERE `attendance_id` = NEW.`attendance_id`; END",
+            // Records removed along with their student are covered by the student's tombstone
+            "CREATE TRIGGER IF NOT EXISTS `sync_attendance_after_delete` AFTER DELETE ON `attendance` WHEN " + NOT_APPLYING
+                    + " AND EXISTS (SELECT 1 FROM `students` WHERE `student_id` = OLD.`student_id` AND `uuid` IS NOT NULL) BEGIN "
+                    + NEXT_STAMP
+                    + "INSERT OR REPLACE INTO `sync_tombstones` (`kind`, `sync_key`, `row_version`, `row_origin`, `change_seq`) "
+                    + "VALUES (" + SyncTombstone.KIND_ATTENDANCE + ", "
+                    + "(SELECT `uuid` FROM `students` WHERE `student_id` = OLD.`student_id`) || '|' || OLD.`date`, " + STAMP_VALUES + "); END",
+    };
+
+    /**
+     * Installs the triggers on a freshly created database, or one recreated by the destructive fallback.
+     */
+    public static final RoomDatabase.Callback CALLBACK = new RoomDatabase.Callback() {
+        @Override
+        public void onCreate(@NonNull SupportSQLiteDatabase db) {
+            install(db);
+        }
+
+        @Override
+        public void onDestructiveMigration(@NonNull SupportSQLiteDatabase db) {
+            install(db);
+        }
+    };
+
+    private SyncSchema() {
+        // Static helpers
+    }
+
+    /**
+     * Gives this device its id, stamps the rows already there and creates the triggers. Safe to run again.
+     */
+    public static void install(SupportSQLiteDatabase database) {
+        database.execSQL("INSERT OR IGNORE INTO `sync_meta` (`id`, `device_id`, `lamport`, `last_seq`, `applying`) VALUES (?, ?, 0, 0, 0)",
+                new Object[]{SyncMeta.ID, UUID.randomUUID().toString().replace("-", "")});
+        stampUnsynced(database);
+        for (String trigger : TRIGGERS) {
+            database.execSQL(trigger);
+        }
+    }
+
+    /**
+     * Turns the triggers off or on. Call inside the transaction that writes, so that a rollback turns them back on.
+     */
+    public static void setApplying(SupportSQLiteDatabase database, boolean applying) {
+        database.execSQL("UPDATE `sync_meta` SET `applying` = ? WHERE `id` = 1", new Object[]{applying ? 1 : 0});
+    }
+
+    /**
+     * Stamps every row written while the triggers were off without sync stamps, e.g. by a restore, as one new local
+     * change: a uuid for each student, one new version and distinct change log positions in row order.
+     * No tombstones are written, so a restore merges with other devices' data instead of deleting it.
+     */
+    public static void stampUnsynced(SupportSQLiteDatabase database) {
+        database.execSQL("UPDATE `students` SET `uuid` = lower(hex(randomblob(16))) WHERE `uuid` IS NULL");
+        long maxStudentId = maxOf(database, "SELECT MAX(`student_id`) FROM `students`");
+        long maxAttendanceId = maxOf(database, "SELECT MAX(`attendance_id`) FROM `attendance`");
+        if (maxStudentId == 0 && maxAttendanceId == 0) {
+            return;
+        }
+        database.execSQL("UPDATE `sync_meta` SET `lamport` = `lamport` + 1 WHERE `id` = 1");
+        // Row ids are distinct, so offsetting them from the end of the log gives every row its own position
+        database.execSQL("UPDATE `students` SET " + STAMP_COLUMNS.replace(
+                "(SELECT `last_seq` FROM `sync_meta` WHERE `id` = 1)", "(SELECT `last_seq` FROM `sync_meta` WHERE `id` = 1) + `student_id`")
+                + " WHERE `change_seq` = 0");
+        database.execSQL("UPDATE `attendance` SET " + STAMP_COLUMNS.replace(
+                "(SELECT `last_seq` FROM `sync_meta` WHERE `id` = 1)", "(SELECT `last_seq` FROM `sync_meta` WHERE `id` = 1) + ? + `attendance_id`")
+                + " WHERE `change_seq` = 0", new Object[]{maxStudentId});
+        database.execSQL("UPDATE `sync_meta` SET `last_seq` = `last_seq` + ? WHERE `id` = 1", new Object[]{maxStudentId + maxAttendanceId});
+    }
+
+    private static long maxOf(SupportSQLiteDatabase database, String query) {
+        try (Cursor cursor = database.query(query)) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        }
+    }
+}
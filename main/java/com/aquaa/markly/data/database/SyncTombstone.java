@@ -0,0 +1,51 @@
+package com.aquaa.markly.data.database;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Index;
+
+/**
+ * Room Entity recording a deleted student or attendance record, so that the deletion reaches other devices and
+ * an older copy of the row arriving later does not bring it back.
+ */
+@Entity(tableName = "sync_tombstones",
+        primaryKeys = {"kind", "sync_key"},
+        indices = {@Index(value = {"change_seq"})}) // Changes since a sync cursor
+public class SyncTombstone {
+
+    public static final int KIND_STUDENT = 0; // Keyed by the student's uuid
+    public static final int KIND_ATTENDANCE = 1; // Keyed by attendanceKey()
+
+    @ColumnInfo(name = "kind")
+    public int kind;
+
+    @NonNull
+    @ColumnInfo(name = "sync_key")
+    public String syncKey;
+
+    @ColumnInfo(name = "row_version")
+    public long rowVersion;
+
+    @NonNull
+    @ColumnInfo(name = "row_origin")
+    public String rowOrigin;
+
+    @ColumnInfo(name = "change_seq")
+    public long changeSeq;
+
+    public SyncTombstone(int kind, @NonNull String syncKey, long rowVersion, @NonNull String rowOrigin, long changeSeq) {
+        this.kind = kind;
+        this.syncKey = syncKey;
+        this.rowVersion = rowVersion;
+        this.rowOrigin = rowOrigin;
+        this.changeSeq = changeSeq;
+    }
+
+    /**
+     * @return The key of an attendance record on every device: its student's uuid and its date.
+     */
+    public static String attendanceKey(String studentUuid, long date) {
+        return studentUuid + "|" + date;
+    }
+}
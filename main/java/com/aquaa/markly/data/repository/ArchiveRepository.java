@@ -0,0 +1,185 @@
+package com.aquaa.markly.data.repository;
+
+import android.app.Application;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+import com.aquaa.markly.data.database.AppDatabase;
+import com.aquaa.markly.data.database.ArchiveStore;
+import com.aquaa.markly.data.database.AttendanceDao;
+import com.aquaa.markly.data.database.SemesterAttendance;
+import com.aquaa.markly.data.database.StudentStreak;
+import com.aquaa.markly.data.database.SyncSchema;
+import com.aquaa.markly.utils.AcademicYear;
+import com.aquaa.markly.utils.MarklyLog;
+import com.aquaa.markly.utils.Metrics;
+import com.aquaa.markly.utils.NotificationBus;
+import com.aquaa.markly.utils.NotificationHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Moves the attendance of closed academic years from the live database into ArchiveStore's file, and reports on
+ * live and archived attendance together through its attendance_history view. Roll call, SMS and tracking only ever
+ * see the live table, which keeps the current year and whatever has not been archived yet.
+ */
+public final class ArchiveRepository {
+
+    private static final String TAG = "ArchiveRepository";
+    // Copies to repeat when attendance of the year changes meanwhile, e.g. a sync round bringing in an old record
+    private static final int MAX_ATTEMPTS = 3;
+
+    private static volatile ArchiveRepository INSTANCE;
+
+    private final Application application;
+    private final AppDatabase database;
+    private final AttendanceDao attendanceDao;
+    private final MutableLiveData<List<ArchiveStore.YearSummary>> yearSummaries = new MutableLiveData<>();
+    private final MutableLiveData<String> status = new MutableLiveData<>();
+    private final MutableLiveData<Boolean> archiving = new MutableLiveData<>(false);
+    // One archive connection at a time
+    private final ExecutorService archiveExecutor = Executors.newSingleThreadExecutor();
+
+    private ArchiveRepository(Application application) {
+        this.application = application;
+        database = AppDatabase.getDatabase(application);
+        attendanceDao = database.attendanceDao();
+    }
+
+    public static ArchiveRepository getInstance(Application application) {
+        if (INSTANCE == null) {
+            synchronized (ArchiveRepository.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new ArchiveRepository(application);
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Attendance per academic year, newest first, live and archived. Filled by refreshYearSummaries().
+     */
+    public LiveData<List<ArchiveStore.YearSummary>> getYearSummaries() {
+        return yearSummaries;
+    }
+
+    public LiveData<String> getStatus() {
+        return status;
+    }
+
+    public LiveData<Boolean> isArchiving() {
+        return archiving;
+    }
+
+    public void refreshYearSummaries() {
+        archiveExecutor.execute(() -> {
+            try {
+                yearSummaries.postValue(getYearSummariesSync());
+            } catch (RuntimeException e) {
+                MarklyLog.e(TAG, "Reading the attendance history failed: " + e.getMessage(), e);
+                status.postValue("Could not read the attendance history: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Opens the archive, call off the main thread.
+     */
+    public List<ArchiveStore.YearSummary> getYearSummariesSync() {
+        database.getOpenHelper().getReadableDatabase(); // The live file must exist, and be migrated, before it is attached
+        try (ArchiveStore archive = ArchiveStore.open(application)) {
+            return Metrics.timer("archive.yearSummaries").time(archive::getYearSummaries);
+        }
+    }
+
+    /**
+     * @return The closed academic years that still have attendance in the live database, oldest first.
+     */
+    public static List<Integer> getArchivableYears(List<ArchiveStore.YearSummary> summaries) {
+        List<Integer> years = new ArrayList<>();
+        if (summaries == null) {
+            return years;
+        }
+        int current = AcademicYear.current();
+        for (int i = summaries.size() - 1; i >= 0; i--) {
+            ArchiveStore.YearSummary summary = summaries.get(i);
+            if (summary.academicYear < current && summary.getLiveCount() > 0) {
+                years.add(summary.academicYear);
+            }
+        }
+        return years;
+    }
+
+    public void archiveYear(int year) {
+        archiving.setValue(true);
+        status.setValue("Archiving " + AcademicYear.label(year) + "...");
+        archiveExecutor.execute(() -> {
+            try {
+                int moved = archiveYearSync(year);
+                String message = String.format(Locale.getDefault(), "Archived %d attendance records of %s.",
+                        moved, AcademicYear.label(year));
+                status.postValue(message);
+                NotificationBus.getInstance(application).post(NotificationHelper.CATEGORY_IN_APP, "Year Archived", message, "INFO");
+                yearSummaries.postValue(getYearSummariesSync());
+            } catch (RuntimeException e) {
+                MarklyLog.e(TAG, "Archiving " + AcademicYear.label(year) + " failed: " + e.getMessage(), e);
+                status.postValue("Archiving failed: " + e.getMessage());
+            } finally {
+                archiving.postValue(false);
+            }
+        });
+    }
+
+    /**
+     * Copies the year's attendance into the archive, then deletes it from the live database, but only if nothing
+     * in the year changed in between. The delete is not a change to sync: other devices keep their copies.
+     * @return The number of records moved.
+     * @throws IllegalArgumentException If the year is not over yet.
+     * @throws IllegalStateException If the year's attendance kept changing during every attempt.
+     */
+    public int archiveYearSync(int year) {
+        if (year >= AcademicYear.current()) {
+            throw new IllegalArgumentException(AcademicYear.label(year) + " is not over yet.");
+        }
+        long startDate = AcademicYear.startOf(year);
+        long endDate = AcademicYear.endOf(year);
+        long archivedAt = System.currentTimeMillis();
+        SupportSQLiteDatabase db = database.getOpenHelper().getWritableDatabase();
+        try (ArchiveStore archive = ArchiveStore.open(application)) {
+            for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+                AttendanceDao.RangeFingerprint copied = archive.liveFingerprint(startDate, endDate);
+                int copiedCount = Metrics.timer("archive.copy").time(() -> archive.copyYear(year, archivedAt));
+                if (copiedCount != copied.recordCount || !copied.matches(archive.liveFingerprint(startDate, endDate))) {
+                    MarklyLog.d(TAG, "Attendance of {} changed while copying (attempt {})", AcademicYear.label(year), attempt);
+                    continue;
+                }
+                Integer deleted = Metrics.timer("archive.purge").time(() -> database.runInTransaction(() -> {
+                    if (!copied.matches(attendanceDao.getRangeFingerprint(startDate, endDate))) {
+                        return null;
+                    }
+                    SyncSchema.setApplying(db, true);
+                    int count = attendanceDao.deleteAttendanceInRange(startDate, endDate);
+                    SyncSchema.setApplying(db, false);
+                    // Runs and semester counts may have included the removed days
+                    StudentStreak.rebuildAll(db);
+                    SemesterAttendance.rebuildAll(db);
+                    return count;
+                }));
+                if (deleted == null) {
+                    MarklyLog.d(TAG, "Attendance of {} changed before the delete (attempt {})", AcademicYear.label(year), attempt);
+                    continue;
+                }
+                MarklyLog.d(TAG, "Archived {} records of {}", deleted, AcademicYear.label(year));
+                return deleted;
+            }
+        }
+        throw new IllegalStateException("Attendance of " + AcademicYear.label(year) + " kept changing, try again later.");
+    }
+}
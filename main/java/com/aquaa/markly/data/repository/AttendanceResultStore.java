@@ -0,0 +1,216 @@
+package com.aquaa.markly.data.repository;
+
+import android.app.Application;
+
+import androidx.annotation.NonNull;
+import androidx.room.InvalidationTracker;
+
+import com.aquaa.markly.data.database.AppDatabase;
+import com.aquaa.markly.data.database.Attendance;
+import com.aquaa.markly.data.database.Student;
+import com.aquaa.markly.utils.AttendanceAggregator;
+import com.aquaa.markly.utils.MarklyLog;
+import com.aquaa.markly.utils.Metrics;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Process-wide store of attendance tallies, keyed by the query that produced them (semester, section and date range).
+ * The tracking and analytics screens read the same results, so handing a result to another screen only takes
+ * the small handle of its Key in the Intent instead of a serialized copy of every record. If the process died in
+ * between, the handle still describes the query and the tally is recomputed from the database.
+ * Everything is dropped when the students or attendance tables change. Beyond MAX_ENTRIES the least recently used
+ * results are evicted, except those a ViewModel still holds.
+ */
+public final class AttendanceResultStore {
+
+    private static final String TAG = "AttendanceResultStore";
+    // Intent extra carrying Key.toHandle()
+    public static final String EXTRA_HANDLE = "attendanceResultHandle";
+    private static final int MAX_ENTRIES = 6;
+
+    private static volatile AttendanceResultStore INSTANCE;
+
+    private final StudentRepository repository;
+    // Guarded by this. Access order, the eldest entry is the least recently used
+    private final LinkedHashMap<Key, AttendanceAggregator.Tally> results = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Key, Integer> holds = new HashMap<>(); // Guarded by this
+    private int generation; // Guarded by this, bumped on every invalidation
+
+    private AttendanceResultStore(Application application) {
+        repository = new StudentRepository(application);
+        // Room calls this after any transaction that wrote one of the tables, whoever wrote it
+        AppDatabase.getDatabase(application).getInvalidationTracker().addObserver(
+                new InvalidationTracker.Observer("students", "attendance") {
+                    @Override
+                    public void onInvalidated(@NonNull Set<String> tables) {
+                        invalidateAll();
+                    }
+                });
+    }
+
+    public static AttendanceResultStore getInstance(Application application) {
+        if (INSTANCE == null) {
+            synchronized (AttendanceResultStore.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new AttendanceResultStore(application);
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Identifies one tally: the students of a semester (0 for all) or one of its sections, and an inclusive date range.
+     */
+    public static final class Key {
+        public final int semester;
+        public final String section; // null for the whole semester
+        public final long startDate;
+        public final long endDate;
+
+        public Key(int semester, long startDate, long endDate) {
+            this(semester, null, startDate, endDate);
+        }
+
+        public Key(int semester, String section, long startDate, long endDate) {
+            this.semester = semester;
+            this.section = semester != 0 ? section : null; // Sections only exist within a semester
+            this.startDate = startDate;
+            this.endDate = endDate;
+        }
+
+        /**
+         * @return A short string for Intent extras and saved state, see fromHandle().
+         */
+        public String toHandle() {
+            // The section goes last, so that a colon in it survives the split
+            return semester + ":" + startDate + ":" + endDate + (section != null ? ":" + section : "");
+        }
+
+        /**
+         * @return The key of a handle, or null if the handle is missing or malformed.
+         */
+        public static Key fromHandle(String handle) {
+            if (handle == null) {
+                return null;
+            }
+            String[] parts = handle.split(":", 4);
+            if (parts.length < 3) {
+                return null;
+            }
+            try {
+                return new Key(Integer.parseInt(parts[0]), parts.length == 4 ? parts[3] : null,
+                        Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return semester == key.semester && Objects.equals(section, key.section)
+                    && startDate == key.startDate && endDate == key.endDate;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = semester;
+            result = 31 * result + Objects.hashCode(section);
+            result = 31 * result + Long.hashCode(startDate);
+            result = 31 * result + Long.hashCode(endDate);
+            return result;
+        }
+    }
+
+    /**
+     * Returns the tally of the key, computing it on the calling thread on a miss. Call from a background thread.
+     * The returned tally is shared and must not be modified.
+     */
+    public AttendanceAggregator.Tally get(Key key) {
+        int startGeneration;
+        synchronized (this) {
+            AttendanceAggregator.Tally cached = results.get(key);
+            if (cached != null) {
+                Metrics.counter("resultStore.hit").increment();
+                return cached;
+            }
+            startGeneration = generation;
+        }
+        Metrics.counter("resultStore.miss").increment();
+        AttendanceAggregator.Tally tally = Metrics.timer("resultStore.compute").time(() -> compute(key));
+        synchronized (this) {
+            // A write that landed while computing may not be in this tally, so only keep it if nothing changed
+            if (generation == startGeneration) {
+                results.put(key, tally);
+                evict();
+            }
+        }
+        return tally;
+    }
+
+    /**
+     * Keeps the result of the key from being evicted until release(), e.g. for as long as a ViewModel shows it.
+     * Holds are counted, every hold needs its release.
+     */
+    public synchronized void hold(Key key) {
+        Integer count = holds.get(key);
+        holds.put(key, count == null ? 1 : count + 1);
+    }
+
+    public synchronized void release(Key key) {
+        Integer count = holds.get(key);
+        if (count == null) {
+            return;
+        }
+        if (count <= 1) {
+            holds.remove(key);
+        } else {
+            holds.put(key, count - 1);
+        }
+        evict();
+    }
+
+    /**
+     * Drops every result, held or not. They are recomputed on next use.
+     */
+    public synchronized void invalidateAll() {
+        generation++;
+        if (!results.isEmpty()) {
+            results.clear();
+            MarklyLog.d(TAG, "Attendance results invalidated.");
+        }
+    }
+
+    // Called with the lock held
+    private void evict() {
+        Iterator<Map.Entry<Key, AttendanceAggregator.Tally>> iterator = results.entrySet().iterator();
+        while (results.size() > MAX_ENTRIES && iterator.hasNext()) {
+            if (!holds.containsKey(iterator.next().getKey())) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private AttendanceAggregator.Tally compute(Key key) {
+        List<Student> students = key.semester != 0
+                ? repository.getStudentsBySemesterSync(key.semester, key.section)
+                : repository.getAllStudentsSync();
+        // Only the range and the key's students are read, not the whole table
+        List<Attendance> attendance = repository.getAttendanceInRangeSync(key.semester, key.section, key.startDate, key.endDate);
+        // Rows read versus rows kept: a gap means records of students the student list no longer covers
+        Metrics.counter("resultStore.rowsScanned").add(attendance.size());
+        AttendanceAggregator.Tally tally = AttendanceAggregator.aggregate(students, attendance, key.startDate, key.endDate);
+        Metrics.counter("resultStore.rowsUsed").add(tally.getTotalRecordedDays());
+        return tally;
+    }
+}
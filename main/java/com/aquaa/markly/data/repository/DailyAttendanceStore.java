@@ -0,0 +1,124 @@
+package com.aquaa.markly.data.repository;
+
+import android.app.Application;
+
+import androidx.annotation.NonNull;
+import androidx.room.InvalidationTracker;
+
+import com.aquaa.markly.data.database.AppDatabase;
+import com.aquaa.markly.data.database.AttendanceDao;
+import com.aquaa.markly.utils.DailyAttendance;
+import com.aquaa.markly.utils.MarklyLog;
+import com.aquaa.markly.utils.Metrics;
+
+import java.util.Calendar;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Process-wide cache of per-day class attendance, one DailyAttendance per semester (0 for all) and year.
+ * A year is loaded with one grouped query, so moving between its months, halves or the whole year is a
+ * memory read. Everything is dropped when the students or attendance tables change; beyond MAX_ENTRIES the
+ * least recently used years are evicted.
+ */
+public final class DailyAttendanceStore {
+
+    private static final String TAG = "DailyAttendanceStore";
+    private static final int MAX_ENTRIES = 8;
+
+    private static volatile DailyAttendanceStore INSTANCE;
+
+    private final AttendanceDao attendanceDao;
+    // Guarded by this. Access order, the eldest entry is the least recently used
+    private final LinkedHashMap<Long, DailyAttendance> years = new LinkedHashMap<Long, DailyAttendance>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, DailyAttendance> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private int generation; // Guarded by this, bumped on every invalidation
+
+    private DailyAttendanceStore(Application application) {
+        AppDatabase database = AppDatabase.getDatabase(application);
+        attendanceDao = database.attendanceDao();
+        database.getInvalidationTracker().addObserver(
+                new InvalidationTracker.Observer("students", "attendance") {
+                    @Override
+                    public void onInvalidated(@NonNull Set<String> tables) {
+                        invalidateAll();
+                    }
+                });
+    }
+
+    public static DailyAttendanceStore getInstance(Application application) {
+        if (INSTANCE == null) {
+            synchronized (DailyAttendanceStore.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new DailyAttendanceStore(application);
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the days of a year, loading them on the calling thread on a miss. Call from a background thread.
+     * The returned object is shared and must not be modified.
+     */
+    public DailyAttendance get(int semester, int year) {
+        long key = ((long) semester << 32) | (year & 0xffffffffL);
+        int startGeneration;
+        synchronized (this) {
+            DailyAttendance cached = years.get(key);
+            if (cached != null) {
+                Metrics.counter("dailyStore.hit").increment();
+                return cached;
+            }
+            startGeneration = generation;
+        }
+        Metrics.counter("dailyStore.miss").increment();
+        DailyAttendance days = Metrics.timer("dailyStore.load").time(() -> load(semester, year));
+        synchronized (this) {
+            // A write that landed while loading may be missing, so only keep the result if nothing changed
+            if (generation == startGeneration) {
+                years.put(key, days);
+            }
+        }
+        return days;
+    }
+
+    /**
+     * @return True if the year is cached, so that get() returns without a query.
+     */
+    public synchronized boolean contains(int semester, int year) {
+        return years.containsKey(((long) semester << 32) | (year & 0xffffffffL));
+    }
+
+    public synchronized void invalidateAll() {
+        generation++;
+        if (!years.isEmpty()) {
+            years.clear();
+            MarklyLog.d(TAG, "Daily attendance invalidated.");
+        }
+    }
+
+    private DailyAttendance load(int semester, int year) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(year, Calendar.JANUARY, 1);
+        long startDate = calendar.getTimeInMillis();
+        calendar.add(Calendar.YEAR, 1);
+        long endDate = calendar.getTimeInMillis() - 1;
+
+        List<AttendanceDao.DailyCount> counts = attendanceDao.getDailyCounts(semester, null, startDate, endDate);
+        DailyAttendance days = new DailyAttendance(year);
+        for (AttendanceDao.DailyCount count : counts) {
+            calendar.setTimeInMillis(count.date);
+            days.add(calendar.get(Calendar.MONTH), calendar.get(Calendar.DAY_OF_MONTH), count.presentCount, count.recordedCount);
+        }
+        MarklyLog.d(TAG, "Loaded {} recorded days of semester {} in {}", counts.size(), semester, year);
+        return days;
+    }
+}
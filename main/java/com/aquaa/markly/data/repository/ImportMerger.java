@@ -0,0 +1,301 @@
+package com.aquaa.markly.data.repository;
+
+import com.aquaa.markly.data.database.Attendance;
+import com.aquaa.markly.data.database.AttendanceDao;
+import com.aquaa.markly.data.database.Student;
+import com.aquaa.markly.data.database.StudentDao;
+import com.aquaa.markly.utils.ExcelUtils.AttendanceImport;
+import com.aquaa.markly.utils.ExcelUtils.StudentImport;
+import com.aquaa.markly.utils.MarklyLog;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Applies an imported data set on top of the existing database by writing only the rows that differ.
+ * Students are matched on their natural key (normalised name + guardian mobile) and, optionally, on the
+ * Student ID carried by Markly's own exports, where the row's uuid confirms it is the same student of this
+ * database. Matched rows are compared by content hash so unchanged rows are never rewritten. Rows failing the
+ * checks of the replace import are neither inserted nor applied, and their attendance is left out.
+ * Must be called inside a database transaction (see StudentRepository).
+ */
+class ImportMerger {
+    private static final String TAG = "ImportMerger";
+
+    // SQLite caps bound parameters at 999 per statement, keep IN (...) lists well below that
+    private static final int ID_CHUNK_SIZE = 500;
+
+    private final StudentDao studentDao;
+    private final AttendanceDao attendanceDao;
+
+    ImportMerger(StudentDao studentDao, AttendanceDao attendanceDao) {
+        this.studentDao = studentDao;
+        this.attendanceDao = attendanceDao;
+    }
+
+    /**
+     * Merges the imported rows into the database.
+     * @param importedStudents Students from the file.
+     * @param importedAttendances Attendance rows from the file, linked to students through oldStudentId,
+     *                            or null if the file carries no attendance (stored attendance is kept).
+     * @param removeMissing True if rows absent from the file should be deleted (the file is the full roster).
+     * @param matchOnStudentId True if unmatched rows may fall back to matching on the file's Student ID.
+     *                         Only rows whose uuid equals the stored student's are matched this way: ids of
+     *                         another database, or of this one before a restore, belong to other students.
+     * @return A diff summary of what was written.
+     */
+    StudentRepository.MergeResult merge(List<StudentImport> importedStudents,
+                                        List<AttendanceImport> importedAttendances,
+                                        boolean removeMissing,
+                                        boolean matchOnStudentId) {
+        StudentRepository.MergeResult result = new StudentRepository.MergeResult();
+
+        // --- Students ---
+        List<Student> existingStudents = studentDao.getAllStudentsSync();
+        Map<String, ArrayDeque<Student>> existingByKey = new HashMap<>();
+        Map<Long, Student> existingById = new HashMap<>();
+        for (Student student : existingStudents) {
+            String key = naturalKey(student.getName(), student.getGuardianMobile());
+            ArrayDeque<Student> bucket = existingByKey.get(key);
+            if (bucket == null) {
+                bucket = new ArrayDeque<>(1);
+                existingByKey.put(key, bucket);
+            }
+            bucket.add(student);
+            existingById.put(student.getStudentId(), student);
+        }
+
+        Set<Long> matchedExistingIds = new HashSet<>();
+        Set<String> seenKeys = new HashSet<>();
+        Map<Long, Long> fileIdToStudentId = new HashMap<>(); // oldStudentId from the file -> current student_id
+        List<StudentImport> unmatched = new ArrayList<>();
+        List<Student> toUpdate = new ArrayList<>();
+        List<Student> toInsert = new ArrayList<>();
+        List<StudentImport> toInsertSources = new ArrayList<>();
+
+        // Pass 1: natural key
+        for (StudentImport sImport : importedStudents) {
+            String name = trimToEmpty(sImport.name);
+            String guardianMobile = trimToEmpty(sImport.guardianMobile);
+            if (name.isEmpty() || guardianMobile.isEmpty()) {
+                result.skippedStudents.add((name.isEmpty() ? "(no name)" : name) + " (Missing name or guardian mobile)");
+                continue;
+            }
+            String key = naturalKey(name, guardianMobile);
+            if (!seenKeys.add(key)) {
+                result.skippedStudents.add(name + " (Duplicate row in file)");
+                continue;
+            }
+            ArrayDeque<Student> bucket = existingByKey.get(key);
+            Student match = bucket != null ? bucket.poll() : null;
+            String problem = StudentRepository.validateImport(sImport);
+            if (problem != null) {
+                result.skippedStudents.add(name + " (Validation Failed: " + problem + ")");
+                if (match != null) {
+                    matchedExistingIds.add(match.getStudentId()); // Kept as stored, a bad row must not delete the student
+                }
+                continue;
+            }
+            if (match != null) {
+                matchedExistingIds.add(match.getStudentId());
+                fileIdToStudentId.put(sImport.oldStudentId, match.getStudentId());
+                applyIfChanged(match, sImport, toUpdate, result);
+            } else {
+                unmatched.add(sImport);
+            }
+        }
+
+        // Pass 2: stable Student ID (renamed students or changed guardian numbers), otherwise a new student
+        for (StudentImport sImport : unmatched) {
+            Student match = matchOnStudentId && sImport.uuid != null ? existingById.get(sImport.oldStudentId) : null;
+            if (match != null && sImport.uuid.equals(match.getUuid()) && !matchedExistingIds.contains(match.getStudentId())) {
+                matchedExistingIds.add(match.getStudentId());
+                fileIdToStudentId.put(sImport.oldStudentId, match.getStudentId());
+                applyIfChanged(match, sImport, toUpdate, result);
+            } else {
+                toInsert.add(new Student(trimToEmpty(sImport.name), trimToEmpty(sImport.gender), trimToEmpty(sImport.mobile),
+                        trimToEmpty(sImport.guardianMobile), sImport.currentSemester, trimToEmpty(sImport.section)));
+                toInsertSources.add(sImport);
+            }
+        }
+
+        if (!toUpdate.isEmpty()) {
+            studentDao.updateStudents(toUpdate);
+        }
+        for (int i = 0; i < toInsert.size(); i++) {
+            Student student = toInsert.get(i);
+            long newId = studentDao.insert(student);
+            if (newId != -1) {
+                fileIdToStudentId.put(toInsertSources.get(i).oldStudentId, newId);
+                result.insertedStudents++;
+            } else {
+                result.skippedStudents.add(student.getName() + " (Database insertion failed)");
+            }
+        }
+
+        List<Long> studentIdsToDelete = new ArrayList<>();
+        if (removeMissing) {
+            for (Student student : existingStudents) {
+                if (!matchedExistingIds.contains(student.getStudentId())) {
+                    studentIdsToDelete.add(student.getStudentId());
+                }
+            }
+            // Attendance of deleted students goes with them through ON DELETE CASCADE
+            for (int from = 0; from < studentIdsToDelete.size(); from += ID_CHUNK_SIZE) {
+                studentDao.deleteStudentsByIds(studentIdsToDelete.subList(from, Math.min(from + ID_CHUNK_SIZE, studentIdsToDelete.size())));
+            }
+            result.deletedStudents = studentIdsToDelete.size();
+        }
+
+        // --- Attendance ---
+        if (importedAttendances == null) {
+            // The file had no attendance part at all, leave stored attendance alone
+            MarklyLog.i(TAG, "Merge finished without attendance: " + result.toSummary());
+            return result;
+        }
+        Set<Long> deletedStudentIds = new HashSet<>(studentIdsToDelete);
+        Map<Long, Map<Long, Attendance>> existingAttendance = new HashMap<>(); // student_id -> (date -> row)
+        for (Attendance attendance : attendanceDao.getAllAttendanceRecordsSync()) {
+            if (deletedStudentIds.contains(attendance.getStudentId())) {
+                continue;
+            }
+            Map<Long, Attendance> byDate = existingAttendance.get(attendance.getStudentId());
+            if (byDate == null) {
+                byDate = new HashMap<>();
+                existingAttendance.put(attendance.getStudentId(), byDate);
+            }
+            byDate.put(attendance.getDate(), attendance);
+        }
+
+        Set<Long> coveredStudentIds = new HashSet<>(fileIdToStudentId.values());
+        List<Attendance> attendanceToInsert = new ArrayList<>();
+        List<Attendance> attendanceToUpdate = new ArrayList<>();
+        Map<Long, Set<Long>> fileDates = new HashMap<>(); // student_id -> days already taken from the file
+        for (AttendanceImport aImport : importedAttendances) {
+            Long studentId = fileIdToStudentId.get(aImport.oldStudentId);
+            if (studentId == null) {
+                result.skippedAttendance.add("Attendance for Student ID " + aImport.oldStudentId + " on " + aImport.date + " (Student not imported)");
+                continue;
+            }
+            // One record per student and day: a second would break the unique index and roll back the whole merge
+            Set<Long> dates = fileDates.get(studentId);
+            if (dates == null) {
+                dates = new HashSet<>();
+                fileDates.put(studentId, dates);
+            }
+            if (!dates.add(aImport.date)) {
+                result.skippedAttendance.add("Attendance for Student ID " + aImport.oldStudentId + " on " + aImport.date + " (Duplicate day in file)");
+                continue;
+            }
+            Map<Long, Attendance> byDate = existingAttendance.get(studentId);
+            Attendance existing = byDate != null ? byDate.remove(aImport.date) : null;
+            if (existing == null) {
+                attendanceToInsert.add(new Attendance(studentId, aImport.date, aImport.isPresent));
+            } else if (existing.isPresent() != aImport.isPresent) {
+                existing.setPresent(aImport.isPresent);
+                attendanceToUpdate.add(existing);
+            } else {
+                result.unchangedAttendance++;
+            }
+        }
+
+        if (!attendanceToUpdate.isEmpty()) {
+            attendanceDao.updateAttendances(attendanceToUpdate);
+            result.updatedAttendance = attendanceToUpdate.size();
+        }
+        if (!attendanceToInsert.isEmpty()) {
+            attendanceDao.insertAttendances(attendanceToInsert);
+            result.insertedAttendance = attendanceToInsert.size();
+        }
+
+        if (removeMissing) {
+            // Whatever is left for a student covered by the file was not in the file
+            List<Long> attendanceIdsToDelete = new ArrayList<>();
+            for (Long studentId : coveredStudentIds) {
+                Map<Long, Attendance> leftovers = existingAttendance.get(studentId);
+                if (leftovers != null) {
+                    for (Attendance attendance : leftovers.values()) {
+                        attendanceIdsToDelete.add(attendance.getAttendanceId());
+                    }
+                }
+            }
+            for (int from = 0; from < attendanceIdsToDelete.size(); from += ID_CHUNK_SIZE) {
+                attendanceDao.deleteAttendanceByIds(attendanceIdsToDelete.subList(from, Math.min(from + ID_CHUNK_SIZE, attendanceIdsToDelete.size())));
+            }
+            result.deletedAttendance = attendanceIdsToDelete.size();
+        }
+
+        MarklyLog.i(TAG, "Merge finished: " + result.toSummary());
+        return result;
+    }
+
+    /**
+     * Copies the imported values onto the existing student if its content hash differs.
+     */
+    private static void applyIfChanged(Student existing, StudentImport sImport, List<Student> toUpdate,
+                                       StudentRepository.MergeResult result) {
+        String name = trimToEmpty(sImport.name);
+        String gender = trimToEmpty(sImport.gender);
+        String mobile = trimToEmpty(sImport.mobile);
+        String guardianMobile = trimToEmpty(sImport.guardianMobile);
+        String section = trimToEmpty(sImport.section);
+
+        long existingHash = contentHash(existing.getName(), existing.getGender(), existing.getMobile(),
+                existing.getGuardianMobile(), existing.getCurrentSemester(), existing.getSection());
+        long importedHash = contentHash(name, gender, mobile, guardianMobile, sImport.currentSemester, section);
+        if (existingHash == importedHash) {
+            result.unchangedStudents++;
+            return;
+        }
+        existing.setName(name);
+        existing.setGender(gender);
+        existing.setMobile(mobile);
+        existing.setGuardianMobile(guardianMobile);
+        existing.setCurrentSemester(sImport.currentSemester);
+        existing.setSection(section);
+        toUpdate.add(existing);
+        result.updatedStudents++;
+    }
+
+    /**
+     * Natural key of a student: case-insensitive name with collapsed whitespace, plus the guardian's mobile.
+     */
+    static String naturalKey(String name, String guardianMobile) {
+        return trimToEmpty(name).replaceAll("\\s+", " ").toLowerCase(Locale.ROOT) + "|" + trimToEmpty(guardianMobile);
+    }
+
+    /**
+     * 64-bit FNV-1a hash over the stored student fields. Fields are separated so that
+     * ("ab", "c") and ("a", "bc") hash differently.
+     */
+    static long contentHash(String name, String gender, String mobile, String guardianMobile, int semester, String section) {
+        long hash = 0xcbf29ce484222325L;
+        hash = fnv(hash, trimToEmpty(name));
+        hash = fnv(hash, trimToEmpty(gender));
+        hash = fnv(hash, trimToEmpty(mobile));
+        hash = fnv(hash, trimToEmpty(guardianMobile));
+        hash = fnv(hash, Integer.toString(semester));
+        hash = fnv(hash, trimToEmpty(section));
+        return hash;
+    }
+
+    private static long fnv(long hash, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= 0x1f; // Field separator
+        hash *= 0x100000001b3L;
+        return hash;
+    }
+
+    private static String trimToEmpty(String value) {
+        return value != null ? value.trim() : "";
+    }
+}
@@ -1,78 +1,135 @@
 package com.aquaa.markly.data.repository;
 
 import android.app.Application;
-import android.util.Log;
+import android.content.Context;
+import android.content.SharedPreferences;
 
 import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
 import androidx.room.Transaction;
+import androidx.sqlite.db.SupportSQLiteDatabase;
 
 import com.aquaa.markly.data.database.AppDatabase;
 import com.aquaa.markly.data.database.Attendance;
 import com.aquaa.markly.data.database.AttendanceDao;
+import com.aquaa.markly.data.database.AttendanceDao.DailyCount;
+import com.aquaa.markly.data.database.EligibilityDao;
 import com.aquaa.markly.data.database.Notification; // Import Notification entity
 import com.aquaa.markly.data.database.NotificationDao; // Import NotificationDao
+import com.aquaa.markly.data.database.SemesterAttendance;
+import com.aquaa.markly.data.database.SemesterPlan;
+import com.aquaa.markly.data.database.StreakDao;
 import com.aquaa.markly.data.database.Student;
 import com.aquaa.markly.data.database.StudentDao;
+import com.aquaa.markly.data.database.StudentStreak;
+import com.aquaa.markly.data.database.SyncSchema;
+import com.aquaa.markly.utils.EligibilityProjection;
 import com.aquaa.markly.utils.ExcelUtils;
 import com.aquaa.markly.utils.ExcelUtils.StudentImport;
 import com.aquaa.markly.utils.ExcelUtils.AttendanceImport;
+import com.aquaa.markly.utils.InstrumentedExecutor;
+import com.aquaa.markly.utils.MarklyLog;
+import com.aquaa.markly.utils.NotificationBus;
+import com.aquaa.markly.utils.Metrics;
 import com.aquaa.markly.utils.NotificationHelper; // Import NotificationHelper
+import com.aquaa.markly.utils.TrendSeries;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class StudentRepository {
     private static final String TAG = "StudentRepository";
 
+    private AppDatabase database;
     private StudentDao studentDao;
     private AttendanceDao attendanceDao;
     private NotificationDao notificationDao; // Declare NotificationDao
+    private StreakDao streakDao;
+    private EligibilityDao eligibilityDao;
     private Application application; // Store the application context
 
+    // Created on first use, so that building a repository does not set up queries a screen never observes
     private LiveData<List<Student>> allStudents;
-    private LiveData<List<Attendance>> allAttendanceRecords;
     private LiveData<List<Notification>> allNotifications; // New LiveData for all notifications
     private LiveData<Integer> unreadNotificationCount; // New LiveData for unread count
+    private LiveData<Notification> latestUnreadNotification;
+    private final MutableLiveData<List<Student>> searchResults = new MutableLiveData<>();
+    private final AtomicInteger searchGeneration = new AtomicInteger();
+    private ScheduledFuture<?> pendingSearch; // Guarded by this
 
     private static final int NUMBER_OF_THREADS = 4;
-    private final ExecutorService databaseWriteExecutor =
-            Executors.newFixedThreadPool(NUMBER_OF_THREADS);
+    public static final int SEARCH_LIMIT = 50;
+    private static final long SEARCH_DEBOUNCE_MILLIS = 250;
+    // One thread for all screens, a search is a few milliseconds
+    private static final ScheduledExecutorService SEARCH_EXECUTOR = Executors.newSingleThreadScheduledExecutor();
+    // SQLite allows 999 bound variables per statement, leave room for the other arguments
+    private static final int MAX_QUERY_IDS = 900;
+    // Absences in a row that make a student a chronic absentee
+    public static final int CHRONIC_ABSENCE_RUN = 3;
+    // Granularities of getAttendanceTrendSync()
+    public static final int TREND_DAILY = 0;
+    public static final int TREND_WEEKLY = 1;
+    public static final int TREND_MONTHLY = 2;
+    private static final long DAY_MILLIS = 86_400_000L;
+    private static final long WEEK_MILLIS = 7 * DAY_MILLIS;
+    private static final String PREFS_NAME = "MarklyPrefs";
+    private static final String KEY_CHRONIC_ABSENCE_ALERTS = "chronicAbsenceAlerts";
+    // Wrapped so that queue wait and run time of every write show up on the diagnostics screen
+    private final Executor databaseWriteExecutor =
+            new InstrumentedExecutor("repository", Executors.newFixedThreadPool(NUMBER_OF_THREADS));
 
     public StudentRepository(Application application) {
         this.application = application; // Initialize the application context
         AppDatabase db = AppDatabase.getDatabase(application);
+        database = db;
         studentDao = db.studentDao();
         attendanceDao = db.attendanceDao();
         notificationDao = db.notificationDao(); // Initialize NotificationDao
-
-        allStudents = studentDao.getAllStudents();
-        allAttendanceRecords = attendanceDao.getAllAttendanceForMonth(0, Long.MAX_VALUE);
-        allNotifications = notificationDao.getAllNotifications(); // Initialize all notifications
-        unreadNotificationCount = notificationDao.getUnreadNotificationCount(); // Initialize unread count
+        streakDao = db.streakDao();
+        eligibilityDao = db.eligibilityDao();
     }
 
     // --- Student operations ---
     public LiveData<List<Student>> getAllStudents() {
+        if (allStudents == null) {
+            allStudents = studentDao.getAllStudents();
+        }
         return allStudents;
     }
 
     public long insertStudent(Student student) {
-        Log.d(TAG, "Attempting to insert student: " + student.getName());
-        long id = studentDao.insert(student);
-        Log.d(TAG, "Student '" + student.getName() + "' inserted with ID: " + id);
+        if (MarklyLog.isDebugEnabled()) {
+            MarklyLog.d(TAG, "Attempting to insert student: " + student.getName());
+        }
+        long id = Metrics.timer("dao.student.insert").time(() -> studentDao.insert(student));
+        if (MarklyLog.isDebugEnabled()) {
+            MarklyLog.d(TAG, "Student '" + student.getName() + "' inserted with ID: " + id);
+        }
         return id;
     }
 
     public void updateStudent(Student student) {
-        databaseWriteExecutor.execute(() -> studentDao.updateStudent(student));
+        databaseWriteExecutor.execute(() -> Metrics.timer("dao.student.updateStudent").time(() -> database.runInTransaction(() -> {
+            studentDao.updateStudent(student);
+            recountSemesterAttendance(student.getStudentId()); // The semester may have changed
+        })));
     }
 
     public void deleteStudent(Student student) {
-        databaseWriteExecutor.execute(() -> studentDao.deleteStudent(student));
+        databaseWriteExecutor.execute(() -> Metrics.timer("dao.student.deleteStudent").time(() -> studentDao.deleteStudent(student)));
     }
 
     public LiveData<Student> getStudentById(long studentId) {
@@ -80,19 +137,96 @@ public class StudentRepository {
     }
 
     public Student getStudentByIdSync(long studentId) {
-        return studentDao.getStudentById(studentId);
+        return Metrics.timer("dao.student.getStudentById").time(() -> studentDao.getStudentById(studentId));
     }
 
     public List<Student> getAllStudentsSync() {
-        return studentDao.getAllStudentsSync();
+        return Metrics.timer("dao.student.getAllStudentsSync").time(() -> studentDao.getAllStudentsSync());
     }
 
     public List<Integer> getAllSemestersSync() {
-        return studentDao.getAllSemestersSync();
+        return Metrics.timer("dao.student.getAllSemestersSync").time(() -> studentDao.getAllSemestersSync());
     }
 
     public List<Student> getStudentsBySemesterSync(int semester) {
-        return studentDao.getStudentsBySemesterSync(semester);
+        return Metrics.timer("dao.student.getStudentsBySemesterSync").time(() -> studentDao.getStudentsBySemesterSync(semester));
+    }
+
+    public long[] getStudentIdsBySemesterSync(int semester) {
+        return Metrics.timer("dao.student.getStudentIdsBySemester").time(() -> studentDao.getStudentIdsBySemester(semester));
+    }
+
+    /**
+     * The students of one section of a semester, sorted by name.
+     * @param section A section as returned by getSectionsBySemesterSync(), or null for the whole semester.
+     */
+    public List<Student> getStudentsBySemesterSync(int semester, String section) {
+        if (section == null) {
+            return getStudentsBySemesterSync(semester);
+        }
+        return Metrics.timer("dao.student.getStudentsBySemesterAndSectionSync").time(() ->
+                studentDao.getStudentsBySemesterAndSectionSync(semester, section));
+    }
+
+    /**
+     * @param section A section as returned by getSectionsBySemesterSync(), or null for the whole semester.
+     */
+    public long[] getStudentIdsBySemesterSync(int semester, String section) {
+        if (section == null) {
+            return getStudentIdsBySemesterSync(semester);
+        }
+        return Metrics.timer("dao.student.getStudentIdsBySemesterAndSection").time(() ->
+                studentDao.getStudentIdsBySemesterAndSection(semester, section));
+    }
+
+    /**
+     * The sections of a semester, spelled as stored and sorted, for the section filters.
+     */
+    public List<String> getSectionsBySemesterSync(int semester) {
+        return Metrics.timer("dao.student.getSectionsBySemester").time(() -> studentDao.getSectionsBySemesterSync(semester));
+    }
+
+    // Case-insensitive, students without a name (e.g. synced in without one) last
+    private static final Comparator<Student> BY_NAME = (a, b) -> {
+        if (a.getName() == null || b.getName() == null) {
+            return a.getName() == null ? (b.getName() == null ? 0 : 1) : -1;
+        }
+        return String.CASE_INSENSITIVE_ORDER.compare(a.getName(), b.getName());
+    };
+
+    /**
+     * The students with the given ids, sorted by name. Ids of deleted students are skipped.
+     */
+    public List<Student> getStudentsByIdsSync(long[] studentIds) {
+        long start = System.nanoTime();
+        List<Student> students = new ArrayList<>(studentIds.length);
+        for (int from = 0; from < studentIds.length; from += MAX_QUERY_IDS) {
+            students.addAll(studentDao.getStudentsByIds(Arrays.copyOfRange(studentIds, from, Math.min(studentIds.length, from + MAX_QUERY_IDS))));
+        }
+        Collections.sort(students, BY_NAME); // Once over all chunks, whatever their number
+        Metrics.timer("dao.student.getStudentsByIds").stop(start);
+        return students;
+    }
+
+    /**
+     * Moves the given students up one semester, all or none.
+     * @return The number of students promoted.
+     */
+    public int promoteStudentsSync(long[] studentIds) {
+        long start = System.nanoTime();
+        int promoted = database.runInTransaction(() -> {
+            int count = 0;
+            for (int from = 0; from < studentIds.length; from += MAX_QUERY_IDS) {
+                count += studentDao.promoteStudents(Arrays.copyOfRange(studentIds, from, Math.min(studentIds.length, from + MAX_QUERY_IDS)));
+            }
+            // Counted afresh against the plan of the new semester
+            for (long studentId : studentIds) {
+                recountSemesterAttendance(studentId);
+            }
+            return count;
+        });
+        Metrics.timer("dao.student.promoteStudents").stop(start);
+        return promoted;
     }
 
     public LiveData<List<Integer>> getAllSemesters() {
@@ -103,10 +237,24 @@ public class StudentRepository {
         return studentDao.getStudentsBySemester(semester);
     }
 
+    /**
+     * @param section A section as returned by getSectionsBySemester(), or null for the whole semester.
+     */
+    public LiveData<List<Student>> getStudentsBySemester(int semester, String section) {
+        if (section == null) {
+            return getStudentsBySemester(semester);
+        }
+        return studentDao.getStudentsBySemesterAndSection(semester, section);
+    }
+
+    public LiveData<List<String>> getSectionsBySemester(int semester) {
+        return studentDao.getSectionsBySemester(semester);
+    }
+
     public void deleteAllStudentsSync() {
-        Log.d(TAG, "Attempting to delete all students synchronously.");
-        studentDao.deleteAllStudents();
-        Log.d(TAG, "All students deleted synchronously.");
+        MarklyLog.d(TAG, "Attempting to delete all students synchronously.");
+        Metrics.timer("dao.student.deleteAllStudents").time(() -> studentDao.deleteAllStudents());
+        MarklyLog.d(TAG, "All students deleted synchronously.");
     }
 
 
@@ -119,34 +267,239 @@ public class StudentRepository {
         return attendanceDao.getMonthlyAttendanceForStudent(studentId, startDate, endDate);
     }
 
+    /**
+     * Inserts an attendance record and brings the student's absence streak and semester counts up to date in the
+     * same transaction.
+     */
     public long insertAttendance(Attendance attendance) {
-        Log.d(TAG, "Attempting to insert attendance for student ID: " + attendance.getStudentId() + " on date: " + attendance.getDate());
-        long id = attendanceDao.insertAttendance(attendance);
-        Log.d(TAG, "Attendance for student ID: " + attendance.getStudentId() + " inserted with ID: " + id);
+        if (MarklyLog.isDebugEnabled()) {
+            MarklyLog.d(TAG, "Attempting to insert attendance for student ID: " + attendance.getStudentId() + " on date: " + attendance.getDate());
+        }
+        boolean[] reachedChronic = new boolean[1];
+        long id = Metrics.timer("dao.attendance.insertAttendance").time(() -> database.runInTransaction(() -> {
+            long rowId = attendanceDao.insertAttendance(attendance);
+            reachedChronic[0] = updateStreak(attendance.getStudentId(), attendance);
+            addToSemesterAttendance(attendance);
+            return rowId;
+        }));
+        if (MarklyLog.isDebugEnabled()) {
+            MarklyLog.d(TAG, "Attendance for student ID: " + attendance.getStudentId() + " inserted with ID: " + id);
+        }
+        if (reachedChronic[0]) {
+            postChronicAbsenceAlert(attendance.getStudentId());
+        }
         return id;
     }
 
+    /**
+     * Updates an attendance record. The absence streak and semester counts are only recomputed if the presence
+     * changed, marking an SMS as sent costs nothing extra.
+     */
     public void updateAttendance(Attendance attendance) {
-        databaseWriteExecutor.execute(() -> attendanceDao.updateAttendance(attendance));
+        databaseWriteExecutor.execute(() -> {
+            long start = System.nanoTime();
+            boolean reachedChronic = database.runInTransaction(() -> {
+                Attendance previous = attendanceDao.getAttendanceByStudentAndDate(attendance.getStudentId(), attendance.getDate());
+                attendanceDao.updateAttendance(attendance);
+                // No previous row on this date means the date itself was changed
+                if (previous != null && previous.isPresent() == attendance.isPresent()) {
+                    return false;
+                }
+                recountSemesterAttendance(attendance.getStudentId());
+                return updateStreak(attendance.getStudentId(), null);
+            });
+            Metrics.timer("dao.attendance.updateAttendance").stop(start);
+            if (reachedChronic) {
+                postChronicAbsenceAlert(attendance.getStudentId());
+            }
+        });
     }
 
     // New method to update SMS sent status for an attendance record
     public void updateAttendanceSmsSentStatus(long studentId, long date, boolean isSmsSent) {
         databaseWriteExecutor.execute(() -> {
+            long start = System.nanoTime();
             Attendance attendance = attendanceDao.getAttendanceByStudentAndDate(studentId, date);
             if (attendance != null) {
                 attendance.setSmsSent(isSmsSent);
                 attendanceDao.updateAttendance(attendance);
-                Log.d(TAG, "Updated SMS sent status for student ID " + studentId + " on date " + date + " to " + isSmsSent);
+                Metrics.timer("dao.attendance.updateSmsSentStatus").stop(start);
+                if (MarklyLog.isDebugEnabled()) {
+                    MarklyLog.d(TAG, "Updated SMS sent status for student ID " + studentId + " on date " + date + " to " + isSmsSent);
+                }
             } else {
-                Log.w(TAG, "Attendance record not found for student ID " + studentId + " on date " + date + ". Cannot update SMS sent status.");
+                MarklyLog.w(TAG, "Attendance record not found for student ID " + studentId + " on date " + date + ". Cannot update SMS sent status.");
             }
         });
     }
 
 
     public void deleteAttendance(long attendanceId) {
-        databaseWriteExecutor.execute(() -> attendanceDao.deleteAttendance(attendanceId));
+        databaseWriteExecutor.execute(() -> Metrics.timer("dao.attendance.deleteAttendance").time(() -> database.runInTransaction(() -> {
+            Long studentId = streakDao.getStudentIdOfAttendance(attendanceId);
+            attendanceDao.deleteAttendance(attendanceId);
+            if (studentId != null) {
+                updateStreak(studentId, null);
+                recountSemesterAttendance(studentId);
+            }
+        })));
+    }
+
+    // --- Absence streaks ---
+    /**
+     * Brings a student's absence streak up to date after one of their records was written. A record dated after
+     * every recorded day extends the streak in O(1); an edit or removal in the past, or a first record, recomputes
+     * it from the student's own history. Call inside the transaction that wrote the record.
+     * @param added The inserted record, or null if a record was changed or removed.
+     * @return True if the current absent run has just reached CHRONIC_ABSENCE_RUN.
+     */
+    private boolean updateStreak(long studentId, Attendance added) {
+        StudentStreak streak = streakDao.getStreak(studentId);
+        int runBefore = streak != null ? streak.getCurrentAbsentRun() : 0;
+        if (streak != null && added != null && streak.canAppend(added.getDate())) {
+            streak.record(added.isPresent(), added.getDate());
+            Metrics.counter("streak.appended").increment();
+        } else {
+            streak = new StudentStreak(studentId);
+            List<StreakDao.RecordedDay> days = streakDao.getRecordedDays(studentId);
+            for (StreakDao.RecordedDay day : days) {
+                streak.record(day.isPresent, day.date);
+            }
+            Metrics.counter("streak.recomputed").increment();
+            if (days.isEmpty()) {
+                streakDao.deleteStreak(studentId);
+                return false;
+            }
+        }
+        streakDao.upsert(streak);
+        return runBefore < CHRONIC_ABSENCE_RUN && streak.getCurrentAbsentRun() >= CHRONIC_ABSENCE_RUN;
+    }
+
+    /**
+     * Recomputes every absence streak, after bulk writes that bypass insertAttendance(). Call inside their transaction.
+     */
+    private void rebuildStreaks() {
+        long start = System.nanoTime();
+        int streaks = StudentStreak.rebuildAll(database.getOpenHelper().getWritableDatabase());
+        Metrics.timer("streak.rebuildAll").stop(start);
+        MarklyLog.d(TAG, "Rebuilt absence streaks of " + streaks + " students.");
+    }
+
+    // --- Exam eligibility ---
+    /**
+     * Adds a new record to the student's counts for this term in O(1), if their semester has a plan and the record
+     * falls in its term. Call inside the transaction that inserted the record.
+     */
+    private void addToSemesterAttendance(Attendance added) {
+        SemesterPlan plan = eligibilityDao.getPlanOfStudent(added.getStudentId());
+        if (plan == null || added.getDate() < plan.getStartDate()) {
+            return;
+        }
+        int present = added.isPresent() ? 1 : 0;
+        if (eligibilityDao.addToCounts(added.getStudentId(), present, 1 - present) == 0) {
+            eligibilityDao.insertCounts(new SemesterAttendance(added.getStudentId(), plan.getSemester(), present, 1 - present));
+        }
+        Metrics.counter("eligibility.appended").increment();
+    }
+
+    /**
+     * Recounts a student's term after an edit or removal, or a change of semester. Call inside the write's transaction.
+     */
+    private void recountSemesterAttendance(long studentId) {
+        SemesterAttendance.recount(database.getOpenHelper().getWritableDatabase(), studentId);
+        Metrics.counter("eligibility.recounted").increment();
+    }
+
+    /**
+     * Recounts every student's term, after bulk writes that bypass insertAttendance(). Call inside their transaction.
+     */
+    private void rebuildSemesterAttendance() {
+        Metrics.timer("eligibility.rebuildAll").time(() -> SemesterAttendance.rebuildAll(database.getOpenHelper().getWritableDatabase()));
+    }
+
+    /**
+     * @return The plan of a semester's current term, or null if none was set.
+     */
+    public SemesterPlan getSemesterPlanSync(int semester) {
+        return Metrics.timer("dao.eligibility.getPlan").time(() -> eligibilityDao.getPlan(semester));
+    }
+
+    /**
+     * Sets or replaces the plan of a semester and counts its students' records of the term in one pass.
+     */
+    public void saveSemesterPlanSync(SemesterPlan plan) {
+        Metrics.timer("dao.eligibility.savePlan").time(() -> database.runInTransaction(() -> {
+            eligibilityDao.upsertPlan(plan);
+            SemesterAttendance.rebuildSemester(database.getOpenHelper().getWritableDatabase(), plan.getSemester());
+        }));
+        MarklyLog.d(TAG, "Saved semester plan: {}", plan);
+    }
+
+    public void deleteSemesterPlanSync(int semester) {
+        Metrics.timer("dao.eligibility.deletePlan").time(() -> database.runInTransaction(() -> {
+            eligibilityDao.deletePlan(semester);
+            eligibilityDao.deleteCountsOfSemester(semester);
+        }));
+    }
+
+    /**
+     * Students of a semester who are at risk of missing, or can no longer reach, its minimum attendance, worst
+     * first. Read from the running counts; the index on absent days bounds the rows read to the at-risk ones.
+     * @param section The section to list (case-insensitive), or null for all.
+     * @return An empty list if the semester has no plan.
+     */
+    public List<AtRiskStudent> getAtRiskStudentsSync(int semester, String section, int limit) {
+        long start = System.nanoTime();
+        SemesterPlan plan = eligibilityDao.getPlan(semester);
+        if (plan == null) {
+            return Collections.emptyList();
+        }
+        int minAbsent = EligibilityProjection.minAbsentDaysAtRisk(plan.getWorkingDays(), plan.getMinAttendancePercent());
+        List<EligibilityDao.Standing> standings = eligibilityDao.getStandings(semester, minAbsent, section, limit);
+        List<AtRiskStudent> atRisk = new ArrayList<>(standings.size());
+        for (EligibilityDao.Standing standing : standings) {
+            EligibilityProjection projection = EligibilityProjection.project(standing.presentCount, standing.absentCount,
+                    plan.getWorkingDays(), plan.getMinAttendancePercent());
+            // Students who have already attended enough days are safe whatever their absences
+            if (projection.isAtRisk()) {
+                atRisk.add(new AtRiskStudent(standing.student, projection));
+            }
+        }
+        Metrics.timer("dao.eligibility.getAtRiskStudents").stop(start);
+        return atRisk;
+    }
+
+    /**
+     * Students currently absent at least CHRONIC_ABSENCE_RUN recorded days in a row, longest runs first.
+     * @param semester The semester to list, or 0 for all.
+     * @param section The section to list (case-insensitive), or null for all.
+     */
+    public List<StreakDao.ChronicAbsentee> getChronicAbsenteesSync(int semester, String section, int limit) {
+        return Metrics.timer("dao.streak.getChronicAbsentees").time(() ->
+                streakDao.getChronicAbsentees(CHRONIC_ABSENCE_RUN, semester, section, limit));
+    }
+
+    public boolean isChronicAbsenceAlertEnabled() {
+        return preferences().getBoolean(KEY_CHRONIC_ABSENCE_ALERTS, true);
+    }
+
+    public void setChronicAbsenceAlertEnabled(boolean enabled) {
+        preferences().edit().putBoolean(KEY_CHRONIC_ABSENCE_ALERTS, enabled).apply();
+    }
+
+    private SharedPreferences preferences() {
+        return application.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    private void postChronicAbsenceAlert(long studentId) {
+        if (!isChronicAbsenceAlertEnabled()) {
+            return;
+        }
+        Student student = studentDao.getStudentById(studentId);
+        String name = student != null ? student.getName() : "Student ID " + studentId;
+        // Coalesced by NotificationBus when a whole class is saved at once
+        NotificationBus.getInstance(application).post(NotificationHelper.CATEGORY_ATTENDANCE_REPORT, "Chronic Absence Alert",
+                name + " has been absent " + CHRONIC_ABSENCE_RUN + " working days in a row.", "WARNING");
     }
 
     public LiveData<Integer> getPresentCountForStudentMonth(long studentId, long startDate, long endDate) {
@@ -161,8 +514,28 @@ public class StudentRepository {
         return attendanceDao.getAllAttendanceForMonth(startDate, endDate);
     }
 
+    /**
+     * The attendance records of an inclusive date range, for the students of a semester (0 for all) or one of its sections.
+     * @param section A section as returned by getSectionsBySemesterSync(), or null for the whole semester.
+     */
+    public List<Attendance> getAttendanceInRangeSync(int semester, String section, long startDate, long endDate) {
+        if (semester == 0) {
+            return Metrics.timer("dao.attendance.getAttendanceInRangeSync").time(() ->
+                    attendanceDao.getAttendanceInRangeSync(startDate, endDate));
+        }
+        if (section == null) {
+            return Metrics.timer("dao.attendance.getAttendanceForSemesterInRangeSync").time(() ->
+                    attendanceDao.getAttendanceForSemesterInRangeSync(semester, startDate, endDate));
+        }
+        return Metrics.timer("dao.attendance.getAttendanceForSectionInRangeSync").time(() ->
+                attendanceDao.getAttendanceForSectionInRangeSync(semester, section, startDate, endDate));
+    }
+
     public List<Attendance> getAllAttendanceSync() {
-        return attendanceDao.getAllAttendanceRecordsSync();
+        List<Attendance> records = Metrics.timer("dao.attendance.getAllAttendanceRecordsSync").time(() -> attendanceDao.getAllAttendanceRecordsSync());
+        // Full-table reads should be rare, the row count makes callers that scan everything easy to spot
+        Metrics.counter("dao.attendance.fullScanRows").add(records.size());
+        return records;
     }
 
     public LiveData<List<Long>> getAllStudentIdsWithAttendance() {
@@ -174,25 +547,24 @@ public class StudentRepository {
     }
 
     public Attendance getAttendanceByStudentAndDate(long studentId, long date) {
-        return attendanceDao.getAttendanceByStudentAndDate(studentId, date);
+        return Metrics.timer("dao.attendance.getAttendanceByStudentAndDate").time(() -> attendanceDao.getAttendanceByStudentAndDate(studentId, date));
     }
 
     public Long getLatestAttendanceDate() {
-        return attendanceDao.getLatestAttendanceDate();
+        return Metrics.timer("dao.attendance.getLatestAttendanceDate").time(() -> attendanceDao.getLatestAttendanceDate());
     }
 
     // This method now fetches students who are absent AND whose SMS has NOT been sent
     public List<Student> getAbsentStudentsOnDate(long date) {
+        long start = System.nanoTime();
         List<Long> absentStudentIds = attendanceDao.getAbsentStudentIdsOnDateForSms(date); // Use new DAO method
-        List<Student> absentStudents = new ArrayList<>();
-        if (absentStudentIds != null) {
-            for (long studentId : absentStudentIds) {
-                Student student = studentDao.getStudentById(studentId); // This is a synchronous call to get a student
-                if (student != null) {
-                    absentStudents.add(student);
-                }
-            }
+        long[] ids = new long[absentStudentIds != null ? absentStudentIds.size() : 0];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = absentStudentIds.get(i);
         }
+        List<Student> absentStudents = getStudentsByIdsSync(ids); // One query per chunk of ids instead of one per student
+        // The id query and the student lookups, timed as a whole
+        Metrics.timer("dao.attendance.getAbsentStudentsOnDate").stop(start);
         return absentStudents;
     }
 
@@ -205,43 +577,291 @@ public class StudentRepository {
      */
     public List<Student> getStudentsWithoutAttendanceForDateAndSemester(int semester, long dateMillis) {
         // This method will use the new query in StudentDao
-        return studentDao.getStudentsWithoutAttendanceForDateAndSemester(semester, dateMillis);
+        return Metrics.timer("dao.student.getStudentsWithoutAttendanceForDateAndSemester").time(() ->
+                studentDao.getStudentsWithoutAttendanceForDateAndSemester(semester, dateMillis));
     }
 
+    /**
+     * The same for one section of the semester.
+     * @param section A section as returned by getSectionsBySemesterSync(), or null for the whole semester.
+     */
+    public List<Student> getStudentsWithoutAttendanceForDateAndSemester(int semester, String section, long dateMillis) {
+        if (section == null) {
+            return getStudentsWithoutAttendanceForDateAndSemester(semester, dateMillis);
+        }
+        return Metrics.timer("dao.student.getStudentsWithoutAttendanceForDateSemesterAndSection").time(() ->
+                studentDao.getStudentsWithoutAttendanceForDateSemesterAndSection(semester, section, dateMillis));
+    }
+
+    /**
+     * Students of a semester, or of one of its sections, absent on a date and not yet notified by SMS (sent or
+     * queued), sorted by name. Filtered in SQL, unlike getAbsentStudentsOnDate() which covers every semester.
+     * @param section A section as returned by getSectionsBySemesterSync(), or null for the whole semester.
+     */
+    public List<Student> getPendingSmsAbsenteesSync(int semester, String section, long date) {
+        if (section == null) {
+            return Metrics.timer("dao.student.getPendingSmsAbsentees").time(() -> studentDao.getPendingSmsAbsentees(semester, date));
+        }
+        return Metrics.timer("dao.student.getPendingSmsAbsenteesInSection").time(() ->
+                studentDao.getPendingSmsAbsenteesInSection(semester, section, date));
+    }
+
+
+    /**
+     * Students of a semester (0 for all) marked absent on a date, sorted by name.
+     */
+    public List<Student> getAbsenteesOnDateSync(int semester, long date) {
+        return Metrics.timer("dao.student.getAbsenteesOnDate").time(() -> studentDao.getAbsenteesOnDate(semester, date));
+    }
+
+    /**
+     * Attendance rate per day, week or month between two dates, counted in SQL and downsampled to at most maxPoints
+     * points (see TrendSeries.downsample()). Call off the main thread.
+     * @param granularity TREND_DAILY, TREND_WEEKLY or TREND_MONTHLY.
+     * @param semester The semester of the class, or 0 for all. Ignored for a student.
+     * @param section The section of the class (case-insensitive), or null for all. Ignored for a student.
+     * @param studentId A student to follow alone, or 0 for the whole class.
+     */
+    public TrendSeries getAttendanceTrendSync(int granularity, int semester, String section, long studentId,
+                                              long startDate, long endDate, int maxPoints) {
+        long start = System.nanoTime();
+        Calendar calendar = Calendar.getInstance();
+        long weekOrigin = bucketStart(TREND_WEEKLY, startDate, calendar);
+        List<DailyCount> counts;
+        if (studentId > 0) {
+            counts = granularity == TREND_MONTHLY
+                    ? attendanceDao.getStudentMonthlyCounts(studentId, startDate, endDate)
+                    : attendanceDao.getStudentCountsPerBucket(studentId, startDate, endDate,
+                            granularity == TREND_WEEKLY ? weekOrigin : bucketStart(TREND_DAILY, startDate, calendar),
+                            granularity == TREND_WEEKLY ? WEEK_MILLIS : DAY_MILLIS);
+        } else if (granularity == TREND_WEEKLY) {
+            counts = attendanceDao.getWeeklyCounts(semester, section, startDate, endDate, weekOrigin);
+        } else if (granularity == TREND_MONTHLY) {
+            counts = attendanceDao.getMonthlyCounts(semester, section, startDate, endDate);
+        } else {
+            counts = attendanceDao.getDailyCounts(semester, section, startDate, endDate);
+        }
+
+        int size = counts.size();
+        long[] bucketStarts = new long[size];
+        float[] rates = new float[size];
+        int[] recorded = new int[size];
+        for (int i = 0; i < size; i++) {
+            DailyCount count = counts.get(i);
+            // Rows are dated by their first recorded day, plot them at the start of their week or month instead
+            bucketStarts[i] = bucketStart(granularity, count.date, calendar);
+            rates[i] = count.recordedCount == 0 ? 0f : count.presentCount * 100f / count.recordedCount;
+            recorded[i] = count.recordedCount;
+        }
+        TrendSeries series = new TrendSeries(bucketStarts, rates, recorded, size).downsample(maxPoints);
+        Metrics.timer("analytics.attendanceTrend").stop(start);
+        MarklyLog.d(TAG, "Attendance trend: {} of {} points", series.size(), size);
+        return series;
+    }
+
+    /**
+     * @return Local midnight of the first day of the day, week or month the date falls in.
+     */
+    private static long bucketStart(int granularity, long date, Calendar calendar) {
+        calendar.setTimeInMillis(date);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        if (granularity == TREND_WEEKLY) {
+            int offset = (calendar.get(Calendar.DAY_OF_WEEK) - calendar.getFirstDayOfWeek() + 7) % 7;
+            calendar.add(Calendar.DAY_OF_MONTH, -offset);
+        } else if (granularity == TREND_MONTHLY) {
+            calendar.set(Calendar.DAY_OF_MONTH, 1);
+        }
+        return calendar.getTimeInMillis();
+    }
 
     public void deleteAllAttendanceSync() {
-        Log.d(TAG, "Attempting to delete all attendance synchronously.");
-        attendanceDao.deleteAllAttendance();
-        Log.d(TAG, "All attendance deleted synchronously.");
+        MarklyLog.d(TAG, "Attempting to delete all attendance synchronously.");
+        Metrics.timer("dao.attendance.deleteAllAttendance").time(() -> database.runInTransaction(() -> {
+            attendanceDao.deleteAllAttendance();
+            streakDao.deleteAllStreaks();
+            eligibilityDao.deleteAllCounts();
+        }));
+        MarklyLog.d(TAG, "All attendance deleted synchronously.");
     }
 
     // --- Notification operations ---
     public LiveData<List<Notification>> getAllNotifications() {
+        if (allNotifications == null) {
+            allNotifications = notificationDao.getAllNotifications();
+        }
         return allNotifications;
     }
 
     public LiveData<Integer> getUnreadNotificationCount() {
+        if (unreadNotificationCount == null) {
+            unreadNotificationCount = notificationDao.getUnreadNotificationCount();
+        }
         return unreadNotificationCount;
     }
 
+    /**
+     * The newest unread notification, or null when everything is read. Reads one row through the
+     * (is_read, timestamp) index instead of the whole table.
+     */
+    public LiveData<Notification> getLatestUnreadNotification() {
+        if (latestUnreadNotification == null) {
+            latestUnreadNotification = notificationDao.getLatestUnreadNotification();
+        }
+        return latestUnreadNotification;
+    }
+
+    // --- Search ---
+    /**
+     * Search-as-you-type: call on every keystroke, results arrive on getSearchResults() once typing pauses for
+     * SEARCH_DEBOUNCE_MILLIS. Results of a query that was superseded in the meantime are dropped.
+     * A blank text clears the results right away.
+     */
+    public void search(String text) {
+        int generation = searchGeneration.incrementAndGet();
+        synchronized (this) {
+            if (pendingSearch != null) {
+                pendingSearch.cancel(false);
+                pendingSearch = null;
+            }
+            if (text == null || text.trim().isEmpty()) {
+                searchResults.postValue(new ArrayList<>());
+                return;
+            }
+            pendingSearch = SEARCH_EXECUTOR.schedule(() -> {
+                try {
+                    List<Student> results = searchStudentsSync(text);
+                    if (generation == searchGeneration.get()) {
+                        searchResults.postValue(results);
+                    }
+                } catch (Exception e) {
+                    MarklyLog.e(TAG, "Search failed for '" + text + "'", e);
+                }
+            }, SEARCH_DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public LiveData<List<Student>> getSearchResults() {
+        return searchResults;
+    }
+
+    /**
+     * Up to SEARCH_LIMIT students matching every word of the text, names starting with the first word first.
+     * Must not be called on the main thread.
+     */
+    public List<Student> searchStudentsSync(String text) {
+        String match = buildSearchQuery(text);
+        if (match == null) {
+            return new ArrayList<>();
+        }
+        String namePrefix = "%";
+        for (String word : text.split("[^\\p{L}\\p{Nd}]+")) {
+            if (!word.isEmpty() && !isDigits(word)) {
+                namePrefix = word + "%";
+                break;
+            }
+        }
+        String prefix = namePrefix;
+        return Metrics.timer("dao.student.searchStudents").time(() -> studentDao.searchStudents(match, prefix, SEARCH_LIMIT));
+    }
+
+    /**
+     * Turns free text into an FTS4 MATCH expression. Every word becomes a prefix term and all of them must match
+     * (name, section or phone). Words of three or more digits are looked up as the end of a phone number:
+     * "ram 2345" becomes "ram* phone_search_key:5432*". Punctuation is dropped, so user input cannot form operators.
+     * @return The expression, or null if the text has no searchable word.
+     */
+    static String buildSearchQuery(String text) {
+        if (text == null) {
+            return null;
+        }
+        StringBuilder match = new StringBuilder();
+        for (String word : text.split("[^\\p{L}\\p{Nd}]+")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            if (match.length() > 0) {
+                match.append(' ');
+            }
+            if (word.length() >= 3 && isDigits(word)) {
+                match.append("phone_search_key:").append(Student.reversedDigits(word)).append('*');
+            } else {
+                match.append(word.toLowerCase(Locale.ROOT)).append('*');
+            }
+        }
+        return match.length() > 0 ? match.toString() : null;
+    }
+
+    private static boolean isDigits(String word) {
+        for (int i = 0; i < word.length(); i++) {
+            if (word.charAt(i) < '0' || word.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // --- SMS outbox ---
+    /**
+     * Absences of the given students in [startDate, endDate] that have neither been notified nor queued.
+     * Queried in chunks so that large selections stay under SQLite's bound-variable limit.
+     */
+    public List<Attendance> getPendingAbsencesForStudents(List<Long> studentIds, long startDate, long endDate) {
+        long start = System.nanoTime();
+        List<Attendance> absences = new ArrayList<>();
+        for (int from = 0; from < studentIds.size(); from += MAX_QUERY_IDS) {
+            List<Long> chunk = studentIds.subList(from, Math.min(studentIds.size(), from + MAX_QUERY_IDS));
+            absences.addAll(attendanceDao.getPendingAbsencesForStudents(chunk, startDate, endDate));
+        }
+        Metrics.timer("dao.attendance.getPendingAbsencesForStudents").stop(start);
+        return absences;
+    }
+
+    /**
+     * Attendance percentage and current absence streak of the given students up to a date, by student id.
+     * Students without any attendance record are missing from the map.
+     */
+    public Map<Long, AttendanceDao.StudentAttendanceStats> getAttendanceStatsForStudents(List<Long> studentIds, long date) {
+        long start = System.nanoTime();
+        Map<Long, AttendanceDao.StudentAttendanceStats> statsByStudent = new HashMap<>();
+        for (int from = 0; from < studentIds.size(); from += MAX_QUERY_IDS) {
+            List<Long> chunk = studentIds.subList(from, Math.min(studentIds.size(), from + MAX_QUERY_IDS));
+            for (AttendanceDao.StudentAttendanceStats stats : attendanceDao.getAttendanceStatsForStudents(chunk, date)) {
+                statsByStudent.put(stats.studentId, stats);
+            }
+        }
+        Metrics.timer("dao.attendance.getAttendanceStatsForStudents").stop(start);
+        return statsByStudent;
+    }
+
+
+    public LiveData<Integer> getPendingSmsCount() {
+        return database.smsOutboxDao().getPendingCount();
+    }
+
+    /**
+     * Adds an in-app notification without a system notification. It is written with the next NotificationBus window.
+     */
     public void insertNotification(Notification notification) {
-        databaseWriteExecutor.execute(() -> notificationDao.insertNotification(notification));
+        NotificationBus.getInstance(application).post(NotificationHelper.CATEGORY_IN_APP, notification.getTitle(), notification.getMessage(), notification.getType());
     }
 
     public void markNotificationAsRead(long notificationId) {
-        databaseWriteExecutor.execute(() -> notificationDao.markNotificationAsRead(notificationId));
+        databaseWriteExecutor.execute(() -> Metrics.timer("dao.notification.markNotificationAsRead").time(() -> notificationDao.markNotificationAsRead(notificationId)));
     }
 
     public void markAllNotificationsAsRead() {
-        databaseWriteExecutor.execute(() -> notificationDao.markAllNotificationsAsRead());
+        databaseWriteExecutor.execute(() -> Metrics.timer("dao.notification.markAllNotificationsAsRead").time(() -> notificationDao.markAllNotificationsAsRead()));
     }
 
     public void deleteNotification(long notificationId) {
-        databaseWriteExecutor.execute(() -> notificationDao.deleteNotification(notificationId));
+        databaseWriteExecutor.execute(() -> Metrics.timer("dao.notification.deleteNotification").time(() -> notificationDao.deleteNotification(notificationId)));
     }
 
     public void deleteAllNotifications() {
-        databaseWriteExecutor.execute(() -> notificationDao.deleteAllNotifications());
+        databaseWriteExecutor.execute(() -> Metrics.timer("dao.notification.deleteAllNotifications").time(() -> notificationDao.deleteAllNotifications()));
     }
 
 
@@ -259,6 +879,112 @@ public class StudentRepository {
     }
 
 
+    /**
+     * A student with their eligibility projection for the current term.
+     */
+    public static class AtRiskStudent {
+        public final Student student;
+        public final EligibilityProjection projection;
+
+        public AtRiskStudent(Student student, EligibilityProjection projection) {
+            this.student = student;
+            this.projection = projection;
+        }
+    }
+
+
+    /**
+     * Diff summary of a merge import: how many rows were inserted, updated, deleted or left untouched.
+     */
+    public static class MergeResult {
+        public int insertedStudents = 0;
+        public int updatedStudents = 0;
+        public int deletedStudents = 0;
+        public int unchangedStudents = 0;
+        public int insertedAttendance = 0;
+        public int updatedAttendance = 0;
+        public int deletedAttendance = 0;
+        public int unchangedAttendance = 0;
+        public List<String> skippedStudents = new ArrayList<>();
+        public List<String> skippedAttendance = new ArrayList<>();
+        public String errorMessage = null;
+
+        public MergeResult() {}
+
+        public boolean hasChanges() {
+            return insertedStudents + updatedStudents + deletedStudents
+                    + insertedAttendance + updatedAttendance + deletedAttendance > 0;
+        }
+
+        /**
+         * @return A one-line, human readable summary of the diff.
+         */
+        public String toSummary() {
+            return "Students: " + insertedStudents + " added, " + updatedStudents + " updated, "
+                    + deletedStudents + " removed, " + unchangedStudents + " unchanged. "
+                    + "Attendance: " + insertedAttendance + " added, " + updatedAttendance + " updated, "
+                    + deletedAttendance + " removed, " + unchangedAttendance + " unchanged.";
+        }
+    }
+
+    /**
+     * Merges imported data into the database, touching only the rows that differ from what is stored.
+     * Runs in a single transaction, so a failure leaves the database untouched.
+     * @param importedStudents The students from the imported file.
+     * @param importedAttendances The attendance records from the imported file.
+     * @param removeMissing True if students and attendance not present in the file should be deleted.
+     * @param matchOnStudentId True if the file's Student IDs come from a Markly export and may be used
+     *                         to match renamed students.
+     * @return A MergeResult describing the diff that was applied.
+     */
+    public MergeResult performMergeImportTransaction(List<ExcelUtils.StudentImport> importedStudents,
+                                                     List<ExcelUtils.AttendanceImport> importedAttendances,
+                                                     boolean removeMissing,
+                                                     boolean matchOnStudentId) {
+        ImportMerger merger = new ImportMerger(studentDao, attendanceDao);
+        Metrics.Timer timer = Metrics.timer("pipeline.import.mergeTransaction");
+        long start = timer.start();
+        try {
+            MergeResult result = database.runInTransaction(() -> {
+                MergeResult merged = merger.merge(importedStudents, importedAttendances, removeMissing, matchOnStudentId);
+                rebuildStreaks(); // Cheaper than replaying every merged record, and correct whatever the merge touched
+                rebuildSemesterAttendance();
+                return merged;
+            });
+            timer.stop(start);
+            Metrics.counter("pipeline.import.mergeRowsWritten").add(result.insertedStudents + result.updatedStudents
+                    + result.deletedStudents + result.insertedAttendance + result.updatedAttendance + result.deletedAttendance);
+            return result;
+        } catch (Exception e) {
+            MarklyLog.e(TAG, "Merge import failed, transaction rolled back: " + e.getMessage(), e);
+            MergeResult result = new MergeResult();
+            result.errorMessage = "Merge import failed: " + e.getMessage();
+            return result;
+        }
+    }
+
+    /**
+     * Checks an imported student the way the add-student form does, for the replace and merge imports alike.
+     * @return Why the row cannot be stored, or null if it is valid.
+     */
+    static String validateImport(ExcelUtils.StudentImport sImport) {
+        String name = sImport.name != null ? sImport.name.trim() : "";
+        String mobile = sImport.mobile != null ? sImport.mobile.trim() : "";
+        String guardianMobile = sImport.guardianMobile != null ? sImport.guardianMobile.trim() : "";
+        String section = sImport.section != null ? sImport.section.trim() : "";
+        String gender = sImport.gender != null ? sImport.gender.trim() : "";
+        if (name.isEmpty() || mobile.isEmpty() || guardianMobile.isEmpty() || section.isEmpty() || sImport.currentSemester <= 0 || gender.equalsIgnoreCase("Select Gender") || gender.isEmpty()) {
+            return "Missing/Invalid fields";
+        }
+        if (mobile.length() != 10 || !mobile.matches("\\d+")) {
+            return "Invalid mobile format";
+        }
+        if (guardianMobile.length() != 10 || !guardianMobile.matches("\\d+")) {
+            return "Invalid guardian mobile format";
+        }
+        return null;
+    }
+
     /**
      * Performs a full import operation within a Room transaction.
      * This ensures that the deletion of old data and insertion of new data are atomic.
@@ -271,32 +997,34 @@ public class StudentRepository {
     public ImportResult performFullImportTransaction(List<ExcelUtils.StudentImport> importedStudents,
                                                      List<ExcelUtils.AttendanceImport> importedAttendances,
                                                      Map<Long, Long> oldIdToNewIdMap) {
-        Log.d(TAG, "Starting performFullImportTransaction...");
+        MarklyLog.d(TAG, "Starting performFullImportTransaction...");
+        long transactionStart = System.nanoTime();
         ImportResult result = new ImportResult();
         // Use the stored application context
         Application app = this.application;
 
-        // Clear existing database data within the transaction
+        // Clear existing database data within the transaction. The import replaces this device's data,
+        // so neither the deletions nor the new rows are sync changes of their own; see SyncSchema.stampUnsynced
+        SupportSQLiteDatabase db = database.getOpenHelper().getWritableDatabase();
+        SyncSchema.setApplying(db, true);
         try {
-            Log.d(TAG, "Attempting to delete all existing attendance records.");
+            MarklyLog.d(TAG, "Attempting to delete all existing attendance records.");
             attendanceDao.deleteAllAttendance();
-            Log.d(TAG, "All existing attendance records deleted.");
-            Log.d(TAG, "Attempting to delete all existing student records.");
+            MarklyLog.d(TAG, "All existing attendance records deleted.");
+            MarklyLog.d(TAG, "Attempting to delete all existing student records.");
             studentDao.deleteAllStudents();
-            Log.d(TAG, "All existing student records deleted.");
+            MarklyLog.d(TAG, "All existing student records deleted.");
         } catch (Exception e) {
             result.errorMessage = "Failed to clear existing data: " + e.getMessage();
-            Log.e(TAG, "Error during data cleanup in transaction: " + e.getMessage(), e);
-            // Insert IN-APP notification for import failure
-            insertNotification(new Notification("Data Import Failed", "Failed to clear existing data during import: " + e.getMessage(), System.currentTimeMillis(), false, "ERROR"));
-            // Send SYSTEM notification for import failure
-            NotificationHelper.sendImportExportNotification(app, "Data Import Failed", "Failed to clear existing data during import: " + e.getMessage(), "ERROR");
+            MarklyLog.e(TAG, "Error during data cleanup in transaction: " + e.getMessage(), e);
+            NotificationBus.getInstance(app).post(NotificationHelper.CATEGORY_IMPORT_EXPORT, "Data Import Failed", "Failed to clear existing data during import: " + e.getMessage(), "ERROR"); // In-app and system notification
+            SyncSchema.setApplying(db, false);
             return result;
         }
 
 
         // Insert Students and map old IDs to new Room generated IDs
-        Log.d(TAG, "Starting student import section. Total students to import: " + importedStudents.size());
+        MarklyLog.d(TAG, "Starting student import section. Total students to import: " + importedStudents.size());
         for (ExcelUtils.StudentImport sImport : importedStudents) {
             String name = sImport.name != null ? sImport.name.trim() : "";
             String mobile = sImport.mobile != null ? sImport.mobile.trim() : "";
@@ -305,79 +1033,89 @@ public class StudentRepository {
             String gender = sImport.gender != null ? sImport.gender.trim() : "";
 
             try {
-                Log.d(TAG, "Processing student: " + name + " (Old ID: " + sImport.oldStudentId + ")");
-                // Basic validation for imported data
-                if (name.isEmpty() || mobile.isEmpty() || guardianMobile.isEmpty() || section.isEmpty() || sImport.currentSemester <= 0 || gender.equalsIgnoreCase("Select Gender") || gender.isEmpty()) {
-                    result.skippedStudents.add(name + " (Validation Failed: Missing/Invalid fields)");
-                    Log.w(TAG, "Skipping student due to validation: " + name + " - Missing/Invalid fields.");
-                    continue;
-                }
-                if (mobile.length() != 10 || !mobile.matches("\\d+")) {
-                    result.skippedStudents.add(name + " (Validation Failed: Invalid mobile format)");
-                    Log.w(TAG, "Skipping student due to validation: " + name + " - Invalid mobile format: " + mobile);
-                    continue;
+                if (MarklyLog.isDebugEnabled()) {
+                    MarklyLog.d(TAG, "Processing student: " + name + " (Old ID: " + sImport.oldStudentId + ")");
                 }
-                if (guardianMobile.length() != 10 || !guardianMobile.matches("\\d+")) {
-                    result.skippedStudents.add(name + " (Validation Failed: Invalid guardian mobile format)");
-                    Log.w(TAG, "Skipping student due to validation: " + name + " - Invalid guardian mobile format: " + guardianMobile);
+                // Basic validation for imported data
+                String problem = validateImport(sImport);
+                if (problem != null) {
+                    result.skippedStudents.add(name + " (Validation Failed: " + problem + ")");
+                    MarklyLog.w(TAG, "Skipping student due to validation: {} - {}", name, problem);
                     continue;
                 }
 
                 Student student = new Student(name, gender, mobile, guardianMobile, sImport.currentSemester, section);
                 long newStudentId = studentDao.insert(student); // Direct call to DAO within transaction
-                Log.d(TAG, "Student '" + name + "' insertion result (new ID or -1): " + newStudentId);
+                if (MarklyLog.isDebugEnabled()) {
+                    MarklyLog.d(TAG, "Student '" + name + "' insertion result (new ID or -1): " + newStudentId);
+                }
 
                 if (newStudentId != -1) {
                     oldIdToNewIdMap.put(sImport.oldStudentId, newStudentId);
                     result.importedStudentCount++;
-                    Log.d(TAG, "Student '" + name + "' successfully inserted. Mapped Old ID " + sImport.oldStudentId + " to New ID " + newStudentId);
+                    if (MarklyLog.isDebugEnabled()) {
+                        MarklyLog.d(TAG, "Student '" + name + "' successfully inserted. Mapped Old ID " + sImport.oldStudentId + " to New ID " + newStudentId);
+                    }
                 } else {
                     result.skippedStudents.add(name + " (Database insertion failed or duplicate detected)");
-                    Log.e(TAG, "Student '" + name + "' insertion failed (returned -1), likely duplicate PK or constraint violation.");
+                    MarklyLog.e(TAG, "Student '" + name + "' insertion failed (returned -1), likely duplicate PK or constraint violation.");
                 }
             } catch (Exception e) {
                 result.skippedStudents.add(name + " (Unexpected error during student insertion: " + e.getMessage() + ")");
-                Log.e(TAG, "Unexpected error inserting student during import: " + name + " - " + e.getMessage(), e);
+                MarklyLog.e(TAG, "Unexpected error inserting student during import: " + name + " - " + e.getMessage(), e);
             }
         }
-        Log.d(TAG, "Finished student import section. Imported students: " + result.importedStudentCount + ", Skipped: " + result.skippedStudents.size());
+        MarklyLog.d(TAG, "Finished student import section. Imported students: " + result.importedStudentCount + ", Skipped: " + result.skippedStudents.size());
 
 
         // Insert Attendance records, mapping to new student IDs
-        Log.d(TAG, "Starting attendance import section. Total attendance records to import from Excel: " + (importedAttendances != null ? importedAttendances.size() : 0));
+        MarklyLog.d(TAG, "Starting attendance import section. Total attendance records to import from Excel: " + (importedAttendances != null ? importedAttendances.size() : 0));
         if (importedAttendances != null) {
             for (ExcelUtils.AttendanceImport aImport : importedAttendances) {
                 try {
-                    Log.d(TAG, "Processing attendance for Old Student ID: " + aImport.oldStudentId + " on date: " + aImport.date);
+                    if (MarklyLog.isDebugEnabled()) {
+                        MarklyLog.d(TAG, "Processing attendance for Old Student ID: " + aImport.oldStudentId + " on date: " + aImport.date);
+                    }
                     if (oldIdToNewIdMap.containsKey(aImport.oldStudentId)) {
                         long newStudentId = oldIdToNewIdMap.get(aImport.oldStudentId);
-                        Log.d(TAG, "Found new student ID " + newStudentId + " for Old Student ID " + aImport.oldStudentId);
+                        if (MarklyLog.isDebugEnabled()) {
+                            MarklyLog.d(TAG, "Found new student ID " + newStudentId + " for Old Student ID " + aImport.oldStudentId);
+                        }
 
                         // When importing attendance, assume isSmsSent is false by default.
                         Attendance attendance = new Attendance(newStudentId, aImport.date, aImport.isPresent);
                         long rowId = attendanceDao.insertAttendance(attendance); // Direct call to DAO within transaction
-                        Log.d(TAG, "Attendance insertion result (new ID or -1): " + rowId + " for student ID " + newStudentId + " on date " + aImport.date);
+                        if (MarklyLog.isDebugEnabled()) {
+                            MarklyLog.d(TAG, "Attendance insertion result (new ID or -1): " + rowId + " for student ID " + newStudentId + " on date " + aImport.date);
+                        }
 
                         if (rowId != -1) {
                             result.importedAttendanceCount++;
-                            Log.d(TAG, "Attendance successfully inserted for student ID " + newStudentId + " on date " + aImport.date);
+                            if (MarklyLog.isDebugEnabled()) {
+                                MarklyLog.d(TAG, "Attendance successfully inserted for student ID " + newStudentId + " on date " + aImport.date);
+                            }
                         } else {
                             result.skippedAttendance.add("Attendance for old Student ID " + aImport.oldStudentId + " on date " + aImport.date + " (Database insertion failed or duplicate)");
-                            Log.e(TAG, "Attendance insertion failed (returned -1) for old Student ID " + aImport.oldStudentId + " on date " + aImport.date + ", likely duplicate or constraint violation.");
+                            MarklyLog.e(TAG, "Attendance insertion failed (returned -1) for old Student ID " + aImport.oldStudentId + " on date " + aImport.date + ", likely duplicate or constraint violation.");
                         }
                     } else {
                         result.skippedAttendance.add("Attendance for old Student ID " + aImport.oldStudentId + " on date " + aImport.date + " (Corresponding student not imported)");
-                        Log.w(TAG, "Skipping attendance: No corresponding new student ID found for old Student ID " + aImport.oldStudentId);
+                        MarklyLog.w(TAG, "Skipping attendance: No corresponding new student ID found for old Student ID " + aImport.oldStudentId);
                     }
                 } catch (Exception e) {
                     result.skippedAttendance.add("Attendance for old Student ID " + aImport.oldStudentId + " on date " + aImport.date + " (Unexpected error: " + e.getMessage() + ")");
-                    System.err.println("Error inserting attendance during import for old student ID " + aImport.oldStudentId + " on date " + aImport.date + " - " + e.getMessage());
-                    e.printStackTrace();
+                    MarklyLog.e(TAG, "Error inserting attendance during import for old student ID " + aImport.oldStudentId + " on date " + aImport.date + " - " + e.getMessage(), e);
                 }
             }
         }
-        Log.d(TAG, "Finished attendance import section. Imported attendance: " + result.importedAttendanceCount + ", Skipped: " + result.skippedAttendance.size());
-        Log.d(TAG, "performFullImportTransaction completed. Result: " + result.importedStudentCount + " students, " + result.importedAttendanceCount + " attendance records imported.");
+        MarklyLog.d(TAG, "Finished attendance import section. Imported attendance: " + result.importedAttendanceCount + ", Skipped: " + result.skippedAttendance.size());
+        SyncSchema.stampUnsynced(db);
+        SyncSchema.setApplying(db, false);
+        rebuildStreaks();
+        rebuildSemesterAttendance();
+        MarklyLog.d(TAG, "performFullImportTransaction completed. Result: " + result.importedStudentCount + " students, " + result.importedAttendanceCount + " attendance records imported.");
+        Metrics.timer("pipeline.import.fullTransaction").stop(transactionStart);
+        Metrics.counter("pipeline.import.rowsInserted").add(result.importedStudentCount + result.importedAttendanceCount);
 
         // Insert final IN-APP notification for import operation
         String notificationMessage;
@@ -397,10 +1135,8 @@ public class StudentRepository {
             notificationMessage = "Data import completed, but no records were imported.";
             notificationType = "INFO";
         }
-        insertNotification(new Notification(notificationTitle, notificationMessage, System.currentTimeMillis(), false, notificationType));
-
-        // Send SYSTEM notification for import operation
-        NotificationHelper.sendImportExportNotification(app, notificationTitle, notificationMessage, notificationType);
+        // In-app and SYSTEM notification for import operation
+        NotificationBus.getInstance(app).post(NotificationHelper.CATEGORY_IMPORT_EXPORT, notificationTitle, notificationMessage, notificationType);
 
         return result;
     }
@@ -0,0 +1,258 @@
+package com.aquaa.markly.data.repository;
+
+import android.app.Application;
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.aquaa.markly.data.database.AppDatabase;
+import com.aquaa.markly.data.database.SyncPeer;
+import com.aquaa.markly.data.sync.SyncAuth;
+import com.aquaa.markly.data.sync.SyncClient;
+import com.aquaa.markly.data.sync.SyncEngine;
+import com.aquaa.markly.data.sync.SyncHub;
+import com.aquaa.markly.data.sync.SyncHubServer;
+import com.aquaa.markly.data.sync.TcpSyncTransport;
+import com.aquaa.markly.utils.MarklyLog;
+import com.aquaa.markly.utils.NotificationBus;
+import com.aquaa.markly.utils.NotificationHelper;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process-wide LAN sync: hosts the hub server while this device is the hub and runs sync rounds against another
+ * device's hub. Hosting is only ever on while the user asked for it: every hosting session has its own pairing code,
+ * and it stops when the sync screen goes away, after a while without rounds or after too many wrong codes.
+ */
+public final class SyncRepository {
+
+    private static final String TAG = "SyncRepository";
+    private static final String PREFS_NAME = "MarklyPrefs";
+    private static final String KEY_HUB_ADDRESS = "sync_hub_address";
+    private static final long HOSTING_IDLE_MINUTES = 10;
+
+    private static volatile SyncRepository INSTANCE;
+
+    private final Application application;
+    private final SyncEngine engine;
+    private final SyncHub hub;
+    private final SyncHubServer server;
+    private final LiveData<List<SyncPeer>> peers;
+    private final MutableLiveData<String> status = new MutableLiveData<>();
+    private final MutableLiveData<Boolean> hubRunning = new MutableLiveData<>(false);
+    private final MutableLiveData<String> pairingCode = new MutableLiveData<>(); // While hosting
+    private final MutableLiveData<Boolean> syncing = new MutableLiveData<>(false);
+    // One sync round or server start at a time
+    private final ScheduledExecutorService syncExecutor = Executors.newSingleThreadScheduledExecutor();
+    private volatile ScheduledFuture<?> idleStop;
+
+    private SyncRepository(Application application) {
+        this.application = application;
+        AppDatabase database = AppDatabase.getDatabase(application);
+        engine = new SyncEngine(database);
+        peers = database.syncDao().getAllPeers();
+        hub = new SyncHub(engine);
+        server = new SyncHubServer(hub, SyncHubServer.DEFAULT_PORT, this::onHubRoundFinished);
+    }
+
+    public static SyncRepository getInstance(Application application) {
+        if (INSTANCE == null) {
+            synchronized (SyncRepository.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new SyncRepository(application);
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    public LiveData<String> getStatus() {
+        return status;
+    }
+
+    public LiveData<Boolean> isHubRunning() {
+        return hubRunning;
+    }
+
+    /**
+     * The code devices must enter to sync with this hub, null while not hosting.
+     */
+    public LiveData<String> getPairingCode() {
+        return pairingCode;
+    }
+
+    public LiveData<Boolean> isSyncing() {
+        return syncing;
+    }
+
+    public LiveData<List<SyncPeer>> getPeers() {
+        return peers;
+    }
+
+    /**
+     * Reads the database, call off the main thread.
+     */
+    public String getDeviceIdSync() {
+        return engine.getDeviceId();
+    }
+
+    public String getHubAddress() {
+        return prefs().getString(KEY_HUB_ADDRESS, "");
+    }
+
+    private SharedPreferences prefs() {
+        return application.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * @return The IPv4 addresses other devices on the network can reach this one at, e.g. for the hub.
+     */
+    public List<String> getLocalAddresses() {
+        List<String> addresses = new ArrayList<>();
+        try {
+            Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
+            if (interfaces == null) {
+                return addresses;
+            }
+            for (NetworkInterface networkInterface : Collections.list(interfaces)) {
+                if (!networkInterface.isUp() || networkInterface.isLoopback()) {
+                    continue;
+                }
+                for (InetAddress address : Collections.list(networkInterface.getInetAddresses())) {
+                    if (address instanceof Inet4Address) {
+                        addresses.add(address.getHostAddress());
+                    }
+                }
+            }
+        } catch (SocketException e) {
+            MarklyLog.w(TAG, "Listing network interfaces failed: " + e.getMessage());
+        }
+        return addresses;
+    }
+
+    /**
+     * Starts hosting with a new pairing code.
+     */
+    public void startHub() {
+        syncExecutor.execute(() -> {
+            String code = SyncAuth.newPairingCode();
+            hub.setPairingCode(code);
+            try {
+                server.start();
+                hubRunning.postValue(true);
+                pairingCode.postValue(code);
+                status.postValue("Hosting on port " + SyncHubServer.DEFAULT_PORT + ". Other devices can sync with pairing code " + code + ".");
+                scheduleIdleStop();
+            } catch (IOException e) {
+                MarklyLog.e(TAG, "Starting the hub failed: " + e.getMessage(), e);
+                hub.setPairingCode(null);
+                hubRunning.postValue(false);
+                status.postValue("Could not start hosting: " + e.getMessage());
+            }
+        });
+    }
+
+    public void stopHub() {
+        stopHub("Stopped hosting.");
+    }
+
+    private void stopHub(String message) {
+        if (!server.isRunning()) {
+            return;
+        }
+        server.stop();
+        hub.setPairingCode(null);
+        ScheduledFuture<?> pending = idleStop;
+        if (pending != null) {
+            pending.cancel(false);
+        }
+        hubRunning.postValue(false);
+        pairingCode.postValue(null);
+        status.postValue(message);
+    }
+
+    // Hosting nobody syncs with only leaves a port open
+    private void scheduleIdleStop() {
+        ScheduledFuture<?> pending = idleStop;
+        if (pending != null) {
+            pending.cancel(false);
+        }
+        idleStop = syncExecutor.schedule(() -> stopHub("Stopped hosting after " + HOSTING_IDLE_MINUTES + " minutes without a sync."),
+                HOSTING_IDLE_MINUTES, TimeUnit.MINUTES);
+    }
+
+    private void onHubRoundFinished(String remoteAddress, IOException error) {
+        if (hub.isLockedOut()) {
+            stopHub("Stopped hosting: too many wrong pairing codes. Start hosting again for a new code.");
+            return;
+        }
+        scheduleIdleStop();
+        if (error != null) {
+            status.postValue("Sync with " + remoteAddress + " failed: " + error.getMessage());
+        } else {
+            status.postValue("Synced with " + remoteAddress + ".");
+            NotificationBus.getInstance(application).post(NotificationHelper.CATEGORY_IN_APP, "LAN Sync",
+                    "A device at " + remoteAddress + " synced with this hub.", "INFO");
+        }
+    }
+
+    /**
+     * Runs one round against the hub at address ("host" or "host:port") and remembers the address.
+     * @param code The pairing code shown on the hub.
+     */
+    public void syncNow(String address, String code) {
+        String trimmed = address != null ? address.trim() : "";
+        if (trimmed.isEmpty()) {
+            status.setValue("Enter the hub's address first.");
+            return;
+        }
+        if (SyncAuth.normalize(code).isEmpty()) {
+            status.setValue("Enter the pairing code shown on the hub.");
+            return;
+        }
+        String host = trimmed;
+        int port = SyncHubServer.DEFAULT_PORT;
+        int colon = trimmed.lastIndexOf(':');
+        if (colon > 0) {
+            host = trimmed.substring(0, colon);
+            try {
+                port = Integer.parseInt(trimmed.substring(colon + 1));
+            } catch (NumberFormatException e) {
+                status.setValue("Invalid port in " + trimmed + ".");
+                return;
+            }
+        }
+        prefs().edit().putString(KEY_HUB_ADDRESS, trimmed).apply();
+        String finalHost = host;
+        int finalPort = port;
+        syncing.setValue(true);
+        status.setValue("Syncing with " + trimmed + "...");
+        syncExecutor.execute(() -> {
+            try (TcpSyncTransport transport = new TcpSyncTransport(finalHost, finalPort)) {
+                SyncClient.Result result = new SyncClient(engine).sync(transport, code);
+                status.postValue(String.format(Locale.getDefault(), "Synced in %.1f s: %d changes sent, %d received, %d applied.",
+                        result.elapsedMillis / 1000.0, result.pushed, result.pulled, result.applied));
+            } catch (IOException | RuntimeException e) {
+                MarklyLog.e(TAG, "Sync with " + trimmed + " failed: " + e.getMessage(), e);
+                status.postValue("Sync failed: " + e.getMessage());
+            } finally {
+                syncing.postValue(false);
+            }
+        });
+    }
+}
@@ -0,0 +1,35 @@
+package com.aquaa.markly.data.sync;
+
+import java.io.IOException;
+
+import javax.crypto.SecretKey;
+
+/**
+ * A hub in the same process, e.g. a second database standing in for another device in SyncBenchmark.
+ * Messages still go through SyncCodec both ways, so everything but the socket is exercised.
+ */
+public final class InProcessSyncTransport implements SyncTransport {
+
+    private final SyncHub.Connection connection;
+    private SecretKey key; // null until paired
+
+    public InProcessSyncTransport(SyncHub hub) {
+        this.connection = hub.connect();
+    }
+
+    @Override
+    public SyncMessage exchange(SyncMessage request) throws IOException {
+        SyncMessage received = SyncCodec.decode(SyncCodec.encode(request, key), key);
+        return SyncCodec.decode(SyncCodec.encode(connection.handle(received), key), key);
+    }
+
+    @Override
+    public void secure(SecretKey key) {
+        this.key = key;
+    }
+
+    @Override
+    public void close() {
+        connection.finish();
+    }
+}
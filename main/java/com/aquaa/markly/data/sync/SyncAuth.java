@@ -0,0 +1,138 @@
+package com.aquaa.markly.data.sync;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Locale;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Pairing of a device with a hub. The hosting device shows a pairing code that is never sent over the network:
+ * after HELLO, each side proves it knows the code with an HMAC over both sides' random nonces and device ids (AUTH),
+ * and both derive the session key the rest of the round is encrypted with, AES-GCM per frame.
+ */
+public final class SyncAuth {
+
+    // Without 0/O and 1/I/L, so that a code read off another screen is typed right
+    private static final String CODE_ALPHABET = "ABCDEFGHJKMNPQRSTUVWXYZ23456789";
+    private static final int CODE_LENGTH = 8;
+    private static final int NONCE_BYTES = 16;
+    private static final int IV_BYTES = 12;
+    private static final int TAG_BITS = 128;
+
+    static final String ROLE_DEVICE = "device";
+    static final String ROLE_HUB = "hub";
+    private static final String ROLE_KEY = "key";
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private SyncAuth() {
+        // Static helpers
+    }
+
+    /**
+     * A fresh pairing code for one hosting session.
+     */
+    public static String newPairingCode() {
+        StringBuilder code = new StringBuilder(CODE_LENGTH);
+        for (int i = 0; i < CODE_LENGTH; i++) {
+            code.append(CODE_ALPHABET.charAt(RANDOM.nextInt(CODE_ALPHABET.length())));
+        }
+        return code.toString();
+    }
+
+    /**
+     * The code as typed, without spaces or dashes and in upper case.
+     */
+    public static String normalize(String code) {
+        return code != null ? code.replaceAll("[\\s-]", "").toUpperCase(Locale.ROOT) : "";
+    }
+
+    static String newNonce() {
+        byte[] nonce = new byte[NONCE_BYTES];
+        RANDOM.nextBytes(nonce);
+        return hex(nonce);
+    }
+
+    /**
+     * What one side sends to show it knows the code. The role keeps a hub from echoing a device's proof back.
+     */
+    static String proof(String code, String role, String deviceNonce, String hubNonce, String deviceId, String hubId) {
+        return hex(hmac(code, role, deviceNonce, hubNonce, deviceId, hubId));
+    }
+
+    /**
+     * Compares proofs in constant time.
+     */
+    static boolean matches(String expected, String actual) {
+        return actual != null && MessageDigest.isEqual(expected.getBytes(StandardCharsets.UTF_8), actual.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static SecretKey sessionKey(String code, String deviceNonce, String hubNonce, String deviceId, String hubId) {
+        return new SecretKeySpec(hmac(code, ROLE_KEY, deviceNonce, hubNonce, deviceId, hubId), "AES");
+    }
+
+    /**
+     * @return A random IV followed by the encrypted and authenticated bytes.
+     */
+    static byte[] seal(SecretKey key, byte[] plain) throws IOException {
+        try {
+            byte[] iv = new byte[IV_BYTES];
+            RANDOM.nextBytes(iv);
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
+            byte[] sealed = cipher.doFinal(plain);
+            byte[] frame = Arrays.copyOf(iv, IV_BYTES + sealed.length);
+            System.arraycopy(sealed, 0, frame, IV_BYTES, sealed.length);
+            return frame;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Encrypting a sync message failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @throws IOException If the frame was not sealed with the key or was altered on the way.
+     */
+    static byte[] open(SecretKey key, byte[] frame) throws IOException {
+        if (frame.length <= IV_BYTES) {
+            throw new IOException("Sync frame too short to be encrypted");
+        }
+        try {
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, frame, 0, IV_BYTES));
+            return cipher.doFinal(frame, IV_BYTES, frame.length - IV_BYTES);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Sync message failed authentication", e);
+        }
+    }
+
+    private static byte[] hmac(String code, String... parts) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(normalize(code).getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            for (String part : parts) {
+                mac.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+                mac.update((byte) 0); // Separator, so that ("ab", "c") and ("a", "bc") differ
+            }
+            return mac.doFinal();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,163 @@
+package com.aquaa.markly.data.sync;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import androidx.room.Room;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+import com.aquaa.markly.data.database.AppDatabase;
+import com.aquaa.markly.data.database.QueryBenchmark;
+import com.aquaa.markly.data.database.SyncSchema;
+import com.aquaa.markly.utils.AggregationBenchmark;
+import com.aquaa.markly.utils.BenchmarkRunner;
+import com.aquaa.markly.utils.SyntheticDataGenerator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Syncs three in-memory databases through an InProcessSyncTransport: device A pushes a full synthetic class to the
+ * hub, device C pulls it, then A and C edit (partly the same records) and sync again. Times the first sync and
+ * how long the edits take to converge, and compares the content of all three databases after every step, so
+ * a round that loses or duplicates a change fails the run just like a slow one.
+ */
+public final class SyncBenchmark {
+
+    public static final String SUITE = "sync";
+
+    private static final int[][] SCALES = {{100, 90}, {300, 180}}; // {students, days}
+    private static final int SAMPLES = 3;
+    private static final String PAIRING_CODE = SyncAuth.newPairingCode();
+
+    /**
+     * Budget for the median at the largest scale.
+     */
+    public static final Map<String, Double> THRESHOLDS_MS = new HashMap<>();
+    static {
+        THRESHOLDS_MS.put("sync.initialPush", 20000.0);
+        THRESHOLDS_MS.put("sync.initialPull", 20000.0);
+        // One day of attendance taken on two devices, until both and the hub agree
+        THRESHOLDS_MS.put("sync.convergence", 3000.0);
+    }
+
+    private SyncBenchmark() {
+        // Static suite
+    }
+
+    /**
+     * Runs every scale.
+     * @param failures Receives a line for every step after which the databases differ.
+     */
+    public static List<BenchmarkRunner.Result> run(Context context, AggregationBenchmark.ProgressListener listener,
+                                                   List<String> failures) throws Exception {
+        List<BenchmarkRunner.Result> results = new ArrayList<>();
+        for (int[] scale : SCALES) {
+            int studentCount = scale[0];
+            int dayCount = scale[1];
+            Map<String, Object> params = BenchmarkRunner.params("students", studentCount, "days", dayCount);
+            String label = studentCount + " x " + dayCount;
+            AppDatabase deviceA = open(context);
+            AppDatabase hubDatabase = open(context);
+            AppDatabase deviceC = open(context);
+            try {
+                listener.onProgress("Populating device A, " + label + "...");
+                SupportSQLiteDatabase a = deviceA.getOpenHelper().getWritableDatabase();
+                SyncSchema.setApplying(a, true);
+                QueryBenchmark.populate(a, new SyntheticDataGenerator(studentCount, dayCount, 42L));
+                SyncSchema.stampUnsynced(a);
+                SyncSchema.setApplying(a, false);
+
+                SyncHub hub = new SyncHub(new SyncEngine(hubDatabase));
+                hub.setPairingCode(PAIRING_CODE);
+                SyncClient clientA = new SyncClient(new SyncEngine(deviceA));
+                SyncClient clientC = new SyncClient(new SyncEngine(deviceC));
+
+                listener.onProgress("First sync, " + label + "...");
+                long start = System.nanoTime();
+                round(clientA, hub);
+                long push = System.nanoTime() - start;
+                start = System.nanoTime();
+                round(clientC, hub);
+                long pull = System.nanoTime() - start;
+                results.add(BenchmarkRunner.fromSamples("sync.initialPush", params, new long[]{push}));
+                results.add(BenchmarkRunner.fromSamples("sync.initialPull", params, new long[]{pull}));
+                compare("first sync at " + label, failures, deviceA, hubDatabase, deviceC);
+
+                long[] samples = new long[SAMPLES];
+                for (int i = 0; i < SAMPLES; i++) {
+                    listener.onProgress("Concurrent edits, " + label + " (" + (i + 1) + "/" + SAMPLES + ")...");
+                    // A retakes one day for everybody, C one overlapping day for half the class and renames a student
+                    editDay(deviceA, i, 1, "1 - is_present");
+                    editDay(deviceC, i, 2, "1");
+                    deviceC.getOpenHelper().getWritableDatabase().execSQL(
+                            "UPDATE students SET name = name || ' " + i + "' WHERE student_id = (SELECT MIN(student_id) FROM students)");
+                    start = System.nanoTime();
+                    round(clientA, hub);
+                    round(clientC, hub);
+                    round(clientA, hub);
+                    samples[i] = System.nanoTime() - start;
+                    compare("concurrent edits " + (i + 1) + " at " + label, failures, deviceA, hubDatabase, deviceC);
+                }
+                results.add(BenchmarkRunner.fromSamples("sync.convergence", params, samples));
+            } finally {
+                deviceA.close();
+                hubDatabase.close();
+                deviceC.close();
+            }
+        }
+        return results;
+    }
+
+    private static AppDatabase open(Context context) {
+        return Room.inMemoryDatabaseBuilder(context.getApplicationContext(), AppDatabase.class)
+                .addCallback(SyncSchema.CALLBACK)
+                .build();
+    }
+
+    private static void round(SyncClient client, SyncHub hub) throws Exception {
+        try (SyncTransport transport = new InProcessSyncTransport(hub)) {
+            client.sync(transport, PAIRING_CODE);
+        }
+    }
+
+    // Updates the attendance of the (offset)th latest day for every studentStride-th student, through the triggers
+    private static void editDay(AppDatabase database, int offset, int studentStride, String presence) {
+        database.getOpenHelper().getWritableDatabase().execSQL("UPDATE attendance SET is_present = " + presence
+                + " WHERE date = (SELECT DISTINCT date FROM attendance ORDER BY date DESC LIMIT 1 OFFSET " + offset + ")"
+                + " AND student_id % " + studentStride + " = 0");
+    }
+
+    private static void compare(String step, List<String> failures, AppDatabase... databases) {
+        long first = fingerprint(databases[0]);
+        for (int i = 1; i < databases.length; i++) {
+            if (fingerprint(databases[i]) != first) {
+                failures.add("sync: databases differ after " + step);
+                return;
+            }
+        }
+    }
+
+    // Content as every device sees it, by uuid rather than by local ids
+    private static long fingerprint(AppDatabase database) {
+        SupportSQLiteDatabase db = database.getOpenHelper().getReadableDatabase();
+        long hash = 17;
+        try (Cursor cursor = db.query("SELECT uuid, name, current_semester, section FROM students ORDER BY uuid")) {
+            while (cursor.moveToNext()) {
+                hash = 31 * hash + (cursor.getString(0) + '|' + cursor.getString(1) + '|' + cursor.getInt(2)
+                        + '|' + cursor.getString(3)).hashCode();
+            }
+        }
+        try (Cursor cursor = db.query("SELECT s.uuid, a.date, a.is_present FROM attendance a "
+                + "JOIN students s ON s.student_id = a.student_id ORDER BY s.uuid, a.date")) {
+            while (cursor.moveToNext()) {
+                hash = 31 * hash + cursor.getString(0).hashCode();
+                hash = 31 * hash + cursor.getLong(1);
+                hash = 31 * hash + cursor.getInt(2);
+            }
+        }
+        return hash;
+    }
+}
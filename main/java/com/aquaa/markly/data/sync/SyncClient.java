@@ -0,0 +1,115 @@
+package com.aquaa.markly.data.sync;
+
+import com.aquaa.markly.data.database.SyncDao;
+import com.aquaa.markly.data.database.SyncPeer;
+import com.aquaa.markly.utils.MarklyLog;
+import com.aquaa.markly.utils.Metrics;
+
+import java.io.IOException;
+
+/**
+ * Runs one sync round with a hub: pushes the local changes the hub has not seen, then pulls the hub's changes
+ * this device has not seen. Only rows changed since the last round travel; the two cursors per hub are kept in
+ * sync_peers and only advance once a batch is acknowledged or applied, so an interrupted round resumes where it
+ * stopped.
+ */
+public final class SyncClient {
+
+    private static final String TAG = "SyncClient";
+
+    /**
+     * What a round exchanged.
+     */
+    public static final class Result {
+        public String hubId;
+        public int pushed; // Rows sent
+        public int pulled; // Rows received
+        public int applied; // Received rows that changed this device
+        public long elapsedMillis;
+    }
+
+    private final SyncEngine engine;
+    private final SyncDao syncDao;
+
+    public SyncClient(SyncEngine engine) {
+        this.engine = engine;
+        this.syncDao = engine.getDatabase().syncDao();
+    }
+
+    /**
+     * @param pairingCode The code shown on the hub.
+     * @throws IOException Also if either side does not know the pairing code.
+     */
+    public Result sync(SyncTransport transport, String pairingCode) throws IOException {
+        long start = Metrics.timer("sync.round").start();
+        Result result = new Result();
+        String code = SyncAuth.normalize(pairingCode);
+        if (code.isEmpty()) {
+            throw new IOException("Enter the pairing code shown on the hub");
+        }
+        String deviceId = engine.getDeviceId();
+        String deviceNonce = SyncAuth.newNonce();
+        SyncMessage request = SyncMessage.hello(deviceId);
+        request.nonce = deviceNonce;
+        SyncMessage hello = expect(transport.exchange(request), SyncMessage.TYPE_HELLO);
+        if (hello.deviceId == null || hello.deviceId.equals(deviceId)) {
+            throw new IOException("Cannot sync with this device itself");
+        }
+        if (hello.nonce == null) {
+            throw new IOException("The hub did not ask for the pairing code");
+        }
+
+        // Pairing: both sides prove they know the code, then everything else is encrypted
+        SyncMessage auth = new SyncMessage(SyncMessage.TYPE_AUTH);
+        auth.proof = SyncAuth.proof(code, SyncAuth.ROLE_DEVICE, deviceNonce, hello.nonce, deviceId, hello.deviceId);
+        SyncMessage hubAuth = expect(transport.exchange(auth), SyncMessage.TYPE_AUTH);
+        if (!SyncAuth.matches(SyncAuth.proof(code, SyncAuth.ROLE_HUB, deviceNonce, hello.nonce, deviceId, hello.deviceId), hubAuth.proof)) {
+            throw new IOException("The hub does not know the pairing code");
+        }
+        transport.secure(SyncAuth.sessionKey(code, deviceNonce, hello.nonce, deviceId, hello.deviceId));
+        result.hubId = hello.deviceId;
+        SyncPeer peer = syncDao.getPeer(hello.deviceId);
+        if (peer == null) {
+            peer = new SyncPeer(hello.deviceId, 0, 0, 0);
+        }
+
+        // Push, the last batch marked done so that the hub applies what it held back
+        SyncMessage batch;
+        do {
+            batch = engine.readChanges(peer.lastPushedSeq, SyncEngine.BATCH_SIZE);
+            batch.type = SyncMessage.TYPE_PUSH;
+            batch.done = !batch.hasMore;
+            expect(transport.exchange(batch), SyncMessage.TYPE_ACK);
+            result.pushed += batch.rowCount();
+            peer.lastPushedSeq = batch.cursor;
+            syncDao.upsertPeer(peer);
+        } while (batch.hasMore);
+
+        // Pull, each batch applied with its cursor in one transaction
+        SyncEngine.Session session = engine.newSession();
+        SyncMessage changes;
+        do {
+            changes = expect(transport.exchange(SyncMessage.pull(peer.lastPulledSeq, SyncEngine.BATCH_SIZE)), SyncMessage.TYPE_CHANGES);
+            result.pulled += changes.rowCount();
+            session.apply(changes, peer);
+        } while (changes.hasMore);
+        result.applied = session.finish();
+
+        peer.lastSyncAt = System.currentTimeMillis();
+        syncDao.upsertPeer(peer);
+        Metrics.timer("sync.round").stop(start);
+        result.elapsedMillis = (System.nanoTime() - start) / 1_000_000L;
+        MarklyLog.d(TAG, "Synced with {}: {} rows sent, {} received", result.hubId, result.pushed, result.pulled);
+        return result;
+    }
+
+    private static SyncMessage expect(SyncMessage reply, int type) throws IOException {
+        if (reply.type == SyncMessage.TYPE_ERROR) {
+            throw new IOException("Hub refused: " + reply.error);
+        }
+        if (reply.type != type) {
+            throw new IOException("Unexpected reply type " + reply.type);
+        }
+        return reply;
+    }
+}
@@ -0,0 +1,137 @@
+package com.aquaa.markly.data.sync;
+
+import com.aquaa.markly.utils.Metrics;
+import com.google.gson.Gson;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.crypto.SecretKey;
+
+/**
+ * Frames SyncMessages on a stream: a 4 byte length, then the message as gzip-compressed JSON, encrypted with the
+ * session key once the devices are paired (see SyncAuth).
+ * Rows repeat the same keys and mostly similar values, so a batch compresses to a fraction of its JSON size.
+ */
+public final class SyncCodec {
+
+    // Far above a batch of SyncEngine.BATCH_SIZE rows, low enough that a corrupt length cannot exhaust memory
+    static final int MAX_FRAME_BYTES = 16 * 1024 * 1024;
+    // The same bound after decompression: a small frame can inflate to gigabytes
+    static final int MAX_MESSAGE_BYTES = 16 * 1024 * 1024;
+
+    private static final Gson GSON = new Gson();
+
+    private SyncCodec() {
+        // Static helpers
+    }
+
+    /**
+     * @param key The session key, null before pairing.
+     */
+    public static byte[] encode(SyncMessage message, SecretKey key) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(bytes), StandardCharsets.UTF_8)) {
+            GSON.toJson(message, writer);
+        }
+        return key != null ? SyncAuth.seal(key, bytes.toByteArray()) : bytes.toByteArray();
+    }
+
+    /**
+     * @param key The session key, null before pairing.
+     * @throws IOException If the frame is malformed, not sealed with the key or inflates beyond MAX_MESSAGE_BYTES.
+     */
+    public static SyncMessage decode(byte[] frame, SecretKey key) throws IOException {
+        byte[] compressed = key != null ? SyncAuth.open(key, frame) : frame;
+        try (Reader reader = new InputStreamReader(new BoundedInputStream(new GZIPInputStream(
+                new ByteArrayInputStream(compressed)), MAX_MESSAGE_BYTES), StandardCharsets.UTF_8)) {
+            SyncMessage message = GSON.fromJson(reader, SyncMessage.class);
+            if (message == null) {
+                throw new IOException("Empty sync message");
+            }
+            // Gson skips field initialisers, a sender may have left the lists out
+            if (message.students == null) {
+                message.students = new ArrayList<>();
+            }
+            if (message.attendance == null) {
+                message.attendance = new ArrayList<>();
+            }
+            if (message.tombstones == null) {
+                message.tombstones = new ArrayList<>();
+            }
+            return message;
+        } catch (RuntimeException e) {
+            // Gson reports malformed input with unchecked exceptions
+            throw new IOException("Malformed sync message: " + e.getMessage(), e);
+        }
+    }
+
+    public static void write(DataOutputStream out, SyncMessage message, SecretKey key) throws IOException {
+        byte[] frame = encode(message, key);
+        out.writeInt(frame.length);
+        out.write(frame);
+        out.flush();
+        Metrics.counter("sync.bytesSent").add(frame.length + 4);
+    }
+
+    public static SyncMessage read(DataInputStream in, SecretKey key) throws IOException {
+        int length = in.readInt();
+        if (length <= 0 || length > MAX_FRAME_BYTES) {
+            throw new IOException("Invalid sync frame length " + length);
+        }
+        byte[] frame = new byte[length];
+        in.readFully(frame);
+        Metrics.counter("sync.bytesReceived").add(length + 4);
+        return decode(frame, key);
+    }
+
+    /**
+     * Fails, rather than reading on, once more than a limit of bytes came through.
+     */
+    private static final class BoundedInputStream extends FilterInputStream {
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count(read);
+            }
+            return read;
+        }
+
+        private void count(int read) throws IOException {
+            remaining -= read;
+            if (remaining < 0) {
+                throw new IOException("Sync message larger than " + MAX_MESSAGE_BYTES + " bytes");
+            }
+        }
+    }
+}
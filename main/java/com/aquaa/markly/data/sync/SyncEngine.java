@@ -0,0 +1,384 @@
+package com.aquaa.markly.data.sync;
+
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+import com.aquaa.markly.data.database.AppDatabase;
+import com.aquaa.markly.data.database.Attendance;
+import com.aquaa.markly.data.database.AttendanceDao;
+import com.aquaa.markly.data.database.SemesterAttendance;
+import com.aquaa.markly.data.database.Student;
+import com.aquaa.markly.data.database.StudentDao;
+import com.aquaa.markly.data.database.StudentStreak;
+import com.aquaa.markly.data.database.SyncAlias;
+import com.aquaa.markly.data.database.SyncDao;
+import com.aquaa.markly.data.database.SyncDao.AttendanceChange;
+import com.aquaa.markly.data.database.SyncDao.StudentChange;
+import com.aquaa.markly.data.database.SyncMeta;
+import com.aquaa.markly.data.database.SyncPeer;
+import com.aquaa.markly.data.database.SyncSchema;
+import com.aquaa.markly.data.database.SyncTombstone;
+import com.aquaa.markly.utils.MarklyLog;
+import com.aquaa.markly.utils.Metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads this device's changes after a cursor and applies changes received from another device.
+ * Every row carries a version (a Lamport clock) and the device that made it; of two copies of a row the one with
+ * the higher version wins, the higher device id on a tie. Deletions are tombstones compared the same way.
+ * Every device picks the same winner whatever order changes arrive in, so all of them converge once they have
+ * seen the same changes. Received rows keep their version and origin but get a new position in this device's
+ * change log, so that they are passed on to devices that sync here later.
+ */
+public final class SyncEngine {
+
+    private static final String TAG = "SyncEngine";
+
+    /** Rows per PUSH or CHANGES message. */
+    public static final int BATCH_SIZE = 500;
+
+    private final AppDatabase database;
+    private final SyncDao syncDao;
+    private final StudentDao studentDao;
+    private final AttendanceDao attendanceDao;
+
+    public SyncEngine(AppDatabase database) {
+        this.database = database;
+        this.syncDao = database.syncDao();
+        this.studentDao = database.studentDao();
+        this.attendanceDao = database.attendanceDao();
+    }
+
+    public AppDatabase getDatabase() {
+        return database;
+    }
+
+    public String getDeviceId() {
+        return syncDao.getMeta().deviceId;
+    }
+
+    /**
+     * @return The changes after since, at most limit rows across students, attendance and tombstones, in change
+     * log order, as a CHANGES message whose cursor is the position of the last row included.
+     */
+    public SyncMessage readChanges(long since, int limit) {
+        return database.runInTransaction(() -> {
+            List<StudentChange> students = syncDao.getStudentChanges(since, limit);
+            List<AttendanceChange> attendance = syncDao.getAttendanceChanges(since, limit);
+            List<SyncTombstone> tombstones = syncDao.getTombstones(since, limit);
+            SyncMessage message = new SyncMessage(SyncMessage.TYPE_CHANGES);
+            message.hasMore = students.size() == limit || attendance.size() == limit || tombstones.size() == limit;
+            message.cursor = since;
+            // Merge the three ordered lists and cut at limit, so that no row at or before the cursor is left out
+            int s = 0;
+            int a = 0;
+            int t = 0;
+            while (message.rowCount() < limit) {
+                long studentSeq = s < students.size() ? students.get(s).changeSeq : Long.MAX_VALUE;
+                long attendanceSeq = a < attendance.size() ? attendance.get(a).changeSeq : Long.MAX_VALUE;
+                long tombstoneSeq = t < tombstones.size() ? tombstones.get(t).changeSeq : Long.MAX_VALUE;
+                long next = Math.min(studentSeq, Math.min(attendanceSeq, tombstoneSeq));
+                if (next == Long.MAX_VALUE) {
+                    break;
+                }
+                if (next == studentSeq) {
+                    message.students.add(students.get(s++));
+                } else if (next == attendanceSeq) {
+                    message.attendance.add(attendance.get(a++));
+                } else {
+                    message.tombstones.add(tombstones.get(t++));
+                }
+                message.cursor = next;
+            }
+            if (s < students.size() || a < attendance.size() || t < tombstones.size()) {
+                message.hasMore = true;
+            }
+            return message;
+        });
+    }
+
+    public Session newSession() {
+        return new Session();
+    }
+
+    /**
+     * @return True if the copy stamped (version, origin) beats the one stamped (otherVersion, otherOrigin).
+     */
+    static boolean wins(long version, String origin, long otherVersion, String otherOrigin) {
+        if (version != otherVersion) {
+            return version > otherVersion;
+        }
+        return nonNull(origin).compareTo(nonNull(otherOrigin)) > 0;
+    }
+
+    private static String nonNull(String origin) {
+        return origin != null ? origin : "";
+    }
+
+    /**
+     * Applies the batches received in one sync round. Attendance of a student not received yet is held back
+     * until finish(), as the student may come in a later batch.
+     */
+    public final class Session {
+
+        private final List<AttendanceChange> deferred = new ArrayList<>();
+        private int applied;
+
+        private long lamport;
+        private long lastSeq;
+
+        private Session() {
+        }
+
+        /**
+         * Applies one batch in one transaction.
+         * @param peer The hub the batch was pulled from, or null for a batch pushed to this device. Its pull cursor
+         *             is saved in the same transaction; if every local change had been pushed to it before, its push
+         *             cursor moves past the rows written here, so they are not sent back to where they came from.
+         * @return The number of rows written.
+         */
+        public int apply(SyncMessage batch, SyncPeer peer) {
+            long start = Metrics.timer("sync.applyBatch").start();
+            int written = database.runInTransaction(() -> {
+                SyncMeta meta = syncDao.getMeta();
+                lamport = meta.lamport;
+                lastSeq = meta.lastSeq;
+                boolean pushedAll = peer != null && peer.lastPushedSeq >= meta.lastSeq;
+                SupportSQLiteDatabase db = database.getOpenHelper().getWritableDatabase();
+                SyncSchema.setApplying(db, true);
+                int count = 0;
+                for (StudentChange change : batch.students) {
+                    count += applyStudent(change) ? 1 : 0;
+                }
+                for (AttendanceChange change : batch.attendance) {
+                    count += applyAttendance(change, true) ? 1 : 0;
+                }
+                for (SyncTombstone tombstone : batch.tombstones) {
+                    count += applyTombstone(tombstone) ? 1 : 0;
+                }
+                syncDao.updateClock(lamport, lastSeq);
+                SyncSchema.setApplying(db, false);
+                if (peer != null) {
+                    peer.lastPulledSeq = batch.cursor;
+                    if (pushedAll) {
+                        peer.lastPushedSeq = lastSeq;
+                    }
+                    syncDao.upsertPeer(peer);
+                }
+                return count;
+            });
+            Metrics.timer("sync.applyBatch").stop(start);
+            Metrics.counter("sync.rowsApplied").add(written);
+            applied += written;
+            return written;
+        }
+
+        /**
+         * Applies the held back attendance and, if anything was written, recomputes the absence streaks and
+         * term counts, which the repository otherwise keeps up to date one change at a time.
+         * @return The number of rows written in the whole session.
+         */
+        public int finish() {
+            if (!deferred.isEmpty()) {
+                List<AttendanceChange> retry = new ArrayList<>(deferred);
+                deferred.clear();
+                int written = database.runInTransaction(() -> {
+                    SyncMeta meta = syncDao.getMeta();
+                    lamport = meta.lamport;
+                    lastSeq = meta.lastSeq;
+                    SupportSQLiteDatabase db = database.getOpenHelper().getWritableDatabase();
+                    SyncSchema.setApplying(db, true);
+                    int count = 0;
+                    for (AttendanceChange change : retry) {
+                        count += applyAttendance(change, false) ? 1 : 0;
+                    }
+                    syncDao.updateClock(lamport, lastSeq);
+                    SyncSchema.setApplying(db, false);
+                    return count;
+                });
+                applied += written;
+                // The rest lost to newer copies or belong to students deleted here or never sent
+                MarklyLog.d(TAG, "Applied {} of {} held back attendance records", written, retry.size());
+            }
+            if (applied > 0) {
+                Metrics.timer("sync.rebuildDerived").time(() -> database.runInTransaction(() -> {
+                    SupportSQLiteDatabase db = database.getOpenHelper().getWritableDatabase();
+                    StudentStreak.rebuildAll(db);
+                    SemesterAttendance.rebuildAll(db);
+                }));
+            }
+            return applied;
+        }
+
+        private void observe(long version) {
+            lamport = Math.max(lamport, version);
+        }
+
+        private long nextSeq() {
+            return ++lastSeq;
+        }
+
+        // By uuid, or by the uuid it was merged into
+        private Student findStudent(String uuid) {
+            Student student = syncDao.getStudentByUuid(uuid);
+            if (student == null) {
+                String target = syncDao.getAliasTarget(uuid);
+                if (target != null) {
+                    student = syncDao.getStudentByUuid(target);
+                }
+            }
+            return student;
+        }
+
+        private String resolveUuid(String uuid) {
+            String target = syncDao.getAliasTarget(uuid);
+            return target != null ? target : uuid;
+        }
+
+        private boolean applyStudent(StudentChange change) {
+            if (change.uuid == null) {
+                return false;
+            }
+            observe(change.rowVersion);
+            Student local = findStudent(change.uuid);
+            if (local == null) {
+                SyncTombstone tombstone = syncDao.getTombstone(SyncTombstone.KIND_STUDENT, change.uuid);
+                if (tombstone != null && !wins(change.rowVersion, change.rowOrigin, tombstone.rowVersion, tombstone.rowOrigin)) {
+                    return false;
+                }
+                if (change.mobile != null && !change.mobile.isEmpty() && change.name != null) {
+                    local = syncDao.findSameStudent(change.currentSemester, change.name, change.mobile, change.uuid);
+                }
+                if (local == null) {
+                    Student student = new Student(change.name, change.gender, change.mobile, change.guardianMobile,
+                            change.currentSemester, change.section);
+                    student.setUuid(change.uuid);
+                    stamp(student, change);
+                    return studentDao.insert(student) != -1;
+                }
+                // The same student was added on two devices before they synced. Every device keeps the smaller
+                // uuid and maps the other one to it, so both copies' records end up on one student.
+                String kept = local.getUuid().compareTo(change.uuid) < 0 ? local.getUuid() : change.uuid;
+                String merged = kept.equals(change.uuid) ? local.getUuid() : change.uuid;
+                syncDao.upsertAlias(new SyncAlias(merged, kept));
+                if (wins(change.rowVersion, change.rowOrigin, local.getRowVersion(), local.getRowOrigin())) {
+                    copy(change, local);
+                    stamp(local, change);
+                }
+                local.setUuid(kept);
+                local.setChangeSeq(nextSeq());
+                studentDao.updateStudent(local);
+                return true;
+            }
+            if (!wins(change.rowVersion, change.rowOrigin, local.getRowVersion(), local.getRowOrigin())) {
+                return false;
+            }
+            copy(change, local);
+            stamp(local, change);
+            studentDao.updateStudent(local);
+            return true;
+        }
+
+        private void copy(StudentChange change, Student student) {
+            student.setName(change.name);
+            student.setGender(change.gender);
+            student.setMobile(change.mobile);
+            student.setGuardianMobile(change.guardianMobile);
+            student.setCurrentSemester(change.currentSemester);
+            student.setSection(change.section);
+        }
+
+        private void stamp(Student student, StudentChange change) {
+            student.setRowVersion(change.rowVersion);
+            student.setRowOrigin(change.rowOrigin);
+            student.setChangeSeq(nextSeq());
+        }
+
+        private boolean applyAttendance(AttendanceChange change, boolean deferUnknown) {
+            if (change.studentUuid == null) {
+                return false;
+            }
+            observe(change.rowVersion);
+            Student student = findStudent(change.studentUuid);
+            if (student == null) {
+                if (deferUnknown) {
+                    deferred.add(change);
+                }
+                return false;
+            }
+            Attendance local = attendanceDao.getAttendanceByStudentAndDate(student.getStudentId(), change.date);
+            if (local == null) {
+                SyncTombstone tombstone = syncDao.getTombstone(SyncTombstone.KIND_ATTENDANCE,
+                        SyncTombstone.attendanceKey(student.getUuid(), change.date));
+                if (tombstone != null && !wins(change.rowVersion, change.rowOrigin, tombstone.rowVersion, tombstone.rowOrigin)) {
+                    return false;
+                }
+                Attendance attendance = new Attendance(student.getStudentId(), change.date, change.isPresent);
+                attendance.isSmsSent = change.isSmsSent;
+                attendance.rowVersion = change.rowVersion;
+                attendance.rowOrigin = change.rowOrigin;
+                attendance.changeSeq = nextSeq();
+                attendanceDao.insertAttendance(attendance);
+                return true;
+            }
+            if (!wins(change.rowVersion, change.rowOrigin, local.rowVersion, local.rowOrigin)) {
+                return false;
+            }
+            local.isPresent = change.isPresent;
+            local.isSmsSent = change.isSmsSent;
+            local.rowVersion = change.rowVersion;
+            local.rowOrigin = change.rowOrigin;
+            local.changeSeq = nextSeq();
+            attendanceDao.updateAttendance(local);
+            return true;
+        }
+
+        private boolean applyTombstone(SyncTombstone tombstone) {
+            observe(tombstone.rowVersion);
+            String key;
+            boolean deleted = false;
+            if (tombstone.kind == SyncTombstone.KIND_STUDENT) {
+                Student local = findStudent(tombstone.syncKey);
+                key = local != null ? local.getUuid() : resolveUuid(tombstone.syncKey);
+                if (local != null) {
+                    if (!wins(tombstone.rowVersion, tombstone.rowOrigin, local.getRowVersion(), local.getRowOrigin())) {
+                        return false; // Changed here after it was deleted there, the change stands
+                    }
+                    studentDao.deleteStudent(local);
+                    deleted = true;
+                }
+            } else if (tombstone.kind == SyncTombstone.KIND_ATTENDANCE) {
+                int separator = tombstone.syncKey.lastIndexOf('|');
+                if (separator < 0) {
+                    return false;
+                }
+                long date;
+                try {
+                    date = Long.parseLong(tombstone.syncKey.substring(separator + 1));
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+                Student student = findStudent(tombstone.syncKey.substring(0, separator));
+                String uuid = student != null ? student.getUuid() : resolveUuid(tombstone.syncKey.substring(0, separator));
+                key = SyncTombstone.attendanceKey(uuid, date);
+                Attendance local = student != null ? attendanceDao.getAttendanceByStudentAndDate(student.getStudentId(), date) : null;
+                if (local != null) {
+                    if (!wins(tombstone.rowVersion, tombstone.rowOrigin, local.rowVersion, local.rowOrigin)) {
+                        return false;
+                    }
+                    attendanceDao.deleteAttendance(local.attendanceId);
+                    deleted = true;
+                }
+            } else {
+                return false;
+            }
+            SyncTombstone existing = syncDao.getTombstone(tombstone.kind, key);
+            if (existing != null && !wins(tombstone.rowVersion, tombstone.rowOrigin, existing.rowVersion, existing.rowOrigin)) {
+                return deleted;
+            }
+            syncDao.upsertTombstone(new SyncTombstone(tombstone.kind, key, tombstone.rowVersion, tombstone.rowOrigin, nextSeq()));
+            return true;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.aquaa.markly.data.sync;
+
+import com.aquaa.markly.utils.MarklyLog;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.SecretKey;
+
+/**
+ * The hub side of the protocol: applies what devices push and serves its change log to devices that pull.
+ * Any device can be the hub; its own edits are simply its local changes. Each connected device gets a
+ * Connection holding the session its pushes are applied in. Only devices paired with the current pairing code
+ * get that far; without a code the hub refuses every round.
+ */
+public final class SyncHub {
+
+    private static final String TAG = "SyncHub";
+
+    // Wrong codes tolerated per pairing code, so that it cannot be guessed by trying
+    static final int MAX_FAILED_PAIRINGS = 5;
+
+    private final SyncEngine engine;
+    private volatile String pairingCode;
+    private final AtomicInteger failedPairings = new AtomicInteger();
+
+    public SyncHub(SyncEngine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * @param pairingCode The code devices must know, null to refuse everybody.
+     */
+    public void setPairingCode(String pairingCode) {
+        this.pairingCode = pairingCode != null ? SyncAuth.normalize(pairingCode) : null;
+        failedPairings.set(0);
+    }
+
+    /**
+     * @return True once too many wrong codes were tried; the hub then refuses everybody until given a new code.
+     */
+    public boolean isLockedOut() {
+        return failedPairings.get() >= MAX_FAILED_PAIRINGS;
+    }
+
+    public Connection connect() {
+        return new Connection(pairingCode);
+    }
+
+    /**
+     * One device's round with the hub. Not thread-safe, messages of one connection arrive in order.
+     */
+    public final class Connection {
+
+        private final SyncEngine.Session session = engine.newSession();
+        private final String code;
+        private String deviceId;
+        private String deviceNonce;
+        private String hubNonce;
+        private SecretKey sessionKey;
+        private boolean finished;
+
+        private Connection(String code) {
+            this.code = code;
+        }
+
+        /**
+         * @return True once the device proved it knows the pairing code.
+         */
+        public boolean isPaired() {
+            return sessionKey != null;
+        }
+
+        /**
+         * @return The key the rest of the round is encrypted with, null until paired.
+         */
+        public SecretKey getSessionKey() {
+            return sessionKey;
+        }
+
+        public SyncMessage handle(SyncMessage request) {
+            if (request.protocolVersion != SyncMessage.PROTOCOL_VERSION) {
+                return SyncMessage.error("Unsupported protocol version " + request.protocolVersion);
+            }
+            try {
+                switch (request.type) {
+                    case SyncMessage.TYPE_HELLO:
+                        if (code == null || isLockedOut()) {
+                            return SyncMessage.error("This device is not hosting");
+                        }
+                        if (isPaired() || request.deviceId == null || request.nonce == null) {
+                            return SyncMessage.error("Unexpected HELLO");
+                        }
+                        deviceId = request.deviceId;
+                        deviceNonce = request.nonce;
+                        hubNonce = SyncAuth.newNonce();
+                        SyncMessage hello = SyncMessage.hello(engine.getDeviceId());
+                        hello.nonce = hubNonce;
+                        return hello;
+                    case SyncMessage.TYPE_AUTH:
+                        if (hubNonce == null || isPaired()) {
+                            return SyncMessage.error("AUTH outside pairing");
+                        }
+                        String hubId = engine.getDeviceId();
+                        if (!SyncAuth.matches(SyncAuth.proof(code, SyncAuth.ROLE_DEVICE, deviceNonce, hubNonce, deviceId, hubId), request.proof)) {
+                            hubNonce = null;
+                            int failures = failedPairings.incrementAndGet();
+                            MarklyLog.w(TAG, "Device {} sent a wrong pairing code ({} of {})", deviceId, failures, MAX_FAILED_PAIRINGS);
+                            return SyncMessage.error("Wrong pairing code");
+                        }
+                        sessionKey = SyncAuth.sessionKey(code, deviceNonce, hubNonce, deviceId, hubId);
+                        MarklyLog.d(TAG, "Sync round with {}", deviceId);
+                        SyncMessage auth = new SyncMessage(SyncMessage.TYPE_AUTH);
+                        auth.proof = SyncAuth.proof(code, SyncAuth.ROLE_HUB, deviceNonce, hubNonce, deviceId, hubId);
+                        return auth;
+                    case SyncMessage.TYPE_PUSH:
+                        if (!isPaired() || finished) {
+                            return SyncMessage.error("PUSH outside a paired round");
+                        }
+                        session.apply(request, null);
+                        if (request.done) {
+                            finish();
+                        }
+                        return new SyncMessage(SyncMessage.TYPE_ACK);
+                    case SyncMessage.TYPE_PULL:
+                        if (!isPaired()) {
+                            return SyncMessage.error("PULL before pairing");
+                        }
+                        return engine.readChanges(request.since, Math.max(1, Math.min(request.limit, SyncEngine.BATCH_SIZE)));
+                    default:
+                        return SyncMessage.error("Unexpected message type " + request.type);
+                }
+            } catch (RuntimeException e) {
+                MarklyLog.e(TAG, "Sync request failed: " + e.getMessage(), e);
+                return SyncMessage.error(e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+            }
+        }
+
+        /**
+         * Applies whatever is still held back, on the last push or when the device goes away.
+         */
+        public void finish() {
+            if (!finished) {
+                finished = true;
+                session.finish();
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.aquaa.markly.data.sync;
+
+import com.aquaa.markly.utils.MarklyLog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+import javax.crypto.SecretKey;
+
+/**
+ * Serves a SyncHub on a TCP port, one device at a time; others wait in the accept backlog. Devices syncing
+ * one after another is also what makes them converge: each round leaves the hub holding every change seen so far.
+ * Only runs while the user hosts; a device has to pair with the hub's code before it can push or pull anything.
+ */
+public final class SyncHubServer {
+
+    private static final String TAG = "SyncHubServer";
+
+    public static final int DEFAULT_PORT = 47470;
+    // A device that stops talking mid-round must not block the others for long
+    private static final int READ_TIMEOUT_MILLIS = 60_000;
+
+    /**
+     * Told after each round, on the server thread.
+     */
+    public interface Listener {
+        void onRoundFinished(String remoteAddress, IOException error);
+    }
+
+    private final SyncHub hub;
+    private final int port;
+    private final Listener listener;
+    private volatile ServerSocket serverSocket;
+    private Thread thread;
+
+    public SyncHubServer(SyncHub hub, int port, Listener listener) {
+        this.hub = hub;
+        this.port = port;
+        this.listener = listener;
+    }
+
+    public synchronized void start() throws IOException {
+        if (serverSocket != null) {
+            return;
+        }
+        ServerSocket socket = new ServerSocket(port);
+        serverSocket = socket;
+        thread = new Thread(() -> acceptLoop(socket), "SyncHubServer");
+        thread.start();
+        MarklyLog.d(TAG, "Listening on port {}", port);
+    }
+
+    public synchronized void stop() {
+        if (serverSocket == null) {
+            return;
+        }
+        try {
+            serverSocket.close(); // Ends accept() with an exception, which ends the thread
+        } catch (IOException e) {
+            MarklyLog.w(TAG, "Closing the server socket failed: " + e.getMessage());
+        }
+        serverSocket = null;
+        thread = null;
+    }
+
+    public boolean isRunning() {
+        return serverSocket != null;
+    }
+
+    private void acceptLoop(ServerSocket socket) {
+        while (!socket.isClosed()) {
+            try (Socket client = socket.accept()) {
+                String remote = String.valueOf(client.getInetAddress());
+                IOException error = null;
+                try {
+                    serve(client);
+                } catch (IOException e) {
+                    error = e;
+                    MarklyLog.w(TAG, "Sync round with " + remote + " failed: " + e.getMessage());
+                } catch (RuntimeException e) {
+                    // Keep serving other devices
+                    error = new IOException(e.getMessage(), e);
+                    MarklyLog.e(TAG, "Sync round with " + remote + " failed: " + e.getMessage(), e);
+                }
+                listener.onRoundFinished(remote, error);
+            } catch (IOException e) {
+                if (!socket.isClosed()) {
+                    MarklyLog.e(TAG, "Accepting a connection failed: " + e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    private void serve(Socket client) throws IOException {
+        client.setSoTimeout(READ_TIMEOUT_MILLIS);
+        client.setTcpNoDelay(true);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(client.getInputStream()));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(client.getOutputStream()));
+        SyncHub.Connection connection = hub.connect();
+        SecretKey key = null; // Frames are encrypted from the first one after the AUTH reply
+        try {
+            while (true) {
+                SyncMessage request;
+                try {
+                    request = SyncCodec.read(in, key);
+                } catch (EOFException e) {
+                    return; // The device closed the connection after its round
+                } catch (SocketTimeoutException e) {
+                    throw new IOException("Device went silent", e);
+                }
+                SyncMessage reply = connection.handle(request);
+                SyncCodec.write(out, reply, key);
+                if (reply.type == SyncMessage.TYPE_ERROR && !connection.isPaired()) {
+                    throw new IOException(reply.error); // Nothing more to talk about with a device that cannot pair
+                }
+                key = connection.getSessionKey();
+            }
+        } finally {
+            connection.finish();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.aquaa.markly.data.sync;
+
+import com.aquaa.markly.data.database.SyncDao.AttendanceChange;
+import com.aquaa.markly.data.database.SyncDao.StudentChange;
+import com.aquaa.markly.data.database.SyncTombstone;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One request or reply of the sync protocol, serialised by SyncCodec. A round, always started by the device
+ * syncing with the hub:
+ * HELLO (own device id and nonce) answered by HELLO (hub device id and nonce); AUTH (the device's proof of the
+ * pairing code) answered by AUTH (the hub's proof), see SyncAuth, after which every frame is encrypted;
+ * PUSH batches of local changes, each answered by ACK, the last one with done set; PULL batches of the hub's
+ * changes after a cursor, each answered by CHANGES. Only the fields of the message's type are set.
+ */
+public final class SyncMessage {
+
+    public static final int TYPE_HELLO = 0;
+    public static final int TYPE_PUSH = 1;
+    public static final int TYPE_ACK = 2;
+    public static final int TYPE_PULL = 3;
+    public static final int TYPE_CHANGES = 4;
+    public static final int TYPE_ERROR = 5;
+    public static final int TYPE_AUTH = 6;
+
+    // Bumped on incompatible changes, a hub refuses devices speaking another version
+    public static final int PROTOCOL_VERSION = 2;
+
+    public int type;
+    public int protocolVersion = PROTOCOL_VERSION;
+    public String deviceId; // HELLO
+    public String nonce; // HELLO: random per round, what the AUTH proofs are computed over
+    public String proof; // AUTH
+    public long since; // PULL: the hub's change log position already applied
+    public int limit; // PULL: most rows wanted
+    public List<StudentChange> students = new ArrayList<>(); // PUSH, CHANGES
+    public List<AttendanceChange> attendance = new ArrayList<>();
+    public List<SyncTombstone> tombstones = new ArrayList<>();
+    public long cursor; // PUSH, CHANGES: change log position of the last row included
+    public boolean hasMore; // PUSH, CHANGES: rows after the cursor were left for the next batch
+    public boolean done; // PUSH: last batch of this round
+    public String error; // ERROR
+
+    public SyncMessage(int type) {
+        this.type = type;
+    }
+
+    public static SyncMessage hello(String deviceId) {
+        SyncMessage message = new SyncMessage(TYPE_HELLO);
+        message.deviceId = deviceId;
+        return message;
+    }
+
+    public static SyncMessage pull(long since, int limit) {
+        SyncMessage message = new SyncMessage(TYPE_PULL);
+        message.since = since;
+        message.limit = limit;
+        return message;
+    }
+
+    public static SyncMessage error(String error) {
+        SyncMessage message = new SyncMessage(TYPE_ERROR);
+        message.error = error;
+        return message;
+    }
+
+    public int rowCount() {
+        return students.size() + attendance.size() + tombstones.size();
+    }
+}
@@ -0,0 +1,19 @@
+package com.aquaa.markly.data.sync;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import javax.crypto.SecretKey;
+
+/**
+ * Carries a device's requests to a hub and the hub's replies back.
+ */
+public interface SyncTransport extends Closeable {
+
+    SyncMessage exchange(SyncMessage request) throws IOException;
+
+    /**
+     * Encrypts every later message, both ways, with the session key agreed on while pairing.
+     */
+    void secure(SecretKey key);
+}
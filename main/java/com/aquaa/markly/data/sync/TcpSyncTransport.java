@@ -0,0 +1,56 @@
+package com.aquaa.markly.data.sync;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+import javax.crypto.SecretKey;
+
+/**
+ * A connection to a SyncHubServer on the local network.
+ */
+public final class TcpSyncTransport implements SyncTransport {
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 10_000;
+    // A large batch on a slow hub takes a while to apply, a silent hub is given up on after this
+    private static final int READ_TIMEOUT_MILLIS = 30_000;
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private SecretKey key; // null until paired
+
+    public TcpSyncTransport(String host, int port) throws IOException {
+        socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+            socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+            socket.setTcpNoDelay(true);
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public SyncMessage exchange(SyncMessage request) throws IOException {
+        SyncCodec.write(out, request, key);
+        return SyncCodec.read(in, key);
+    }
+
+    @Override
+    public void secure(SecretKey key) {
+        this.key = key;
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
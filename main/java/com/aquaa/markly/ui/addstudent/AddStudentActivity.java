@@ -8,6 +8,8 @@ import android.os.Build;
 import android.os.Bundle;
 import android.os.Environment;
 import android.provider.Settings;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.Log; // Added for logging
 import android.view.View;
 import android.widget.ArrayAdapter;
@@ -52,11 +54,16 @@ public class AddStudentActivity extends AppCompatActivity implements StudentMana
     private Spinner spinnerGender;
     private Button btnSaveStudent, btnImportExcel, btnExportExcel; // btnImportExcel and btnExportExcel will now handle JSON
     private RecyclerView recyclerViewStudents;
+    private TextInputEditText etSearchStudents;
 
     // ActivityResultLauncher for picking a file (for import/restore)
     private ActivityResultLauncher<String[]> openDocumentLauncher;
     // ActivityResultLauncher for creating a file (for export/backup)
     private ActivityResultLauncher<String> createDocumentLauncher;
+    // ActivityResultLauncher for picking CSV files (students and attendance)
+    private ActivityResultLauncher<String[]> openCsvDocumentsLauncher;
+    // ActivityResultLauncher for picking the folder CSV files are exported to
+    private ActivityResultLauncher<Uri> openCsvFolderLauncher;
 
 
     @Override
@@ -78,6 +85,7 @@ public class AddStudentActivity extends AppCompatActivity implements StudentMana
         btnImportExcel = findViewById(R.id.button_import_excel); // This will now trigger JSON restore
         btnExportExcel = findViewById(R.id.button_export_excel); // This will now trigger JSON backup
         recyclerViewStudents = findViewById(R.id.recycler_view_students);
+        etSearchStudents = findViewById(R.id.edit_text_search_students);
 
         // Setup Gender Spinner
         ArrayAdapter<CharSequence> adapter = ArrayAdapter.createFromResource(this,
@@ -92,7 +100,23 @@ public class AddStudentActivity extends AppCompatActivity implements StudentMana
         // Set up listeners
         btnSaveStudent.setOnClickListener(v -> saveStudent());
 
-        // Updated listeners for JSON backup/restore
+        // Search as you type; the repository waits for a pause in typing before querying
+        etSearchStudents.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                addStudentViewModel.setSearchQuery(s.toString());
+            }
+        });
+
+        // Import/export buttons offer JSON backups and CSV files
         btnImportExcel.setOnClickListener(v -> checkStoragePermissionAndRestoreJson()); // Renamed method
         btnExportExcel.setOnClickListener(v -> checkStoragePermissionAndBackupJson()); // Renamed method
 
@@ -115,6 +139,21 @@ public class AddStudentActivity extends AppCompatActivity implements StudentMana
             }
         });
 
+        openCsvDocumentsLauncher = registerForActivityResult(new ActivityResultContracts.OpenMultipleDocuments(), uris -> {
+            if (uris != null && !uris.isEmpty()) {
+                showCsvImportModeDialog(uris);
+            } else {
+                Toast.makeText(this, "No CSV files selected for import.", Toast.LENGTH_SHORT).show();
+            }
+        });
+
+        openCsvFolderLauncher = registerForActivityResult(new ActivityResultContracts.OpenDocumentTree(), treeUri -> {
+            if (treeUri != null) {
+                addStudentViewModel.exportCsvData(treeUri);
+            } else {
+                Toast.makeText(this, "No folder selected for CSV export.", Toast.LENGTH_SHORT).show();
+            }
+        });
 
         // Observe LiveData for operation results
         addStudentViewModel.getOperationResult().observe(this, message -> {
@@ -127,9 +166,9 @@ public class AddStudentActivity extends AppCompatActivity implements StudentMana
             }
         });
 
-        // Observe LiveData for all students to display in RecyclerView
-        addStudentViewModel.getAllStudents().observe(this, students -> {
-            studentManageAdapter.setStudents(students);
+        // Observe all students, or the search results while a search is active, to display in RecyclerView
+        addStudentViewModel.getDisplayedStudents().observe(this, students -> {
+            studentManageAdapter.submitList(students);
         });
     }
 
@@ -281,18 +320,58 @@ public class AddStudentActivity extends AppCompatActivity implements StudentMana
     }
 
     /**
-     * Opens a file picker intent for selecting a JSON file for restore.
+     * Asks for the import format, then opens the matching file picker.
      * Uses ActivityResultLauncher.
      */
     private void openJsonFilePicker() {
-        openDocumentLauncher.launch(new String[]{"application/json"}); // MIME type for JSON
+        new AlertDialog.Builder(this)
+                .setTitle("Import Data")
+                .setItems(new String[]{"JSON backup", "CSV files (students and attendance)"}, (dialog, which) -> {
+                    if (which == 0) {
+                        openDocumentLauncher.launch(new String[]{"application/json"}); // MIME type for JSON
+                    } else {
+                        // Some file providers report CSV as plain text
+                        openCsvDocumentsLauncher.launch(new String[]{"text/csv", "text/comma-separated-values", "text/plain"});
+                    }
+                })
+                .show();
     }
 
     /**
-     * Initiates the creation of a JSON backup file.
+     * Asks whether the selected CSV files should be merged into or replace the current data.
+     * @param uris The selected CSV files.
+     */
+    private void showCsvImportModeDialog(List<Uri> uris) {
+        new AlertDialog.Builder(this)
+                .setTitle("Import CSV")
+                .setMessage("Merge only updates the students and attendance records that changed in the files. Replace deletes all current data and imports the files.")
+                .setPositiveButton("Merge Changes", (dialog, which) -> addStudentViewModel.importCsvData(uris, true))
+                .setNeutralButton("Replace All", (dialog, which) -> addStudentViewModel.importCsvData(uris, false))
+                .setNegativeButton("Cancel", (dialog, which) -> dialog.dismiss())
+                .show();
+    }
+
+    /**
+     * Asks for the export format, then prompts for the save location.
      * Uses ActivityResultLauncher to prompt user for save location.
      */
     private void createJsonBackupFile() {
+        new AlertDialog.Builder(this)
+                .setTitle("Export Data")
+                .setItems(new String[]{"JSON backup", "CSV files (students and attendance)"}, (dialog, which) -> {
+                    if (which == 0) {
+                        launchJsonBackupCreation();
+                    } else {
+                        openCsvFolderLauncher.launch(null); // Let the user pick any folder
+                    }
+                })
+                .show();
+    }
+
+    /**
+     * Prompts for the JSON backup file name and location.
+     */
+    private void launchJsonBackupCreation() {
         String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
         String fileName = "Markly_Backup_" + timeStamp + ".json"; // Suggest .json extension
         createDocumentLauncher.launch(fileName);
@@ -303,7 +382,14 @@ public class AddStudentActivity extends AppCompatActivity implements StudentMana
      * @param uri The URI of the selected JSON file.
      */
     private void performRestoreFromJson(Uri uri) {
-        addStudentViewModel.importAllData(uri); // Call the ViewModel method for import
+        // Let the user choose between merging the changes and replacing everything
+        new AlertDialog.Builder(this)
+                .setTitle("Import Backup")
+                .setMessage("Merge only updates the students and attendance records that changed in the file. Replace deletes all current data and restores the file as-is.")
+                .setPositiveButton("Merge Changes", (dialog, which) -> addStudentViewModel.mergeAllData(uri))
+                .setNeutralButton("Replace All", (dialog, which) -> addStudentViewModel.importAllData(uri)) // Call the ViewModel method for full restore
+                .setNegativeButton("Cancel", (dialog, which) -> dialog.dismiss())
+                .show();
     }
 
     /**
@@ -1,30 +1,40 @@
 package com.aquaa.markly.ui.addstudent;
 
 import android.app.Application;
+import android.content.ContentResolver;
 import android.net.Uri;
+import android.provider.DocumentsContract;
 import android.util.Log;
 
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MediatorLiveData;
 import androidx.lifecycle.MutableLiveData;
 
 import com.aquaa.markly.data.database.AppDatabase; // Import AppDatabase
-import com.aquaa.markly.data.database.Notification;
 import com.aquaa.markly.data.database.Student;
 import com.aquaa.markly.data.repository.StudentRepository;
+import com.aquaa.markly.utils.CsvUtils;
+import com.aquaa.markly.utils.ExcelUtils;
+import com.aquaa.markly.utils.Metrics;
+import com.aquaa.markly.utils.NotificationBus;
 import com.aquaa.markly.utils.NotificationHelper; // For system notifications
 
 import java.io.BufferedReader;
 import java.io.File; // Keep File import if it's still used elsewhere, but remove for exportAllData param
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream; // Import OutputStream
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -41,6 +51,8 @@ public class AddStudentViewModel extends AndroidViewModel {
     private StudentRepository studentRepository;
     private MutableLiveData<String> operationResult = new MutableLiveData<>();
     private LiveData<List<Student>> allStudentsLiveData;
+    private final MediatorLiveData<List<Student>> displayedStudents = new MediatorLiveData<>();
+    private String searchQuery = ""; // Only touched on the main thread
 
     private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
 
@@ -48,6 +60,36 @@ public class AddStudentViewModel extends AndroidViewModel {
         super(application);
         studentRepository = new StudentRepository(application);
         allStudentsLiveData = studentRepository.getAllStudents();
+        displayedStudents.addSource(allStudentsLiveData, students -> {
+            if (searchQuery.isEmpty()) {
+                displayedStudents.setValue(students);
+            } else {
+                studentRepository.search(searchQuery); // The data changed, refresh the results
+            }
+        });
+        displayedStudents.addSource(studentRepository.getSearchResults(), results -> {
+            if (!searchQuery.isEmpty()) {
+                displayedStudents.setValue(results);
+            }
+        });
+    }
+
+    /**
+     * @return All students, or the search results while a search query is set.
+     */
+    public LiveData<List<Student>> getDisplayedStudents() {
+        return displayedStudents;
+    }
+
+    /**
+     * Called on every keystroke in the search field. An empty query shows all students again.
+     */
+    public void setSearchQuery(String query) {
+        searchQuery = query == null ? "" : query.trim();
+        studentRepository.search(searchQuery);
+        if (searchQuery.isEmpty()) {
+            displayedStudents.setValue(allStudentsLiveData.getValue());
+        }
     }
 
     public LiveData<String> getOperationResult() {
@@ -65,19 +107,16 @@ public class AddStudentViewModel extends AndroidViewModel {
                 if (result != -1) {
                     String msg = "Student '" + student.getName() + "' added successfully!";
                     operationResult.postValue(msg);
-                    studentRepository.insertNotification(new Notification("Student Added", msg, System.currentTimeMillis(), false, "SUCCESS"));
-                    NotificationHelper.sendImportExportNotification(getApplication(), "Student Added", msg, "SUCCESS"); // System notification
+                    NotificationBus.getInstance(getApplication()).post(NotificationHelper.CATEGORY_IMPORT_EXPORT, "Student Added", msg, "SUCCESS"); // In-app and system notification
                 } else {
                     String msg = "Failed to add student '" + student.getName() + "'. It might already exist or there was a database error.";
                     operationResult.postValue(msg);
-                    studentRepository.insertNotification(new Notification("Student Add Failed", msg, System.currentTimeMillis(), false, "ERROR"));
-                    NotificationHelper.sendImportExportNotification(getApplication(), "Student Add Failed", msg, "ERROR"); // System notification
+                    NotificationBus.getInstance(getApplication()).post(NotificationHelper.CATEGORY_IMPORT_EXPORT, "Student Add Failed", msg, "ERROR"); // In-app and system notification
                 }
             } catch (Exception e) {
                 String msg = "Failed to add student: " + e.getMessage();
                 operationResult.postValue(msg);
-                studentRepository.insertNotification(new Notification("Student Add Failed", msg, System.currentTimeMillis(), false, "ERROR"));
-                NotificationHelper.sendImportExportNotification(getApplication(), "Student Add Failed", msg, "ERROR"); // System notification
+                NotificationBus.getInstance(getApplication()).post(NotificationHelper.CATEGORY_IMPORT_EXPORT, "Student Add Failed", msg, "ERROR"); // In-app and system notification
                 Log.e(TAG, "Error inserting student", e);
             }
         });
@@ -89,13 +128,11 @@ public class AddStudentViewModel extends AndroidViewModel {
                 studentRepository.deleteStudent(student);
                 String msg = "Student '" + student.getName() + "' deleted successfully!";
                 operationResult.postValue(msg);
-                studentRepository.insertNotification(new Notification("Student Deleted", msg, System.currentTimeMillis(), false, "SUCCESS"));
-                NotificationHelper.sendImportExportNotification(getApplication(), "Student Deleted", msg, "SUCCESS"); // System notification
+                NotificationBus.getInstance(getApplication()).post(NotificationHelper.CATEGORY_IMPORT_EXPORT, "Student Deleted", msg, "SUCCESS"); // In-app and system notification
             } catch (Exception e) {
                 String msg = "Failed to delete student: " + e.getMessage();
                 operationResult.postValue(msg);
-                studentRepository.insertNotification(new Notification("Student Delete Failed", msg, System.currentTimeMillis(), false, "ERROR"));
-                NotificationHelper.sendImportExportNotification(getApplication(), "Student Delete Failed", msg, "ERROR"); // System notification
+                NotificationBus.getInstance(getApplication()).post(NotificationHelper.CATEGORY_IMPORT_EXPORT, "Student Delete Failed", msg, "ERROR"); // In-app and system notification
                 Log.e(TAG, "Error deleting student", e);
             }
         });
@@ -107,6 +144,7 @@ public class AddStudentViewModel extends AndroidViewModel {
      */
     public void importAllData(Uri uri) {
         ioExecutor.execute(() -> {
+            long pipelineStart = System.nanoTime();
             String notificationTitle = "Data Restore";
             String notificationType = "SUCCESS";
             StringBuilder resultMessage = new StringBuilder();
@@ -133,6 +171,7 @@ public class AddStudentViewModel extends AndroidViewModel {
                     } else {
                         AppDatabase db = AppDatabase.getDatabase(getApplication());
                         AppDatabase.ImportResult importResult = db.importDatabaseFromJson(jsonString);
+                        Metrics.counter("pipeline.import.rowsInserted").add(importResult.importedStudentCount + importResult.importedAttendanceCount);
 
                         if (importResult.errorMessage != null) {
                             resultMessage.append("Restore failed: ").append(importResult.errorMessage);
@@ -163,9 +202,74 @@ public class AddStudentViewModel extends AndroidViewModel {
                 Log.e(TAG, "Error restoring data from JSON", e);
             }
 
+            Metrics.timer("pipeline.import.json").stop(pipelineStart);
+            operationResult.postValue(resultMessage.toString());
+            NotificationBus.getInstance(getApplication()).post(NotificationHelper.CATEGORY_IMPORT_EXPORT, notificationTitle, resultMessage.toString(), notificationType); // In-app and system notification
+        });
+    }
+
+    /**
+     * Merges a JSON backup into the current data instead of replacing it.
+     * Only students and attendance records that differ from the file are written,
+     * and students or attendance missing from the file are removed. Student IDs are only matched where the
+     * backup's uuids show they come from this database.
+     * @param uri The URI of the selected JSON backup file.
+     */
+    public void mergeAllData(Uri uri) {
+        ioExecutor.execute(() -> {
+            long pipelineStart = System.nanoTime();
+            String notificationTitle = "Data Merge";
+            String notificationType = "SUCCESS";
+            StringBuilder resultMessage = new StringBuilder();
+
+            try (InputStream inputStream = getApplication().getContentResolver().openInputStream(uri)) {
+                if (inputStream == null) {
+                    resultMessage.append("Failed to open selected file for merge.");
+                    notificationType = "ERROR";
+                    Log.e(TAG, "Failed to open selected file for merge. URI: " + uri);
+                } else {
+                    StringBuilder stringBuilder = new StringBuilder();
+                    BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        stringBuilder.append(line);
+                    }
+
+                    AppDatabase db = AppDatabase.getDatabase(getApplication());
+                    Map<String, Object> parsed = db.parseJsonBackup(stringBuilder.toString());
+                    @SuppressWarnings("unchecked")
+                    List<ExcelUtils.StudentImport> students = (List<ExcelUtils.StudentImport>) parsed.get("students");
+                    @SuppressWarnings("unchecked")
+                    List<ExcelUtils.AttendanceImport> attendances = (List<ExcelUtils.AttendanceImport>) parsed.get("attendances");
+
+                    StudentRepository.MergeResult mergeResult =
+                            studentRepository.performMergeImportTransaction(students, attendances, true, true);
+                    if (mergeResult.errorMessage != null) {
+                        resultMessage.append(mergeResult.errorMessage);
+                        notificationType = "ERROR";
+                    } else {
+                        resultMessage.append(mergeResult.hasChanges() ? "Merge complete! " : "Merge complete, no changes found. ")
+                                .append(mergeResult.toSummary());
+                        if (!mergeResult.skippedStudents.isEmpty() || !mergeResult.skippedAttendance.isEmpty()) {
+                            resultMessage.append("\nSkipped: ").append(mergeResult.skippedStudents.size()).append(" students, ")
+                                    .append(mergeResult.skippedAttendance.size()).append(" attendance records.");
+                            notificationType = "WARNING";
+                        }
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                resultMessage.append("Merge failed: ").append(e.getMessage());
+                notificationType = "ERROR";
+                Log.e(TAG, "Backup file could not be parsed for merge", e);
+            } catch (Exception e) {
+                resultMessage.append("Error merging data: ").append(e.getMessage());
+                notificationType = "ERROR";
+                Log.e(TAG, "Error merging data from JSON", e);
+            }
+
+            Metrics.timer("pipeline.import.jsonMerge").stop(pipelineStart);
             operationResult.postValue(resultMessage.toString());
-            studentRepository.insertNotification(new Notification(notificationTitle, resultMessage.toString(), System.currentTimeMillis(), false, notificationType));
-            NotificationHelper.sendImportExportNotification(getApplication(), notificationTitle, resultMessage.toString(), notificationType);
+            NotificationBus.getInstance(getApplication()).post(NotificationHelper.CATEGORY_IMPORT_EXPORT, notificationTitle, resultMessage.toString(), notificationType); // In-app and system notification
         });
     }
 
@@ -176,13 +280,14 @@ public class AddStudentViewModel extends AndroidViewModel {
      */
     public void exportAllData(Uri outputUri) { // Changed parameter from File to Uri
         ioExecutor.execute(() -> {
+            long pipelineStart = System.nanoTime();
             String notificationTitle = "Data Backup";
             String notificationType = "SUCCESS";
             StringBuilder resultMessage = new StringBuilder();
 
             try {
                 AppDatabase db = AppDatabase.getDatabase(getApplication());
-                String jsonString = db.exportDatabaseToJson();
+                String jsonString = Metrics.timer("pipeline.export.jsonSerialize").time(() -> db.exportDatabaseToJson());
 
                 if (jsonString == null || jsonString.isEmpty()) {
                     resultMessage.append("No data to export or export failed.");
@@ -204,9 +309,144 @@ public class AddStudentViewModel extends AndroidViewModel {
                 Log.e(TAG, "Error backing up data to JSON", e);
             }
 
+            Metrics.timer("pipeline.export.json").stop(pipelineStart);
+            operationResult.postValue(resultMessage.toString());
+            NotificationBus.getInstance(getApplication()).post(NotificationHelper.CATEGORY_IMPORT_EXPORT, notificationTitle, resultMessage.toString(), notificationType); // In-app and system notification
+        });
+    }
+
+    /**
+     * Imports one or more CSV files (a students file and, optionally, an attendance file).
+     * @param uris The selected CSV files.
+     * @param merge True to merge only the changed rows, false to replace all existing data.
+     */
+    public void importCsvData(List<Uri> uris, boolean merge) {
+        ioExecutor.execute(() -> {
+            long pipelineStart = System.nanoTime();
+            String notificationTitle = merge ? "CSV Merge" : "CSV Import";
+            String notificationType = "SUCCESS";
+            StringBuilder resultMessage = new StringBuilder();
+
+            List<ExcelUtils.StudentImport> students = new ArrayList<>();
+            List<ExcelUtils.AttendanceImport> attendances = new ArrayList<>();
+            List<String> problems = new ArrayList<>();
+            boolean hasAttendanceFile = false;
+
+            try {
+                for (Uri uri : uris) {
+                    try (InputStream inputStream = getApplication().getContentResolver().openInputStream(uri)) {
+                        if (inputStream == null) {
+                            throw new IOException("Failed to open " + uri.getLastPathSegment());
+                        }
+                        long parseStart = System.nanoTime();
+                        String table = CsvUtils.importDataFromCSV(inputStream, students, attendances, problems);
+                        Metrics.timer("pipeline.import.csvParse").stop(parseStart);
+                        hasAttendanceFile |= CsvUtils.TABLE_ATTENDANCE.equals(table);
+                    }
+                }
+
+                if (students.isEmpty()) {
+                    resultMessage.append("No students found. Please select the students CSV file (and optionally the attendance CSV file).");
+                    notificationType = "ERROR";
+                } else if (merge) {
+                    // Student IDs of a registrar's file mean nothing here, only a Markly export (with its UUID column)
+                    // may be matched on them
+                    boolean marklyExport = false;
+                    for (ExcelUtils.StudentImport student : students) {
+                        if (student.uuid != null) {
+                            marklyExport = true;
+                            break;
+                        }
+                    }
+                    StudentRepository.MergeResult mergeResult = studentRepository.performMergeImportTransaction(
+                            students, hasAttendanceFile ? attendances : null, true, marklyExport);
+                    if (mergeResult.errorMessage != null) {
+                        resultMessage.append(mergeResult.errorMessage);
+                        notificationType = "ERROR";
+                    } else {
+                        resultMessage.append(mergeResult.hasChanges() ? "Merge complete! " : "Merge complete, no changes found. ")
+                                .append(mergeResult.toSummary());
+                        if (!mergeResult.skippedStudents.isEmpty() || !mergeResult.skippedAttendance.isEmpty()) {
+                            resultMessage.append("\nSkipped: ").append(mergeResult.skippedStudents.size()).append(" students, ")
+                                    .append(mergeResult.skippedAttendance.size()).append(" attendance records.");
+                            notificationType = "WARNING";
+                        }
+                    }
+                } else {
+                    // The full import reports its own in-app and system notifications
+                    AppDatabase db = AppDatabase.getDatabase(getApplication());
+                    StudentRepository.ImportResult importResult = db.runInTransaction(() ->
+                            studentRepository.performFullImportTransaction(students, attendances, new HashMap<>()));
+                    String message = importResult.errorMessage != null
+                            ? "CSV import failed: " + importResult.errorMessage
+                            : "CSV import complete! " + importResult.importedStudentCount + " students and "
+                                    + importResult.importedAttendanceCount + " attendance records imported.";
+                    operationResult.postValue(message);
+                    Metrics.timer("pipeline.import.csv").stop(pipelineStart);
+                    return;
+                }
+
+                if (!problems.isEmpty()) {
+                    resultMessage.append("\nUnreadable rows (").append(problems.size()).append("): ")
+                            .append(String.join(", ", problems.subList(0, Math.min(problems.size(), 10))));
+                    if (!"ERROR".equals(notificationType)) {
+                        notificationType = "WARNING";
+                    }
+                }
+            } catch (Exception e) {
+                resultMessage.append("Error importing CSV: ").append(e.getMessage());
+                notificationType = "ERROR";
+                Log.e(TAG, "Error importing CSV data", e);
+            }
+
+            Metrics.timer(merge ? "pipeline.import.csvMerge" : "pipeline.import.csv").stop(pipelineStart);
+            operationResult.postValue(resultMessage.toString());
+            NotificationBus.getInstance(getApplication()).post(NotificationHelper.CATEGORY_IMPORT_EXPORT, notificationTitle, resultMessage.toString(), notificationType); // In-app and system notification
+        });
+    }
+
+    /**
+     * Exports the students and attendance tables as two CSV files into the chosen folder.
+     * @param treeUri The folder picked by the user (from OpenDocumentTree).
+     */
+    public void exportCsvData(Uri treeUri) {
+        ioExecutor.execute(() -> {
+            long pipelineStart = System.nanoTime();
+            String notificationTitle = "CSV Export";
+            String notificationType = "SUCCESS";
+            StringBuilder resultMessage = new StringBuilder();
+
+            try {
+                ContentResolver resolver = getApplication().getContentResolver();
+                Uri folderUri = DocumentsContract.buildDocumentUriUsingTree(treeUri, DocumentsContract.getTreeDocumentId(treeUri));
+                String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
+                Uri studentsUri = DocumentsContract.createDocument(resolver, folderUri, "text/csv", "Markly_Students_" + timeStamp + ".csv");
+                Uri attendanceUri = DocumentsContract.createDocument(resolver, folderUri, "text/csv", "Markly_Attendance_" + timeStamp + ".csv");
+                if (studentsUri == null || attendanceUri == null) {
+                    throw new IOException("Could not create files in the selected folder.");
+                }
+
+                AppDatabase db = AppDatabase.getDatabase(getApplication());
+                int studentCount;
+                int attendanceCount;
+                try (OutputStream outputStream = resolver.openOutputStream(studentsUri)) {
+                    studentCount = db.exportStudentsToCsv(outputStream);
+                }
+                try (OutputStream outputStream = resolver.openOutputStream(attendanceUri)) {
+                    attendanceCount = db.exportAttendanceToCsv(outputStream);
+                }
+                Metrics.counter("pipeline.export.csvRows").add(studentCount + attendanceCount);
+                resultMessage.append("Exported ").append(studentCount).append(" students and ")
+                        .append(attendanceCount).append(" attendance records to CSV.");
+            } catch (Exception e) {
+                resultMessage.append("Error exporting CSV: ").append(e.getMessage());
+                notificationType = "ERROR";
+                Log.e(TAG, "Error exporting CSV data", e);
+            }
+
+            Metrics.timer("pipeline.export.csv").stop(pipelineStart);
             operationResult.postValue(resultMessage.toString());
-            studentRepository.insertNotification(new Notification(notificationTitle, resultMessage.toString(), System.currentTimeMillis(), false, notificationType));
-            NotificationHelper.sendImportExportNotification(getApplication(), notificationTitle, resultMessage.toString(), notificationType);
+            NotificationBus.getInstance(getApplication()).post(NotificationHelper.CATEGORY_IMPORT_EXPORT, notificationTitle, resultMessage.toString(), notificationType); // In-app and system notification
         });
     }
 
@@ -8,21 +8,28 @@ import android.widget.ImageView; // Import ImageView
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.aquaa.markly.R;
 import com.aquaa.markly.data.database.Student;
+import com.aquaa.markly.utils.DiffPayloads;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * RecyclerView Adapter for displaying a list of students in the Add/Manage Student screen.
  * This adapter is responsible for showing student details and handling delete actions.
  */
-public class StudentManageAdapter extends RecyclerView.Adapter<StudentManageAdapter.StudentManageViewHolder> {
+public class StudentManageAdapter extends ListAdapter<Student, StudentManageAdapter.StudentManageViewHolder> {
+
+    // Change payloads, see DiffPayloads
+    private static final int FIELD_NAME = 1;
+    private static final int FIELD_MOBILE = 1 << 1;
+    private static final int FIELD_SEMESTER_SECTION = 1 << 2;
 
-    private List<Student> students = new ArrayList<>();
     private OnStudentActionListener listener; // Listener for delete action
 
     /**
@@ -34,16 +41,14 @@ public class StudentManageAdapter extends RecyclerView.Adapter<StudentManageAdap
     }
 
     public StudentManageAdapter(OnStudentActionListener listener) {
+        super(DIFF_CALLBACK); // The list is diffed on a background thread
         this.listener = listener;
+        setHasStableIds(true);
     }
 
-    /**
-     * Sets the list of students to be displayed in the RecyclerView.
-     * @param newStudents The new list of Student objects.
-     */
-    public void setStudents(List<Student> newStudents) {
-        this.students = newStudents != null ? newStudents : new ArrayList<>();
-        notifyDataSetChanged(); // Notify the adapter that the data set has changed
+    @Override
+    public long getItemId(int position) {
+        return getItem(position).getStudentId();
     }
 
     @NonNull
@@ -56,12 +61,26 @@ public class StudentManageAdapter extends RecyclerView.Adapter<StudentManageAdap
 
     @Override
     public void onBindViewHolder(@NonNull StudentManageViewHolder holder, int position) {
-        Student currentStudent = students.get(position);
-        holder.studentNameTextView.setText(currentStudent.getName());
-        holder.studentMobileTextView.setText("Mobile: " + currentStudent.getMobile());
-        holder.studentSemesterSectionTextView.setText(
-                "Sem: " + currentStudent.getCurrentSemester() + ", Sec: " + currentStudent.getSection()
-        );
+        bind(holder, getItem(position), DiffPayloads.ALL);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull StudentManageViewHolder holder, int position, @NonNull List<Object> payloads) {
+        bind(holder, getItem(position), DiffPayloads.merge(payloads)); // Only the fields that changed
+    }
+
+    private void bind(StudentManageViewHolder holder, Student currentStudent, int changes) {
+        if (DiffPayloads.has(changes, FIELD_NAME)) {
+            holder.studentNameTextView.setText(currentStudent.getName());
+        }
+        if (DiffPayloads.has(changes, FIELD_MOBILE)) {
+            holder.studentMobileTextView.setText("Mobile: " + currentStudent.getMobile());
+        }
+        if (DiffPayloads.has(changes, FIELD_SEMESTER_SECTION)) {
+            holder.studentSemesterSectionTextView.setText(
+                    "Sem: " + currentStudent.getCurrentSemester() + ", Sec: " + currentStudent.getSection()
+            );
+        }
 
         // Set OnClickListener for the delete icon
         holder.deleteIcon.setOnClickListener(v -> {
@@ -71,10 +90,40 @@ public class StudentManageAdapter extends RecyclerView.Adapter<StudentManageAdap
         });
     }
 
-    @Override
-    public int getItemCount() {
-        return students.size();
-    }
+    /**
+     * Student.equals() only compares ids, so the displayed fields are compared here.
+     */
+    private static final DiffUtil.ItemCallback<Student> DIFF_CALLBACK = new DiffUtil.ItemCallback<Student>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Student oldItem, @NonNull Student newItem) {
+            return oldItem.getStudentId() == newItem.getStudentId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Student oldItem, @NonNull Student newItem) {
+            return changes(oldItem, newItem) == 0;
+        }
+
+        @Override
+        public Object getChangePayload(@NonNull Student oldItem, @NonNull Student newItem) {
+            return changes(oldItem, newItem);
+        }
+
+        private int changes(Student oldItem, Student newItem) {
+            int changes = 0;
+            if (!Objects.equals(oldItem.getName(), newItem.getName())) {
+                changes |= FIELD_NAME;
+            }
+            if (!Objects.equals(oldItem.getMobile(), newItem.getMobile())) {
+                changes |= FIELD_MOBILE;
+            }
+            if (oldItem.getCurrentSemester() != newItem.getCurrentSemester()
+                    || !Objects.equals(oldItem.getSection(), newItem.getSection())) {
+                changes |= FIELD_SEMESTER_SECTION;
+            }
+            return changes;
+        }
+    };
 
     /**
      * ViewHolder class to hold references to the UI elements of each student item.
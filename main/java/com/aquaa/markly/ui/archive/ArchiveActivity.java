@@ -0,0 +1,104 @@
+package com.aquaa.markly.ui.archive;
+
+import android.os.Bundle;
+import android.widget.ArrayAdapter;
+import android.widget.Button;
+import android.widget.Spinner;
+import android.widget.TextView;
+
+import androidx.annotation.Nullable;
+import androidx.appcompat.app.AlertDialog;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.ViewModelProvider;
+
+import com.aquaa.markly.R;
+import com.aquaa.markly.data.database.ArchiveStore;
+import com.aquaa.markly.data.repository.ArchiveRepository;
+import com.aquaa.markly.utils.AcademicYear;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Attendance per academic year, live and archived, and moving closed years out of the live database.
+ */
+public class ArchiveActivity extends AppCompatActivity {
+
+    private ArchiveViewModel archiveViewModel;
+    private final List<Integer> archivableYears = new ArrayList<>();
+    private boolean archiving;
+
+    @Override
+    protected void onCreate(@Nullable Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_archive);
+
+        archiveViewModel = new ViewModelProvider(this).get(ArchiveViewModel.class);
+
+        TextView yearsText = findViewById(R.id.text_view_archive_years);
+        TextView statusText = findViewById(R.id.text_view_archive_status);
+        Spinner yearSpinner = findViewById(R.id.spinner_archive_year);
+        Button archiveButton = findViewById(R.id.button_archive_year);
+
+        archiveViewModel.getYearSummaries().observe(this, summaries -> {
+            if (summaries == null || summaries.isEmpty()) {
+                yearsText.setText("No attendance recorded yet.");
+            } else {
+                StringBuilder text = new StringBuilder();
+                for (ArchiveStore.YearSummary summary : summaries) {
+                    if (text.length() > 0) {
+                        text.append('\n');
+                    }
+                    float rate = summary.recordedCount > 0 ? summary.presentCount * 100f / summary.recordedCount : 0f;
+                    text.append(String.format(Locale.getDefault(), "%s: %d records, %.1f%% present, %d students",
+                            AcademicYear.label(summary.academicYear), summary.recordedCount, rate, summary.studentCount));
+                    if (summary.archivedCount == summary.recordedCount) {
+                        text.append(" (archived)");
+                    } else if (summary.archivedCount > 0) {
+                        text.append(String.format(Locale.getDefault(), " (%d archived)", summary.archivedCount));
+                    }
+                }
+                yearsText.setText(text.toString());
+            }
+            archivableYears.clear();
+            archivableYears.addAll(ArchiveRepository.getArchivableYears(summaries));
+            List<String> labels = new ArrayList<>();
+            for (int year : archivableYears) {
+                labels.add(AcademicYear.label(year));
+            }
+            if (labels.isEmpty()) {
+                labels.add("No closed year to archive");
+            }
+            ArrayAdapter<String> yearAdapter = new ArrayAdapter<>(this, android.R.layout.simple_spinner_item, labels);
+            yearAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+            yearSpinner.setAdapter(yearAdapter);
+            archiveButton.setEnabled(!archiving && !archivableYears.isEmpty());
+        });
+        archiveViewModel.getStatus().observe(this, status -> {
+            if (status != null) {
+                statusText.setText(status);
+            }
+        });
+        archiveViewModel.isArchiving().observe(this, busy -> {
+            archiving = Boolean.TRUE.equals(busy);
+            archiveButton.setText(archiving ? "Archiving..." : "Archive Year");
+            archiveButton.setEnabled(!archiving && !archivableYears.isEmpty());
+        });
+
+        archiveButton.setOnClickListener(v -> {
+            int position = yearSpinner.getSelectedItemPosition();
+            if (position < 0 || position >= archivableYears.size()) {
+                return;
+            }
+            int year = archivableYears.get(position);
+            new AlertDialog.Builder(this)
+                    .setTitle("Archive " + AcademicYear.label(year) + "?")
+                    .setMessage("Its attendance moves to the archive. It stays in the yearly history here, but leaves "
+                            + "roll call, SMS and tracking. Other synced devices keep their copy.")
+                    .setPositiveButton("Yes, Archive", (dialog, which) -> archiveViewModel.archiveYear(year))
+                    .setNegativeButton("Cancel", (dialog, which) -> dialog.dismiss())
+                    .show();
+        });
+    }
+}
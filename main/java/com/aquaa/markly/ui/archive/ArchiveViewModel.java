@@ -0,0 +1,45 @@
+package com.aquaa.markly.ui.archive;
+
+import android.app.Application;
+
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+
+import com.aquaa.markly.data.database.ArchiveStore;
+import com.aquaa.markly.data.repository.ArchiveRepository;
+import com.aquaa.markly.utils.MarklyLog;
+
+import java.util.List;
+
+/**
+ * ViewModel for ArchiveActivity. Archiving runs in ArchiveRepository, so it finishes even if the screen is left.
+ */
+public class ArchiveViewModel extends AndroidViewModel {
+
+    private static final String TAG = "ArchiveViewModel";
+
+    private final ArchiveRepository archiveRepository;
+
+    public ArchiveViewModel(Application application) {
+        super(application);
+        archiveRepository = ArchiveRepository.getInstance(application);
+        archiveRepository.refreshYearSummaries();
+    }
+
+    public LiveData<List<ArchiveStore.YearSummary>> getYearSummaries() {
+        return archiveRepository.getYearSummaries();
+    }
+
+    public LiveData<String> getStatus() {
+        return archiveRepository.getStatus();
+    }
+
+    public LiveData<Boolean> isArchiving() {
+        return archiveRepository.isArchiving();
+    }
+
+    public void archiveYear(int year) {
+        MarklyLog.d(TAG, "Archiving academic year {}", year);
+        archiveRepository.archiveYear(year);
+    }
+}
@@ -28,11 +28,13 @@ import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 
 public class AttendanceActivity extends AppCompatActivity { // Removed `implements StudentAttendanceAdapter.OnAttendanceChangeListener` as it's not used in current logic
 
     private AttendanceViewModel attendanceViewModel;
     private Spinner semesterSpinner;
+    private Spinner sectionSpinner;
     private RecyclerView studentsRecyclerView;
     private Button saveAttendanceButton; // Changed from submitAttendanceButton
     private Button chooseAttendanceDateButton; // New button for date selection
@@ -41,6 +43,7 @@ public class AttendanceActivity extends AppCompatActivity { // Removed `implemen
     private StudentAttendanceAdapter adapter;
 
     private int selectedSemester = -1;
+    private String selectedSection = null; // null for the whole semester
     private Long selectedAttendanceDateMillis = null; // Stores the selected attendance date in milliseconds
 
     private SimpleDateFormat dateFormatter = new SimpleDateFormat("dd MMMM yyyy", Locale.getDefault()); // Corrected format string
@@ -55,6 +58,7 @@ public class AttendanceActivity extends AppCompatActivity { // Removed `implemen
 
         // Initialize UI components
         semesterSpinner = findViewById(R.id.spinner_semester_attendance);
+        sectionSpinner = findViewById(R.id.spinner_section_attendance);
         studentsRecyclerView = findViewById(R.id.recycler_view_students_attendance);
         saveAttendanceButton = findViewById(R.id.button_save_attendance); // Changed ID
         chooseAttendanceDateButton = findViewById(R.id.button_choose_attendance_date); // New button
@@ -85,6 +89,10 @@ public class AttendanceActivity extends AppCompatActivity { // Removed `implemen
             semesterSpinner.setAdapter(semesterAdapter);
         });
 
+        // Sections of the selected semester
+        showSections(new ArrayList<>());
+        attendanceViewModel.getSections().observe(this, this::showSections);
+
         // Observe LiveData for students with their attendance status
         attendanceViewModel.getStudentsWithAttendanceStatus().observe(this, studentsWithStatus -> {
             adapter.submitList(studentsWithStatus); // Use submitList for ListAdapter
@@ -109,6 +117,13 @@ public class AttendanceActivity extends AppCompatActivity { // Removed `implemen
                 } else {
                     selectedSemester = -1; // No semester selected
                 }
+                // A new semester starts with all its sections
+                selectedSection = null;
+                if (selectedSemester != -1) {
+                    attendanceViewModel.loadSections(selectedSemester);
+                } else {
+                    showSections(new ArrayList<>());
+                }
                 // Reload students when semester changes, if a date is already selected
                 loadStudentsForSelectedDateAndSemester();
             }
@@ -119,6 +134,22 @@ public class AttendanceActivity extends AppCompatActivity { // Removed `implemen
             }
         });
 
+        sectionSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                String section = position > 0 ? parent.getItemAtPosition(position).toString() : null;
+                if (!Objects.equals(section, selectedSection)) { // Also fires when the semester's sections are shown
+                    selectedSection = section;
+                    loadStudentsForSelectedDateAndSemester();
+                }
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+                // Do nothing
+            }
+        });
+
         // Choose Date Button Listener
         chooseAttendanceDateButton.setOnClickListener(v -> showDatePicker());
 
@@ -136,6 +167,21 @@ public class AttendanceActivity extends AppCompatActivity { // Removed `implemen
         loadStudentsForSelectedDateAndSemester();
     }
 
+    /**
+     * Fills the section spinner, "All Sections" first.
+     */
+    private void showSections(List<String> sections) {
+        List<String> spinnerItems = new ArrayList<>();
+        spinnerItems.add("All Sections");
+        if (sections != null) {
+            spinnerItems.addAll(sections);
+        }
+        ArrayAdapter<String> sectionAdapter = new ArrayAdapter<>(this,
+                android.R.layout.simple_spinner_item, spinnerItems);
+        sectionAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        sectionSpinner.setAdapter(sectionAdapter);
+    }
+
     /**
      * Sets the selected attendance date to today's date and updates the TextView.
      */
@@ -186,7 +232,7 @@ public class AttendanceActivity extends AppCompatActivity { // Removed `implemen
      */
     private void loadStudentsForSelectedDateAndSemester() {
         if (selectedAttendanceDateMillis != null && selectedSemester != -1) {
-            attendanceViewModel.loadStudentsForSemesterAndDate(selectedSemester, selectedAttendanceDateMillis);
+            attendanceViewModel.loadStudentsForSemesterAndDate(selectedSemester, selectedSection, selectedAttendanceDateMillis);
         } else if (selectedAttendanceDateMillis == null) {
             adapter.submitList(new ArrayList<>()); // Clear list if no date selected
             Toast.makeText(this, "Please select an attendance date.", Toast.LENGTH_SHORT).show();
@@ -1,6 +1,7 @@
 package com.aquaa.markly.ui.attendance;
 
 import android.app.DatePickerDialog;
+import android.content.Intent;
 import android.graphics.Color;
 import android.os.Bundle;
 import android.util.Log;
@@ -9,6 +10,8 @@ import android.view.View;
 import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
 import android.widget.Button;
+import android.widget.CheckBox;
+import android.widget.EditText;
 import android.widget.ImageButton;
 import android.widget.RadioButton;
 import android.widget.RadioGroup;
@@ -22,15 +25,26 @@ import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.aquaa.markly.R;
+import com.aquaa.markly.data.database.SemesterPlan;
+import com.aquaa.markly.data.database.StreakDao;
+import com.aquaa.markly.data.repository.AttendanceResultStore;
+import com.aquaa.markly.data.repository.StudentRepository;
 import com.aquaa.markly.ui.attendance.AttendanceAnalyticsViewModel.AttendanceSummary;
-import com.aquaa.markly.ui.attendance.TrackAttendanceViewModel.AttendanceRecordDisplay;
+import com.aquaa.markly.utils.EligibilityProjection;
+import com.aquaa.markly.utils.TrendSeries;
 
+import com.github.mikephil.charting.charts.LineChart;
 import com.github.mikephil.charting.charts.PieChart;
 import com.github.mikephil.charting.components.Description;
+import com.github.mikephil.charting.components.XAxis;
+import com.github.mikephil.charting.data.Entry;
+import com.github.mikephil.charting.data.LineData;
+import com.github.mikephil.charting.data.LineDataSet;
 import com.github.mikephil.charting.data.PieData;
 import com.github.mikephil.charting.data.PieDataSet;
 import com.github.mikephil.charting.data.PieEntry;
 import com.github.mikephil.charting.formatter.PercentFormatter;
+import com.github.mikephil.charting.formatter.ValueFormatter;
 import com.github.mikephil.charting.animation.Easing;
 import com.github.mikephil.charting.utils.ColorTemplate;
 
@@ -42,6 +56,7 @@ import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.TimeZone;
 
 public class AttendanceAnalyticsActivity extends AppCompatActivity {
 
@@ -54,6 +69,22 @@ public class AttendanceAnalyticsActivity extends AppCompatActivity {
     private TextView totalRecordedDaysText;
     private RecyclerView topBottomStudentsRecyclerView;
     private TopBottomStudentAdapter topBottomStudentAdapter;
+    private TextView chronicAbsenteesText;
+    private CheckBox chronicAbsenceAlertsCheckBox;
+    private TextView semesterPlanText;
+    private View semesterPlanEditor;
+    private Button planStartDateButton;
+    private EditText planWorkingDaysEditText;
+    private EditText planMinPercentEditText;
+    private TextView atRiskStudentsText;
+    private final Calendar planStartCalendar = Calendar.getInstance();
+    private LineChart trendChart;
+    private TextView trendScopeText;
+    private TextView trendPointsText;
+    private Button trendShowClassButton;
+    private RadioGroup trendGranularityRadioGroup;
+    private final SimpleDateFormat trendDayFormat = new SimpleDateFormat("dd MMM yy", Locale.getDefault());
+    private final SimpleDateFormat trendMonthFormat = new SimpleDateFormat("MMM yyyy", Locale.getDefault());
 
     private RadioGroup periodSelectionRadioGroup;
     private Spinner semesterSpinnerAnalytics;
@@ -83,13 +114,30 @@ public class AttendanceAnalyticsActivity extends AppCompatActivity {
         totalRecordedDaysText = findViewById(R.id.total_recorded_days_text);
         attendancePieChart = findViewById(R.id.attendance_pie_chart);
         topBottomStudentsRecyclerView = findViewById(R.id.top_bottom_students_recycler_view);
+        chronicAbsenteesText = findViewById(R.id.text_view_chronic_absentees);
+        chronicAbsenceAlertsCheckBox = findViewById(R.id.checkbox_chronic_absence_alerts);
+        ((TextView) findViewById(R.id.text_view_chronic_absentees_hint)).setText(String.format(Locale.getDefault(),
+                "Absent %d or more working days in a row, up to their latest record:", StudentRepository.CHRONIC_ABSENCE_RUN));
 
         periodSelectionRadioGroup = findViewById(R.id.radio_group_period_selection);
         semesterSpinnerAnalytics = findViewById(R.id.spinner_semester_analytics);
         prevPeriodButton = findViewById(R.id.button_prev_period);
         nextPeriodButton = findViewById(R.id.button_next_period);
 
-        topBottomStudentAdapter = new TopBottomStudentAdapter();
+        semesterPlanText = findViewById(R.id.text_view_semester_plan);
+        semesterPlanEditor = findViewById(R.id.layout_semester_plan_editor);
+        planStartDateButton = findViewById(R.id.button_plan_start_date);
+        planWorkingDaysEditText = findViewById(R.id.edit_text_plan_working_days);
+        planMinPercentEditText = findViewById(R.id.edit_text_plan_min_percent);
+        atRiskStudentsText = findViewById(R.id.text_view_at_risk_students);
+        trendChart = findViewById(R.id.attendance_trend_chart);
+        trendScopeText = findViewById(R.id.text_view_trend_scope);
+        trendPointsText = findViewById(R.id.text_view_trend_points);
+        trendShowClassButton = findViewById(R.id.button_trend_show_class);
+        trendGranularityRadioGroup = findViewById(R.id.radio_group_trend_granularity);
+
+        // Tapping a ranked student follows them on the trend chart
+        topBottomStudentAdapter = new TopBottomStudentAdapter((studentId, studentName) -> mViewModel.setTrendStudent(studentId, studentName));
         topBottomStudentsRecyclerView.setLayoutManager(new LinearLayoutManager(this));
         topBottomStudentsRecyclerView.setAdapter(topBottomStudentAdapter);
         topBottomStudentsRecyclerView.setNestedScrollingEnabled(false);
@@ -101,6 +149,7 @@ public class AttendanceAnalyticsActivity extends AppCompatActivity {
         int yearFromIntent = getIntent().getIntExtra("selectedYear", -1);
         int dayFromIntent = getIntent().getIntExtra("selectedDay", -1);
         int semesterFromIntent = getIntent().getIntExtra("selectedSemester", 0);
+        mViewModel.setHandedOffResult(getIntent().getStringExtra(AttendanceResultStore.EXTRA_HANDLE));
 
         // FIX: Set initial semester for ViewModel immediately from Intent
         mViewModel.setSelectedSemester(semesterFromIntent);
@@ -216,31 +265,54 @@ public class AttendanceAnalyticsActivity extends AppCompatActivity {
         prevPeriodButton.setOnClickListener(v -> navigatePeriod(-1));
         nextPeriodButton.setOnClickListener(v -> navigatePeriod(1));
 
+        findViewById(R.id.button_view_heatmap).setOnClickListener(v -> {
+            Intent intent = new Intent(AttendanceAnalyticsActivity.this, AttendanceHeatmapActivity.class);
+            intent.putExtra("selectedMonth", currentPeriodCalendar.get(Calendar.MONTH));
+            intent.putExtra("selectedYear", currentPeriodCalendar.get(Calendar.YEAR));
+            intent.putExtra("selectedSemester", currentSelectedSemester);
+            startActivity(intent);
+        });
+
         mViewModel.getAttendanceSummary().observe(this, summary -> {
             updateAnalyticsDisplay(summary);
             updatePieChart(summary);
         });
 
-        mViewModel.getDetailedStudentAttendance().observe(this, records -> {
-            List<AttendanceRecordDisplay> sortedRecords = new ArrayList<>(records);
-            Collections.sort(sortedRecords, (o1, o2) -> Double.compare(o2.getAttendancePercentage(), o1.getAttendancePercentage()));
-
-            List<AttendanceRecordDisplay> displayRecords = new ArrayList<>();
-            if (sortedRecords.size() > 10) {
-                for (int i = 0; i < 5; i++) {
-                    displayRecords.add(sortedRecords.get(i));
-                }
-                int startBottom = Math.max(5, sortedRecords.size() - 5);
-                for (int i = startBottom; i < sortedRecords.size(); i++) {
-                    displayRecords.add(sortedRecords.get(i));
-                }
+        // Ranked in the ViewModel off the main thread, shown as is
+        mViewModel.getLeaderboard().observe(this, leaderboard -> topBottomStudentAdapter.submitList(leaderboard));
+
+        mViewModel.getChronicAbsentees().observe(this, absentees -> updateChronicAbsentees(absentees));
+        mViewModel.getChronicAbsenceAlertEnabled().observe(this, enabled -> chronicAbsenceAlertsCheckBox.setChecked(Boolean.TRUE.equals(enabled)));
+        chronicAbsenceAlertsCheckBox.setOnCheckedChangeListener((buttonView, isChecked) -> mViewModel.setChronicAbsenceAlertEnabled(isChecked));
+
+        planStartDateButton.setOnClickListener(v -> new DatePickerDialog(this, (view, year, month, dayOfMonth) -> {
+            planStartCalendar.set(year, month, dayOfMonth);
+            updatePlanStartDateButton();
+        }, planStartCalendar.get(Calendar.YEAR), planStartCalendar.get(Calendar.MONTH),
+                planStartCalendar.get(Calendar.DAY_OF_MONTH)).show());
+        findViewById(R.id.button_plan_save).setOnClickListener(v -> saveSemesterPlan());
+        findViewById(R.id.button_plan_clear).setOnClickListener(v -> mViewModel.deleteSemesterPlan());
+        mViewModel.getSemesterPlan().observe(this, plan -> updateSemesterPlan(plan));
+        mViewModel.getAtRiskStudents().observe(this, atRisk -> updateAtRiskStudents(atRisk));
+
+        trendGranularityRadioGroup.setOnCheckedChangeListener((group, checkedId) -> {
+            if (checkedId == R.id.radio_trend_daily) {
+                mViewModel.setTrendGranularity(StudentRepository.TREND_DAILY);
+            } else if (checkedId == R.id.radio_trend_monthly) {
+                mViewModel.setTrendGranularity(StudentRepository.TREND_MONTHLY);
             } else {
-                displayRecords.addAll(sortedRecords);
+                mViewModel.setTrendGranularity(StudentRepository.TREND_WEEKLY);
             }
-            topBottomStudentAdapter.submitList(displayRecords);
         });
+        trendShowClassButton.setOnClickListener(v -> mViewModel.setTrendStudent(0, null));
+        mViewModel.getTrendStudentName().observe(this, name -> {
+            trendScopeText.setText(name == null ? "Whole class. Tap a student above to follow them." : name);
+            trendShowClassButton.setVisibility(name == null ? View.GONE : View.VISIBLE);
+        });
+        mViewModel.getTrend().observe(this, series -> updateTrendChart(series));
 
         setupPieChart();
+        setupTrendChart();
     }
 
     /**
@@ -328,9 +400,105 @@ public class AttendanceAnalyticsActivity extends AppCompatActivity {
         int viewModelMonth = (currentSelectionMode == PERIOD_MODE_YEAR) ? -1 : month;
 
         // Use currentSelectedSemester (local state) which is updated by spinner listener
-        mViewModel.setSelectionParameters(viewModelMonth, year, viewModelDay, currentSelectedSemester, null);
+        mViewModel.setSelectionParameters(viewModelMonth, year, viewModelDay, currentSelectedSemester);
+    }
+
+
+    private void updateChronicAbsentees(List<StreakDao.ChronicAbsentee> absentees) {
+        if (absentees == null || absentees.isEmpty()) {
+            chronicAbsenteesText.setText("No chronic absentees.");
+            return;
+        }
+        SimpleDateFormat sdf = new SimpleDateFormat("dd MMM yyyy", Locale.getDefault());
+        StringBuilder text = new StringBuilder();
+        for (StreakDao.ChronicAbsentee absentee : absentees) {
+            if (text.length() > 0) {
+                text.append('\n');
+            }
+            text.append(String.format(Locale.getDefault(), "%s (Sem %d, %s): %d days in a row, last absent %s",
+                    absentee.student.getName(), absentee.student.getCurrentSemester(), absentee.student.getSection(),
+                    absentee.currentAbsentRun, sdf.format(new Date(absentee.lastRecordedDate))));
+        }
+        chronicAbsenteesText.setText(text);
+    }
+
+    private void updateSemesterPlan(@Nullable SemesterPlan plan) {
+        boolean semesterSelected = currentSelectedSemester != 0;
+        semesterPlanEditor.setVisibility(semesterSelected ? View.VISIBLE : View.GONE);
+        if (!semesterSelected) {
+            semesterPlanText.setText("Select a semester to plan its term.");
+            return;
+        }
+        if (plan == null) {
+            semesterPlanText.setText("No term planned for this semester. Set when it started and its working days to see who is at risk.");
+            planStartCalendar.setTimeInMillis(System.currentTimeMillis());
+            planWorkingDaysEditText.setText("");
+            planMinPercentEditText.setText(String.valueOf(SemesterPlan.DEFAULT_MIN_ATTENDANCE_PERCENT));
+        } else {
+            int required = EligibilityProjection.requiredDays(plan.getWorkingDays(), plan.getMinAttendancePercent());
+            semesterPlanText.setText(String.format(Locale.getDefault(),
+                    "%d working days, %d%% needed: at least %d days present.",
+                    plan.getWorkingDays(), plan.getMinAttendancePercent(), required));
+            planStartCalendar.setTimeInMillis(plan.getStartDate());
+            planWorkingDaysEditText.setText(String.valueOf(plan.getWorkingDays()));
+            planMinPercentEditText.setText(String.valueOf(plan.getMinAttendancePercent()));
+        }
+        updatePlanStartDateButton();
+    }
+
+    private void updatePlanStartDateButton() {
+        SimpleDateFormat sdf = new SimpleDateFormat("dd MMM yyyy", Locale.getDefault());
+        planStartDateButton.setText("Term starts: " + sdf.format(planStartCalendar.getTime()));
+    }
+
+    private void saveSemesterPlan() {
+        int workingDays;
+        int minPercent;
+        try {
+            workingDays = Integer.parseInt(planWorkingDaysEditText.getText().toString().trim());
+            minPercent = Integer.parseInt(planMinPercentEditText.getText().toString().trim());
+        } catch (NumberFormatException e) {
+            Toast.makeText(this, "Enter the working days and the minimum percentage.", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        if (workingDays <= 0 || minPercent <= 0 || minPercent > 100) {
+            Toast.makeText(this, "Working days must be positive and the minimum between 1 and 100%.", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        // Attendance is stored at local midnight, the term starts at the start of its first day
+        Calendar start = Calendar.getInstance();
+        start.clear();
+        start.set(planStartCalendar.get(Calendar.YEAR), planStartCalendar.get(Calendar.MONTH), planStartCalendar.get(Calendar.DAY_OF_MONTH));
+        mViewModel.saveSemesterPlan(start.getTimeInMillis(), workingDays, minPercent);
+        Toast.makeText(this, "Semester plan saved.", Toast.LENGTH_SHORT).show();
     }
 
+    private void updateAtRiskStudents(List<StudentRepository.AtRiskStudent> atRisk) {
+        if (currentSelectedSemester == 0 || mViewModel.getSemesterPlan().getValue() == null) {
+            atRiskStudentsText.setText("");
+            return;
+        }
+        if (atRisk == null || atRisk.isEmpty()) {
+            atRiskStudentsText.setText("Nobody is at risk of missing the minimum attendance.");
+            return;
+        }
+        StringBuilder text = new StringBuilder();
+        for (StudentRepository.AtRiskStudent student : atRisk) {
+            if (text.length() > 0) {
+                text.append('\n');
+            }
+            EligibilityProjection projection = student.projection;
+            if (projection.status == EligibilityProjection.STATUS_UNREACHABLE) {
+                text.append(String.format(Locale.getDefault(), "%s (%s): cannot reach the minimum, %d absences",
+                        student.student.getName(), student.student.getSection(), projection.absentDays));
+            } else {
+                text.append(String.format(Locale.getDefault(), "%s (%s): must attend %d of the %d remaining days, %d more absences allowed",
+                        student.student.getName(), student.student.getSection(), projection.neededDays,
+                        projection.remainingDays, projection.slackDays));
+            }
+        }
+        atRiskStudentsText.setText(text);
+    }
 
     private void updateAnalyticsDisplay(AttendanceSummary summary) {
         totalStudentsAnalyticsText.setText(String.format(Locale.getDefault(), "Total Students: %d", summary.getTotalStudents()));
@@ -340,6 +508,70 @@ public class AttendanceAnalyticsActivity extends AppCompatActivity {
     }
 
 
+    private void setupTrendChart() {
+        TypedValue typedValue = new TypedValue();
+        getTheme().resolveAttribute(com.google.android.material.R.attr.colorOnSurface, typedValue, true);
+        int onSurfaceColor = typedValue.data;
+
+        trendDayFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        trendMonthFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        trendChart.getDescription().setEnabled(false);
+        trendChart.getLegend().setEnabled(false);
+        trendChart.getAxisRight().setEnabled(false);
+        trendChart.getAxisLeft().setAxisMinimum(0f);
+        trendChart.getAxisLeft().setAxisMaximum(100f);
+        trendChart.getAxisLeft().setTextColor(onSurfaceColor);
+        trendChart.setNoDataText("No attendance recorded yet.");
+        trendChart.setNoDataTextColor(onSurfaceColor);
+
+        XAxis xAxis = trendChart.getXAxis();
+        xAxis.setPosition(XAxis.XAxisPosition.BOTTOM);
+        xAxis.setTextColor(onSurfaceColor);
+        xAxis.setLabelCount(4);
+        xAxis.setDrawGridLines(false);
+        xAxis.setValueFormatter(new ValueFormatter() {
+            @Override
+            public String getAxisLabel(float value, com.github.mikephil.charting.components.AxisBase axis) {
+                // x values are local dates as days since the epoch, formatted in UTC to get the same date back
+                Date date = new Date((long) value * 86_400_000L);
+                Integer granularity = mViewModel.getTrendGranularity().getValue();
+                return granularity != null && granularity == StudentRepository.TREND_MONTHLY
+                        ? trendMonthFormat.format(date) : trendDayFormat.format(date);
+            }
+        });
+    }
+
+    /**
+     * Plots the downsampled series, one entry per point. Timestamps are scaled to days on the x axis because a float
+     * cannot hold milliseconds since the epoch precisely enough to keep points apart.
+     */
+    private void updateTrendChart(TrendSeries series) {
+        if (series == null || series.size() == 0) {
+            trendChart.clear();
+            trendPointsText.setText("");
+            return;
+        }
+        TimeZone timeZone = TimeZone.getDefault();
+        List<Entry> entries = new ArrayList<>(series.size());
+        for (int i = 0; i < series.size(); i++) {
+            long start = series.bucketStart[i];
+            entries.add(new Entry((float) ((start + timeZone.getOffset(start)) / 86_400_000L), series.rate[i]));
+        }
+        LineDataSet dataSet = new LineDataSet(entries, "Attendance %");
+        int color = getResources().getColor(R.color.md_theme_light_secondary, getTheme());
+        dataSet.setColor(color);
+        dataSet.setCircleColor(color);
+        dataSet.setDrawCircles(series.size() <= 31);
+        dataSet.setLineWidth(2f);
+        dataSet.setDrawValues(false);
+        trendChart.setData(new LineData(dataSet));
+        trendChart.invalidate();
+
+        trendPointsText.setText(series.size() < series.sourceSize
+                ? String.format(Locale.getDefault(), "Showing %d of %d points", series.size(), series.sourceSize)
+                : String.format(Locale.getDefault(), "%d points", series.size()));
+    }
+
     private void setupPieChart() {
         attendancePieChart.setUsePercentValues(true);
         attendancePieChart.getDescription().setEnabled(false);
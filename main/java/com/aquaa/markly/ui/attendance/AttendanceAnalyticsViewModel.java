@@ -7,18 +7,21 @@ import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 
-import com.aquaa.markly.data.database.Attendance;
+import com.aquaa.markly.data.database.SemesterPlan;
+import com.aquaa.markly.data.database.StreakDao;
 import com.aquaa.markly.data.database.Student;
+import com.aquaa.markly.data.repository.AttendanceResultStore;
 import com.aquaa.markly.data.repository.StudentRepository;
 import com.aquaa.markly.ui.attendance.TrackAttendanceViewModel.AttendanceRecordDisplay;
+import com.aquaa.markly.utils.AttendanceAggregator;
+import com.aquaa.markly.utils.Metrics;
+import com.aquaa.markly.utils.RankingEngine;
+import com.aquaa.markly.utils.TrendSeries;
 
 import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -29,33 +32,166 @@ import java.util.concurrent.Executors;
 public class AttendanceAnalyticsViewModel extends AndroidViewModel {
 
     private static final String TAG = "AttendanceAnalyticsVM";
+    // Students at each end of the leaderboard
+    private static final int LEADERBOARD_SIZE = 5;
+    // Fewer recorded days than this and a student is not ranked, 0% over no days says nothing
+    private static final int MIN_RECORDED_DAYS_FOR_RANKING = 1;
+    // Chronic absentees listed at most
+    private static final int CHRONIC_LIST_SIZE = 20;
+    // Points drawn on the trend chart at most, about one per 3 pixels on a phone
+    private static final int TREND_MAX_POINTS = 120;
+    // At-risk students listed at most
+    private static final int AT_RISK_LIST_SIZE = 50;
     private StudentRepository studentRepository;
 
     private MutableLiveData<Integer> selectedMonth = new MutableLiveData<>();
     private MutableLiveData<Integer> selectedYear = new MutableLiveData<>();
     private MutableLiveData<Integer> selectedDay = new MutableLiveData<>();
     private MutableLiveData<Integer> selectedSemester = new MutableLiveData<>();
-    private MutableLiveData<List<AttendanceRecordDisplay>> initialDetailedRecords = new MutableLiveData<>();
 
     private MutableLiveData<AttendanceSummary> attendanceSummary = new MutableLiveData<>();
-    private MutableLiveData<List<AttendanceRecordDisplay>> detailedStudentAttendance = new MutableLiveData<>();
+    private MutableLiveData<List<AttendanceRecordDisplay>> leaderboard = new MutableLiveData<>();
+    private MutableLiveData<String> selectedSection = new MutableLiveData<>(); // null for all sections
+    private MutableLiveData<List<StreakDao.ChronicAbsentee>> chronicAbsentees = new MutableLiveData<>();
+    private MutableLiveData<Boolean> chronicAbsenceAlertEnabled = new MutableLiveData<>();
+    private MutableLiveData<SemesterPlan> semesterPlan = new MutableLiveData<>();
+    private MutableLiveData<List<StudentRepository.AtRiskStudent>> atRiskStudents = new MutableLiveData<>();
+    private MutableLiveData<TrendSeries> trend = new MutableLiveData<>();
+    private MutableLiveData<Integer> trendGranularity = new MutableLiveData<>(StudentRepository.TREND_WEEKLY);
+    private MutableLiveData<String> trendStudentName = new MutableLiveData<>(); // null for the whole class
+    private long trendStudentId; // 0 for the whole class
 
     private MutableLiveData<List<Integer>> allAvailableSemesters = new MutableLiveData<>(); // New LiveData for all semesters
 
+    private final AttendanceResultStore resultStore;
+    private AttendanceResultStore.Key handedOffKey; // Held in the store until this ViewModel is cleared
+
     private final ExecutorService dbExecutor = Executors.newSingleThreadExecutor();
 
     public AttendanceAnalyticsViewModel(Application application) {
         super(application);
         studentRepository = new StudentRepository(application);
+        resultStore = AttendanceResultStore.getInstance(application);
         loadAllSemesters(); // Load semesters on init
+        dbExecutor.execute(() -> chronicAbsenceAlertEnabled.postValue(studentRepository.isChronicAbsenceAlertEnabled()));
     }
 
     public LiveData<AttendanceSummary> getAttendanceSummary() {
         return attendanceSummary;
     }
 
-    public LiveData<List<AttendanceRecordDisplay>> getDetailedStudentAttendance() {
-        return detailedStudentAttendance;
+    /**
+     * @return The top and bottom LEADERBOARD_SIZE students of the selected period, semester and section, best first.
+     * Everything is listed when there are no more than twice as many eligible students.
+     */
+    public LiveData<List<AttendanceRecordDisplay>> getLeaderboard() {
+        return leaderboard;
+    }
+
+    /**
+     * @return Students of the selected semester and section absent at least StudentRepository.CHRONIC_ABSENCE_RUN
+     * recorded days in a row up to their latest record, longest runs first. Not limited to the selected period.
+     */
+    public LiveData<List<StreakDao.ChronicAbsentee>> getChronicAbsentees() {
+        return chronicAbsentees;
+    }
+
+    public LiveData<Boolean> getChronicAbsenceAlertEnabled() {
+        return chronicAbsenceAlertEnabled;
+    }
+
+    /**
+     * Turns the system notification for a student reaching a chronic absence run on or off.
+     */
+    public void setChronicAbsenceAlertEnabled(boolean enabled) {
+        if (Boolean.valueOf(enabled).equals(chronicAbsenceAlertEnabled.getValue())) {
+            return;
+        }
+        chronicAbsenceAlertEnabled.setValue(enabled);
+        dbExecutor.execute(() -> studentRepository.setChronicAbsenceAlertEnabled(enabled));
+    }
+
+    /**
+     * @return The plan of the selected semester's current term, or null if it has none or all semesters are selected.
+     */
+    public LiveData<SemesterPlan> getSemesterPlan() {
+        return semesterPlan;
+    }
+
+    /**
+     * @return Students of the selected semester and section at risk of missing the plan's minimum attendance, or
+     * unable to reach it any more, worst first. Covers the term of the plan, not the selected period.
+     */
+    public LiveData<List<StudentRepository.AtRiskStudent>> getAtRiskStudents() {
+        return atRiskStudents;
+    }
+
+    /**
+     * Sets the term of the selected semester and reloads the at-risk list. Ignored while all semesters are selected.
+     */
+    public void saveSemesterPlan(long startDate, int workingDays, int minAttendancePercent) {
+        Integer semester = selectedSemester.getValue();
+        if (semester == null || semester == 0) {
+            return;
+        }
+        SemesterPlan plan = new SemesterPlan(semester, startDate, workingDays, minAttendancePercent);
+        dbExecutor.execute(() -> {
+            studentRepository.saveSemesterPlanSync(plan);
+            loadEligibility(semester, selectedSection.getValue());
+        });
+    }
+
+    public void deleteSemesterPlan() {
+        Integer semester = selectedSemester.getValue();
+        if (semester == null || semester == 0) {
+            return;
+        }
+        dbExecutor.execute(() -> {
+            studentRepository.deleteSemesterPlanSync(semester);
+            loadEligibility(semester, selectedSection.getValue());
+        });
+    }
+
+    /**
+     * @return Attendance rate over all recorded history of the selected semester and section, or of the student set
+     * with setTrendStudent(), per day, week or month, downsampled to TREND_MAX_POINTS points.
+     */
+    public LiveData<TrendSeries> getTrend() {
+        return trend;
+    }
+
+    public LiveData<Integer> getTrendGranularity() {
+        return trendGranularity;
+    }
+
+    /**
+     * @return The name of the student the trend follows, or null while it shows the whole class.
+     */
+    public LiveData<String> getTrendStudentName() {
+        return trendStudentName;
+    }
+
+    /**
+     * @param granularity StudentRepository.TREND_DAILY, TREND_WEEKLY or TREND_MONTHLY.
+     */
+    public void setTrendGranularity(int granularity) {
+        if (Integer.valueOf(granularity).equals(trendGranularity.getValue())) {
+            return;
+        }
+        trendGranularity.setValue(granularity);
+        loadTrend();
+    }
+
+    /**
+     * Follows one student on the trend chart, or the whole class again with 0 and null.
+     */
+    public void setTrendStudent(long studentId, String name) {
+        if (studentId == trendStudentId) {
+            return;
+        }
+        trendStudentId = studentId;
+        trendStudentName.setValue(studentId > 0 ? name : null);
+        loadTrend();
     }
 
     public LiveData<Integer> getSelectedSemester() {
@@ -84,6 +220,16 @@ public class AttendanceAnalyticsViewModel extends AndroidViewModel {
     public void setSelectedSemester(int semester) {
         selectedSemester.setValue(semester);
         loadAnalyticsData();
+        loadTrend();
+    }
+
+    /**
+     * Restricts the leaderboard to one section, or null for all sections. The summary still covers the semester.
+     */
+    public void setSelectedSection(String section) {
+        selectedSection.setValue(section);
+        loadAnalyticsData();
+        loadTrend();
     }
 
 
@@ -107,14 +253,32 @@ public class AttendanceAnalyticsViewModel extends AndroidViewModel {
     /**
      * Sets initial parameters, typically from Intent extras, and triggers data loading.
      */
-    public void setSelectionParameters(int monthFromIntent, int yearFromIntent, int dayFromIntent, int semesterFromIntent, ArrayList<AttendanceRecordDisplay> detailedRecords) {
+    public void setSelectionParameters(int monthFromIntent, int yearFromIntent, int dayFromIntent, int semesterFromIntent) {
         selectedMonth.setValue(monthFromIntent);
         selectedYear.setValue(yearFromIntent);
         selectedDay.setValue(dayFromIntent);
         selectedSemester.setValue(semesterFromIntent);
-        initialDetailedRecords.setValue(detailedRecords);
 
         loadAnalyticsData();
+        loadTrend();
+    }
+
+    /**
+     * Takes over the result the tracking screen was showing, from the handle in AttendanceResultStore.EXTRA_HANDLE.
+     * It stays in the store while this screen lives, so the same month and semester are not aggregated again.
+     * If the process was restarted in between, it is recomputed here in the background.
+     */
+    public void setHandedOffResult(String handle) {
+        AttendanceResultStore.Key key = AttendanceResultStore.Key.fromHandle(handle);
+        if (key == null || key.equals(handedOffKey)) {
+            return;
+        }
+        resultStore.hold(key);
+        if (handedOffKey != null) {
+            resultStore.release(handedOffKey);
+        }
+        handedOffKey = key;
+        dbExecutor.execute(() -> resultStore.get(key));
     }
 
     /**
@@ -127,6 +291,7 @@ public class AttendanceAnalyticsViewModel extends AndroidViewModel {
             Integer currentYear = selectedYear.getValue();
             Integer currentDay = selectedDay.getValue();
             Integer currentSemester = selectedSemester.getValue();
+            String currentSection = selectedSection.getValue();
 
             if (currentYear == null) {
                 Log.w(TAG, "Year not selected, cannot load analytics data.");
@@ -162,55 +327,61 @@ public class AttendanceAnalyticsViewModel extends AndroidViewModel {
                 Log.d(TAG, "Loading analytics for year: " + currentYear);
             }
 
-            // Fetch students based on selected semester
-            List<Student> studentsForAnalytics; // Renamed for clarity
-            if (currentSemester != null && currentSemester != 0) { // If a specific semester is selected
-                studentsForAnalytics = studentRepository.getStudentsBySemesterSync(currentSemester);
-                Log.d(TAG, "Filtering students by semester: " + currentSemester + ". Found: " + studentsForAnalytics.size());
-            } else { // All semesters
-                studentsForAnalytics = studentRepository.getAllStudentsSync();
-                Log.d(TAG, "Loading students for all semesters. Found: " + studentsForAnalytics.size());
-            }
-
-            // Create a map of student IDs to Student objects for quick lookup
-            Map<Long, Student> studentMapForAnalytics = new HashMap<>();
-            for (Student student : studentsForAnalytics) {
-                studentMapForAnalytics.put(student.getStudentId(), student);
-            }
-
+            // Tally attendance within the selected period for the students of the selected semester (0 for all).
+            // Shared through the store, a month handed over from the tracking screen is not aggregated again.
+            int semester = currentSemester != null ? currentSemester : 0;
+            AttendanceAggregator.Tally tally = resultStore.get(new AttendanceResultStore.Key(semester, startDateMillis, endDateMillis));
+            Log.d(TAG, "Loaded tally for semester " + semester + ": " + tally.students.size() + " students.");
+
+            calculateSummary(tally);
+            calculateLeaderboard(tally, currentSection);
+            // Read from the streak table kept by the repository, no attendance history is scanned
+            chronicAbsentees.postValue(studentRepository.getChronicAbsenteesSync(semester, currentSection, CHRONIC_LIST_SIZE));
+            loadEligibility(semester, currentSection);
+        });
+    }
 
-            List<Attendance> allAttendanceRecords = studentRepository.getAllAttendanceSync();
+    /**
+     * Posts the plan and at-risk list of a semester, from the running counts. Call on dbExecutor.
+     */
+    private void loadEligibility(int semester, String section) {
+        if (semester == 0) {
+            // Each semester has its own term, there is nothing to project across all of them
+            semesterPlan.postValue(null);
+            atRiskStudents.postValue(new ArrayList<>());
+            return;
+        }
+        semesterPlan.postValue(studentRepository.getSemesterPlanSync(semester));
+        atRiskStudents.postValue(studentRepository.getAtRiskStudentsSync(semester, section, AT_RISK_LIST_SIZE));
+    }
 
-            // Filter attendance records by date range AND by the `studentsForAnalytics` list
-            List<Attendance> filteredAttendance = new ArrayList<>();
-            for (Attendance attendance : allAttendanceRecords) {
-                // Ensure attendance date is within the selected period AND student is in the selected group
-                if (attendance.getDate() >= startDateMillis && attendance.getDate() <= endDateMillis &&
-                        studentMapForAnalytics.containsKey(attendance.getStudentId())) { // Check if student belongs to the filtered set
-                    filteredAttendance.add(attendance);
-                }
+    /**
+     * Loads the trend for the current granularity and scope. It covers all history rather than the selected period,
+     * so changing the month or year does not reload it.
+     */
+    private void loadTrend() {
+        Integer currentSemester = selectedSemester.getValue();
+        Integer granularity = trendGranularity.getValue();
+        String section = selectedSection.getValue();
+        long studentId = trendStudentId;
+        dbExecutor.execute(() -> {
+            try {
+                trend.postValue(studentRepository.getAttendanceTrendSync(
+                        granularity != null ? granularity : StudentRepository.TREND_WEEKLY,
+                        currentSemester != null ? currentSemester : 0, section, studentId,
+                        0, Long.MAX_VALUE, TREND_MAX_POINTS));
+            } catch (Exception e) {
+                Log.e(TAG, "Error loading attendance trend: " + e.getMessage(), e);
             }
-
-            calculateSummary(filteredAttendance, studentsForAnalytics); // Pass filtered students
-            calculateDetailedAttendance(filteredAttendance, studentsForAnalytics); // Pass filtered students
         });
     }
 
-    private void calculateSummary(List<Attendance> attendanceRecords, List<Student> studentsForAnalytics) {
-        int totalStudentsConsidered = studentsForAnalytics.size(); // NOW uses the filtered list of students
+    private void calculateSummary(AttendanceAggregator.Tally tally) {
+        int totalStudentsConsidered = tally.students.size(); // NOW uses the filtered list of students
 
-        int totalPresentDays = 0;
-        int totalAbsentDays = 0;
-        int totalRecordedDays = 0;
-
-        for (Attendance attendance : attendanceRecords) {
-            totalRecordedDays++;
-            if (attendance.isPresent()) {
-                totalPresentDays++;
-            } else {
-                totalAbsentDays++;
-            }
-        }
+        int totalPresentDays = tally.totalPresentDays;
+        int totalAbsentDays = tally.totalAbsentDays;
+        int totalRecordedDays = tally.getTotalRecordedDays();
 
         double presentPercentage = (totalRecordedDays == 0) ? 0 : ((double) totalPresentDays / totalRecordedDays) * 100;
         double absentPercentage = (totalRecordedDays == 0) ? 0 : ((double) totalAbsentDays / totalRecordedDays) * 100;
@@ -221,49 +392,29 @@ public class AttendanceAnalyticsViewModel extends AndroidViewModel {
         Log.d(TAG, "Calculated attendance summary for selected semester/period. Total students considered: " + totalStudentsConsidered);
     }
 
-    private void calculateDetailedAttendance(List<Attendance> attendanceRecords, List<Student> studentsForAnalytics) {
-        // Initialize maps only for students in the selected period
-        Map<Long, Integer> studentPresentDays = new HashMap<>();
-        Map<Long, Integer> studentAbsentDays = new HashMap<>();
-        Map<Long, Integer> studentRecordedDays = new HashMap<>();
-
-        for (Student student : studentsForAnalytics) { // Loop only over students in the selected period
-            studentPresentDays.put(student.getStudentId(), 0);
-            studentAbsentDays.put(student.getStudentId(), 0);
-            studentRecordedDays.put(student.getStudentId(), 0);
+    /**
+     * Top and bottom students of the tally by attendance percentage, ranked with bounded heaps on dbExecutor.
+     * Posted as one list, best first, that the leaderboard shows as is.
+     */
+    private void calculateLeaderboard(AttendanceAggregator.Tally tally, String section) {
+        RankingEngine.Ranking ranking = Metrics.timer("analytics.ranking").time(() ->
+                RankingEngine.rank(tally, LEADERBOARD_SIZE, MIN_RECORDED_DAYS_FOR_RANKING, section));
+        List<AttendanceRecordDisplay> leaderboard = new ArrayList<>(ranking.top.length + ranking.bottom.length);
+        for (int index : ranking.top) {
+            leaderboard.add(toDisplay(tally, index));
         }
-
-        for (Attendance attendance : attendanceRecords) { // attendanceRecords are already filtered
-            long studentId = attendance.getStudentId();
-            // Ensure the student ID from attendance record is actually in our `studentsForAnalytics` map
-            // This is a safety check, as `filteredAttendance` should already ensure this.
-            if (studentPresentDays.containsKey(studentId)) {
-                studentRecordedDays.put(studentId, studentRecordedDays.get(studentId) + 1);
-                if (attendance.isPresent()) {
-                    studentPresentDays.put(studentId, studentPresentDays.get(studentId) + 1);
-                } else {
-                    studentAbsentDays.put(studentId, studentAbsentDays.get(studentId) + 1);
-                }
-            }
+        // The bottom comes worst first, listed after the top in descending order like the rest of the board
+        for (int i = ranking.bottom.length - 1; i >= 0; i--) {
+            leaderboard.add(toDisplay(tally, ranking.bottom[i]));
         }
+        this.leaderboard.postValue(leaderboard);
+        Log.d(TAG, "Ranked " + ranking.eligibleCount + " eligible students for the leaderboard.");
+    }
 
-        List<AttendanceRecordDisplay> detailedList = new ArrayList<>();
-        for (Student student : studentsForAnalytics) { // Loop only over students in the selected period
-            int recorded = studentRecordedDays.getOrDefault(student.getStudentId(), 0);
-            int present = studentPresentDays.getOrDefault(student.getStudentId(), 0);
-            int absent = studentAbsentDays.getOrDefault(student.getStudentId(), 0);
-            double percentage = (recorded == 0) ? 0 : ((double) present / recorded) * 100;
-
-            detailedList.add(new AttendanceRecordDisplay(
-                    student.getStudentId(),
-                    student.getName(),
-                    student.getCurrentSemester(),
-                    present,
-                    absent
-            ));
-        }
-        detailedStudentAttendance.postValue(detailedList);
-        Log.d(TAG, "Calculated detailed student attendance for selected semester/period.");
+    private static AttendanceRecordDisplay toDisplay(AttendanceAggregator.Tally tally, int index) {
+        Student student = tally.students.get(index);
+        return new AttendanceRecordDisplay(student.getStudentId(), student.getName(),
+                tally.presentDays[index], tally.absentDays[index], tally.getPercentage(index));
     }
 
     /**
@@ -298,6 +449,9 @@ public class AttendanceAnalyticsViewModel extends AndroidViewModel {
     @Override
     protected void onCleared() {
         super.onCleared();
+        if (handedOffKey != null) {
+            resultStore.release(handedOffKey);
+        }
         if (!dbExecutor.isShutdown()) {
             dbExecutor.shutdown();
         }
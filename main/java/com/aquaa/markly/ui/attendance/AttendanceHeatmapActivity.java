@@ -0,0 +1,240 @@
+package com.aquaa.markly.ui.attendance;
+
+import android.os.Bundle;
+import android.view.View;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
+import android.widget.ImageButton;
+import android.widget.RadioGroup;
+import android.widget.Spinner;
+import android.widget.TextView;
+
+import androidx.annotation.Nullable;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.ViewModelProvider;
+
+import com.aquaa.markly.R;
+import com.aquaa.markly.data.database.Student;
+import com.aquaa.markly.utils.DailyAttendance;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Calendar heatmap of the class attendance rate per day over a month, a half-year semester or a year.
+ * Tapping a day lists that day's absentees.
+ */
+public class AttendanceHeatmapActivity extends AppCompatActivity {
+
+    private static final int PERIOD_MODE_MONTH = 0;
+    private static final int PERIOD_MODE_SEMESTER = 1; // January to June or July to December
+    private static final int PERIOD_MODE_YEAR = 2;
+
+    private AttendanceHeatmapViewModel mViewModel;
+    private AttendanceHeatmapView heatmapView;
+    private TextView periodText;
+    private TextView summaryText;
+    private TextView dayTitleText;
+    private TextView absenteesText;
+    private Spinner semesterSpinner;
+
+    private int currentSelectionMode = PERIOD_MODE_MONTH;
+    private int currentYear;
+    private int currentMonth;
+    private int currentSelectedSemester = 0;
+
+    @Override
+    protected void onCreate(@Nullable Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_attendance_heatmap);
+
+        mViewModel = new ViewModelProvider(this).get(AttendanceHeatmapViewModel.class);
+
+        heatmapView = findViewById(R.id.attendance_heatmap_view);
+        periodText = findViewById(R.id.text_view_heatmap_period);
+        summaryText = findViewById(R.id.text_view_heatmap_summary);
+        dayTitleText = findViewById(R.id.text_view_heatmap_day_title);
+        absenteesText = findViewById(R.id.text_view_heatmap_absentees);
+        semesterSpinner = findViewById(R.id.spinner_semester_heatmap);
+        RadioGroup periodRadioGroup = findViewById(R.id.radio_group_heatmap_period);
+        ImageButton prevButton = findViewById(R.id.button_prev_heatmap_period);
+        ImageButton nextButton = findViewById(R.id.button_next_heatmap_period);
+
+        Calendar today = Calendar.getInstance();
+        currentYear = getIntent().getIntExtra("selectedYear", -1);
+        currentMonth = getIntent().getIntExtra("selectedMonth", -1);
+        currentSelectedSemester = getIntent().getIntExtra("selectedSemester", 0);
+        if (currentYear == -1) {
+            currentYear = today.get(Calendar.YEAR);
+        }
+        if (currentMonth == -1) {
+            currentMonth = today.get(Calendar.MONTH);
+        }
+
+        mViewModel.getAllSemesters().observe(this, semesters -> {
+            List<String> semesterOptions = new ArrayList<>();
+            semesterOptions.add("All Semesters");
+            if (semesters != null) {
+                Collections.sort(semesters);
+                for (int sem : semesters) {
+                    semesterOptions.add(String.valueOf(sem));
+                }
+            }
+            ArrayAdapter<String> semesterAdapter = new ArrayAdapter<>(this,
+                    android.R.layout.simple_spinner_item, semesterOptions);
+            semesterAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+            semesterSpinner.setAdapter(semesterAdapter);
+            int index = semesterOptions.indexOf(String.valueOf(currentSelectedSemester));
+            semesterSpinner.setSelection(currentSelectedSemester != 0 && index != -1 ? index : 0);
+        });
+
+        semesterSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                int semester = position == 0 ? 0 : Integer.parseInt(parent.getItemAtPosition(position).toString());
+                if (semester != currentSelectedSemester) {
+                    currentSelectedSemester = semester;
+                    clearSelectedDay();
+                    showPeriod();
+                }
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+                // Do nothing
+            }
+        });
+
+        periodRadioGroup.setOnCheckedChangeListener((group, checkedId) -> {
+            if (checkedId == R.id.radio_heatmap_semester) {
+                currentSelectionMode = PERIOD_MODE_SEMESTER;
+            } else if (checkedId == R.id.radio_heatmap_year) {
+                currentSelectionMode = PERIOD_MODE_YEAR;
+            } else {
+                currentSelectionMode = PERIOD_MODE_MONTH;
+            }
+            showPeriod();
+        });
+
+        prevButton.setOnClickListener(v -> navigatePeriod(-1));
+        nextButton.setOnClickListener(v -> navigatePeriod(1));
+
+        heatmapView.setOnDayClickListener((year, month, dayOfMonth) -> {
+            Calendar day = Calendar.getInstance();
+            day.clear();
+            day.set(year, month, dayOfMonth);
+            SimpleDateFormat sdf = new SimpleDateFormat("dd MMM yyyy", Locale.getDefault());
+            dayTitleText.setText("Absentees on " + sdf.format(day.getTime()));
+            absenteesText.setText("Loading...");
+            DailyAttendance data = mViewModel.getYearData().getValue();
+            if (data != null) {
+                heatmapView.setSelectedDayIndex(data.dayIndex(month, dayOfMonth));
+            }
+            mViewModel.loadAbsentees(currentSelectedSemester, day.getTimeInMillis());
+        });
+
+        mViewModel.getYearData().observe(this, data -> render());
+        mViewModel.getAbsentees().observe(this, absentees -> updateAbsentees(absentees));
+
+        showPeriod();
+    }
+
+    /**
+     * Moves the period back or forward by its own length.
+     * @param direction -1 for previous, 1 for next.
+     */
+    private void navigatePeriod(int direction) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(currentYear, currentMonth, 1);
+        if (currentSelectionMode == PERIOD_MODE_MONTH) {
+            calendar.add(Calendar.MONTH, direction);
+        } else if (currentSelectionMode == PERIOD_MODE_SEMESTER) {
+            calendar.add(Calendar.MONTH, 6 * direction);
+        } else {
+            calendar.add(Calendar.YEAR, direction);
+        }
+        currentYear = calendar.get(Calendar.YEAR);
+        currentMonth = calendar.get(Calendar.MONTH);
+        showPeriod();
+    }
+
+    /**
+     * Updates the period label and shows the period, loading its year first if it is not the one on screen.
+     */
+    private void showPeriod() {
+        SimpleDateFormat monthFormat = new SimpleDateFormat("MMMM yyyy", Locale.getDefault());
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(currentYear, currentMonth, 1);
+        if (currentSelectionMode == PERIOD_MODE_MONTH) {
+            periodText.setText(monthFormat.format(calendar.getTime()));
+        } else if (currentSelectionMode == PERIOD_MODE_SEMESTER) {
+            periodText.setText((currentMonth < 6 ? "January - June " : "July - December ") + currentYear);
+        } else {
+            periodText.setText(String.valueOf(currentYear));
+        }
+        // A no-op when the year is already loaded, the observer then has nothing new and render() runs here
+        mViewModel.loadYear(currentSelectedSemester, currentYear);
+        render();
+    }
+
+    private void render() {
+        DailyAttendance data = mViewModel.getYearData().getValue();
+        if (data == null || data.year != currentYear) {
+            return; // The observer renders once the year is loaded
+        }
+        int firstMonth;
+        int monthCount;
+        if (currentSelectionMode == PERIOD_MODE_MONTH) {
+            firstMonth = currentMonth;
+            monthCount = 1;
+        } else if (currentSelectionMode == PERIOD_MODE_SEMESTER) {
+            firstMonth = currentMonth < 6 ? 0 : 6;
+            monthCount = 6;
+        } else {
+            firstMonth = 0;
+            monthCount = 12;
+        }
+        heatmapView.setData(data, firstMonth, monthCount);
+
+        long[] totals = data.totals(firstMonth, monthCount);
+        if (totals[1] == 0) {
+            summaryText.setText("No attendance recorded in this period.");
+        } else {
+            summaryText.setText(String.format(Locale.getDefault(), "Attendance: %.2f%% (%d of %d records present)",
+                    (double) totals[0] / totals[1] * 100, totals[0], totals[1]));
+        }
+    }
+
+    private void clearSelectedDay() {
+        heatmapView.setSelectedDayIndex(-1);
+        dayTitleText.setText("Absentees");
+        absenteesText.setText("Tap a day on the heatmap.");
+        mViewModel.clearAbsentees();
+    }
+
+    private void updateAbsentees(List<Student> absentees) {
+        if (absentees == null) {
+            return;
+        }
+        if (absentees.isEmpty()) {
+            absenteesText.setText("Nobody was absent.");
+            return;
+        }
+        StringBuilder text = new StringBuilder();
+        for (Student student : absentees) {
+            if (text.length() > 0) {
+                text.append('\n');
+            }
+            text.append(student.getName()).append(" (Sem ").append(student.getCurrentSemester())
+                    .append(", ").append(student.getSection()).append(')');
+        }
+        absenteesText.setText(text);
+    }
+}
@@ -0,0 +1,251 @@
+package com.aquaa.markly.ui.attendance;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.MotionEvent;
+import android.view.View;
+
+import androidx.core.graphics.ColorUtils;
+
+import com.aquaa.markly.utils.DailyAttendance;
+
+import java.text.DateFormatSymbols;
+import java.util.Calendar;
+import java.util.Locale;
+
+/**
+ * Calendar heatmap of class attendance: one small month grid per month shown, every day coloured from the error
+ * colour (nobody present) to the secondary colour (everybody present), days without records left blank.
+ * Cells and colours are computed once per setData() or size change, so drawing allocates nothing.
+ * Tapping a recorded day reports it to the OnDayClickListener.
+ */
+public class AttendanceHeatmapView extends View {
+
+    /**
+     * Called with a tapped day that has attendance records. Month is 0-based, as in java.util.Calendar.
+     */
+    public interface OnDayClickListener {
+        void onDayClick(int year, int month, int dayOfMonth);
+    }
+
+    private static final int MAX_DAYS = 366;
+    // A month always fits in 6 week rows
+    private static final int WEEK_ROWS = 6;
+
+    private final Paint cellPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint selectionPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint titlePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint dayNumberPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final String[] monthNames = new DateFormatSymbols(Locale.getDefault()).getShortMonths();
+    private final int firstDayOfWeek = Calendar.getInstance().getFirstDayOfWeek();
+
+    private final int emptyColor;
+    private final int lowColor;
+    private final int highColor;
+    private final float blockGap;
+    private final float cellGap;
+    private final float titleHeight;
+
+    private DailyAttendance data;
+    private int firstMonth;
+    private int monthCount = 1;
+    private int selectedDayIndex = -1;
+    private OnDayClickListener listener;
+
+    // Laid out by layoutCells(), one entry per shown day
+    private final RectF[] cells = new RectF[MAX_DAYS];
+    private final int[] cellDayIndex = new int[MAX_DAYS];
+    private final int[] cellColor = new int[MAX_DAYS];
+    private final String[] cellLabel = new String[MAX_DAYS];
+    private int cellCount;
+    private final float[] titleX = new float[12];
+    private final float[] titleY = new float[12];
+    private float cellSize;
+
+    public AttendanceHeatmapView(Context context) {
+        this(context, null);
+    }
+
+    public AttendanceHeatmapView(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public AttendanceHeatmapView(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        emptyColor = resolveColor(com.google.android.material.R.attr.colorSurfaceVariant);
+        lowColor = resolveColor(com.google.android.material.R.attr.colorError);
+        highColor = resolveColor(com.google.android.material.R.attr.colorSecondary);
+        int textColor = resolveColor(com.google.android.material.R.attr.colorOnSurface);
+
+        float density = getResources().getDisplayMetrics().density;
+        blockGap = 12 * density;
+        cellGap = 2 * density;
+        titleHeight = 20 * density;
+
+        titlePaint.setColor(textColor);
+        titlePaint.setTextSize(14 * getResources().getDisplayMetrics().scaledDensity);
+        titlePaint.setFakeBoldText(true);
+        dayNumberPaint.setColor(textColor);
+        dayNumberPaint.setTextAlign(Paint.Align.CENTER);
+        selectionPaint.setStyle(Paint.Style.STROKE);
+        selectionPaint.setStrokeWidth(2 * density);
+        selectionPaint.setColor(resolveColor(com.google.android.material.R.attr.colorPrimary));
+        for (int i = 0; i < MAX_DAYS; i++) {
+            cells[i] = new RectF();
+        }
+    }
+
+    public void setOnDayClickListener(OnDayClickListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Shows monthCount months of a year starting at firstMonth (0-based), e.g. 0 and 12 for the whole year.
+     */
+    public void setData(DailyAttendance data, int firstMonth, int monthCount) {
+        boolean sizeChanged = monthCount != this.monthCount;
+        this.data = data;
+        this.firstMonth = firstMonth;
+        this.monthCount = Math.max(1, Math.min(monthCount, 12 - firstMonth));
+        if (sizeChanged) {
+            requestLayout();
+        }
+        layoutCells();
+        invalidate();
+    }
+
+    /**
+     * Outlines one day, or none with -1. The index is the 0-based day of the year.
+     */
+    public void setSelectedDayIndex(int dayIndex) {
+        selectedDayIndex = dayIndex;
+        invalidate();
+    }
+
+    private int blockColumns() {
+        return monthCount == 1 ? 1 : (monthCount <= 6 ? 2 : 3);
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int width = MeasureSpec.getSize(widthMeasureSpec);
+        int columns = blockColumns();
+        int rows = (monthCount + columns - 1) / columns;
+        float blockWidth = (width - getPaddingLeft() - getPaddingRight() - (columns - 1) * blockGap) / columns;
+        float blockHeight = titleHeight + blockWidth / 7 * WEEK_ROWS;
+        int height = (int) Math.ceil(rows * blockHeight + (rows - 1) * blockGap) + getPaddingTop() + getPaddingBottom();
+        setMeasuredDimension(width, resolveSize(height, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        layoutCells();
+    }
+
+    private void layoutCells() {
+        cellCount = 0;
+        if (data == null || getWidth() == 0) {
+            return;
+        }
+        int columns = blockColumns();
+        float blockWidth = (getWidth() - getPaddingLeft() - getPaddingRight() - (columns - 1) * blockGap) / columns;
+        cellSize = blockWidth / 7;
+        float blockHeight = titleHeight + cellSize * WEEK_ROWS;
+        // Day numbers only where the cells are large enough to read them
+        dayNumberPaint.setTextSize(cellSize * 0.4f);
+        boolean labels = monthCount == 1;
+
+        Calendar calendar = Calendar.getInstance();
+        for (int i = 0; i < monthCount; i++) {
+            int month = firstMonth + i;
+            float left = getPaddingLeft() + (i % columns) * (blockWidth + blockGap);
+            float top = getPaddingTop() + (i / columns) * (blockHeight + blockGap);
+            titleX[i] = left;
+            titleY[i] = top + titleHeight * 0.75f;
+
+            calendar.clear();
+            calendar.set(data.year, month, 1);
+            int offset = (calendar.get(Calendar.DAY_OF_WEEK) - firstDayOfWeek + 7) % 7;
+            int days = DailyAttendance.daysInMonth(data.year, month);
+            int firstIndex = data.dayIndex(month, 1);
+            for (int day = 1; day <= days; day++) {
+                int slot = offset + day - 1;
+                float cellLeft = left + (slot % 7) * cellSize;
+                float cellTop = top + titleHeight + (slot / 7) * cellSize;
+                cells[cellCount].set(cellLeft + cellGap / 2, cellTop + cellGap / 2,
+                        cellLeft + cellSize - cellGap / 2, cellTop + cellSize - cellGap / 2);
+                int dayIndex = firstIndex + day - 1;
+                cellDayIndex[cellCount] = dayIndex;
+                float rate = data.getRate(dayIndex);
+                cellColor[cellCount] = rate < 0 ? emptyColor : ColorUtils.blendARGB(lowColor, highColor, rate);
+                cellLabel[cellCount] = labels ? String.valueOf(day) : null;
+                cellCount++;
+            }
+        }
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (data == null) {
+            return;
+        }
+        for (int i = 0; i < monthCount; i++) {
+            canvas.drawText(monthNames[firstMonth + i], titleX[i], titleY[i], titlePaint);
+        }
+        float radius = cellSize * 0.15f;
+        float textOffset = (dayNumberPaint.descent() + dayNumberPaint.ascent()) / 2;
+        for (int i = 0; i < cellCount; i++) {
+            RectF cell = cells[i];
+            cellPaint.setColor(cellColor[i]);
+            canvas.drawRoundRect(cell, radius, radius, cellPaint);
+            if (cellDayIndex[i] == selectedDayIndex) {
+                canvas.drawRoundRect(cell, radius, radius, selectionPaint);
+            }
+            if (cellLabel[i] != null) {
+                canvas.drawText(cellLabel[i], cell.centerX(), cell.centerY() - textOffset, dayNumberPaint);
+            }
+        }
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (event.getAction() == MotionEvent.ACTION_DOWN) {
+            return true;
+        }
+        if (event.getAction() == MotionEvent.ACTION_UP) {
+            for (int i = 0; i < cellCount; i++) {
+                if (cells[i].contains(event.getX(), event.getY())) {
+                    int dayIndex = cellDayIndex[i];
+                    if (data.getRecorded(dayIndex) > 0 && listener != null) {
+                        Calendar calendar = Calendar.getInstance();
+                        calendar.clear();
+                        calendar.set(Calendar.YEAR, data.year);
+                        calendar.set(Calendar.DAY_OF_YEAR, dayIndex + 1);
+                        listener.onDayClick(data.year, calendar.get(Calendar.MONTH), calendar.get(Calendar.DAY_OF_MONTH));
+                    }
+                    break;
+                }
+            }
+            performClick();
+            return true;
+        }
+        return super.onTouchEvent(event);
+    }
+
+    @Override
+    public boolean performClick() {
+        return super.performClick();
+    }
+
+    private int resolveColor(int attr) {
+        TypedValue typedValue = new TypedValue();
+        getContext().getTheme().resolveAttribute(attr, typedValue, true);
+        return typedValue.data;
+    }
+}
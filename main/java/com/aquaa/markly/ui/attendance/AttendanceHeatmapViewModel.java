@@ -0,0 +1,112 @@
+package com.aquaa.markly.ui.attendance;
+
+import android.app.Application;
+
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.aquaa.markly.data.database.Student;
+import com.aquaa.markly.data.repository.DailyAttendanceStore;
+import com.aquaa.markly.data.repository.StudentRepository;
+import com.aquaa.markly.utils.DailyAttendance;
+import com.aquaa.markly.utils.MarklyLog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * ViewModel for AttendanceHeatmapActivity.
+ * Loads whole years of per-day attendance from DailyAttendanceStore; the activity picks the months to show,
+ * so switching between a month, half year and year of the same year needs no query.
+ */
+public class AttendanceHeatmapViewModel extends AndroidViewModel {
+
+    private static final String TAG = "AttendanceHeatmapVM";
+
+    private final StudentRepository studentRepository;
+    private final DailyAttendanceStore dailyStore;
+
+    private final MutableLiveData<DailyAttendance> yearData = new MutableLiveData<>();
+    private final MutableLiveData<List<Student>> absentees = new MutableLiveData<>();
+    private final MutableLiveData<List<Integer>> allAvailableSemesters = new MutableLiveData<>();
+
+    private int loadedSemester = -1;
+    private int loadedYear;
+
+    private final ExecutorService dbExecutor = Executors.newSingleThreadExecutor();
+
+    public AttendanceHeatmapViewModel(Application application) {
+        super(application);
+        studentRepository = new StudentRepository(application);
+        dailyStore = DailyAttendanceStore.getInstance(application);
+        loadAllSemesters();
+    }
+
+    public LiveData<DailyAttendance> getYearData() {
+        return yearData;
+    }
+
+    /**
+     * @return The students absent on the last tapped day, sorted by name.
+     */
+    public LiveData<List<Student>> getAbsentees() {
+        return absentees;
+    }
+
+    public LiveData<List<Integer>> getAllSemesters() {
+        return allAvailableSemesters;
+    }
+
+    private void loadAllSemesters() {
+        dbExecutor.execute(() -> {
+            try {
+                allAvailableSemesters.postValue(studentRepository.getAllSemestersSync());
+            } catch (Exception e) {
+                MarklyLog.e(TAG, "Error loading semesters for heatmap: " + e.getMessage(), e);
+                allAvailableSemesters.postValue(new ArrayList<>());
+            }
+        });
+    }
+
+    /**
+     * Shows the days of a year for the students of a semester (0 for all). Does nothing if that year is already shown.
+     * The year before is loaded afterwards in the background, since that is where the user usually goes next.
+     */
+    public void loadYear(int semester, int year) {
+        if (semester == loadedSemester && year == loadedYear && yearData.getValue() != null) {
+            return;
+        }
+        loadedSemester = semester;
+        loadedYear = year;
+        yearData.setValue(null); // What is on screen may be another semester of the same year
+        dbExecutor.execute(() -> {
+            yearData.postValue(dailyStore.get(semester, year));
+            if (!dailyStore.contains(semester, year - 1)) {
+                dailyStore.get(semester, year - 1);
+            }
+        });
+    }
+
+    /**
+     * Loads the students of a semester (0 for all) absent on a date (midnight, in milliseconds).
+     */
+    public void loadAbsentees(int semester, long date) {
+        dbExecutor.execute(() -> absentees.postValue(studentRepository.getAbsenteesOnDateSync(semester, date)));
+    }
+
+    public void clearAbsentees() {
+        absentees.setValue(null);
+    }
+
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        if (!dbExecutor.isShutdown()) {
+            dbExecutor.shutdown();
+        }
+        MarklyLog.d(TAG, "dbExecutor shutdown initiated in {}.", TAG);
+    }
+}
@@ -1,7 +1,6 @@
 package com.aquaa.markly.ui.attendance;
 
 import android.app.Application;
-import android.util.Log;
 
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
@@ -12,6 +11,8 @@ import com.aquaa.markly.data.database.Attendance;
 import com.aquaa.markly.data.database.Notification;
 import com.aquaa.markly.data.database.Student;
 import com.aquaa.markly.data.repository.StudentRepository;
+import com.aquaa.markly.utils.MarklyLog;
+import com.aquaa.markly.utils.NotificationBus;
 import com.aquaa.markly.utils.NotificationHelper; // Import NotificationHelper
 
 import java.text.SimpleDateFormat;
@@ -37,6 +38,8 @@ public class AttendanceViewModel extends AndroidViewModel {
     private StudentRepository studentRepository;
     private MutableLiveData<List<Integer>> allSemesters = new MutableLiveData<>();
     private MutableLiveData<Integer> selectedSemester = new MutableLiveData<>();
+    private MutableLiveData<List<String>> sections = new MutableLiveData<>(); // Of the selected semester
+    private MutableLiveData<String> selectedSection = new MutableLiveData<>(); // null for the whole semester
     private MutableLiveData<Long> selectedAttendanceDateMillis = new MutableLiveData<>();
 
     // LiveData to hold students for a selected semester (without attendance status initially)
@@ -61,6 +64,14 @@ public class AttendanceViewModel extends AndroidViewModel {
         return allSemesters;
     }
 
+    /**
+     * LiveData to observe the sections of the semester passed to loadSections().
+     * @return LiveData list of sections, as stored.
+     */
+    public LiveData<List<String>> getSections() {
+        return sections;
+    }
+
     /**
      * LiveData to observe the list of students for the currently selected semester/date.
      * @return LiveData list of Student objects.
@@ -87,28 +98,47 @@ public class AttendanceViewModel extends AndroidViewModel {
                 List<Integer> semesters = studentRepository.getAllSemestersSync();
                 allSemesters.postValue(semesters);
             } catch (Exception e) {
-                Log.e(TAG, "Error loading semesters: " + e.getMessage(), e);
+                MarklyLog.e(TAG, "Error loading semesters: " + e.getMessage(), e);
                 allSemesters.postValue(new ArrayList<>());
             }
         });
     }
 
     /**
-     * Loads students for a specific semester and date.
+     * Loads the sections of a semester for the section filter.
+     * @param semester The semester whose sections to load.
+     */
+    public void loadSections(int semester) {
+        dbExecutor.execute(() -> {
+            try {
+                sections.postValue(studentRepository.getSectionsBySemesterSync(semester));
+            } catch (Exception e) {
+                MarklyLog.e(TAG, "Error loading sections of semester " + semester + ": " + e.getMessage(), e);
+                sections.postValue(new ArrayList<>());
+            }
+        });
+    }
+
+    /**
+     * Loads students for a specific semester, or one of its sections, and date.
      * This will now load students who *do not yet have an attendance record* for the given date.
      * @param semester The semester to load students for.
+     * @param section The section to load students for, or null for the whole semester.
      * @param dateMillis The date for which to load attendance status.
      */
-    public void loadStudentsForSemesterAndDate(int semester, long dateMillis) {
+    public void loadStudentsForSemesterAndDate(int semester, String section, long dateMillis) {
         selectedSemester.postValue(semester);
+        selectedSection.postValue(section);
         selectedAttendanceDateMillis.postValue(dateMillis);
-        Log.d(TAG, "loadStudentsForSemesterAndDate: Called for semester " + semester + " and date " + sdf.format(new Date(dateMillis)) + " (" + dateMillis + ")");
+        if (MarklyLog.isDebugEnabled()) {
+            MarklyLog.d(TAG, "loadStudentsForSemesterAndDate: Called for semester {}, section {} and date {}", semester, section, sdf.format(new Date(dateMillis)));
+        }
 
         dbExecutor.execute(() -> {
             try {
-                // Fetch students who DO NOT have an attendance record for this date and semester
-                List<Student> studentsPendingAttendance = studentRepository.getStudentsWithoutAttendanceForDateAndSemester(semester, dateMillis);
-                Log.d(TAG, "loadStudentsForSemesterAndDate: Found " + studentsPendingAttendance.size() + " students pending attendance for " + sdf.format(new Date(dateMillis)));
+                // Fetch students who DO NOT have an attendance record for this date and semester (or section)
+                List<Student> studentsPendingAttendance = studentRepository.getStudentsWithoutAttendanceForDateAndSemester(semester, section, dateMillis);
+                MarklyLog.d(TAG, "loadStudentsForSemesterAndDate: Found " + studentsPendingAttendance.size() + " students pending attendance for " + sdf.format(new Date(dateMillis)));
 
                 // For these students, their default status will be 'present' as no record exists yet.
                 List<StudentAttendanceStatus> studentStatuses = new ArrayList<>();
@@ -119,7 +149,7 @@ public class AttendanceViewModel extends AndroidViewModel {
                 studentsWithAttendanceStatus.postValue(studentStatuses);
 
             } catch (Exception e) {
-                Log.e(TAG, "Error loading students for semester " + semester + " and date " + dateMillis + ": " + e.getMessage(), e);
+                MarklyLog.e(TAG, "Error loading students for semester " + semester + " and date " + dateMillis + ": " + e.getMessage(), e);
                 studentsWithAttendanceStatus.postValue(new ArrayList<>());
             }
         });
@@ -145,7 +175,7 @@ public class AttendanceViewModel extends AndroidViewModel {
                 studentStatuses.add(new StudentAttendanceStatus(student, isPresent));
             }
             studentsWithAttendanceStatus.postValue(studentStatuses);
-            Log.d(TAG, "Loaded attendance status for " + studentStatuses.size() + " students for date " + sdf.format(new Date(dateMillis)) + " (" + dateMillis + ")");
+            MarklyLog.d(TAG, "Loaded attendance status for " + studentStatuses.size() + " students for date " + sdf.format(new Date(dateMillis)) + " (" + dateMillis + ")");
         });
     }
 
@@ -171,7 +201,9 @@ public class AttendanceViewModel extends AndroidViewModel {
                         Attendance newAttendance = new Attendance(studentId, dateMillis, isPresent);
                         studentRepository.insertAttendance(newAttendance);
                         savedCount++;
-                        Log.d(TAG, "Inserted attendance for student " + studentId + " on " + sdf.format(new Date(dateMillis)) + ": Present=" + isPresent);
+                        if (MarklyLog.isDebugEnabled()) {
+                            MarklyLog.d(TAG, "Inserted attendance for student " + studentId + " on " + sdf.format(new Date(dateMillis)) + ": Present=" + isPresent);
+                        }
                     } else {
                         // Update existing attendance record if status changed
                         if (existingAttendance.isPresent() != isPresent) {
@@ -179,26 +211,32 @@ public class AttendanceViewModel extends AndroidViewModel {
                             // Also reset isSmsSent to false if student is marked absent (and was previously present or absent but SMS was sent)
                             if (!isPresent) { // If student is now marked absent
                                 existingAttendance.setSmsSent(false); // Reset SMS sent status
-                                Log.d(TAG, "Student " + studentId + " marked absent. Resetting isSmsSent flag to false.");
+                                if (MarklyLog.isDebugEnabled()) {
+                                    MarklyLog.d(TAG, "Student " + studentId + " marked absent. Resetting isSmsSent flag to false.");
+                                }
                             } else { // If student is now marked present, and was previously absent with SMS sent, we don't care about SMS status for this record.
                                 // If they were previously absent and isSmsSent was false, keep it false.
                             }
                             studentRepository.updateAttendance(existingAttendance);
                             updatedCount++;
-                            Log.d(TAG, "Updated attendance for student " + studentId + " on " + sdf.format(new Date(dateMillis)) + ": Present=" + isPresent);
+                            if (MarklyLog.isDebugEnabled()) {
+                                MarklyLog.d(TAG, "Updated attendance for student " + studentId + " on " + sdf.format(new Date(dateMillis)) + ": Present=" + isPresent);
+                            }
                         } else {
                             // Status is the same. If it's still absent AND isSmsSent was true, reset it to false.
                             // This scenario is for when user re-saves attendance for an already absent student who was messaged.
                             if (!isPresent && existingAttendance.isSmsSent()) {
                                 existingAttendance.setSmsSent(false); // Clear the SMS sent flag
                                 studentRepository.updateAttendance(existingAttendance);
-                                Log.d(TAG, "Student " + studentId + " re-marked absent. Resetting isSmsSent flag as it was true.");
+                                if (MarklyLog.isDebugEnabled()) {
+                                    MarklyLog.d(TAG, "Student " + studentId + " re-marked absent. Resetting isSmsSent flag as it was true.");
+                                }
                             }
                         }
                     }
                 } catch (Exception e) {
                     failedCount++;
-                    Log.e(TAG, "Failed to save/update attendance for student " + studentId + " on " + sdf.format(new Date(dateMillis)) + ": " + e.getMessage(), e);
+                    MarklyLog.e(TAG, "Failed to save/update attendance for student " + studentId + " on " + sdf.format(new Date(dateMillis)) + ": " + e.getMessage(), e);
                 }
             }
             String message = "Attendance saved: " + (savedCount + updatedCount) + " records. Failed: " + failedCount + ".";
@@ -209,23 +247,19 @@ public class AttendanceViewModel extends AndroidViewModel {
                 notificationType = "INFO";
                 message = "No attendance changes to save for " + sdf.format(new Date(dateMillis)) + ".";
             }
-            Log.i(TAG, message);
+            MarklyLog.i(TAG, message);
             // After saving, reload the students for the current semester and date to reflect changes.
             // This will now fetch *only* students who *still need attendance taken* for this date.
             Integer currentSemester = selectedSemester.getValue();
             Long currentDateMillis = selectedAttendanceDateMillis.getValue();
             if (currentSemester != null && currentDateMillis != null) {
-                loadStudentsForSemesterAndDate(currentSemester, currentDateMillis);
+                loadStudentsForSemesterAndDate(currentSemester, selectedSection.getValue(), currentDateMillis);
             }
 
 
-            // Insert IN-APP notification about attendance save
-            studentRepository.insertNotification(new Notification("Attendance Report", message, System.currentTimeMillis(), false, notificationType));
-            Log.d(TAG, "In-app notification generated for attendance report.");
-
-            // Send SYSTEM notification about attendance save
-            NotificationHelper.sendAttendanceReportNotification(getApplication(), message, notificationType);
-            Log.d(TAG, "System notification triggered for attendance report.");
+            // IN-APP and SYSTEM notification about attendance save, coalesced with other saves in quick succession
+            NotificationBus.getInstance(getApplication()).post(NotificationHelper.CATEGORY_ATTENDANCE_REPORT, "Attendance Report", message, notificationType);
+            MarklyLog.d(TAG, "Notification posted for attendance report.");
         });
     }
 
@@ -266,6 +300,6 @@ public class AttendanceViewModel extends AndroidViewModel {
         if (!dbExecutor.isShutdown()) {
             dbExecutor.shutdown();
         }
-        Log.d(TAG, "dbExecutor shutdown initiated in AttendanceViewModel.");
+        MarklyLog.d(TAG, "dbExecutor shutdown initiated in AttendanceViewModel.");
     }
 }
@@ -14,10 +14,12 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.aquaa.markly.R;
 import com.aquaa.markly.ui.attendance.AttendanceViewModel.StudentAttendanceStatus; // Import the nested class
+import com.aquaa.markly.utils.DiffPayloads;
 
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 /**
  * RecyclerView Adapter for displaying a list of students for attendance taking.
@@ -29,8 +31,19 @@ public class StudentAttendanceAdapter extends ListAdapter<StudentAttendanceStatu
     // This map stores the state of checkboxes as user interacts with them.
     private Map<Long, Boolean> attendanceStatusMap = new HashMap<>();
 
+    // Change payloads, see DiffPayloads
+    private static final int FIELD_NAME = 1;
+    private static final int FIELD_SEMESTER = 1 << 1;
+    private static final int FIELD_PRESENT = 1 << 2;
+
     public StudentAttendanceAdapter(@NonNull Context context) {
-        super(DIFF_CALLBACK);
+        super(DIFF_CALLBACK); // The list is diffed on a background thread
+        setHasStableIds(true);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return getItem(position).student.getStudentId();
     }
 
     @Override
@@ -52,14 +65,35 @@ public class StudentAttendanceAdapter extends ListAdapter<StudentAttendanceStatu
     public StudentViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         View itemView = LayoutInflater.from(parent.getContext())
                 .inflate(R.layout.item_student_attendance, parent, false); // Assuming this layout exists
-        return new StudentViewHolder(itemView);
+        StudentViewHolder holder = new StudentViewHolder(itemView);
+        // Optionally, make the whole item clickable to toggle the checkbox
+        itemView.setOnClickListener(v -> {
+            holder.presentCheckBox.setChecked(!holder.presentCheckBox.isChecked());
+        });
+        return holder;
     }
 
     @Override
     public void onBindViewHolder(@NonNull StudentViewHolder holder, int position) {
-        StudentAttendanceStatus currentStudentStatus = getItem(position);
-        holder.studentNameTextView.setText(currentStudentStatus.student.getName());
-        holder.studentSemesterTextView.setText("Semester: " + currentStudentStatus.student.getCurrentSemester());
+        bind(holder, getItem(position), DiffPayloads.ALL);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull StudentViewHolder holder, int position, @NonNull List<Object> payloads) {
+        bind(holder, getItem(position), DiffPayloads.merge(payloads)); // Only the fields that changed
+    }
+
+    private void bind(StudentViewHolder holder, StudentAttendanceStatus currentStudentStatus, int changes) {
+        if (DiffPayloads.has(changes, FIELD_NAME)) {
+            holder.studentNameTextView.setText(currentStudentStatus.student.getName());
+        }
+        if (DiffPayloads.has(changes, FIELD_SEMESTER)) {
+            holder.studentSemesterTextView.setText("Semester: " + currentStudentStatus.student.getCurrentSemester());
+        }
+
+        // Important: Remove previous listener to prevent issues with recycled views
+        // (before setChecked, or the old listener would write this state to the previous student)
+        holder.presentCheckBox.setOnCheckedChangeListener(null);
 
         // Set checkbox state based on the current attendance status from the map
         // True for present, false for absent.
@@ -67,20 +101,11 @@ public class StudentAttendanceAdapter extends ListAdapter<StudentAttendanceStatu
         // because the map holds user's real-time changes.
         holder.presentCheckBox.setChecked(attendanceStatusMap.getOrDefault(currentStudentStatus.student.getStudentId(), currentStudentStatus.isPresent));
 
-
-        // Important: Remove previous listener to prevent issues with recycled views
-        holder.presentCheckBox.setOnCheckedChangeListener(null);
-
         // Set new listener for checkbox changes
         holder.presentCheckBox.setOnCheckedChangeListener((buttonView, isChecked) -> {
             // Update the map when checkbox state changes
             attendanceStatusMap.put(currentStudentStatus.student.getStudentId(), isChecked);
         });
-
-        // Optionally, make the whole item clickable to toggle the checkbox
-        holder.itemView.setOnClickListener(v -> {
-            holder.presentCheckBox.setChecked(!holder.presentCheckBox.isChecked());
-        });
     }
 
     /**
@@ -104,8 +129,27 @@ public class StudentAttendanceAdapter extends ListAdapter<StudentAttendanceStatu
 
         @Override
         public boolean areContentsTheSame(@NonNull StudentAttendanceStatus oldItem, @NonNull StudentAttendanceStatus newItem) {
-            // Compare content fields. This will use the overridden equals() in StudentAttendanceStatus
-            return oldItem.equals(newItem);
+            // StudentAttendanceStatus.equals() ignores the name and semester, so compare the displayed fields
+            return changes(oldItem, newItem) == 0;
+        }
+
+        @Override
+        public Object getChangePayload(@NonNull StudentAttendanceStatus oldItem, @NonNull StudentAttendanceStatus newItem) {
+            return changes(oldItem, newItem);
+        }
+
+        private int changes(StudentAttendanceStatus oldItem, StudentAttendanceStatus newItem) {
+            int changes = 0;
+            if (!Objects.equals(oldItem.student.getName(), newItem.student.getName())) {
+                changes |= FIELD_NAME;
+            }
+            if (oldItem.student.getCurrentSemester() != newItem.student.getCurrentSemester()) {
+                changes |= FIELD_SEMESTER;
+            }
+            if (oldItem.isPresent != newItem.isPresent) {
+                changes |= FIELD_PRESENT;
+            }
+            return changes;
         }
     };
 
@@ -12,13 +12,28 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.aquaa.markly.R;
 import com.aquaa.markly.ui.attendance.TrackAttendanceViewModel.AttendanceRecordDisplay;
+import com.aquaa.markly.utils.DiffPayloads;
 
+import java.util.List;
 import java.util.Locale;
 
 public class TopBottomStudentAdapter extends ListAdapter<AttendanceRecordDisplay, TopBottomStudentAdapter.StudentViewHolder> {
 
-    public TopBottomStudentAdapter() {
-        super(DIFF_CALLBACK);
+    // Change payloads, see DiffPayloads
+    private static final int FIELD_NAME = 1;
+    private static final int FIELD_PERCENTAGE = 1 << 1;
+
+    private final OnStudentClickListener listener;
+
+    public TopBottomStudentAdapter(OnStudentClickListener listener) {
+        super(DIFF_CALLBACK); // The list is diffed on a background thread
+        this.listener = listener;
+        setHasStableIds(true);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return getItem(position).getStudentId();
     }
 
     @NonNull
@@ -26,13 +41,27 @@ public class TopBottomStudentAdapter extends ListAdapter<AttendanceRecordDisplay
     public StudentViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         View view = LayoutInflater.from(parent.getContext())
                 .inflate(R.layout.item_top_bottom_student, parent, false); // You'll create this layout
-        return new StudentViewHolder(view);
+        StudentViewHolder holder = new StudentViewHolder(view);
+        // Set once per holder, the record is looked up at click time
+        view.setOnClickListener(v -> {
+            int position = holder.getBindingAdapterPosition();
+            if (listener != null && position != RecyclerView.NO_POSITION) {
+                AttendanceRecordDisplay record = getItem(position);
+                listener.onStudentClick(record.getStudentId(), record.getStudentName());
+            }
+        });
+        return holder;
     }
 
     @Override
     public void onBindViewHolder(@NonNull StudentViewHolder holder, int position) {
         AttendanceRecordDisplay currentRecord = getItem(position);
-        holder.bind(currentRecord);
+        holder.bind(currentRecord, DiffPayloads.ALL);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull StudentViewHolder holder, int position, @NonNull List<Object> payloads) {
+        holder.bind(getItem(position), DiffPayloads.merge(payloads)); // Only the fields that changed
     }
 
     static class StudentViewHolder extends RecyclerView.ViewHolder {
@@ -45,9 +74,13 @@ public class TopBottomStudentAdapter extends ListAdapter<AttendanceRecordDisplay
             attendancePercentageTextView = itemView.findViewById(R.id.top_bottom_attendance_percentage_text_view);
         }
 
-        public void bind(AttendanceRecordDisplay record) {
-            studentNameTextView.setText(record.getStudentName());
-            attendancePercentageTextView.setText(String.format(Locale.getDefault(), "%.2f%%", record.getAttendancePercentage()));
+        public void bind(AttendanceRecordDisplay record, int changes) {
+            if (DiffPayloads.has(changes, FIELD_NAME)) {
+                studentNameTextView.setText(record.getStudentName());
+            }
+            if (DiffPayloads.has(changes, FIELD_PERCENTAGE)) {
+                attendancePercentageTextView.setText(String.format(Locale.getDefault(), "%.2f%%", record.getAttendancePercentage()));
+            }
         }
     }
 
@@ -63,5 +96,21 @@ public class TopBottomStudentAdapter extends ListAdapter<AttendanceRecordDisplay
             return oldItem.getStudentName().equals(newItem.getStudentName()) &&
                     oldItem.getAttendancePercentage() == newItem.getAttendancePercentage();
         }
+
+        @Override
+        public Object getChangePayload(@NonNull AttendanceRecordDisplay oldItem, @NonNull AttendanceRecordDisplay newItem) {
+            int changes = 0;
+            if (!oldItem.getStudentName().equals(newItem.getStudentName())) {
+                changes |= FIELD_NAME;
+            }
+            if (oldItem.getAttendancePercentage() != newItem.getAttendancePercentage()) {
+                changes |= FIELD_PERCENTAGE;
+            }
+            return changes;
+        }
     };
+
+    public interface OnStudentClickListener {
+        void onStudentClick(long studentId, String studentName);
+    }
 }
@@ -18,6 +18,7 @@ import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.aquaa.markly.R;
+import com.aquaa.markly.data.repository.AttendanceResultStore;
 import com.aquaa.markly.ui.attendance.TrackAttendanceViewModel.AttendanceRecordDisplay;
 
 import java.text.DecimalFormat;
@@ -32,6 +33,7 @@ public class TrackAttendanceActivity extends AppCompatActivity {
 
     private TrackAttendanceViewModel mViewModel;
     private Spinner semesterSpinner;
+    private Spinner sectionSpinner;
     private RecyclerView recyclerView;
     private TrackAttendanceAdapter adapter;
     private TextView totalStudentsText;
@@ -54,6 +56,7 @@ public class TrackAttendanceActivity extends AppCompatActivity {
         chooseDateButton = findViewById(R.id.button_choose_date);
         selectedDateTextView = findViewById(R.id.selected_date_text_view);
         semesterSpinner = findViewById(R.id.semester_spinner);
+        sectionSpinner = findViewById(R.id.section_spinner);
         recyclerView = findViewById(R.id.attendance_recycler_view);
         totalStudentsText = findViewById(R.id.total_students_text);
         avgAttendanceText = findViewById(R.id.avg_attendance_text);
@@ -121,6 +124,36 @@ public class TrackAttendanceActivity extends AppCompatActivity {
             }
         });
 
+        // Setup Section Spinner, refilled for every semester
+        mViewModel.getSectionsOfSemester().observe(this, sections -> {
+            List<String> sectionOptions = new ArrayList<>();
+            sectionOptions.add("All Sections");
+            if (sections != null) {
+                sectionOptions.addAll(sections);
+            }
+            ArrayAdapter<String> sectionAdapter = new ArrayAdapter<>(this,
+                    android.R.layout.simple_spinner_item, sectionOptions);
+            sectionAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+            sectionSpinner.setAdapter(sectionAdapter);
+            sectionSpinner.setEnabled(sectionOptions.size() > 1);
+
+            // Keeps the section across a configuration change
+            int selectionIndex = sectionOptions.indexOf(mViewModel.getSelectedSection().getValue());
+            sectionSpinner.setSelection(Math.max(selectionIndex, 0));
+        });
+
+        sectionSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                mViewModel.setSelectedSection(position > 0 ? parent.getItemAtPosition(position).toString() : null);
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+                // Do nothing
+            }
+        });
+
         // Observe attendance records from ViewModel
         mViewModel.getMonthlyAttendanceRecords().observe(this, attendanceRecords -> {
             adapter.submitList(attendanceRecords);
@@ -135,11 +168,8 @@ public class TrackAttendanceActivity extends AppCompatActivity {
             intent.putExtra("selectedDay", selectedCalendar.get(Calendar.DAY_OF_MONTH)); // Pass the selected day
             intent.putExtra("selectedSemester", mViewModel.getSelectedSemester().getValue());
 
-            if (mViewModel.getMonthlyAttendanceRecords().getValue() != null) {
-                intent.putExtra("attendanceRecords", new ArrayList<>(mViewModel.getMonthlyAttendanceRecords().getValue()));
-            } else {
-                intent.putExtra("attendanceRecords", new ArrayList<AttendanceRecordDisplay>());
-            }
+            // Only a handle of the result, the records themselves stay in AttendanceResultStore
+            intent.putExtra(AttendanceResultStore.EXTRA_HANDLE, mViewModel.getCurrentResultHandle());
             startActivity(intent);
         });
     }
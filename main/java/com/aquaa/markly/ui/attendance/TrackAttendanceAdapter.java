@@ -12,13 +12,25 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.aquaa.markly.R;
 import com.aquaa.markly.ui.attendance.TrackAttendanceViewModel.AttendanceRecordDisplay;
+import com.aquaa.markly.utils.DiffPayloads;
 
+import java.util.List;
 import java.util.Locale;
 
 public class TrackAttendanceAdapter extends ListAdapter<AttendanceRecordDisplay, TrackAttendanceAdapter.AttendanceRecordViewHolder> {
 
+    // Change payloads, see DiffPayloads
+    private static final int FIELD_NAME = 1;
+    private static final int FIELD_COUNTS = 1 << 1;
+
     public TrackAttendanceAdapter() {
-        super(DIFF_CALLBACK);
+        super(DIFF_CALLBACK); // The list is diffed on a background thread
+        setHasStableIds(true);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return getItem(position).getStudentId();
     }
 
     @NonNull
@@ -32,7 +44,12 @@ public class TrackAttendanceAdapter extends ListAdapter<AttendanceRecordDisplay,
     @Override
     public void onBindViewHolder(@NonNull AttendanceRecordViewHolder holder, int position) {
         AttendanceRecordDisplay currentRecord = getItem(position);
-        holder.bind(currentRecord);
+        holder.bind(currentRecord, DiffPayloads.ALL);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull AttendanceRecordViewHolder holder, int position, @NonNull List<Object> payloads) {
+        holder.bind(getItem(position), DiffPayloads.merge(payloads)); // Only the fields that changed
     }
 
     static class AttendanceRecordViewHolder extends RecyclerView.ViewHolder {
@@ -51,12 +68,16 @@ public class TrackAttendanceAdapter extends ListAdapter<AttendanceRecordDisplay,
             percentageTextView = itemView.findViewById(R.id.percentage_text_view);
         }
 
-        public void bind(AttendanceRecordDisplay record) {
-            studentNameTextView.setText(record.getStudentName());
-            presentDaysTextView.setText(String.format(Locale.getDefault(), "Present: %d", record.getPresentDays()));
-            absentDaysTextView.setText(String.format(Locale.getDefault(), "Absent: %d", record.getAbsentDays()));
-            totalDaysTextView.setText(String.format(Locale.getDefault(), "Total Recorded: %d", record.getTotalDays()));
-            percentageTextView.setText(String.format(Locale.getDefault(), "Attendance: %.2f%%", record.getAttendancePercentage()));
+        public void bind(AttendanceRecordDisplay record, int changes) {
+            if (DiffPayloads.has(changes, FIELD_NAME)) {
+                studentNameTextView.setText(record.getStudentName());
+            }
+            if (DiffPayloads.has(changes, FIELD_COUNTS)) {
+                presentDaysTextView.setText(String.format(Locale.getDefault(), "Present: %d", record.getPresentDays()));
+                absentDaysTextView.setText(String.format(Locale.getDefault(), "Absent: %d", record.getAbsentDays()));
+                totalDaysTextView.setText(String.format(Locale.getDefault(), "Total Recorded: %d", record.getTotalDays()));
+                percentageTextView.setText(String.format(Locale.getDefault(), "Attendance: %.2f%%", record.getAttendancePercentage()));
+            }
         }
     }
 
@@ -70,5 +91,20 @@ public class TrackAttendanceAdapter extends ListAdapter<AttendanceRecordDisplay,
         public boolean areContentsTheSame(@NonNull AttendanceRecordDisplay oldItem, @NonNull AttendanceRecordDisplay newItem) {
             return oldItem.equals(newItem); // Requires equals() and hashCode() in AttendanceRecordDisplay if not using data class
         }
+
+        @Override
+        public Object getChangePayload(@NonNull AttendanceRecordDisplay oldItem, @NonNull AttendanceRecordDisplay newItem) {
+            int changes = 0;
+            if (!oldItem.getStudentName().equals(newItem.getStudentName())) {
+                changes |= FIELD_NAME;
+            }
+            if (oldItem.getPresentDays() != newItem.getPresentDays()
+                    || oldItem.getAbsentDays() != newItem.getAbsentDays()
+                    || oldItem.getTotalDays() != newItem.getTotalDays()
+                    || Double.compare(oldItem.getAttendancePercentage(), newItem.getAttendancePercentage()) != 0) {
+                changes |= FIELD_COUNTS;
+            }
+            return changes;
+        }
     };
 }
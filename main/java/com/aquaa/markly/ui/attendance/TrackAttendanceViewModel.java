@@ -9,17 +9,18 @@ import androidx.lifecycle.MediatorLiveData;
 import androidx.lifecycle.MutableLiveData;
 import androidx.lifecycle.Transformations;
 
-import com.aquaa.markly.data.database.Attendance;
 import com.aquaa.markly.data.database.Student;
+import com.aquaa.markly.data.repository.AttendanceResultStore;
 import com.aquaa.markly.data.repository.StudentRepository;
+import com.aquaa.markly.utils.AttendanceAggregator;
+import com.aquaa.markly.utils.MarklyLog;
+import com.aquaa.markly.utils.Metrics;
 
-import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors; // Import Executors
 
@@ -30,13 +31,20 @@ public class TrackAttendanceViewModel extends AndroidViewModel {
     private MutableLiveData<Integer> selectedMonth = new MutableLiveData<>();
     private MutableLiveData<Integer> selectedYear = new MutableLiveData<>();
     private MutableLiveData<Integer> selectedSemester = new MutableLiveData<>();
+    private MutableLiveData<String> selectedSection = new MutableLiveData<>(); // null for the whole semester
+    // Fires when the semester or the section changes
+    private MediatorLiveData<Boolean> studentFilter = new MediatorLiveData<>();
 
     private LiveData<List<Integer>> allAvailableSemesters;
+    private LiveData<List<String>> sectionsOfSemester;
 
     private LiveData<List<Student>> filteredStudentsLiveData;
 
     private MediatorLiveData<List<AttendanceRecordDisplay>> monthlyAttendanceRecords = new MediatorLiveData<>();
 
+    private final AttendanceResultStore resultStore;
+    private AttendanceResultStore.Key currentKey; // Main thread only
+
     // Executor for background database operations (if needed in this VM)
     private final ExecutorService dbExecutor = Executors.newSingleThreadExecutor();
 
@@ -44,6 +52,7 @@ public class TrackAttendanceViewModel extends AndroidViewModel {
     public TrackAttendanceViewModel(Application application) {
         super(application);
         mRepository = new StudentRepository(application);
+        resultStore = AttendanceResultStore.getInstance(application);
 
         Calendar calendar = Calendar.getInstance();
         selectedMonth.setValue(calendar.get(Calendar.MONTH));
@@ -52,12 +61,23 @@ public class TrackAttendanceViewModel extends AndroidViewModel {
 
         allAvailableSemesters = mRepository.getAllSemesters();
 
-        filteredStudentsLiveData = Transformations.switchMap(selectedSemester, semester -> {
-            Log.d(TAG, "Selected Semester changed to: " + semester);
+        sectionsOfSemester = Transformations.switchMap(selectedSemester, semester -> {
+            if (semester == null || semester == 0) {
+                return new MutableLiveData<>(new ArrayList<>()); // Sections are per semester
+            }
+            return mRepository.getSectionsBySemester(semester);
+        });
+
+        studentFilter.addSource(selectedSemester, semester -> studentFilter.setValue(true));
+        studentFilter.addSource(selectedSection, section -> studentFilter.setValue(true));
+        filteredStudentsLiveData = Transformations.switchMap(studentFilter, changed -> {
+            Integer semester = selectedSemester.getValue();
+            String section = selectedSection.getValue();
+            MarklyLog.d(TAG, "Selected Semester changed to: {}, section: {}", semester, section);
             if (semester == null || semester == 0) {
                 return mRepository.getAllStudents(); // LiveData<List<Student>>
             } else {
-                return mRepository.getStudentsBySemester(semester); // LiveData<List<Student>>
+                return mRepository.getStudentsBySemester(semester, section); // LiveData<List<Student>>
             }
         });
 
@@ -83,11 +103,24 @@ public class TrackAttendanceViewModel extends AndroidViewModel {
 
     public void setSelectedSemester(int semester) {
         if (selectedSemester.getValue() == null || semester != selectedSemester.getValue()) {
+            if (selectedSection.getValue() != null) {
+                selectedSection.setValue(null); // A new semester starts with all its sections
+            }
             selectedSemester.setValue(semester);
             Log.d(TAG, "setSelectedSemester: " + semester);
         }
     }
 
+    /**
+     * @param section One of getSectionsOfSemester(), or null for the whole semester.
+     */
+    public void setSelectedSection(String section) {
+        if (!Objects.equals(section, selectedSection.getValue())) {
+            selectedSection.setValue(section);
+            MarklyLog.d(TAG, "setSelectedSection: {}", section);
+        }
+    }
+
     public LiveData<Integer> getSelectedMonth() {
         return selectedMonth;
     }
@@ -104,6 +137,17 @@ public class TrackAttendanceViewModel extends AndroidViewModel {
         return allAvailableSemesters;
     }
 
+    public LiveData<String> getSelectedSection() {
+        return selectedSection;
+    }
+
+    /**
+     * @return The sections of the selected semester, empty for all semesters.
+     */
+    public LiveData<List<String>> getSectionsOfSemester() {
+        return sectionsOfSemester;
+    }
+
     public LiveData<List<AttendanceRecordDisplay>> getMonthlyAttendanceRecords() {
         return monthlyAttendanceRecords;
     }
@@ -119,77 +163,56 @@ public class TrackAttendanceViewModel extends AndroidViewModel {
             return;
         }
 
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(year, month, 1, 0, 0, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        long startDate = calendar.getTimeInMillis();
+
+        calendar.add(Calendar.MONTH, 1);
+        calendar.add(Calendar.MILLISECOND, -1);
+        long endDate = calendar.getTimeInMillis();
+
+        Integer semester = selectedSemester.getValue();
+        AttendanceResultStore.Key key = new AttendanceResultStore.Key(semester == null ? 0 : semester, selectedSection.getValue(),
+                startDate, endDate);
+        // Keep the shown result in the store while this screen lives, the analytics screen reads it by handle
+        resultStore.hold(key);
+        if (currentKey != null) {
+            resultStore.release(currentKey);
+        }
+        currentKey = key;
+
         Log.d(TAG, "updateMonthlyAttendanceRecords: Fetching attendance for month " + month + ", year " + year + ", for " + students.size() + " filtered students.");
 
 
         // Run database operation on a background thread
         dbExecutor.execute(() -> {
-            Calendar calendar = Calendar.getInstance();
-            calendar.set(year, month, 1, 0, 0, 0);
-            calendar.set(Calendar.MILLISECOND, 0);
-            long startDate = calendar.getTimeInMillis();
-
-            calendar.add(Calendar.MONTH, 1);
-            calendar.add(Calendar.MILLISECOND, -1);
-            long endDate = calendar.getTimeInMillis();
-
-            // Get all attendance records for the month synchronously
-            List<Attendance> allMonthAttendanceSync = mRepository.getAllAttendanceSync(); // Get all attendance first
-
-            // Filter these attendance records based on date range and filtered students
-            List<Attendance> filteredAttendanceForMonth = new ArrayList<>();
-            Map<Long, Student> currentFilteredStudentMap = new HashMap<>(); // For efficient lookup
-            for (Student student : students) { // Populate map from current filtered students
-                currentFilteredStudentMap.put(student.getStudentId(), student);
-            }
-
-            for (Attendance attendance : allMonthAttendanceSync) {
-                if (attendance.getDate() >= startDate && attendance.getDate() <= endDate &&
-                        currentFilteredStudentMap.containsKey(attendance.getStudentId())) { // Check if student is in the currently filtered list
-                    filteredAttendanceForMonth.add(attendance);
-                }
-            }
-
-
-            // Aggregate attendance data per student from filtered records
-            Map<Long, AttendanceRecordDisplay> studentAttendanceMap = new HashMap<>();
-            for (Student student : students) { // Initialize records for all filtered students
-                studentAttendanceMap.put(student.getStudentId(), new AttendanceRecordDisplay(student.getStudentId(), student.getName(), 0, 0, 0.0));
-            }
-
-            for (Attendance attendance : filteredAttendanceForMonth) {
-                // Ensure attendance record belongs to a student we are currently tracking
-                if (studentAttendanceMap.containsKey(attendance.studentId)) {
-                    AttendanceRecordDisplay record = studentAttendanceMap.get(attendance.studentId);
-                    if (record != null) {
-                        record.incrementTotalDays();
-                        if (attendance.isPresent) {
-                            record.incrementPresentDays();
-                        } else {
-                            record.incrementAbsentDays();
-                        }
-                    }
-                }
+            long start = System.nanoTime();
+            // Aggregate attendance per filtered student within the month, shared with the analytics screen
+            AttendanceAggregator.Tally tally = resultStore.get(key);
+
+            List<AttendanceRecordDisplay> resultList = new ArrayList<>(tally.students.size());
+            for (int i = 0; i < tally.students.size(); i++) {
+                Student student = tally.students.get(i);
+                resultList.add(new AttendanceRecordDisplay(student.getStudentId(), student.getName(),
+                        tally.presentDays[i], tally.absentDays[i], tally.getPercentage(i)));
             }
-
-            List<AttendanceRecordDisplay> resultList = new ArrayList<>(studentAttendanceMap.values());
             Collections.sort(resultList, (o1, o2) -> o1.getStudentName().compareToIgnoreCase(o2.getStudentName()));
-
-            for (AttendanceRecordDisplay record : resultList) {
-                if (record.getTotalDays() > 0) {
-                    double percentage = (double) record.getPresentDays() / record.getTotalDays() * 100;
-                    record.setAttendancePercentage(percentage);
-                } else {
-                    record.setAttendancePercentage(0.0);
-                }
-            }
             monthlyAttendanceRecords.postValue(resultList); // Use postValue as this is on a background thread
+            Metrics.timer("track.monthly.aggregate").stop(start);
             Log.d(TAG, "updateMonthlyAttendanceRecords: Posted " + resultList.size() + " records.");
         });
     }
 
+    /**
+     * @return The handle of the result shown for the selected month and semester, for AttendanceResultStore.EXTRA_HANDLE.
+     */
+    public String getCurrentResultHandle() {
+        return currentKey != null ? currentKey.toHandle() : null;
+    }
+
     // Data class to hold aggregated attendance information for display
-    public static class AttendanceRecordDisplay implements Serializable {
+    public static class AttendanceRecordDisplay {
         private long studentId;
         private String studentName;
         private int presentDays;
@@ -270,6 +293,9 @@ public class TrackAttendanceViewModel extends AndroidViewModel {
     @Override
     protected void onCleared() {
         super.onCleared();
+        if (currentKey != null) {
+            resultStore.release(currentKey);
+        }
         if (!dbExecutor.isShutdown()) {
             dbExecutor.shutdown();
             Log.d(TAG, "dbExecutor shutdown initiated in TrackAttendanceViewModel.");
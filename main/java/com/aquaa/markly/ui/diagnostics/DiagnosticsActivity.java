@@ -0,0 +1,103 @@
+package com.aquaa.markly.ui.diagnostics;
+
+import android.os.Bundle;
+import android.widget.Button;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
+import androidx.annotation.Nullable;
+import androidx.appcompat.app.AlertDialog;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.ViewModelProvider;
+
+import com.aquaa.markly.R;
+import com.aquaa.markly.data.database.MigrationBenchmark;
+import com.aquaa.markly.data.database.QueryBenchmark;
+import com.aquaa.markly.data.sync.SyncBenchmark;
+import com.aquaa.markly.utils.AggregationBenchmark;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Hidden screen (long-press the greeting on the home screen) showing the in-app metrics:
+ * DAO and pipeline timers, executor queue waits and counters, and running the benchmark suites.
+ * Meant for finding regressions on slow devices without attaching a profiler.
+ */
+public class DiagnosticsActivity extends AppCompatActivity {
+
+    private DiagnosticsViewModel diagnosticsViewModel;
+    private TextView metricsTextView;
+    private TextView benchmarkTextView;
+    private ActivityResultLauncher<String> exportJsonLauncher;
+
+    @Override
+    protected void onCreate(@Nullable Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_diagnostics);
+
+        diagnosticsViewModel = new ViewModelProvider(this).get(DiagnosticsViewModel.class);
+
+        metricsTextView = findViewById(R.id.text_view_metrics);
+        Button refreshButton = findViewById(R.id.button_refresh_metrics);
+        Button resetButton = findViewById(R.id.button_reset_metrics);
+        Button exportButton = findViewById(R.id.button_export_metrics);
+        benchmarkTextView = findViewById(R.id.text_view_benchmark);
+        Button runBenchmarkButton = findViewById(R.id.button_run_benchmark);
+        Button saveBaselineButton = findViewById(R.id.button_save_baseline);
+        Button auditQueryPlansButton = findViewById(R.id.button_audit_query_plans);
+
+        exportJsonLauncher = registerForActivityResult(new ActivityResultContracts.CreateDocument("application/json"), uri -> {
+            if (uri != null) {
+                diagnosticsViewModel.exportJson(uri);
+            } else {
+                Toast.makeText(this, "Metrics export cancelled.", Toast.LENGTH_SHORT).show();
+            }
+        });
+
+        diagnosticsViewModel.getMetricsText().observe(this, text -> metricsTextView.setText(text));
+        diagnosticsViewModel.getBenchmarkText().observe(this, text -> benchmarkTextView.setText(text));
+        diagnosticsViewModel.getOperationResult().observe(this, message -> {
+            if (message != null && !message.isEmpty()) {
+                Toast.makeText(DiagnosticsActivity.this, message, Toast.LENGTH_SHORT).show();
+            }
+        });
+
+        refreshButton.setOnClickListener(v -> diagnosticsViewModel.refresh());
+        resetButton.setOnClickListener(v -> diagnosticsViewModel.resetMetrics());
+        exportButton.setOnClickListener(v -> {
+            String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
+            exportJsonLauncher.launch("Markly_Diagnostics_" + timeStamp + ".json");
+        });
+        runBenchmarkButton.setOnClickListener(v -> showBenchmarkChooser());
+        saveBaselineButton.setOnClickListener(v -> diagnosticsViewModel.saveBenchmarkBaseline());
+        auditQueryPlansButton.setOnClickListener(v -> {
+            benchmarkTextView.setText("Auditing query plans...");
+            diagnosticsViewModel.auditQueryPlans();
+        });
+    }
+
+    private void showBenchmarkChooser() {
+        String[] labels = {"Aggregation (in memory)", "Room queries (in-memory database)", "Room queries (on-disk database)",
+                "Schema migrations (on-disk database)", "LAN sync (in-process hub)"};
+        String[] suites = {AggregationBenchmark.SUITE, QueryBenchmark.SUITE_IN_MEMORY, QueryBenchmark.SUITE_ON_DISK,
+                MigrationBenchmark.SUITE, SyncBenchmark.SUITE};
+        new AlertDialog.Builder(this)
+                .setTitle("Run Benchmarks")
+                .setItems(labels, (dialog, which) -> {
+                    benchmarkTextView.setText("Running " + labels[which] + "...");
+                    diagnosticsViewModel.runBenchmark(suites[which]);
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        diagnosticsViewModel.refresh();
+    }
+}
@@ -0,0 +1,252 @@
+package com.aquaa.markly.ui.diagnostics;
+
+import android.app.Application;
+import android.content.pm.ApplicationInfo;
+import android.net.Uri;
+import android.os.Build;
+
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.aquaa.markly.data.database.AppDatabase;
+import com.aquaa.markly.data.database.MigrationBenchmark;
+import com.aquaa.markly.data.database.QueryBenchmark;
+import com.aquaa.markly.data.database.QueryPlanAuditor;
+import com.aquaa.markly.data.sync.SyncBenchmark;
+import com.aquaa.markly.utils.AggregationBenchmark;
+import com.aquaa.markly.utils.BenchmarkRunner;
+import com.aquaa.markly.utils.MarklyLog;
+import com.aquaa.markly.utils.Metrics;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * ViewModel for the hidden diagnostics screen. Renders the metrics registry, runs the benchmark suites
+ * and exports both as JSON. Benchmark reports are kept under files/benchmarks as "&lt;suite&gt;-latest.json"
+ * and "&lt;suite&gt;-baseline.json" so that every run is compared with the saved baseline.
+ */
+public class DiagnosticsViewModel extends AndroidViewModel {
+    private static final String TAG = "DiagnosticsViewModel";
+
+    private final MutableLiveData<String> metricsText = new MutableLiveData<>();
+    private final MutableLiveData<String> benchmarkText = new MutableLiveData<>();
+    private final MutableLiveData<String> operationResult = new MutableLiveData<>();
+
+    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
+
+    // Only touched on ioExecutor
+    private String lastSuite = AggregationBenchmark.SUITE;
+
+    public DiagnosticsViewModel(Application application) {
+        super(application);
+    }
+
+    public LiveData<String> getMetricsText() {
+        return metricsText;
+    }
+
+    public LiveData<String> getBenchmarkText() {
+        return benchmarkText;
+    }
+
+    public LiveData<String> getOperationResult() {
+        return operationResult;
+    }
+
+    public void refresh() {
+        ioExecutor.execute(() -> metricsText.postValue(Metrics.toText()));
+    }
+
+    public void resetMetrics() {
+        ioExecutor.execute(() -> {
+            Metrics.reset();
+            metricsText.postValue(Metrics.toText());
+            operationResult.postValue("Metrics reset.");
+        });
+    }
+
+    /**
+     * Runs one benchmark suite and compares it with that suite's baseline. Suites with stored thresholds
+     * (the Room query, migration and sync suites) also report PASS or FAIL. Takes from seconds to a few minutes depending on the device.
+     * @param suite AggregationBenchmark.SUITE, QueryBenchmark.SUITE_IN_MEMORY, QueryBenchmark.SUITE_ON_DISK,
+     *              MigrationBenchmark.SUITE or SyncBenchmark.SUITE.
+     */
+    public void runBenchmark(String suite) {
+        ioExecutor.execute(() -> {
+            try {
+                List<String> skipped = new ArrayList<>();
+                List<BenchmarkRunner.Result> results;
+                List<String> failures;
+                if (AggregationBenchmark.SUITE.equals(suite)) {
+                    results = AggregationBenchmark.run(benchmarkText::postValue, skipped);
+                    failures = new ArrayList<>();
+                } else if (MigrationBenchmark.SUITE.equals(suite)) {
+                    failures = new ArrayList<>();
+                    results = MigrationBenchmark.run(getApplication(), benchmarkText::postValue, failures);
+                    failures.addAll(BenchmarkRunner.checkThresholds(results, MigrationBenchmark.THRESHOLDS_MS));
+                } else if (SyncBenchmark.SUITE.equals(suite)) {
+                    failures = new ArrayList<>();
+                    results = SyncBenchmark.run(getApplication(), benchmarkText::postValue, failures);
+                    failures.addAll(BenchmarkRunner.checkThresholds(results, SyncBenchmark.THRESHOLDS_MS));
+                } else {
+                    results = QueryBenchmark.run(getApplication(), QueryBenchmark.SUITE_ON_DISK.equals(suite),
+                            benchmarkText::postValue, skipped);
+                    failures = BenchmarkRunner.checkThresholds(results, QueryBenchmark.THRESHOLDS_MS);
+                }
+                String json = BenchmarkRunner.toJson(suite, environment(), results, skipped, failures);
+                String baseline = readReport(suite, "baseline");
+                writeReport(suite, "latest", json);
+                lastSuite = suite;
+
+                StringBuilder text = new StringBuilder("Suite: ").append(suite).append('\n');
+                if (suite.equals(AggregationBenchmark.SUITE)) {
+                    text.append('\n');
+                } else if (failures.isEmpty()) {
+                    text.append("PASS: every case is within its threshold.\n\n");
+                } else {
+                    text.append("FAIL: ").append(failures.size()).append(" case(s) over threshold\n");
+                    for (String failure : failures) {
+                        text.append("  ").append(failure).append('\n');
+                    }
+                    text.append('\n');
+                }
+                text.append(BenchmarkRunner.toText(results, baseline));
+                for (String note : skipped) {
+                    text.append("Skipped: ").append(note).append('\n');
+                }
+                benchmarkText.postValue(text.toString());
+                MarklyLog.i(TAG, "Benchmark suite " + suite + " finished with " + results.size() + " cases, "
+                        + failures.size() + " over threshold.");
+            } catch (Exception e) {
+                benchmarkText.postValue("Benchmark failed: " + e.getMessage());
+                MarklyLog.e(TAG, "Benchmark suite " + suite + " failed", e);
+            }
+        });
+    }
+
+    /**
+     * Makes the latest report of the last suite that ran the baseline that its later runs are compared with.
+     */
+    public void saveBenchmarkBaseline() {
+        ioExecutor.execute(() -> {
+            try {
+                String latest = readReport(lastSuite, "latest");
+                if (latest == null) {
+                    operationResult.postValue("Run the benchmarks first.");
+                    return;
+                }
+                writeReport(lastSuite, "baseline", latest);
+                operationResult.postValue("Baseline saved for " + lastSuite + ".");
+            } catch (IOException e) {
+                operationResult.postValue("Error saving baseline: " + e.getMessage());
+                MarklyLog.e(TAG, "Error saving benchmark baseline", e);
+            }
+        });
+    }
+
+    /**
+     * Runs EXPLAIN QUERY PLAN for every DAO query against the app's database and reports any full table scan.
+     */
+    public void auditQueryPlans() {
+        ioExecutor.execute(() -> {
+            try {
+                List<QueryPlanAuditor.Finding> findings = QueryPlanAuditor.audit(AppDatabase.getDatabase(getApplication()));
+                benchmarkText.postValue(QueryPlanAuditor.toText(findings));
+                if (QueryPlanAuditor.hasFailures(findings)) {
+                    MarklyLog.w(TAG, "Query plan audit found full table scans.");
+                }
+            } catch (Exception e) {
+                benchmarkText.postValue("Query plan audit failed: " + e.getMessage());
+                MarklyLog.e(TAG, "Query plan audit failed", e);
+            }
+        });
+    }
+
+    /**
+     * Writes the current metrics snapshot, and the latest benchmark report if there is one, as JSON to the given document.
+     * @param outputUri The URI returned by the CreateDocument picker.
+     */
+    public void exportJson(Uri outputUri) {
+        ioExecutor.execute(() -> {
+            try (OutputStream outputStream = getApplication().getContentResolver().openOutputStream(outputUri);
+                 Writer writer = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8)) {
+                Gson gson = new Gson();
+                JsonObject root = new JsonObject();
+                root.add("metrics", gson.fromJson(Metrics.toJson(), JsonObject.class));
+                String latest = readReport(lastSuite, "latest");
+                if (latest != null) {
+                    root.add("benchmark", gson.fromJson(latest, JsonObject.class));
+                }
+                writer.write(new GsonBuilder().setPrettyPrinting().create().toJson(root));
+                operationResult.postValue("Diagnostics exported.");
+            } catch (Exception e) {
+                operationResult.postValue("Error exporting metrics: " + e.getMessage());
+                MarklyLog.e(TAG, "Error exporting metrics", e);
+            }
+        });
+    }
+
+    private Map<String, String> environment() {
+        Map<String, String> environment = new LinkedHashMap<>();
+        environment.put("device", Build.MANUFACTURER + " " + Build.MODEL);
+        environment.put("sdk", String.valueOf(Build.VERSION.SDK_INT));
+        environment.put("debuggable", String.valueOf((getApplication().getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0));
+        environment.put("maxHeapMb", String.valueOf(Runtime.getRuntime().maxMemory() / (1024 * 1024)));
+        return environment;
+    }
+
+    private File reportFile(String suite, String kind) {
+        return new File(new File(getApplication().getFilesDir(), "benchmarks"), suite + "-" + kind + ".json");
+    }
+
+    private String readReport(String suite, String kind) throws IOException {
+        File file = reportFile(suite, kind);
+        if (!file.exists()) {
+            return null;
+        }
+        byte[] bytes = new byte[(int) file.length()];
+        try (InputStream inputStream = new FileInputStream(file)) {
+            int offset = 0;
+            int read;
+            while (offset < bytes.length && (read = inputStream.read(bytes, offset, bytes.length - offset)) > 0) {
+                offset += read;
+            }
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void writeReport(String suite, String kind, String json) throws IOException {
+        File file = reportFile(suite, kind);
+        File directory = file.getParentFile();
+        if (directory != null && !directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        try (OutputStream outputStream = new FileOutputStream(file)) {
+            outputStream.write(json.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        ioExecutor.shutdown();
+    }
+}
@@ -3,8 +3,8 @@ package com.aquaa.markly.ui.main;
 import android.content.Intent;
 import android.os.Bundle;
 import android.text.InputType;
-import android.util.Log; // Added for debugging logs
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.widget.Button;
 import android.widget.EditText;
 import android.widget.TextView;
@@ -15,18 +15,21 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.lifecycle.Observer; // Explicitly import Observer
 import androidx.lifecycle.ViewModelProvider;
 
+import com.aquaa.markly.MarklyApplication;
 import com.aquaa.markly.R;
 import com.aquaa.markly.data.database.Notification; // Import Notification entity
 import com.aquaa.markly.data.repository.StudentRepository; // Import StudentRepository
 import com.aquaa.markly.ui.addstudent.AddStudentActivity;
+import com.aquaa.markly.ui.archive.ArchiveActivity;
 import com.aquaa.markly.ui.attendance.AttendanceActivity;
 import com.aquaa.markly.ui.attendance.TrackAttendanceActivity;
+import com.aquaa.markly.ui.diagnostics.DiagnosticsActivity;
 import com.aquaa.markly.ui.notifications.NotificationActivity;
 import com.aquaa.markly.ui.notifications.NotificationPopUpView; // Import your custom view
 import com.aquaa.markly.ui.promotestudent.PromoteStudentActivity;
 import com.aquaa.markly.ui.sendmessage.SendMessageActivity;
-
-import java.util.List;
+import com.aquaa.markly.ui.sync.SyncActivity;
+import com.aquaa.markly.utils.MarklyLog;
 
 public class MainActivity extends AppCompatActivity {
 
@@ -51,6 +54,11 @@ public class MainActivity extends AppCompatActivity {
 
         // Initialize UI components
         greetingTextView = findViewById(R.id.text_view_greeting);
+        // Hidden entry point to the diagnostics screen
+        greetingTextView.setOnLongClickListener(v -> {
+            startActivity(new Intent(MainActivity.this, DiagnosticsActivity.class));
+            return true;
+        });
         quoteTextView = findViewById(R.id.text_view_quote);
         Button buttonAddStudent = findViewById(R.id.button_add_student);
         Button buttonAttendanceCheck = findViewById(R.id.button_attendance_check);
@@ -58,10 +66,11 @@ public class MainActivity extends AppCompatActivity {
         Button buttonPromoteStudent = findViewById(R.id.button_promote_student);
         Button buttonTrackAttendanceReport = findViewById(R.id.button_track_attendance_report);
         Button buttonViewNotifications = findViewById(R.id.button_view_notifications); // Initialize new button
+        Button buttonLanSync = findViewById(R.id.button_lan_sync);
+        Button buttonAcademicYears = findViewById(R.id.button_academic_years);
 
-        // Initialize Notification Pop-up View and Repository
+        // Initialize Notification Pop-up View
         notificationPopUpView = findViewById(R.id.notification_pop_up_view);
-        studentRepository = new StudentRepository(getApplication());
 
         // Observe the greeting message LiveData
         mainViewModel.getGreetingMessage().observe(this, greeting -> {
@@ -73,49 +82,18 @@ public class MainActivity extends AppCompatActivity {
             quoteTextView.setText(quote);
         });
 
-        // Observe all notifications from the repository to display pop-ups
-        studentRepository.getAllNotifications().observe(this, new Observer<List<Notification>>() {
+        // Database-backed parts of the home screen wait for the first frame, so cold start only pays for layout
+        View content = findViewById(android.R.id.content);
+        content.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
             @Override
-            public void onChanged(List<Notification> notifications) {
-                if (notifications != null && !notifications.isEmpty()) {
-                    Notification latestUnreadNotification = null;
-                    for (Notification notif : notifications) {
-                        if (!notif.isRead()) { // Check if it's unread
-                            // Prioritize the latest unread notification
-                            if (latestUnreadNotification == null || notif.getTimestamp() > latestUnreadNotification.getTimestamp()) {
-                                latestUnreadNotification = notif;
-                            }
-                        }
-                    }
-
-                    if (latestUnreadNotification != null) {
-                        // Check if the currently displayed notification is different from the new latest unread one
-                        // This prevents constantly re-showing the same notification if it's already visible
-                        if (currentlyDisplayedPopUpNotification == null ||
-                                latestUnreadNotification.getNotificationId() != currentlyDisplayedPopUpNotification.getNotificationId()) {
-
-                            Log.d(TAG, "Displaying new in-app notification: " + latestUnreadNotification.getTitle());
-                            notificationPopUpView.showNotification(latestUnreadNotification);
-                            currentlyDisplayedPopUpNotification = latestUnreadNotification; // Track the currently displayed notification
-                        } else {
-                            Log.d(TAG, "New unread notification available, but the same one is already showing as pop-up or no newer unread found.");
-                        }
-                    } else {
-                        // No unread notifications to display, hide the pop-up
-                        Log.d(TAG, "No unread notifications to display as pop-up, hiding it.");
-                        notificationPopUpView.hideNotification();
-                        currentlyDisplayedPopUpNotification = null; // Clear tracking as nothing is displayed
-                    }
-                } else {
-                    // No notifications in the database at all, hide the pop-up
-                    Log.d(TAG, "No notifications in database, hiding pop-up.");
-                    notificationPopUpView.hideNotification();
-                    currentlyDisplayedPopUpNotification = null; // Clear tracking
-                }
+            public boolean onPreDraw() {
+                content.getViewTreeObserver().removeOnPreDrawListener(this);
+                MarklyApplication.recordFirstDraw();
+                content.post(() -> observeLatestUnreadNotification());
+                return true;
             }
         });
 
-
         // Check if user name is stored, if not, prompt for it
         if (!mainViewModel.isUserNameStored()) {
             promptForUserName();
@@ -166,6 +144,52 @@ public class MainActivity extends AppCompatActivity {
                 startActivity(new Intent(MainActivity.this, NotificationActivity.class));
             }
         });
+
+        buttonLanSync.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                startActivity(new Intent(MainActivity.this, SyncActivity.class));
+            }
+        });
+
+        buttonAcademicYears.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                startActivity(new Intent(MainActivity.this, ArchiveActivity.class));
+            }
+        });
+    }
+
+    /**
+     * Shows the newest unread notification as a pop-up, and hides the pop-up once everything is read.
+     * Only the single newest unread row is queried instead of the whole notifications table.
+     */
+    private void observeLatestUnreadNotification() {
+        if (isFinishing() || isDestroyed()) {
+            return;
+        }
+        studentRepository = new StudentRepository(getApplication());
+        studentRepository.getLatestUnreadNotification().observe(this, new Observer<Notification>() {
+            @Override
+            public void onChanged(Notification latestUnreadNotification) {
+                if (latestUnreadNotification != null) {
+                    // Check if the currently displayed notification is different from the new latest unread one
+                    // This prevents constantly re-showing the same notification if it's already visible
+                    if (currentlyDisplayedPopUpNotification == null ||
+                            latestUnreadNotification.getNotificationId() != currentlyDisplayedPopUpNotification.getNotificationId()) {
+
+                        MarklyLog.d(TAG, "Displaying new in-app notification: {}", latestUnreadNotification.getTitle());
+                        notificationPopUpView.showNotification(latestUnreadNotification);
+                        currentlyDisplayedPopUpNotification = latestUnreadNotification; // Track the currently displayed notification
+                    }
+                } else {
+                    // No unread notifications to display, hide the pop-up
+                    MarklyLog.d(TAG, "No unread notifications to display as pop-up, hiding it.");
+                    notificationPopUpView.hideNotification();
+                    currentlyDisplayedPopUpNotification = null; // Clear tracking as nothing is displayed
+                }
+            }
+        });
     }
 
     /**
@@ -1,5 +1,6 @@
 package com.aquaa.markly.ui.notifications;
 
+import android.content.Intent;
 import android.os.Bundle;
 import android.view.View;
 import android.widget.Button;
@@ -16,6 +17,7 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.aquaa.markly.R;
 import com.aquaa.markly.data.database.Notification; // Import Notification entity
+import com.aquaa.markly.utils.MarklyLog;
 
 import java.util.List;
 
@@ -27,6 +29,7 @@ public class NotificationActivity extends AppCompatActivity implements Notificat
     private TextView emptyNotificationsTextView;
     private Button markAllReadButton;
     private Button deleteAllNotificationsButton;
+    private Button shareDiagnosticLogButton;
 
     @Override
     protected void onCreate(@Nullable Bundle savedInstanceState) {
@@ -41,6 +44,7 @@ public class NotificationActivity extends AppCompatActivity implements Notificat
         emptyNotificationsTextView = findViewById(R.id.empty_notifications_text_view);
         markAllReadButton = findViewById(R.id.button_mark_all_read);
         deleteAllNotificationsButton = findViewById(R.id.button_delete_all_notifications);
+        shareDiagnosticLogButton = findViewById(R.id.button_share_diagnostic_log);
 
         // Setup RecyclerView
         notificationAdapter = new NotificationAdapter(this); // Pass 'this' as listener
@@ -65,6 +69,7 @@ public class NotificationActivity extends AppCompatActivity implements Notificat
         // Set action button listeners
         markAllReadButton.setOnClickListener(v -> showMarkAllReadConfirmation());
         deleteAllNotificationsButton.setOnClickListener(v -> showDeleteAllConfirmation());
+        shareDiagnosticLogButton.setOnClickListener(v -> shareDiagnosticLog());
     }
 
     /**
@@ -105,6 +110,22 @@ public class NotificationActivity extends AppCompatActivity implements Notificat
                 .show();
     }
 
+    /**
+     * Shares the recent log events kept in memory, so users can send them along with a problem report.
+     */
+    private void shareDiagnosticLog() {
+        String log = MarklyLog.dump();
+        if (log.isEmpty()) {
+            Toast.makeText(this, "Diagnostic log is empty.", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        Intent shareIntent = new Intent(Intent.ACTION_SEND);
+        shareIntent.setType("text/plain");
+        shareIntent.putExtra(Intent.EXTRA_SUBJECT, "Markly diagnostic log");
+        shareIntent.putExtra(Intent.EXTRA_TEXT, log);
+        startActivity(Intent.createChooser(shareIntent, "Share Diagnostic Log"));
+    }
+
     // --- OnNotificationActionListener implementation ---
 
     @Override
@@ -18,8 +18,10 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.aquaa.markly.R;
 import com.aquaa.markly.data.database.Notification;
+import com.aquaa.markly.utils.DiffPayloads;
 
 import java.text.SimpleDateFormat;
+import java.util.List;
 import java.util.Locale;
 
 public class NotificationAdapter extends ListAdapter<Notification, NotificationAdapter.NotificationViewHolder> {
@@ -27,9 +29,20 @@ public class NotificationAdapter extends ListAdapter<Notification, NotificationA
     private OnNotificationActionListener listener;
     private SimpleDateFormat dateTimeFormat = new SimpleDateFormat("MMM dd, yyyy HH:mm", Locale.getDefault()); // Corrected SimpleDateFormat
 
+    // Change payloads, see DiffPayloads
+    private static final int FIELD_TEXT = 1;
+    private static final int FIELD_TIMESTAMP = 1 << 1;
+    private static final int FIELD_READ = 1 << 2;
+
     public NotificationAdapter(OnNotificationActionListener listener) {
-        super(DIFF_CALLBACK);
+        super(DIFF_CALLBACK); // The list is diffed on a background thread
         this.listener = listener;
+        setHasStableIds(true);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return getItem(position).getNotificationId();
     }
 
     @NonNull
@@ -43,7 +56,12 @@ public class NotificationAdapter extends ListAdapter<Notification, NotificationA
     @Override
     public void onBindViewHolder(@NonNull NotificationViewHolder holder, int position) {
         Notification currentNotification = getItem(position);
-        holder.bind(currentNotification);
+        holder.bind(currentNotification, DiffPayloads.ALL);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull NotificationViewHolder holder, int position, @NonNull List<Object> payloads) {
+        holder.bind(getItem(position), DiffPayloads.merge(payloads)); // Only the fields that changed
     }
 
     /**
@@ -67,11 +85,40 @@ public class NotificationAdapter extends ListAdapter<Notification, NotificationA
             deleteButton = itemView.findViewById(R.id.button_delete_notification);
         }
 
-        public void bind(Notification notification) {
-            titleTextView.setText(notification.getTitle());
-            messageTextView.setText(notification.getMessage());
-            timestampTextView.setText(dateTimeFormat.format(notification.getTimestamp()));
+        public void bind(Notification notification, int changes) {
+            if (DiffPayloads.has(changes, FIELD_TEXT)) {
+                titleTextView.setText(notification.getTitle());
+                messageTextView.setText(notification.getMessage());
+            }
+            if (DiffPayloads.has(changes, FIELD_TIMESTAMP)) {
+                timestampTextView.setText(dateTimeFormat.format(notification.getTimestamp()));
+            }
+            if (DiffPayloads.has(changes, FIELD_READ)) {
+                bindReadState(notification);
+            }
 
+            // Set button click listeners
+            markReadButton.setOnClickListener(v -> {
+                if (listener != null) {
+                    listener.onMarkReadClick(notification.getNotificationId());
+                }
+            });
+
+            deleteButton.setOnClickListener(v -> {
+                if (listener != null) {
+                    listener.onDeleteClick(notification.getNotificationId());
+                }
+            });
+
+            // Handle item click for marking as read (optional, can be redundant if mark read button exists)
+            itemView.setOnClickListener(v -> {
+                if (listener != null) {
+                    listener.onNotificationClick(notification.getNotificationId(), notification.isRead());
+                }
+            });
+        }
+
+        private void bindReadState(Notification notification) {
             // Resolve theme attributes for dynamic background colors
             TypedValue typedValue = new TypedValue();
             Context context = itemView.getContext();
@@ -94,26 +141,6 @@ public class NotificationAdapter extends ListAdapter<Notification, NotificationA
                 itemView.setBackgroundColor(typedValue.data);
                 markReadButton.setVisibility(View.VISIBLE);
             }
-
-            // Set button click listeners
-            markReadButton.setOnClickListener(v -> {
-                if (listener != null) {
-                    listener.onMarkReadClick(notification.getNotificationId());
-                }
-            });
-
-            deleteButton.setOnClickListener(v -> {
-                if (listener != null) {
-                    listener.onDeleteClick(notification.getNotificationId());
-                }
-            });
-
-            // Handle item click for marking as read (optional, can be redundant if mark read button exists)
-            itemView.setOnClickListener(v -> {
-                if (listener != null) {
-                    listener.onNotificationClick(notification.getNotificationId(), notification.isRead());
-                }
-            });
         }
     }
 
@@ -131,6 +158,21 @@ public class NotificationAdapter extends ListAdapter<Notification, NotificationA
                     oldItem.isRead() == newItem.isRead() &&
                     oldItem.getType().equals(newItem.getType());
         }
+
+        @Override
+        public Object getChangePayload(@NonNull Notification oldItem, @NonNull Notification newItem) {
+            int changes = 0;
+            if (!oldItem.getTitle().equals(newItem.getTitle()) || !oldItem.getMessage().equals(newItem.getMessage())) {
+                changes |= FIELD_TEXT;
+            }
+            if (oldItem.getTimestamp() != newItem.getTimestamp()) {
+                changes |= FIELD_TIMESTAMP;
+            }
+            if (oldItem.isRead() != newItem.isRead()) {
+                changes |= FIELD_READ;
+            }
+            return changes;
+        }
     };
 
     public interface OnNotificationActionListener {
@@ -7,6 +7,7 @@ import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
 import android.widget.Button;
 import android.widget.Spinner;
+import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.appcompat.app.AlertDialog;
@@ -15,20 +16,27 @@ import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.aquaa.markly.R;
-import com.aquaa.markly.data.database.Student;
+import com.aquaa.markly.utils.IdSelectionModel;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 public class PromoteStudentActivity extends AppCompatActivity {
 
     private PromoteStudentViewModel promoteStudentViewModel;
     private Spinner semesterSpinner;
+    private Spinner sectionSpinner;
     private RecyclerView studentsRecyclerView;
     private Button promoteSelectedButton;
+    private Button selectAllButton;
+    private Button clearSelectionButton;
+    private TextView selectedCountTextView;
+    private final IdSelectionModel.Listener countListener = changed -> updateSelectedCount(changed.size());
     private StudentPromoteAdapter adapter;
 
     private int selectedSemester = -1;
+    private String selectedSection = null; // null for all sections of the semester
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -40,13 +48,22 @@ public class PromoteStudentActivity extends AppCompatActivity {
 
         // Initialize UI components
         semesterSpinner = findViewById(R.id.spinner_semester_promote_from);
+        sectionSpinner = findViewById(R.id.spinner_section_promote_from);
         studentsRecyclerView = findViewById(R.id.recycler_view_students_promote);
         promoteSelectedButton = findViewById(R.id.button_promote_selected_students);
+        selectAllButton = findViewById(R.id.button_select_all_promote);
+        clearSelectionButton = findViewById(R.id.button_clear_selection_promote);
+        selectedCountTextView = findViewById(R.id.text_view_selected_count_promote);
 
         // Setup RecyclerView Adapter
-        adapter = new StudentPromoteAdapter();
+        IdSelectionModel selection = promoteStudentViewModel.getSelection();
+        adapter = new StudentPromoteAdapter(selection);
         studentsRecyclerView.setAdapter(adapter);
 
+        // Keep the selected count in sync, the selection survives rotation with the ViewModel
+        selection.addListener(countListener);
+        updateSelectedCount(selection.size());
+
         // Observe LiveData for available semesters
         promoteStudentViewModel.getAllSemesters().observe(this, semesters -> {
             List<String> spinnerItems = new ArrayList<>();
@@ -66,9 +83,18 @@ public class PromoteStudentActivity extends AppCompatActivity {
             }
         });
 
+        showSections(new ArrayList<>());
+        promoteStudentViewModel.getSections().observe(this, this::showSections);
+
         // Observe LiveData for students to display
         promoteStudentViewModel.getStudentsToPromote().observe(this, students -> {
-            adapter.setStudents(students);
+            adapter.submitList(students);
+            // Students that are still listed stay selected; selected ids that disappeared are dropped
+            long[] ids = new long[students == null ? 0 : students.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = students.get(i).getStudentId();
+            }
+            selection.retainOnly(ids);
             if (students == null || students.isEmpty()) {
                 Toast.makeText(this, "No students found for this semester.", Toast.LENGTH_SHORT).show();
             }
@@ -80,7 +106,7 @@ public class PromoteStudentActivity extends AppCompatActivity {
                 Toast.makeText(PromoteStudentActivity.this, message, Toast.LENGTH_LONG).show();
                 // After promotion, reload students for the current semester to reflect changes
                 if (selectedSemester != -1) {
-                    promoteStudentViewModel.loadStudentsForSemester(selectedSemester);
+                    promoteStudentViewModel.loadStudentsForSemester(selectedSemester, selectedSection);
                 }
             }
         });
@@ -89,12 +115,17 @@ public class PromoteStudentActivity extends AppCompatActivity {
         semesterSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
             @Override
             public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                // A new semester starts with all its sections
+                selectedSection = null;
                 if (position > 0) { // Avoid "Select Semester" item
                     selectedSemester = Integer.parseInt(parent.getItemAtPosition(position).toString());
-                    promoteStudentViewModel.loadStudentsForSemester(selectedSemester);
+                    promoteStudentViewModel.loadSections(selectedSemester);
+                    promoteStudentViewModel.loadStudentsForSemester(selectedSemester, null);
                 } else {
                     selectedSemester = -1; // No semester selected
-                    adapter.setStudents(new ArrayList<>()); // Clear student list
+                    showSections(new ArrayList<>());
+                    adapter.submitList(new ArrayList<>()); // Clear student list
+                    promoteStudentViewModel.getSelection().clear(); // Nothing hidden can be promoted
                 }
             }
 
@@ -104,6 +135,35 @@ public class PromoteStudentActivity extends AppCompatActivity {
             }
         });
 
+        sectionSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                String section = position > 0 ? parent.getItemAtPosition(position).toString() : null;
+                if (!Objects.equals(section, selectedSection)) { // Also fires when the semester's sections are shown
+                    selectedSection = section;
+                    if (selectedSemester != -1) {
+                        // Students of other sections drop out of the selection with the list
+                        promoteStudentViewModel.loadStudentsForSemester(selectedSemester, selectedSection);
+                    }
+                }
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+                // Do nothing
+            }
+        });
+
+        // Select every student of the semester, not only the rows loaded so far
+        selectAllButton.setOnClickListener(v -> {
+            if (selectedSemester == -1) {
+                Toast.makeText(this, "Please select a semester first.", Toast.LENGTH_SHORT).show();
+                return;
+            }
+            promoteStudentViewModel.selectAllInSemester(selectedSemester, selectedSection);
+        });
+        clearSelectionButton.setOnClickListener(v -> selection.clear());
+
         // Promote Selected Button Listener
         promoteSelectedButton.setOnClickListener(v -> handlePromoteStudents());
 
@@ -111,24 +171,47 @@ public class PromoteStudentActivity extends AppCompatActivity {
         promoteStudentViewModel.loadAllSemesters();
     }
 
+    private void showSections(List<String> sections) {
+        List<String> spinnerItems = new ArrayList<>();
+        spinnerItems.add("All Sections");
+        if (sections != null) {
+            spinnerItems.addAll(sections);
+        }
+        ArrayAdapter<String> sectionAdapter = new ArrayAdapter<>(this,
+                android.R.layout.simple_spinner_item, spinnerItems);
+        sectionAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        sectionSpinner.setAdapter(sectionAdapter);
+    }
+
     /**
      * Handles the promotion of selected students to the next semester.
      */
     private void handlePromoteStudents() {
-        List<Student> studentsToPromote = adapter.getSelectedStudents();
+        long[] studentsToPromote = promoteStudentViewModel.getSelection().toArray();
 
-        if (studentsToPromote.isEmpty()) {
+        if (studentsToPromote.length == 0) {
             Toast.makeText(this, "Please select students to promote.", Toast.LENGTH_SHORT).show();
             return;
         }
 
         new AlertDialog.Builder(this)
                 .setTitle("Confirm Student Promotion")
-                .setMessage("Are you sure you want to promote " + studentsToPromote.size() + " selected student(s) to the next semester?")
+                .setMessage("Are you sure you want to promote " + studentsToPromote.length + " selected student(s) to the next semester?")
                 .setPositiveButton("Yes, Promote", (dialog, which) -> {
                     promoteStudentViewModel.promoteStudents(studentsToPromote);
                 })
                 .setNegativeButton("Cancel", (dialog, which) -> dialog.dismiss())
                 .show();
     }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        promoteStudentViewModel.getSelection().removeListener(countListener); // The selection outlives the Activity
+    }
+
+    private void updateSelectedCount(int count) {
+        selectedCountTextView.setText(count + " selected");
+        promoteSelectedButton.setEnabled(count > 0);
+    }
 }
@@ -1,15 +1,19 @@
 package com.aquaa.markly.ui.promotestudent;
 
 import android.app.Application;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 
-import com.aquaa.markly.data.database.Notification; // Import Notification
 import com.aquaa.markly.data.database.Student;
 import com.aquaa.markly.data.repository.StudentRepository;
+import com.aquaa.markly.utils.IdSelectionModel;
+import com.aquaa.markly.utils.MarklyLog;
+import com.aquaa.markly.utils.NotificationBus;
 import com.aquaa.markly.utils.NotificationHelper; // Import NotificationHelper
 
 import java.util.ArrayList;
@@ -27,8 +31,11 @@ public class PromoteStudentViewModel extends AndroidViewModel {
 
     private StudentRepository studentRepository;
     private MutableLiveData<List<Integer>> allSemesters = new MutableLiveData<>();
+    private MutableLiveData<List<String>> sections = new MutableLiveData<>(); // Of the semester passed to loadSections()
     private MutableLiveData<List<Student>> studentsToPromote = new MutableLiveData<>();
     private MutableLiveData<String> promotionResult = new MutableLiveData<>(); // Still used for immediate Toast/Snackbar feedback
+    private final IdSelectionModel selection = new IdSelectionModel();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
 
     // Executor for background database operations
     private final ExecutorService dbExecutor = Executors.newSingleThreadExecutor();
@@ -47,6 +54,10 @@ public class PromoteStudentViewModel extends AndroidViewModel {
         return allSemesters;
     }
 
+    public LiveData<List<String>> getSections() {
+        return sections;
+    }
+
     /**
      * LiveData to observe the list of students to be displayed for promotion.
      * @return LiveData list of Student objects.
@@ -91,22 +102,37 @@ public class PromoteStudentViewModel extends AndroidViewModel {
         });
     }
 
+    /**
+     * Loads the sections of a semester for the section filter.
+     */
+    public void loadSections(int semester) {
+        dbExecutor.execute(() -> {
+            try {
+                sections.postValue(studentRepository.getSectionsBySemesterSync(semester));
+            } catch (Exception e) {
+                sections.postValue(new ArrayList<>());
+                MarklyLog.e(TAG, "Error loading sections of semester " + semester + ": " + e.getMessage(), e);
+            }
+        });
+    }
+
     /**
      * Loads students for a given semester from the database.
      * Posts the result to `studentsToPromote` LiveData.
      * DOES NOT create a persistent notification.
      * @param semester The semester number to load students for.
+     * @param section The section to load, or null for the whole semester.
      */
-    public void loadStudentsForSemester(int semester) {
+    public void loadStudentsForSemester(int semester, String section) {
         dbExecutor.execute(() -> {
             try {
-                List<Student> students = studentRepository.getStudentsBySemesterSync(semester);
+                List<Student> students = studentRepository.getStudentsBySemesterSync(semester, section);
                 if (students != null && !students.isEmpty()) {
                     studentsToPromote.postValue(students);
-                    Log.d(TAG, "Students for semester " + semester + " loaded.");
+                    MarklyLog.d(TAG, "Students for semester {}, section {} loaded.", semester, section);
                 } else {
                     studentsToPromote.postValue(new ArrayList<>()); // Post empty list if no students
-                    String msg = "No students found for semester " + semester + ".";
+                    String msg = "No students found for semester " + semester + (section != null ? ", section " + section : "") + ".";
                     promotionResult.postValue(msg); // For immediate UI feedback
                     Log.w(TAG, msg);
                 }
@@ -120,18 +146,41 @@ public class PromoteStudentViewModel extends AndroidViewModel {
     }
 
     /**
-     * Promotes a list of selected students to the next semester.
-     * Updates their `currentSemester` in the database.
+     * @return The ids of the students ticked on this screen. Main thread only.
+     */
+    public IdSelectionModel getSelection() {
+        return selection;
+    }
+
+    /**
+     * Selects every student of the semester, or of one of its sections, including any not bound to a row yet,
+     * by loading only their ids.
+     */
+    public void selectAllInSemester(int semester, String section) {
+        dbExecutor.execute(() -> {
+            try {
+                long[] ids = studentRepository.getStudentIdsBySemesterSync(semester, section);
+                mainHandler.post(() -> selection.selectAll(ids));
+            } catch (Exception e) {
+                String msg = "Error selecting students of semester " + semester + ": " + e.getMessage();
+                promotionResult.postValue(msg);
+                Log.e(TAG, msg, e);
+            }
+        });
+    }
+
+    /**
+     * Promotes the selected students to the next semester with one UPDATE per chunk of ids, all in one transaction.
      * This operation WILL generate a persistent in-app notification and a system notification.
-     * @param students The list of Student objects to promote.
+     * @param studentIds The ids of the students to promote.
      */
-    public void promoteStudents(List<Student> students) {
+    public void promoteStudents(long[] studentIds) {
         dbExecutor.execute(() -> {
             String notificationTitle = "Student Promotion Report"; // Changed title for clarity
             String notificationType = "SUCCESS"; // Default type
             String msg; // Message for both promotionResult and Notification
 
-            if (students == null || students.isEmpty()) {
+            if (studentIds == null || studentIds.length == 0) {
                 msg = "No students selected for promotion.";
                 promotionResult.postValue(msg);
                 Log.w(TAG, msg);
@@ -139,55 +188,28 @@ public class PromoteStudentViewModel extends AndroidViewModel {
             }
 
             try {
-                int promotedCount = 0;
-                List<String> failedPromotions = new ArrayList<>();
-                for (Student student : students) {
-                    if (student == null) {
-                        Log.w(TAG, "Attempted to promote a null student object.");
-                        continue;
-                    }
-                    try {
-                        // Increment the semester
-                        student.setCurrentSemester(student.getCurrentSemester() + 1);
-                        studentRepository.updateStudent(student); // Update student in DB
-                        promotedCount++;
-                    } catch (Exception e) {
-                        failedPromotions.add(student.getName() + " (ID: " + student.getStudentId() + "): " + e.getMessage());
-                        Log.e(TAG, "Failed to promote student " + student.getName() + " (ID: " + student.getStudentId() + ")", e);
-                    }
-                }
-
-                if (promotedCount > 0) { // Only create a notification if at least one student was successfully promoted
-                    if (failedPromotions.isEmpty()) {
+                int promotedCount = studentRepository.promoteStudentsSync(studentIds);
+                int missing = studentIds.length - promotedCount; // Deleted since they were selected
+                if (promotedCount > 0) {
+                    if (missing == 0) {
                         msg = "Successfully promoted " + promotedCount + " student(s) to the next semester!";
                     } else {
-                        msg = "Promoted " + promotedCount + " student(s). Failed to promote " + failedPromotions.size() + " student(s): " + String.join(", ", failedPromotions);
+                        msg = "Promoted " + promotedCount + " student(s). " + missing + " selected student(s) no longer exist.";
                         notificationType = "WARNING"; // If some failed, it's a warning
                     }
                     promotionResult.postValue(msg); // For immediate UI feedback
-                    studentRepository.insertNotification(new Notification(notificationTitle, msg, System.currentTimeMillis(), false, notificationType)); // In-app notification
-                    NotificationHelper.sendPromoteReportNotification(getApplication(), msg, notificationType); // System notification
+                    NotificationBus.getInstance(getApplication()).post(NotificationHelper.CATEGORY_PROMOTE_REPORT, notificationTitle, msg, notificationType); // In-app and system notification
                     Log.i(TAG, "Promotion operation completed. Notifications generated.");
                 } else {
-                    // If no students were promoted at all (e.g., all failed or list was empty initially)
-                    if (failedPromotions.isEmpty()) {
-                        msg = "No students were promoted.";
-                    } else {
-                        msg = "Failed to promote all " + students.size() + " selected student(s). Details: " + String.join(", ", failedPromotions);
-                        notificationType = "ERROR";
-                        studentRepository.insertNotification(new Notification(notificationTitle, msg, System.currentTimeMillis(), false, notificationType)); // In-app notification
-                        NotificationHelper.sendPromoteReportNotification(getApplication(), msg, notificationType); // System notification
-                    }
+                    msg = "No students were promoted.";
                     promotionResult.postValue(msg); // For immediate UI feedback
                     Log.w(TAG, msg);
                 }
-
             } catch (Exception e) {
-                // Catch-all for unexpected errors during the promotion batch process itself
+                // The transaction was rolled back, nobody was promoted
                 msg = "An unexpected error occurred during student promotion: " + e.getMessage();
                 promotionResult.postValue(msg); // For immediate UI feedback
-                studentRepository.insertNotification(new Notification(notificationTitle, msg, System.currentTimeMillis(), false, "ERROR")); // In-app notification
-                NotificationHelper.sendPromoteReportNotification(getApplication(), msg, "ERROR"); // System notification
+                NotificationBus.getInstance(getApplication()).post(NotificationHelper.CATEGORY_PROMOTE_REPORT, notificationTitle, msg, "ERROR"); // In-app and system notification
                 Log.e(TAG, msg, e);
             }
         });
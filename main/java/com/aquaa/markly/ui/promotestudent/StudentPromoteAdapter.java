@@ -7,44 +7,60 @@ import android.widget.CheckBox;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.aquaa.markly.R;
 import com.aquaa.markly.data.database.Student;
+import com.aquaa.markly.utils.DiffPayloads;
+import com.aquaa.markly.utils.IdSelectionModel;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * RecyclerView Adapter for displaying a list of students for promotion.
  * Manages the selected state of each student.
  */
-public class StudentPromoteAdapter extends RecyclerView.Adapter<StudentPromoteAdapter.StudentViewHolder> {
+public class StudentPromoteAdapter extends ListAdapter<Student, StudentPromoteAdapter.StudentViewHolder> {
 
-    private List<Student> students = new ArrayList<>();
-    // Using a List as a Set (with contains/add/remove) can be inefficient for large lists.
-    // For smaller lists, it's generally fine. If performance becomes an issue,
-    // consider using a HashSet<Student> for selectedStudents, but remember
-    // HashSet also relies on correct equals() and hashCode().
-    private List<Student> selectedStudents = new ArrayList<>(); // To keep track of selected students
+    // Change payloads, see DiffPayloads
+    private static final int FIELD_NAME = 1;
+    private static final int FIELD_SEMESTER = 1 << 1;
+    private static final int FIELD_SELECTED = 1 << 2;
 
-    /**
-     * Updates the list of students displayed in the RecyclerView.
-     * Clears previous selections when a new list is set.
-     * @param newStudents The new list of students.
-     */
-    public void setStudents(List<Student> newStudents) {
-        this.students = newStudents;
-        this.selectedStudents.clear(); // Clear selection when list updates
-        notifyDataSetChanged();
+    private final IdSelectionModel selection; // Selected student ids, owned by the ViewModel
+
+    public StudentPromoteAdapter(IdSelectionModel selection) {
+        super(DIFF_CALLBACK); // The list is diffed on a background thread
+        this.selection = selection;
+        setHasStableIds(true);
     }
 
-    /**
-     * Gets the list of currently selected students.
-     * @return A list of Student objects that are currently selected.
-     */
-    public List<Student> getSelectedStudents() {
-        return selectedStudents;
+    // Select all / clear change many rows at once, so refresh their checkboxes; a row's own checkbox is already up to date
+    private boolean updatingFromRow;
+    private final IdSelectionModel.Listener selectionListener = changed -> {
+        if (!updatingFromRow) {
+            notifyItemRangeChanged(0, getItemCount(), FIELD_SELECTED);
+        }
+    };
+
+    @Override
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onAttachedToRecyclerView(recyclerView);
+        selection.addListener(selectionListener);
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onDetachedFromRecyclerView(recyclerView);
+        selection.removeListener(selectionListener); // The selection outlives the Activity
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return getItem(position).getStudentId();
     }
 
     @NonNull
@@ -52,45 +68,77 @@ public class StudentPromoteAdapter extends RecyclerView.Adapter<StudentPromoteAd
     public StudentViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         View itemView = LayoutInflater.from(parent.getContext())
                 .inflate(R.layout.item_student_promote, parent, false);
-        return new StudentViewHolder(itemView);
+        StudentViewHolder holder = new StudentViewHolder(itemView);
+        // Optionally, make the whole item clickable to toggle the checkbox
+        // This provides a larger touch target for users
+        itemView.setOnClickListener(v -> holder.selectCheckBox.setChecked(!holder.selectCheckBox.isChecked()));
+        return holder;
     }
 
     @Override
     public void onBindViewHolder(@NonNull StudentViewHolder holder, int position) {
-        Student currentStudent = students.get(position);
-        holder.studentNameTextView.setText(currentStudent.getName());
-        holder.currentSemesterTextView.setText("Current Semester: " + currentStudent.getCurrentSemester());
+        bind(holder, getItem(position), DiffPayloads.ALL);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull StudentViewHolder holder, int position, @NonNull List<Object> payloads) {
+        bind(holder, getItem(position), DiffPayloads.merge(payloads)); // Only the fields that changed
+    }
+
+    private void bind(StudentViewHolder holder, Student currentStudent, int changes) {
+        if (DiffPayloads.has(changes, FIELD_NAME)) {
+            holder.studentNameTextView.setText(currentStudent.getName());
+        }
+        if (DiffPayloads.has(changes, FIELD_SEMESTER)) {
+            holder.currentSemesterTextView.setText("Current Semester: " + currentStudent.getCurrentSemester());
+        }
 
         // Important: Remove previous listener to prevent issues with recycled views
         holder.selectCheckBox.setOnCheckedChangeListener(null);
 
-        // Set checkbox state based on whether the student is in the selectedStudents list
-        // This will now work correctly due to implemented equals() and hashCode() in Student class
-        holder.selectCheckBox.setChecked(selectedStudents.contains(currentStudent));
+        // Set checkbox state from the selected ids, an O(1) lookup
+        holder.selectCheckBox.setChecked(selection.isSelected(currentStudent.getStudentId()));
 
         // Set new listener for checkbox changes
+        long studentId = currentStudent.getStudentId();
         holder.selectCheckBox.setOnCheckedChangeListener((buttonView, isChecked) -> {
-            if (isChecked) {
-                // Only add if not already present (though .contains() now works correctly)
-                if (!selectedStudents.contains(currentStudent)) {
-                    selectedStudents.add(currentStudent);
-                }
-            } else {
-                selectedStudents.remove(currentStudent);
-            }
-        });
-
-        // Optionally, make the whole item clickable to toggle the checkbox
-        // This provides a larger touch target for users
-        holder.itemView.setOnClickListener(v -> {
-            holder.selectCheckBox.setChecked(!holder.selectCheckBox.isChecked());
+            updatingFromRow = true;
+            selection.setSelected(studentId, isChecked);
+            updatingFromRow = false;
         });
     }
 
-    @Override
-    public int getItemCount() {
-        return students.size();
-    }
+    /**
+     * Student.equals() only compares ids, so the displayed fields are compared here.
+     * The selection is not part of the list, it is refreshed through FIELD_SELECTED.
+     */
+    private static final DiffUtil.ItemCallback<Student> DIFF_CALLBACK = new DiffUtil.ItemCallback<Student>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Student oldItem, @NonNull Student newItem) {
+            return oldItem.getStudentId() == newItem.getStudentId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Student oldItem, @NonNull Student newItem) {
+            return changes(oldItem, newItem) == 0;
+        }
+
+        @Override
+        public Object getChangePayload(@NonNull Student oldItem, @NonNull Student newItem) {
+            return changes(oldItem, newItem);
+        }
+
+        private int changes(Student oldItem, Student newItem) {
+            int changes = 0;
+            if (!Objects.equals(oldItem.getName(), newItem.getName())) {
+                changes |= FIELD_NAME;
+            }
+            if (oldItem.getCurrentSemester() != newItem.getCurrentSemester()) {
+                changes |= FIELD_SEMESTER;
+            }
+            return changes;
+        }
+    };
 
     /**
      * ViewHolder class to hold references to the UI elements of each student item.
@@ -5,13 +5,18 @@ import android.app.DatePickerDialog;
 import android.content.pm.PackageManager;
 import android.os.Build; // Import Build for version checks
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
 import android.text.InputType; // Import for EditText in custom message dialog
+import android.text.TextWatcher;
 import android.util.Log;
 import android.view.View;
 import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
 import android.widget.Button;
 import android.widget.EditText; // Import for EditText in custom message dialog
+import android.widget.LinearLayout;
 import android.widget.Spinner;
 import android.widget.TextView;
 import android.widget.Toast;
@@ -25,7 +30,7 @@ import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.aquaa.markly.R;
-import com.aquaa.markly.data.database.Student;
+import com.aquaa.markly.utils.IdSelectionModel;
 
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -33,6 +38,7 @@ import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.Objects;
 
 public class SendMessageActivity extends AppCompatActivity {
 
@@ -42,13 +48,21 @@ public class SendMessageActivity extends AppCompatActivity {
 
     private SendMessageViewModel sendMessageViewModel;
     private Spinner semesterSpinner;
+    private Spinner sectionSpinner;
     private RecyclerView absentStudentsRecyclerView;
     private Button sendMessagesButton;
     private Button chooseDateButton;
     private TextView selectedDateTextView;
+    private TextView outboxStatusTextView;
+    private TextView selectedCountTextView;
+    private final IdSelectionModel.Listener countListener = changed -> updateSelectedCount(changed.size());
     private StudentMessageAdapter adapter;
+    private TextView previewTextView; // In the custom message dialog while it is shown
+    private final Handler previewHandler = new Handler(Looper.getMainLooper());
+    private static final long PREVIEW_DELAY_MS = 300;
 
     private int selectedSemester = -1;
+    private String selectedSection = null; // null for all sections of the semester
     private Long selectedDateMillis = null;
 
     private SimpleDateFormat dateFormatter = new SimpleDateFormat("dd MMMM 'Markle'", Locale.getDefault()); // Corrected format string
@@ -61,13 +75,21 @@ public class SendMessageActivity extends AppCompatActivity {
         sendMessageViewModel = new ViewModelProvider(this).get(SendMessageViewModel.class);
 
         semesterSpinner = findViewById(R.id.spinner_semester_send_message);
+        sectionSpinner = findViewById(R.id.spinner_section_send_message);
         absentStudentsRecyclerView = findViewById(R.id.recycler_view_absent_students);
         sendMessagesButton = findViewById(R.id.button_send_messages);
         chooseDateButton = findViewById(R.id.button_choose_date);
         selectedDateTextView = findViewById(R.id.text_view_selected_date);
+        outboxStatusTextView = findViewById(R.id.text_view_outbox_status);
+        selectedCountTextView = findViewById(R.id.text_view_selected_count_message);
 
-        adapter = new StudentMessageAdapter(this);
+        IdSelectionModel selection = sendMessageViewModel.getSelection();
+        adapter = new StudentMessageAdapter(this, selection);
         absentStudentsRecyclerView.setAdapter(adapter);
+        selection.addListener(countListener);
+        updateSelectedCount(selection.size());
+        findViewById(R.id.button_select_all_students_message).setOnClickListener(v -> selection.selectAll(adapter.getStudentIds()));
+        findViewById(R.id.button_clear_selection_message).setOnClickListener(v -> selection.clear());
 
         setDefaultDateToToday();
 
@@ -92,8 +114,17 @@ public class SendMessageActivity extends AppCompatActivity {
             semesterSpinner.setAdapter(semesterAdapter);
         });
 
+        showSections(new ArrayList<>());
+        sendMessageViewModel.getSections().observe(this, this::showSections);
+
         sendMessageViewModel.getStudentsToDisplay().observe(this, students -> {
             adapter.submitList(students);
+            // Students that were messaged or fell out of the selection are no longer selected
+            long[] ids = new long[students == null ? 0 : students.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = students.get(i).getStudentId();
+            }
+            sendMessageViewModel.getSelection().retainOnly(ids);
             if (students == null || students.isEmpty()) {
                 if (selectedSemester != -1 && selectedDateMillis != null) {
                     Toast.makeText(this, "No pending absent students found for this selection.", Toast.LENGTH_SHORT).show();
@@ -105,6 +136,21 @@ public class SendMessageActivity extends AppCompatActivity {
             }
         });
 
+        sendMessageViewModel.getPendingSmsCount().observe(this, pending -> {
+            if (pending != null && pending > 0) {
+                outboxStatusTextView.setText(pending + " message(s) waiting to be sent in the background.");
+                outboxStatusTextView.setVisibility(View.VISIBLE);
+            } else {
+                outboxStatusTextView.setVisibility(View.GONE);
+            }
+        });
+
+        sendMessageViewModel.getMessagePreview().observe(this, preview -> {
+            if (previewTextView != null && preview != null) {
+                previewTextView.setText(preview);
+            }
+        });
+
         sendMessageViewModel.getSmsResult().observe(this, message -> {
             if (message != null && !message.isEmpty()) {
                 Toast.makeText(SendMessageActivity.this, message, Toast.LENGTH_LONG).show();
@@ -119,6 +165,13 @@ public class SendMessageActivity extends AppCompatActivity {
                 } else {
                     selectedSemester = -1;
                 }
+                // A new semester starts with all its sections
+                selectedSection = null;
+                if (selectedSemester != -1) {
+                    sendMessageViewModel.loadSections(selectedSemester);
+                } else {
+                    showSections(new ArrayList<>());
+                }
                 loadStudentsForSelectedDateAndSemester();
             }
 
@@ -128,6 +181,22 @@ public class SendMessageActivity extends AppCompatActivity {
             }
         });
 
+        sectionSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                String section = position > 0 ? parent.getItemAtPosition(position).toString() : null;
+                if (!Objects.equals(section, selectedSection)) { // Also fires when the semester's sections are shown
+                    selectedSection = section;
+                    loadStudentsForSelectedDateAndSemester();
+                }
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+                // Do nothing
+            }
+        });
+
         chooseDateButton.setOnClickListener(v -> showDatePicker());
 
         sendMessagesButton.setOnClickListener(v -> showMessageOptionDialog());
@@ -177,14 +246,28 @@ public class SendMessageActivity extends AppCompatActivity {
         datePickerDialog.show();
     }
 
+    private void showSections(List<String> sections) {
+        List<String> spinnerItems = new ArrayList<>();
+        spinnerItems.add("All Sections");
+        if (sections != null) {
+            spinnerItems.addAll(sections);
+        }
+        ArrayAdapter<String> sectionAdapter = new ArrayAdapter<>(this,
+                android.R.layout.simple_spinner_item, spinnerItems);
+        sectionAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        sectionSpinner.setAdapter(sectionAdapter);
+    }
+
     private void loadStudentsForSelectedDateAndSemester() {
         if (selectedDateMillis != null && selectedSemester != -1) {
-            sendMessageViewModel.loadAbsentStudentsForSpecificDate(selectedDateMillis, selectedSemester);
+            sendMessageViewModel.loadAbsentStudentsForSpecificDate(selectedDateMillis, selectedSemester, selectedSection);
         } else if (selectedDateMillis == null) {
             adapter.submitList(new ArrayList<>());
+            sendMessageViewModel.getSelection().clear();
             Toast.makeText(this, "Please select a date.", Toast.LENGTH_SHORT).show();
         } else {
             adapter.submitList(new ArrayList<>());
+            sendMessageViewModel.getSelection().clear();
             Toast.makeText(this, "Please select a semester.", Toast.LENGTH_SHORT).show();
         }
     }
@@ -201,8 +284,7 @@ public class SendMessageActivity extends AppCompatActivity {
             return;
         }
 
-        List<Student> studentsToMessage = adapter.getSelectedStudents();
-        if (studentsToMessage.isEmpty()) {
+        if (sendMessageViewModel.getSelection().isEmpty()) {
             Toast.makeText(this, "Please select students to send messages to.", Toast.LENGTH_SHORT).show();
             return;
         }
@@ -236,8 +318,43 @@ public class SendMessageActivity extends AppCompatActivity {
         final EditText input = new EditText(this);
         input.setInputType(InputType.TYPE_CLASS_TEXT | InputType.TYPE_TEXT_FLAG_MULTI_LINE);
         input.setLines(3);
-        input.setHint("e.g., Your ward was absent. Please contact school.");
-        builder.setView(input);
+        input.setHint("e.g., {name} was absent on {dates}. Attendance so far: {attendance}.");
+
+        // Placeholders and a live length / SMS count preview for the selected students
+        TextView helpView = new TextView(this);
+        helpView.setText("Placeholders: {name} {date} {dates} {semester} {section} {attendance} {streak}");
+        previewTextView = new TextView(this);
+        LinearLayout layout = new LinearLayout(this);
+        layout.setOrientation(LinearLayout.VERTICAL);
+        int padding = (int) (16 * getResources().getDisplayMetrics().density);
+        layout.setPadding(padding, padding / 2, padding, 0);
+        layout.addView(input);
+        layout.addView(helpView);
+        layout.addView(previewTextView);
+        builder.setView(layout);
+
+        long[] selectedStudents = sendMessageViewModel.getSelection().toArray();
+        Runnable preview = () -> sendMessageViewModel.previewMessages(selectedStudents, selectedDateMillis, input.getText().toString().trim());
+        input.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                // Wait for a pause in typing before rendering all messages again
+                previewHandler.removeCallbacksAndMessages(null);
+                previewHandler.postDelayed(preview, PREVIEW_DELAY_MS);
+            }
+        });
+        builder.setOnDismissListener(dialog -> {
+            previewHandler.removeCallbacksAndMessages(null);
+            previewTextView = null;
+        });
 
         builder.setPositiveButton("Send Custom", (dialog, which) -> {
             String customMessage = input.getText().toString().trim();
@@ -261,13 +378,13 @@ public class SendMessageActivity extends AppCompatActivity {
         // This is done here to avoid the "Can request only one set of permissions" conflict
         requestNotificationPermission(); // Moved this call here
 
-        List<Student> studentsToMessage = adapter.getSelectedStudents();
+        long[] studentsToMessage = sendMessageViewModel.getSelection().toArray();
 
         if (ContextCompat.checkSelfPermission(this, Manifest.permission.SEND_SMS) != PackageManager.PERMISSION_GRANTED) {
             Toast.makeText(this, "SMS permission is required to send messages.", Toast.LENGTH_LONG).show();
             return;
         }
-        if (studentsToMessage.isEmpty()) {
+        if (studentsToMessage.length == 0) {
             Toast.makeText(this, "No students selected to send messages to.", Toast.LENGTH_SHORT).show();
             return;
         }
@@ -278,9 +395,9 @@ public class SendMessageActivity extends AppCompatActivity {
 
         String confirmationMessage;
         if (customMessage == null) {
-            confirmationMessage = "Are you sure you want to send " + studentsToMessage.size() + " default absence message(s) for " + dateFormatter.format(new Date(selectedDateMillis)) + "?";
+            confirmationMessage = "Are you sure you want to send " + studentsToMessage.length + " default absence message(s) for " + dateFormatter.format(new Date(selectedDateMillis)) + "?";
         } else {
-            confirmationMessage = "Are you sure you want to send " + studentsToMessage.size() + " custom absence message(s) for " + dateFormatter.format(new Date(selectedDateMillis)) + "?\n\nMessage: \"" + customMessage + "\"";
+            confirmationMessage = "Are you sure you want to send " + studentsToMessage.length + " custom absence message(s) for " + dateFormatter.format(new Date(selectedDateMillis)) + "?\n\nMessage: \"" + customMessage + "\"";
         }
 
 
@@ -295,6 +412,17 @@ public class SendMessageActivity extends AppCompatActivity {
     }
 
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        sendMessageViewModel.getSelection().removeListener(countListener); // The selection outlives the Activity
+    }
+
+    private void updateSelectedCount(int count) {
+        selectedCountTextView.setText(count + " selected");
+        sendMessagesButton.setEnabled(count > 0);
+    }
+
     private void requestSmsPermission() {
         if (ContextCompat.checkSelfPermission(this, Manifest.permission.SEND_SMS) != PackageManager.PERMISSION_GRANTED) {
             ActivityCompat.requestPermissions(this,
@@ -1,24 +1,31 @@
 package com.aquaa.markly.ui.sendmessage;
 
 import android.app.Application;
-import android.telephony.SmsManager;
-import android.util.Log;
 
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 
-import com.aquaa.markly.data.database.Notification;
 import com.aquaa.markly.data.database.Student;
 import com.aquaa.markly.data.database.Attendance;
+import com.aquaa.markly.data.database.AttendanceDao;
 import com.aquaa.markly.data.repository.StudentRepository;
-import com.aquaa.markly.utils.NotificationHelper;
+import com.aquaa.markly.utils.IdSelectionModel;
+import com.aquaa.markly.utils.LongHashSet;
+import com.aquaa.markly.utils.MarklyLog;
+import com.aquaa.markly.utils.Metrics;
+import com.aquaa.markly.utils.SmsConsolidator;
+import com.aquaa.markly.utils.SmsDispatcher;
+import com.aquaa.markly.utils.SmsTemplate;
 
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -29,12 +36,23 @@ import java.util.concurrent.Executors;
 public class SendMessageViewModel extends AndroidViewModel {
 
     private static final String TAG = "SendMessageViewModel";
+    // Unnotified absences this many days back, up to the selected date, are folded into the same message
+    private static final int CONSOLIDATION_DAYS = 7;
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
     private SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
 
     private StudentRepository studentRepository;
     private MutableLiveData<List<Integer>> allSemesters = new MutableLiveData<>();
+    private MutableLiveData<List<String>> sections = new MutableLiveData<>(); // Of the semester passed to loadSections()
     private MutableLiveData<List<Student>> studentsToDisplay = new MutableLiveData<>();
     private MutableLiveData<String> smsResult = new MutableLiveData<>();
+    private MutableLiveData<String> messagePreview = new MutableLiveData<>();
+    private final IdSelectionModel selection = new IdSelectionModel();
+
+    // Only used on dbExecutor. The renderer keeps its own copy of the date format and reuses its buffer across recipients.
+    private final SmsTemplate.Renderer templateRenderer =
+            new SmsTemplate.Renderer(new SimpleDateFormat("dd MMM yyyy", Locale.getDefault()));
+    private SmsTemplate lastTemplate;
 
     private final ExecutorService dbExecutor = Executors.newSingleThreadExecutor();
 
@@ -47,6 +65,10 @@ public class SendMessageViewModel extends AndroidViewModel {
         return allSemesters;
     }
 
+    public LiveData<List<String>> getSections() {
+        return sections;
+    }
+
     public LiveData<List<Student>> getStudentsToDisplay() {
         return studentsToDisplay;
     }
@@ -55,6 +77,13 @@ public class SendMessageViewModel extends AndroidViewModel {
         return smsResult;
     }
 
+    /**
+     * @return The ids of the students ticked on this screen. Main thread only.
+     */
+    public IdSelectionModel getSelection() {
+        return selection;
+    }
+
     public void loadAllSemesters() {
         dbExecutor.execute(() -> {
             try {
@@ -64,13 +93,27 @@ public class SendMessageViewModel extends AndroidViewModel {
                 } else {
                     allSemesters.postValue(new ArrayList<>());
                     smsResult.postValue("No semesters found.");
-                    Log.w(TAG, "getAllSemestersSync returned null.");
+                    MarklyLog.w(TAG, "getAllSemestersSync returned null.");
                 }
             } catch (Exception e) {
                 allSemesters.postValue(new ArrayList<>());
                 String errorMessage = "Error loading semesters: " + e.getMessage();
                 smsResult.postValue(errorMessage);
-                Log.e(TAG, errorMessage, e);
+                MarklyLog.e(TAG, errorMessage, e);
+            }
+        });
+    }
+
+    /**
+     * Loads the sections of a semester for the section filter.
+     */
+    public void loadSections(int semester) {
+        dbExecutor.execute(() -> {
+            try {
+                sections.postValue(studentRepository.getSectionsBySemesterSync(semester));
+            } catch (Exception e) {
+                sections.postValue(new ArrayList<>());
+                MarklyLog.e(TAG, "Error loading sections of semester " + semester + ": " + e.getMessage(), e);
             }
         });
     }
@@ -84,42 +127,39 @@ public class SendMessageViewModel extends AndroidViewModel {
                 } else {
                     studentsToDisplay.postValue(new ArrayList<>());
                     smsResult.postValue("No students found for semester " + semester + ".");
-                    Log.w(TAG, "getStudentsBySemesterSync returned null for semester: " + semester);
+                    MarklyLog.w(TAG, "getStudentsBySemesterSync returned null for semester: " + semester);
                 }
             } catch (Exception e) {
                 studentsToDisplay.postValue(new ArrayList<>());
                 String errorMessage = "Error loading all students for semester: " + semester + ": " + e.getMessage();
                 smsResult.postValue(errorMessage);
-                Log.e(TAG, errorMessage, e);
+                MarklyLog.e(TAG, errorMessage, e);
             }
         });
     }
 
-    public void loadAbsentStudentsForSpecificDate(long dateMillis, int semester) {
+    /**
+     * Loads the students of a semester, or one of its sections, absent on a date and not yet notified by SMS.
+     * @param section The section to load, or null for the whole semester.
+     */
+    public void loadAbsentStudentsForSpecificDate(long dateMillis, int semester, String section) {
         dbExecutor.execute(() -> {
             try {
-                Log.d(TAG, "loadAbsentStudentsForSpecificDate (INIT): Loading for date: " + sdf.format(new Date(dateMillis)) + " (" + dateMillis + ") and semester: " + semester);
-
-                List<Student> absentStudentsOnSelectedDate = studentRepository.getAbsentStudentsOnDate(dateMillis);
-                Log.d(TAG, "loadAbsentStudentsForSpecificDate (QUERY RESULT): Students (SMS pending) on selected date " + sdf.format(new Date(dateMillis)) + " (" + dateMillis + ") : " + (absentStudentsOnSelectedDate != null ? absentStudentsOnSelectedDate.size() : 0));
-
-
-                List<Student> absentStudentsInSemester = new ArrayList<>();
-                if (absentStudentsOnSelectedDate != null) {
-                    for (Student student : absentStudentsOnSelectedDate) {
-                        if (student != null && student.getCurrentSemester() == semester) {
-                            absentStudentsInSemester.add(student);
-                        }
-                    }
+                String group = section != null ? "semester " + semester + ", section " + section : "semester " + semester;
+                if (MarklyLog.isDebugEnabled()) {
+                    MarklyLog.d(TAG, "loadAbsentStudentsForSpecificDate (INIT): Loading for date: {} and {}", sdf.format(new Date(dateMillis)), group);
                 }
 
+                // Filtered by semester and section in SQL, only the rows shown here are read
+                List<Student> absentStudentsInSemester = studentRepository.getPendingSmsAbsenteesSync(semester, section, dateMillis);
+
                 studentsToDisplay.postValue(absentStudentsInSemester);
                 if (absentStudentsInSemester.isEmpty()) {
-                    smsResult.postValue("No absent students found for semester " + semester + " on " + sdf.format(new Date(dateMillis)) + " for whom SMS is pending.");
-                    Log.i(TAG, "No pending absent students found for semester " + semester + " on " + sdf.format(new Date(dateMillis)) + " (" + dateMillis + ")");
+                    smsResult.postValue("No absent students found for " + group + " on " + sdf.format(new Date(dateMillis)) + " for whom SMS is pending.");
+                    MarklyLog.i(TAG, "No pending absent students found for {} on {}", group, sdf.format(new Date(dateMillis)));
                 } else {
-                    smsResult.postValue("Loaded " + absentStudentsInSemester.size() + " absent students for semester " + semester + " on " + sdf.format(new Date(dateMillis)) + ".");
-                    Log.i(TAG, "Loaded " + absentStudentsInSemester.size() + " pending absent students for semester " + semester + " on " + sdf.format(new Date(dateMillis)) + " (" + dateMillis + ")");
+                    smsResult.postValue("Loaded " + absentStudentsInSemester.size() + " absent students for " + group + " on " + sdf.format(new Date(dateMillis)) + ".");
+                    MarklyLog.i(TAG, "Loaded {} pending absent students for {} on {}", absentStudentsInSemester.size(), group, sdf.format(new Date(dateMillis)));
                 }
 
 
@@ -127,29 +167,37 @@ public class SendMessageViewModel extends AndroidViewModel {
                 studentsToDisplay.postValue(new ArrayList<>());
                 String errorMessage = "Error loading absent students for specific date: " + e.getMessage();
                 smsResult.postValue(errorMessage);
-                Log.e(TAG, errorMessage, e);
+                MarklyLog.e(TAG, errorMessage, e);
             }
         });
     }
 
     /**
-     * Sends SMS messages to the selected list of students.
-     * Successfully messaged students are removed from the `studentsToDisplay` list
-     * and their corresponding attendance records are marked as `isSmsSent = true` in the database.
-     * Students for whom the message fails remain in the list.
-     * An in-app notification IS generated for this action.
-     * @param studentsToSendSms The list of Student objects to send SMS to.
+     * Queues SMS messages to the selected list of students in the outbox, from where SmsDispatcher sends them
+     * in the background at a safe rate, even after this screen is closed.
+     * Absences are consolidated per guardian mobile: siblings, and earlier days within CONSOLIDATION_DAYS that
+     * have not been notified yet, go out as one (possibly multipart) message per guardian.
+     * Queued students are removed from the `studentsToDisplay` list; the attendance records a message covers are
+     * marked as `isSmsSent = true` together once the radio confirms it. Students without a guardian mobile remain in the list.
+     * The SMS report notification is generated by the dispatcher when the whole batch is done.
+     * @param studentIds The ids of the students to send SMS to, loaded in one query here.
      * @param dateForSms The specific date (in milliseconds) for which SMS is being sent.
-     * @param customMessage The custom message to send, or null for default message.
+     * @param customMessage The custom message template to send, or null for default message. See SmsTemplate for the placeholders.
      */
-    public void sendSmsToStudents(List<Student> studentsToSendSms, long dateForSms, String customMessage) { // Added customMessage parameter
+    public void sendSmsToStudents(long[] studentIds, long dateForSms, String customMessage) { // Added customMessage parameter
         dbExecutor.execute(() -> {
-            String notificationTitle = "SMS Sending Report";
-            String notificationType = "SUCCESS";
-
-            if (studentsToSendSms == null || studentsToSendSms.isEmpty()) {
+            List<Student> studentsToSendSms;
+            try {
+                studentsToSendSms = studentIds == null ? new ArrayList<>() : studentRepository.getStudentsByIdsSync(studentIds);
+            } catch (Exception e) {
+                String errorMessage = "Error loading selected students: " + e.getMessage();
+                smsResult.postValue(errorMessage);
+                MarklyLog.e(TAG, errorMessage, e);
+                return;
+            }
+            if (studentsToSendSms.isEmpty()) {
                 smsResult.postValue("No students selected to send SMS.");
-                Log.w(TAG, "sendSmsToStudents: Attempted to send SMS to an empty or null list of students.");
+                MarklyLog.w(TAG, "sendSmsToStudents: Attempted to send SMS to an empty or null list of students.");
                 return;
             }
 
@@ -159,104 +207,182 @@ public class SendMessageViewModel extends AndroidViewModel {
             }
             List<Student> studentsRemainingAfterSend = new ArrayList<>(currentDisplayedStudents);
 
-            int sentCount = 0;
-            List<String> failedRecipients = new ArrayList<>();
-            SmsManager smsManager = SmsManager.getDefault();
-
-            Log.d(TAG, "sendSmsToStudents (INIT): SMS will be marked as sent for date: " + sdf.format(new Date(dateForSms)) + " (" + dateForSms + ")");
-
-
+            List<Student> recipients = new ArrayList<>();
+            List<String> skippedRecipients = new ArrayList<>();
             for (Student student : studentsToSendSms) {
                 if (student == null) {
-                    Log.w(TAG, "sendSmsToStudents: Attempted to send SMS to a null student object.");
+                    MarklyLog.w(TAG, "sendSmsToStudents: Attempted to send SMS to a null student object.");
                     continue;
                 }
                 String phoneNumber = student.getGuardianMobile();
-                // Determine message content: custom or default
-                String message;
-                if (customMessage != null && !customMessage.isEmpty()) {
-                    message = customMessage;
-                } else {
-                    message = "Dear guardian, your ward " + student.getName() + " was absent on " + sdf.format(new Date(dateForSms)) + "."; // Default message
-                }
-
-                boolean smsSentSuccessfully = false;
-
-                if (phoneNumber == null || phoneNumber.isEmpty()) {
-                    failedRecipients.add(student.getName() + " (No guardian mobile)");
-                    Log.w(TAG, "Skipping SMS for " + student.getName() + ": No guardian mobile number found.");
+                if (phoneNumber == null || phoneNumber.trim().isEmpty()) {
+                    skippedRecipients.add(student.getName() + " (No guardian mobile)");
+                    MarklyLog.w(TAG, "Skipping SMS for " + student.getName() + ": No guardian mobile number found.");
+                    Metrics.counter("sms.skipped").increment();
                     continue;
                 }
+                recipients.add(student);
+            }
 
+            int messageCount = 0;
+            int absenceCount = 0;
+            if (!recipients.isEmpty()) {
                 try {
-                    smsManager.sendTextMessage(phoneNumber, null, message, null, null);
-                    smsSentSuccessfully = true;
-                    Log.d(TAG, "Attempted to send SMS to " + phoneNumber + " for " + student.getName() + " with message: " + message);
-
+                    List<SmsConsolidator.Group> groups = prepareMessages(recipients, dateForSms, customMessage);
+                    long batchId = System.currentTimeMillis();
+                    SmsDispatcher.getInstance(getApplication()).enqueue(batchId, groups);
+                    messageCount = groups.size();
+                    for (SmsConsolidator.Group group : groups) {
+                        absenceCount += group.absences.size();
+                    }
+                    Metrics.counter("sms.consolidated").add(absenceCount - messageCount);
                 } catch (Exception e) {
-                    failedRecipients.add(student.getName() + " (" + e.getMessage() + ")");
-                    Log.e(TAG, "Failed to send SMS to " + student.getName() + " (" + phoneNumber + "): " + e.getMessage(), e);
+                    String errorMessage = "Error queuing SMS: " + e.getMessage();
+                    smsResult.postValue(errorMessage);
+                    MarklyLog.e(TAG, errorMessage, e);
+                    return;
                 }
+                LongHashSet queuedIds = new LongHashSet(recipients.size());
+                for (Student recipient : recipients) {
+                    queuedIds.add(recipient.getStudentId());
+                }
+                for (int i = studentsRemainingAfterSend.size() - 1; i >= 0; i--) {
+                    if (queuedIds.contains(studentsRemainingAfterSend.get(i).getStudentId())) {
+                        studentsRemainingAfterSend.remove(i);
+                    }
+                }
+                studentsToDisplay.postValue(studentsRemainingAfterSend);
+            }
 
-                if (smsSentSuccessfully) {
-                    sentCount++;
-                    studentsRemainingAfterSend.remove(student);
-
-                    Log.d(TAG, "sendSmsToStudents (ATTEMPT UPDATE): Student: " + student.getName() + " (ID: " + student.getStudentId() + "), Date: " + sdf.format(new Date(dateForSms)) + " (Value: " + dateForSms + "), Setting isSmsSent to TRUE.");
-                    studentRepository.updateAttendanceSmsSentStatus(student.getStudentId(), dateForSms, true);
+            String messageResult;
+            String queued = "Queued " + messageCount + " SMS covering " + absenceCount + " absence(s) of " + recipients.size()
+                    + " student(s) for " + sdf.format(new Date(dateForSms)) + ".";
+            if (messageCount > 0 && skippedRecipients.isEmpty()) {
+                messageResult = queued + " They are sent in the background.";
+            } else if (messageCount > 0) {
+                messageResult = queued + " Skipped: " + String.join(", ", skippedRecipients) + ".";
+            } else {
+                messageResult = "No SMS queued for " + sdf.format(new Date(dateForSms)) + ": " + String.join(", ", skippedRecipients) + ".";
+            }
+            smsResult.postValue(messageResult);
+            MarklyLog.i(TAG, "sendSmsToStudents: " + messageResult);
+        });
+    }
 
-                    Attendance updatedAttendance = studentRepository.getAttendanceByStudentAndDate(student.getStudentId(), dateForSms);
-                    if (updatedAttendance != null) {
-                        Log.d(TAG, "sendSmsToStudents (VERIFICATION): Student: " + student.getName() + ", Date: " + sdf.format(new Date(dateForSms)) + ". isSmsSent status AFTER update: " + updatedAttendance.isSmsSent());
-                    } else {
-                        Log.e(TAG, "sendSmsToStudents (VERIFICATION ERROR): Could not fetch attendance record for student " + student.getName() + " on date " + sdf.format(new Date(dateForSms)) + " immediately after update attempt.");
+    /**
+     * Renders the length and SMS count of the messages the given template would produce for the selected students,
+     * with the same consolidation as a real send, and posts a one-line summary to `messagePreview`.
+     * @param template The custom message template, or null for the default message.
+     */
+    public void previewMessages(long[] studentIds, long dateForSms, String template) {
+        dbExecutor.execute(() -> {
+            List<Student> recipients = new ArrayList<>();
+            for (Student student : studentRepository.getStudentsByIdsSync(studentIds)) {
+                if (student != null && student.getGuardianMobile() != null && !student.getGuardianMobile().trim().isEmpty()) {
+                    recipients.add(student);
+                }
+            }
+            if (recipients.isEmpty()) {
+                messagePreview.postValue("No recipient has a guardian mobile number.");
+                return;
+            }
+            try {
+                List<SmsConsolidator.Group> groups = prepareMessages(recipients, dateForSms, template);
+                SmsTemplate.Segments longest = null;
+                int totalSegments = 0;
+                boolean unicode = false;
+                for (SmsConsolidator.Group group : groups) {
+                    SmsTemplate.Segments segments = SmsTemplate.Segments.of(group.message);
+                    totalSegments += segments.count;
+                    unicode |= segments.unicode;
+                    if (longest == null || segments.length > longest.length) {
+                        longest = segments;
                     }
-
-                    Log.d(TAG, "SMS sent successfully to: " + student.getName() + " (ID: " + student.getStudentId() + "). Marked attendance as SMS sent for date: " + sdf.format(new Date(dateForSms)));
-                } else {
-                    Log.w(TAG, "sendSmsToStudents: SMS not sent successfully to: " + student.getName() + " (ID: " + student.getStudentId() + ").");
                 }
+                messagePreview.postValue(groups.size() + " message(s), " + totalSegments + " SMS in total"
+                        + (unicode ? ", Unicode" : "") + ". Longest: " + longest.describe() + ".");
+            } catch (Exception e) {
+                messagePreview.postValue("Preview failed: " + e.getMessage());
+                MarklyLog.e(TAG, "previewMessages failed", e);
+            }
+        });
+    }
 
-                try {
-                    Thread.sleep(200);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    Log.e(TAG, "SMS sending delay interrupted.", e);
-                }
+    public LiveData<String> getMessagePreview() {
+        return messagePreview;
+    }
+
+    /**
+     * Groups the pending absences of the recipients per guardian and renders each group's message.
+     * Attendance figures are only queried when the template asks for them.
+     */
+    private List<SmsConsolidator.Group> prepareMessages(List<Student> recipients, long dateForSms, String customMessage) {
+        SmsTemplate template = compileTemplate(customMessage != null && !customMessage.isEmpty() ? customMessage : SmsTemplate.DEFAULT_TEXT);
+        List<SmsConsolidator.Group> groups = SmsConsolidator.group(collectPendingAbsences(recipients, dateForSms));
+        Map<Long, AttendanceDao.StudentAttendanceStats> stats = Collections.emptyMap();
+        if (template.uses(SmsTemplate.FIELD_ATTENDANCE) || template.uses(SmsTemplate.FIELD_STREAK)) {
+            List<Long> studentIds = new ArrayList<>(recipients.size());
+            for (Student student : recipients) {
+                studentIds.add(student.getStudentId());
             }
+            stats = studentRepository.getAttendanceStatsForStudents(studentIds, dateForSms);
+        }
+        long start = Metrics.timer("sms.template.render").start();
+        for (SmsConsolidator.Group group : groups) {
+            SmsConsolidator.render(group, template, templateRenderer, stats);
+        }
+        Metrics.timer("sms.template.render").stop(start);
+        return groups;
+    }
 
-            studentsToDisplay.postValue(studentsRemainingAfterSend);
+    // Typing in the custom message dialog previews the same text repeatedly, so the last compiled template is kept
+    private SmsTemplate compileTemplate(String text) {
+        if (lastTemplate == null || !lastTemplate.getSource().equals(text)) {
+            lastTemplate = SmsTemplate.compile(text);
+        }
+        return lastTemplate;
+    }
 
-            String messageResult;
-            if (sentCount > 0 && failedRecipients.isEmpty()) {
-                messageResult = "Successfully sent SMS to " + sentCount + " student(s) for " + sdf.format(new Date(dateForSms)) + ".";
-                notificationType = "SUCCESS";
-            } else if (sentCount > 0 && !failedRecipients.isEmpty()) {
-                messageResult = "Sent SMS to " + sentCount + " student(s) for " + sdf.format(new Date(dateForSms)) + ". Failed for: " + String.join(", ", failedRecipients) + ".";
-                notificationType = "WARNING";
-            } else if (sentCount == 0 && !failedRecipients.isEmpty()) {
-                messageResult = "Failed to send SMS to all selected students for " + sdf.format(new Date(dateForSms)) + ": " + String.join(", ", failedRecipients) + ".";
-                notificationType = "ERROR";
-            } else {
-                messageResult = "No SMS sent to any selected students for " + sdf.format(new Date(dateForSms)) + ".";
-                notificationType = "INFO";
+    /**
+     * The absences to report for the selected students: every absence within the consolidation window that was
+     * neither notified nor queued yet, and always the selected date itself, in student order and then by date.
+     */
+    private List<SmsConsolidator.Absence> collectPendingAbsences(List<Student> recipients, long dateForSms) {
+        List<Long> studentIds = new ArrayList<>(recipients.size());
+        for (Student student : recipients) {
+            studentIds.add(student.getStudentId());
+        }
+        long windowStart = dateForSms - (CONSOLIDATION_DAYS - 1) * DAY_MILLIS;
+        Map<Long, List<Long>> datesByStudent = new HashMap<>();
+        for (Attendance attendance : studentRepository.getPendingAbsencesForStudents(studentIds, windowStart, dateForSms)) {
+            List<Long> dates = datesByStudent.get(attendance.getStudentId());
+            if (dates == null) {
+                dates = new ArrayList<>();
+                datesByStudent.put(attendance.getStudentId(), dates);
             }
+            dates.add(attendance.getDate());
+        }
 
-            smsResult.postValue(messageResult);
-            Log.i(TAG, "sendSmsToStudents: SMS sending operation complete: " + messageResult);
-
-            studentRepository.insertNotification(new Notification(
-                    notificationTitle,
-                    messageResult,
-                    System.currentTimeMillis(),
-                    false,
-                    notificationType
-            ));
-            Log.d(TAG, "sendSmsToStudents: In-app notification generated for SMS sending report.");
-
-            NotificationHelper.sendSmsReportNotification(getApplication(), messageResult, notificationType);
-            Log.d(TAG, "sendSmsToStudents: System notification triggered for SMS sending report.");
-        });
+        List<SmsConsolidator.Absence> absences = new ArrayList<>();
+        for (Student student : recipients) {
+            List<Long> dates = datesByStudent.get(student.getStudentId());
+            if (dates != null) {
+                for (long date : dates) {
+                    absences.add(new SmsConsolidator.Absence(student, date));
+                }
+            }
+            if (dates == null || !dates.contains(dateForSms)) {
+                absences.add(new SmsConsolidator.Absence(student, dateForSms)); // Sent for the selected date as before
+            }
+        }
+        return absences;
+    }
+
+    /**
+     * @return Number of messages still waiting in the outbox.
+     */
+    public LiveData<Integer> getPendingSmsCount() {
+        return studentRepository.getPendingSmsCount();
     }
 
     @Override
@@ -264,7 +390,7 @@ public class SendMessageViewModel extends AndroidViewModel {
         super.onCleared();
         if (!dbExecutor.isShutdown()) {
             dbExecutor.shutdown();
-            Log.d(TAG, "dbExecutor shutdown initiated in SendMessageViewModel.");
+            MarklyLog.d(TAG, "dbExecutor shutdown initiated in SendMessageViewModel.");
         }
     }
 }
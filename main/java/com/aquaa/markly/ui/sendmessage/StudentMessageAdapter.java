@@ -14,9 +14,11 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.aquaa.markly.R;
 import com.aquaa.markly.data.database.Student;
+import com.aquaa.markly.utils.DiffPayloads;
+import com.aquaa.markly.utils.IdSelectionModel;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * RecyclerView Adapter for displaying a list of students for sending messages.
@@ -24,13 +26,20 @@ import java.util.List;
  */
 public class StudentMessageAdapter extends ListAdapter<Student, StudentMessageAdapter.StudentViewHolder> { // Changed to ListAdapter
 
-    private List<Student> selectedStudents = new ArrayList<>(); // To keep track of selected students
+    // Change payloads, see DiffPayloads
+    private static final int FIELD_NAME = 1;
+    private static final int FIELD_GUARDIAN_MOBILE = 1 << 1;
+    private static final int FIELD_SELECTED = 1 << 2;
+
+    private final IdSelectionModel selection; // Selected student ids, owned by the ViewModel
     private OnStudentMessageListener listener; // Listener for checkbox events
 
-    // Constructor now accepts Context and the listener
-    public StudentMessageAdapter(Context context, OnStudentMessageListener listener) {
-        super(DIFF_CALLBACK);
+    // Constructor now accepts Context, the selection and the listener
+    public StudentMessageAdapter(Context context, IdSelectionModel selection, OnStudentMessageListener listener) {
+        super(DIFF_CALLBACK); // The list is diffed on a background thread
+        this.selection = selection;
         this.listener = listener;
+        setHasStableIds(true);
         // The context parameter is typically needed if the adapter needs to do things like
         // inflate layouts that depend on theme or resources, or interact with other services.
         // For this adapter, primarily the listener is the key addition.
@@ -40,17 +49,45 @@ public class StudentMessageAdapter extends ListAdapter<Student, StudentMessageAd
      * Constructor for use when no listener is explicitly provided (less common for this use case,
      * but could be useful for previews or simple displays without interaction).
      */
-    public StudentMessageAdapter(Context context) {
-        this(context, null); // Call the main constructor with a null listener
+    public StudentMessageAdapter(Context context, IdSelectionModel selection) {
+        this(context, selection, null); // Call the main constructor with a null listener
+    }
+
+    // Select all / clear change many rows at once, so refresh their checkboxes; a row's own checkbox is already up to date
+    private boolean updatingFromRow;
+    private final IdSelectionModel.Listener selectionListener = changed -> {
+        if (!updatingFromRow) {
+            notifyItemRangeChanged(0, getItemCount(), FIELD_SELECTED);
+        }
+    };
+
+    @Override
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onAttachedToRecyclerView(recyclerView);
+        selection.addListener(selectionListener);
     }
 
+    @Override
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onDetachedFromRecyclerView(recyclerView);
+        selection.removeListener(selectionListener); // The selection outlives the Activity
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return getItem(position).getStudentId();
+    }
 
     /**
-     * Gets the list of currently selected students.
-     * @return A list of Student objects that are currently selected.
+     * @return The ids of the students currently shown, e.g. for select-all.
      */
-    public List<Student> getSelectedStudents() {
-        return selectedStudents;
+    public long[] getStudentIds() {
+        List<Student> students = getCurrentList();
+        long[] ids = new long[students.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = students.get(i).getStudentId();
+        }
+        return ids;
     }
 
     @NonNull
@@ -63,24 +100,31 @@ public class StudentMessageAdapter extends ListAdapter<Student, StudentMessageAd
 
     @Override
     public void onBindViewHolder(@NonNull StudentViewHolder holder, int position) {
-        Student currentStudent = getItem(position); // Use getItem from ListAdapter
-        holder.studentNameTextView.setText(currentStudent.getName());
-        holder.guardianMobileTextView.setText("Guardian: " + currentStudent.getGuardianMobile());
+        bind(holder, getItem(position), DiffPayloads.ALL); // Use getItem from ListAdapter
+    }
 
-        // Set checkbox state based on whether the student is in the selectedStudents list
-        holder.selectCheckBox.setChecked(selectedStudents.contains(currentStudent));
+    @Override
+    public void onBindViewHolder(@NonNull StudentViewHolder holder, int position, @NonNull List<Object> payloads) {
+        bind(holder, getItem(position), DiffPayloads.merge(payloads)); // Only the fields that changed
+    }
 
-        // Set listener for checkbox changes
-        holder.selectCheckBox.setOnCheckedChangeListener(null); // Clear previous listener to prevent infinite loop
+    private void bind(StudentViewHolder holder, Student currentStudent, int changes) {
+        if (DiffPayloads.has(changes, FIELD_NAME)) {
+            holder.studentNameTextView.setText(currentStudent.getName());
+        }
+        if (DiffPayloads.has(changes, FIELD_GUARDIAN_MOBILE)) {
+            holder.guardianMobileTextView.setText("Guardian: " + currentStudent.getGuardianMobile());
+        }
+
+        holder.selectCheckBox.setOnCheckedChangeListener(null); // Clear previous listener before restoring the state
+
+        // Set checkbox state from the selected ids, an O(1) lookup
+        holder.selectCheckBox.setChecked(selection.isSelected(currentStudent.getStudentId()));
 
         holder.selectCheckBox.setOnCheckedChangeListener((buttonView, isChecked) -> {
-            if (isChecked) {
-                if (!selectedStudents.contains(currentStudent)) {
-                    selectedStudents.add(currentStudent);
-                }
-            } else {
-                selectedStudents.remove(currentStudent);
-            }
+            updatingFromRow = true;
+            selection.setSelected(currentStudent.getStudentId(), isChecked);
+            updatingFromRow = false;
             if (listener != null) {
                 listener.onStudentChecked(currentStudent, isChecked);
             }
@@ -89,6 +133,8 @@ public class StudentMessageAdapter extends ListAdapter<Student, StudentMessageAd
 
     /**
      * DiffUtil.ItemCallback for efficiently calculating differences between two lists of students.
+     * Student.equals() only compares ids, so the displayed fields are compared here.
+     * The selection is not part of the list, it is refreshed through FIELD_SELECTED.
      */
     private static final DiffUtil.ItemCallback<Student> DIFF_CALLBACK = new DiffUtil.ItemCallback<Student>() {
         @Override
@@ -100,7 +146,23 @@ public class StudentMessageAdapter extends ListAdapter<Student, StudentMessageAd
         @Override
         public boolean areContentsTheSame(@NonNull Student oldItem, @NonNull Student newItem) {
             // Compare content fields if items are the same
-            return oldItem.equals(newItem); // Requires Student.equals() and hashCode() to be properly implemented
+            return changes(oldItem, newItem) == 0;
+        }
+
+        @Override
+        public Object getChangePayload(@NonNull Student oldItem, @NonNull Student newItem) {
+            return changes(oldItem, newItem);
+        }
+
+        private int changes(Student oldItem, Student newItem) {
+            int changes = 0;
+            if (!Objects.equals(oldItem.getName(), newItem.getName())) {
+                changes |= FIELD_NAME;
+            }
+            if (!Objects.equals(oldItem.getGuardianMobile(), newItem.getGuardianMobile())) {
+                changes |= FIELD_GUARDIAN_MOBILE;
+            }
+            return changes;
         }
     };
 
@@ -0,0 +1,101 @@
+package com.aquaa.markly.ui.sync;
+
+import android.os.Bundle;
+import android.text.TextUtils;
+import android.view.View;
+import android.widget.Button;
+import android.widget.EditText;
+import android.widget.TextView;
+
+import androidx.annotation.Nullable;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.ViewModelProvider;
+
+import com.aquaa.markly.R;
+import com.aquaa.markly.data.database.SyncPeer;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Syncs students and attendance with other devices on the same network: this device either hosts the hub
+ * or syncs with the hub at an address and pairing code shown on the hosting device.
+ */
+public class SyncActivity extends AppCompatActivity {
+
+    private SyncViewModel syncViewModel;
+    private EditText hubAddressEditText;
+    private EditText pairingCodeEditText;
+    private boolean hosting;
+
+    @Override
+    protected void onCreate(@Nullable Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_sync);
+
+        syncViewModel = new ViewModelProvider(this).get(SyncViewModel.class);
+
+        TextView deviceIdText = findViewById(R.id.text_view_sync_device_id);
+        TextView addressesText = findViewById(R.id.text_view_sync_addresses);
+        TextView statusText = findViewById(R.id.text_view_sync_status);
+        TextView peersText = findViewById(R.id.text_view_sync_peers);
+        TextView pairingCodeText = findViewById(R.id.text_view_sync_pairing_code);
+        Button hostButton = findViewById(R.id.button_sync_host);
+        Button syncNowButton = findViewById(R.id.button_sync_now);
+        hubAddressEditText = findViewById(R.id.edit_text_hub_address);
+        pairingCodeEditText = findViewById(R.id.edit_text_pairing_code);
+        if (savedInstanceState == null) {
+            hubAddressEditText.setText(syncViewModel.getHubAddress());
+        }
+
+        syncViewModel.getDeviceId().observe(this, id -> deviceIdText.setText("Device ID: " + id));
+        syncViewModel.getLocalAddresses().observe(this, addresses -> addressesText.setText(addresses.isEmpty()
+                ? "Address: not connected to a network"
+                : "Address: " + TextUtils.join(", ", addresses)));
+        syncViewModel.getStatus().observe(this, status -> {
+            if (status != null) {
+                statusText.setText(status);
+            }
+        });
+        syncViewModel.isHubRunning().observe(this, running -> {
+            hosting = Boolean.TRUE.equals(running);
+            hostButton.setText(hosting ? "Stop Hosting" : "Start Hosting");
+            syncNowButton.setEnabled(!hosting);
+        });
+        syncViewModel.getPairingCode().observe(this, code -> {
+            pairingCodeText.setVisibility(code != null ? View.VISIBLE : View.GONE);
+            pairingCodeText.setText("Pairing code: " + code);
+        });
+        syncViewModel.isSyncing().observe(this, syncing -> {
+            boolean busy = Boolean.TRUE.equals(syncing);
+            syncNowButton.setText(busy ? "Syncing..." : "Sync Now");
+            syncNowButton.setEnabled(!busy && !hosting);
+            hostButton.setEnabled(!busy);
+        });
+        syncViewModel.getPeers().observe(this, peers -> {
+            if (peers == null || peers.isEmpty()) {
+                peersText.setText("None yet.");
+                return;
+            }
+            SimpleDateFormat format = new SimpleDateFormat("dd MMM yyyy, HH:mm", Locale.getDefault());
+            StringBuilder text = new StringBuilder();
+            for (SyncPeer peer : peers) {
+                if (text.length() > 0) {
+                    text.append('\n');
+                }
+                text.append(peer.peerId.substring(0, Math.min(8, peer.peerId.length())))
+                        .append(": ")
+                        .append(peer.lastSyncAt > 0 ? format.format(new Date(peer.lastSyncAt)) : "interrupted");
+            }
+            peersText.setText(text.toString());
+        });
+
+        hostButton.setOnClickListener(v -> {
+            syncViewModel.setHosting(!hosting);
+            syncViewModel.refreshAddresses();
+        });
+        syncNowButton.setOnClickListener(v -> syncViewModel.syncNow(hubAddressEditText.getText().toString(),
+                pairingCodeEditText.getText().toString()));
+    }
+}
@@ -0,0 +1,101 @@
+package com.aquaa.markly.ui.sync;
+
+import android.app.Application;
+
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.aquaa.markly.data.database.SyncPeer;
+import com.aquaa.markly.data.repository.SyncRepository;
+import com.aquaa.markly.utils.MarklyLog;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * ViewModel for SyncActivity. Hosting and sync rounds run in SyncRepository; sync rounds outlive this screen,
+ * hosting stops with it.
+ */
+public class SyncViewModel extends AndroidViewModel {
+
+    private static final String TAG = "SyncViewModel";
+
+    private final SyncRepository syncRepository;
+    private final MutableLiveData<String> deviceId = new MutableLiveData<>();
+    private final MutableLiveData<List<String>> localAddresses = new MutableLiveData<>();
+
+    private final ExecutorService dbExecutor = Executors.newSingleThreadExecutor();
+
+    public SyncViewModel(Application application) {
+        super(application);
+        syncRepository = SyncRepository.getInstance(application);
+        dbExecutor.execute(() -> {
+            try {
+                deviceId.postValue(syncRepository.getDeviceIdSync());
+            } catch (Exception e) {
+                MarklyLog.e(TAG, "Error loading the device id: " + e.getMessage(), e);
+            }
+        });
+        refreshAddresses();
+    }
+
+    public LiveData<String> getDeviceId() {
+        return deviceId;
+    }
+
+    public LiveData<List<String>> getLocalAddresses() {
+        return localAddresses;
+    }
+
+    public LiveData<String> getStatus() {
+        return syncRepository.getStatus();
+    }
+
+    public LiveData<Boolean> isHubRunning() {
+        return syncRepository.isHubRunning();
+    }
+
+    public LiveData<String> getPairingCode() {
+        return syncRepository.getPairingCode();
+    }
+
+    public LiveData<Boolean> isSyncing() {
+        return syncRepository.isSyncing();
+    }
+
+    public LiveData<List<SyncPeer>> getPeers() {
+        return syncRepository.getPeers();
+    }
+
+    public String getHubAddress() {
+        return syncRepository.getHubAddress();
+    }
+
+    public void refreshAddresses() {
+        dbExecutor.execute(() -> localAddresses.postValue(syncRepository.getLocalAddresses()));
+    }
+
+    public void setHosting(boolean hosting) {
+        if (hosting) {
+            syncRepository.startHub();
+        } else {
+            syncRepository.stopHub();
+        }
+    }
+
+    public void syncNow(String hubAddress, String pairingCode) {
+        syncRepository.syncNow(hubAddress, pairingCode);
+    }
+
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        syncRepository.stopHub(); // Nobody is left to show the pairing code
+        if (!dbExecutor.isShutdown()) {
+            dbExecutor.shutdown();
+        }
+        MarklyLog.d(TAG, "dbExecutor shutdown initiated in {}.", TAG);
+    }
+}
@@ -0,0 +1,66 @@
+package com.aquaa.markly.utils;
+
+import java.util.Calendar;
+import java.util.Locale;
+
+/**
+ * Academic years run from the first of June to the end of May and are numbered by the calendar year they start in,
+ * so 2023 is "2023-24". Used to cut attendance into the years that are archived together.
+ */
+public final class AcademicYear {
+
+    public static final int START_MONTH = Calendar.JUNE;
+
+    private AcademicYear() {
+        // Static helpers
+    }
+
+    /**
+     * @param date Unix timestamp in milliseconds.
+     * @return The academic year the date falls in, in the device's time zone.
+     */
+    public static int of(long date) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(date);
+        int year = calendar.get(Calendar.YEAR);
+        return calendar.get(Calendar.MONTH) < START_MONTH ? year - 1 : year;
+    }
+
+    /**
+     * @return The academic year running now. Every year before it is closed.
+     */
+    public static int current() {
+        return of(System.currentTimeMillis());
+    }
+
+    /**
+     * @return Midnight of the year's first day (Unix timestamp in milliseconds).
+     */
+    public static long startOf(int year) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(year, START_MONTH, 1);
+        return calendar.getTimeInMillis();
+    }
+
+    /**
+     * @return The start of the next year, the end of this one exclusive.
+     */
+    public static long endOf(int year) {
+        return startOf(year + 1);
+    }
+
+    public static String label(int year) {
+        return String.format(Locale.US, "%d-%02d", year, (year + 1) % 100);
+    }
+
+    /**
+     * @param dateColumn A column of Unix timestamps in milliseconds.
+     * @return An SQL expression with the academic year of dateColumn, the same as of().
+     */
+    public static String sqlOf(String dateColumn) {
+        String local = dateColumn + " / 1000, 'unixepoch', 'localtime'";
+        return "(CAST(strftime('%Y', " + local + ") AS INTEGER) - (CAST(strftime('%m', " + local + ") AS INTEGER) < "
+                + (START_MONTH + 1) + "))";
+    }
+}
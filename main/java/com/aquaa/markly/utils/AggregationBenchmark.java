@@ -0,0 +1,167 @@
+package com.aquaa.markly.utils;
+
+import com.aquaa.markly.data.database.Attendance;
+import com.aquaa.markly.data.database.Student;
+import com.google.gson.Gson;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Benchmarks for the in-memory hot paths on synthetic data sets of 100 to 10,000 students over 30 to 1,500 days:
+ * the monthly tracking aggregation, the yearly analytics aggregation and leaderboard ranking, trend downsampling,
+ * backup JSON serialisation and Excel parsing.
+ * No Android dependencies besides what ExcelUtils logs through, so the suite also runs on a desktop JVM.
+ */
+public final class AggregationBenchmark {
+
+    public static final String SUITE = "aggregation";
+
+    private static final int[] STUDENT_COUNTS = {100, 1000, 10000};
+    private static final int[] DAY_COUNTS = {30, 365, 1500};
+
+    // Data sets above these sizes would not fit a phone's heap next to the app, they are reported as skipped
+    private static final long MAX_IN_MEMORY_ROWS = 2_000_000L;
+    private static final long MAX_JSON_ROWS = 200_000L;
+    private static final long MAX_EXCEL_ROWS = 50_000L;
+
+    private AggregationBenchmark() {
+        // Static suite
+    }
+
+    /**
+     * Receives a line of progress before each case, so the caller can show that something is happening.
+     */
+    public interface ProgressListener {
+        void onProgress(String message);
+    }
+
+    /**
+     * Runs every case at every scale.
+     * @param skipped Receives a note for every case that was not run.
+     * @return The measured cases in order.
+     */
+    public static List<BenchmarkRunner.Result> run(ProgressListener listener, List<String> skipped) throws Exception {
+        List<BenchmarkRunner.Result> results = new ArrayList<>();
+        for (int studentCount : STUDENT_COUNTS) {
+            for (int dayCount : DAY_COUNTS) {
+                long rows = (long) studentCount * dayCount;
+                if (rows > MAX_IN_MEMORY_ROWS) {
+                    skipped.add(studentCount + " students x " + dayCount + " days (" + rows + " rows exceeds the in-memory limit)");
+                    continue;
+                }
+                listener.onProgress("Generating " + studentCount + " students x " + dayCount + " days...");
+                SyntheticDataGenerator generator = new SyntheticDataGenerator(studentCount, dayCount, 42L);
+                SyntheticDataGenerator.InMemory data = generator.generateInMemory();
+                runScale(data.students, data.attendance, dayCount, generator.getLastDay(), listener, skipped, results);
+            }
+        }
+        return results;
+    }
+
+    private static void runScale(List<Student> students, List<Attendance> attendance, int dayCount, long lastDay,
+                                 ProgressListener listener, List<String> skipped,
+                                 List<BenchmarkRunner.Result> results) throws Exception {
+        long monthStart = lastDay - 29 * SyntheticDataGenerator.DAY_MILLIS;
+        long yearStart = lastDay - 364 * SyntheticDataGenerator.DAY_MILLIS;
+        long rows = attendance.size();
+
+        listener.onProgress("track.monthly, " + students.size() + " x " + dayCount);
+        results.add(BenchmarkRunner.measure("track.monthly", BenchmarkRunner.params("students", students.size(), "days", dayCount),
+                3, 10, () -> AttendanceAggregator.aggregate(students, attendance, monthStart, lastDay).totalPresentDays));
+
+        listener.onProgress("analytics.year, " + students.size() + " x " + dayCount);
+        results.add(BenchmarkRunner.measure("analytics.year", BenchmarkRunner.params("students", students.size(), "days", dayCount),
+                3, 10, () -> AttendanceAggregator.aggregate(students, attendance, yearStart, lastDay).getTotalRecordedDays()));
+
+        listener.onProgress("analytics.ranking, " + students.size() + " x " + dayCount);
+        AttendanceAggregator.Tally yearTally = AttendanceAggregator.aggregate(students, attendance, yearStart, lastDay);
+        results.add(BenchmarkRunner.measure("analytics.ranking", BenchmarkRunner.params("students", students.size(), "days", dayCount),
+                3, 10, () -> RankingEngine.rank(yearTally, 5, 1, null).eligibleCount));
+
+        listener.onProgress("analytics.trendDownsample, " + students.size() + " x " + dayCount);
+        TrendSeries dailyTrend = dailyTrend(attendance, dayCount, lastDay);
+        results.add(BenchmarkRunner.measure("analytics.trendDownsample", BenchmarkRunner.params("students", students.size(), "days", dayCount),
+                3, 10, () -> dailyTrend.downsample(120).size()));
+
+        if (rows <= MAX_JSON_ROWS) {
+            listener.onProgress("backup.json, " + students.size() + " x " + dayCount);
+            Gson gson = new Gson();
+            results.add(BenchmarkRunner.measure("backup.json", BenchmarkRunner.params("students", students.size(), "days", dayCount),
+                    1, 5, () -> gson.toJson(toBackupShape(students, attendance)).length()));
+        } else {
+            skipped.add("backup.json at " + students.size() + " x " + dayCount + " (" + rows + " rows)");
+        }
+
+        if (rows <= MAX_EXCEL_ROWS) {
+            listener.onProgress("excel.parse, " + students.size() + " x " + dayCount);
+            ByteArrayOutputStream workbook = new ByteArrayOutputStream();
+            ExcelUtils.exportDataToXLSX(students, attendance, workbook);
+            byte[] bytes = workbook.toByteArray();
+            results.add(BenchmarkRunner.measure("excel.parse", BenchmarkRunner.params("students", students.size(), "days", dayCount),
+                    1, 3, () -> ExcelUtils.importDataFromXLSX(new ByteArrayInputStream(bytes)).size()));
+        } else {
+            skipped.add("excel.parse at " + students.size() + " x " + dayCount + " (" + rows + " rows)");
+        }
+    }
+
+    /**
+     * The daily class trend StudentRepository.getAttendanceTrendSync() would read from the database.
+     */
+    private static TrendSeries dailyTrend(List<Attendance> attendance, int dayCount, long lastDay) {
+        long firstDay = lastDay - (dayCount - 1) * SyntheticDataGenerator.DAY_MILLIS;
+        int[] present = new int[dayCount];
+        int[] recorded = new int[dayCount];
+        for (Attendance record : attendance) {
+            int day = (int) ((record.getDate() - firstDay) / SyntheticDataGenerator.DAY_MILLIS);
+            if (day >= 0 && day < dayCount) {
+                recorded[day]++;
+                if (record.isPresent()) {
+                    present[day]++;
+                }
+            }
+        }
+        long[] bucketStart = new long[dayCount];
+        float[] rate = new float[dayCount];
+        for (int day = 0; day < dayCount; day++) {
+            bucketStart[day] = firstDay + day * SyntheticDataGenerator.DAY_MILLIS;
+            rate[day] = recorded[day] == 0 ? 0f : present[day] * 100f / recorded[day];
+        }
+        return new TrendSeries(bucketStart, rate, recorded, dayCount);
+    }
+
+    /**
+     * Same map-of-rows shape that AppDatabase.exportDatabaseToJson builds from its cursors.
+     */
+    private static Map<String, List<Map<String, Object>>> toBackupShape(List<Student> students, List<Attendance> attendance) {
+        List<Map<String, Object>> studentRows = new ArrayList<>(students.size());
+        for (Student student : students) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("Student ID", student.getStudentId());
+            row.put("Name", student.getName());
+            row.put("Gender", student.getGender());
+            row.put("Mobile", student.getMobile());
+            row.put("Guardian Mobile", student.getGuardianMobile());
+            row.put("Current Semester", (long) student.getCurrentSemester());
+            row.put("Section", student.getSection());
+            studentRows.add(row);
+        }
+        List<Map<String, Object>> attendanceRows = new ArrayList<>(attendance.size());
+        for (Attendance record : attendance) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("Attendance", record.getAttendanceId());
+            row.put("Student ID", record.getStudentId());
+            row.put("Date (Timestamp)", record.getDate());
+            row.put("Is Present", record.isPresent() ? 1L : 0L);
+            attendanceRows.add(row);
+        }
+        Map<String, List<Map<String, Object>>> content = new HashMap<>();
+        content.put("Students", studentRows);
+        content.put("Attendance", attendanceRows);
+        return content;
+    }
+}
@@ -0,0 +1,118 @@
+package com.aquaa.markly.utils;
+
+import com.aquaa.markly.data.database.Attendance;
+import com.aquaa.markly.data.database.Student;
+
+import java.util.List;
+
+/**
+ * Per-student present/absent tallies for a date range, shared by the tracking and analytics screens.
+ * Plain Java with no Android dependencies so that it can be benchmarked on the JVM (see AggregationBenchmark).
+ * One pass over the attendance rows, counters in int arrays aligned with the student list, and an
+ * open-addressing id -> index table so that no Long or Integer is boxed per row.
+ */
+public final class AttendanceAggregator {
+
+    private AttendanceAggregator() {
+        // Static helpers
+    }
+
+    /**
+     * Result of an aggregation. presentDays[i] and absentDays[i] belong to students.get(i).
+     */
+    public static final class Tally {
+        public final List<Student> students;
+        public final int[] presentDays;
+        public final int[] absentDays;
+        public int totalPresentDays;
+        public int totalAbsentDays;
+
+        Tally(List<Student> students) {
+            this.students = students;
+            this.presentDays = new int[students.size()];
+            this.absentDays = new int[students.size()];
+        }
+
+        public int getTotalRecordedDays() {
+            return totalPresentDays + totalAbsentDays;
+        }
+
+        /**
+         * @return Attendance percentage of the i-th student, or 0 if nothing was recorded.
+         */
+        public double getPercentage(int index) {
+            int recorded = presentDays[index] + absentDays[index];
+            return recorded == 0 ? 0 : (double) presentDays[index] / recorded * 100;
+        }
+    }
+
+    /**
+     * Counts attendance rows within [startDate, endDate] that belong to one of the given students.
+     * Rows of other students are ignored.
+     */
+    public static Tally aggregate(List<Student> students, List<Attendance> attendanceRecords, long startDate, long endDate) {
+        Tally tally = new Tally(students);
+        StudentIndex index = new StudentIndex(students);
+        for (int i = 0, n = attendanceRecords.size(); i < n; i++) {
+            Attendance attendance = attendanceRecords.get(i);
+            if (attendance.date < startDate || attendance.date > endDate) {
+                continue;
+            }
+            int studentIndex = index.indexOf(attendance.studentId);
+            if (studentIndex < 0) {
+                continue;
+            }
+            if (attendance.isPresent) {
+                tally.presentDays[studentIndex]++;
+                tally.totalPresentDays++;
+            } else {
+                tally.absentDays[studentIndex]++;
+                tally.totalAbsentDays++;
+            }
+        }
+        return tally;
+    }
+
+    /**
+     * Open-addressing map from student_id to position in the student list (linear probing, power-of-two table).
+     */
+    private static final class StudentIndex {
+        private final long[] keys;
+        private final int[] values; // Position + 1, so that 0 marks an empty slot
+        private final int mask;
+
+        StudentIndex(List<Student> students) {
+            int capacity = Integer.highestOneBit(Math.max(4, students.size() * 2 - 1)) << 1;
+            keys = new long[capacity];
+            values = new int[capacity];
+            mask = capacity - 1;
+            for (int i = 0; i < students.size(); i++) {
+                long id = students.get(i).getStudentId();
+                int slot = mix(id) & mask;
+                while (values[slot] != 0 && keys[slot] != id) {
+                    slot = (slot + 1) & mask;
+                }
+                if (values[slot] == 0) { // Keep the first occurrence of a duplicate id
+                    keys[slot] = id;
+                    values[slot] = i + 1;
+                }
+            }
+        }
+
+        int indexOf(long id) {
+            int slot = mix(id) & mask;
+            while (values[slot] != 0) {
+                if (keys[slot] == id) {
+                    return values[slot] - 1;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        private static int mix(long id) {
+            long h = id * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.aquaa.markly.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Minimal micro-benchmark harness: warm-up runs, timed runs, and median/min/p90 per case.
+ * Results are published as JSON and can be compared against a previously saved baseline.
+ * Plain Java with no Android dependencies.
+ */
+public final class BenchmarkRunner {
+
+    // Results of every run are folded in here so that the JIT cannot drop the benchmarked work
+    private static volatile long sink;
+
+    private BenchmarkRunner() {
+        // Static helpers
+    }
+
+    /**
+     * One operation of a benchmark. Returns any value derived from the work (a count, a length, a checksum).
+     */
+    public interface Case {
+        long run() throws Exception;
+    }
+
+    public static final class Result {
+        public final String name;
+        public final Map<String, Object> params;
+        public final int iterations;
+        public final long minNanos;
+        public final long medianNanos;
+        public final long p90Nanos;
+        public final long maxNanos;
+
+        Result(String name, Map<String, Object> params, long[] samples) {
+            this.name = name;
+            this.params = params;
+            this.iterations = samples.length;
+            long[] sorted = samples.clone();
+            Arrays.sort(sorted);
+            this.minNanos = sorted[0];
+            this.medianNanos = sorted[sorted.length / 2];
+            this.p90Nanos = sorted[Math.min(sorted.length - 1, (int) Math.ceil(sorted.length * 0.9) - 1)];
+            this.maxNanos = sorted[sorted.length - 1];
+        }
+
+        /**
+         * @return The key used to match this result with the same case in a baseline, e.g. "track.monthly[students=100,days=30]".
+         */
+        public String key() {
+            return key(name, params);
+        }
+
+        private static String key(String name, Map<String, Object> params) {
+            StringBuilder builder = new StringBuilder(name).append('[');
+            boolean first = true;
+            for (Map.Entry<String, Object> entry : params.entrySet()) {
+                if (!first) {
+                    builder.append(',');
+                }
+                builder.append(entry.getKey()).append('=').append(entry.getValue());
+                first = false;
+            }
+            return builder.append(']').toString();
+        }
+    }
+
+    /**
+     * Runs the case warmups times untimed, then iterations times timed.
+     */
+    public static Result measure(String name, Map<String, Object> params, int warmups, int iterations, Case benchmarkCase) throws Exception {
+        long accumulator = 0;
+        for (int i = 0; i < warmups; i++) {
+            accumulator += benchmarkCase.run();
+        }
+        long[] samples = new long[iterations];
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            accumulator += benchmarkCase.run();
+            samples[i] = System.nanoTime() - start;
+        }
+        sink += accumulator;
+        return new Result(name, params, samples);
+    }
+
+    /**
+     * Builds a result from durations measured by the caller, for one-shot operations such as a migration
+     * where every sample needs fresh, untimed setup.
+     */
+    public static Result fromSamples(String name, Map<String, Object> params, long[] samplesNanos) {
+        return new Result(name, params, samplesNanos);
+    }
+
+    /**
+     * Convenience for building ordered parameter maps: params("students", 100, "days", 30).
+     */
+    public static Map<String, Object> params(Object... keysAndValues) {
+        Map<String, Object> params = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < keysAndValues.length; i += 2) {
+            params.put(String.valueOf(keysAndValues[i]), keysAndValues[i + 1]);
+        }
+        return params;
+    }
+
+    /**
+     * Compares the median of each result with the threshold stored for its case name.
+     * Cases without a threshold always pass.
+     * @param thresholdsMs Maximum allowed median per case name, in milliseconds.
+     * @return One line per case over its threshold, empty when everything passed.
+     */
+    public static List<String> checkThresholds(List<Result> results, Map<String, Double> thresholdsMs) {
+        List<String> failures = new ArrayList<>();
+        for (Result result : results) {
+            Double threshold = thresholdsMs.get(result.name);
+            double medianMs = result.medianNanos / 1e6;
+            if (threshold != null && medianMs > threshold) {
+                failures.add(String.format(Locale.US, "%s median %.2f ms > %.2f ms", result.key(), medianMs, threshold));
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * @param suite Name of the benchmark suite.
+     * @param environment Free-form facts about where it ran (device, OS, build type).
+     * @param results The measured cases.
+     * @param skipped Human readable notes about cases that were not run.
+     * @return The report as pretty-printed JSON, times in milliseconds.
+     */
+    public static String toJson(String suite, Map<String, String> environment, List<Result> results, List<String> skipped) {
+        return toJson(suite, environment, results, skipped, new ArrayList<>());
+    }
+
+    /**
+     * Same as above, with the threshold failures from checkThresholds() listed under "failures".
+     */
+    public static String toJson(String suite, Map<String, String> environment, List<Result> results,
+                                List<String> skipped, List<String> failures) {
+        JsonObject root = new JsonObject();
+        root.addProperty("suite", suite);
+        root.addProperty("timestamp", System.currentTimeMillis());
+        JsonObject env = new JsonObject();
+        for (Map.Entry<String, String> entry : environment.entrySet()) {
+            env.addProperty(entry.getKey(), entry.getValue());
+        }
+        root.add("environment", env);
+
+        JsonArray resultArray = new JsonArray();
+        for (Result result : results) {
+            JsonObject o = new JsonObject();
+            o.addProperty("name", result.name);
+            o.addProperty("key", result.key());
+            JsonObject p = new JsonObject();
+            for (Map.Entry<String, Object> entry : result.params.entrySet()) {
+                if (entry.getValue() instanceof Number) {
+                    p.addProperty(entry.getKey(), (Number) entry.getValue());
+                } else {
+                    p.addProperty(entry.getKey(), String.valueOf(entry.getValue()));
+                }
+            }
+            o.add("params", p);
+            o.addProperty("iterations", result.iterations);
+            o.addProperty("minMs", result.minNanos / 1e6);
+            o.addProperty("medianMs", result.medianNanos / 1e6);
+            o.addProperty("p90Ms", result.p90Nanos / 1e6);
+            o.addProperty("maxMs", result.maxNanos / 1e6);
+            resultArray.add(o);
+        }
+        root.add("results", resultArray);
+
+        JsonArray skippedArray = new JsonArray();
+        for (String note : skipped) {
+            skippedArray.add(note);
+        }
+        root.add("skipped", skippedArray);
+
+        JsonArray failureArray = new JsonArray();
+        for (String failure : failures) {
+            failureArray.add(failure);
+        }
+        root.add("failures", failureArray);
+        root.addProperty("passed", failures.isEmpty());
+        return new GsonBuilder().setPrettyPrinting().create().toJson(root);
+    }
+
+    /**
+     * Formats the results as a table, with the change in median against a baseline report when one is given.
+     * @param baselineJson A report previously produced by toJson(), or null.
+     */
+    public static String toText(List<Result> results, String baselineJson) {
+        Map<String, Double> baselineMedians = readMedians(baselineJson);
+        StringBuilder builder = new StringBuilder();
+        builder.append(baselineMedians.isEmpty() ? "No baseline saved yet.\n\n" : "Change is against the saved baseline.\n\n");
+        for (Result result : results) {
+            double medianMs = result.medianNanos / 1e6;
+            builder.append(String.format(Locale.US, "%-48s median %9.2f ms  p90 %9.2f ms", result.key(), medianMs, result.p90Nanos / 1e6));
+            Double baseline = baselineMedians.get(result.key());
+            if (baseline != null && baseline > 0) {
+                builder.append(String.format(Locale.US, "  %+.1f%%", (medianMs - baseline) / baseline * 100));
+            }
+            builder.append('\n');
+        }
+        return builder.toString();
+    }
+
+    private static Map<String, Double> readMedians(String json) {
+        Map<String, Double> medians = new HashMap<>();
+        if (json == null || json.isEmpty()) {
+            return medians;
+        }
+        try {
+            JsonObject root = new Gson().fromJson(json, JsonObject.class);
+            for (JsonElement element : root.getAsJsonArray("results")) {
+                JsonObject o = element.getAsJsonObject();
+                medians.put(o.get("key").getAsString(), o.get("medianMs").getAsDouble());
+            }
+        } catch (RuntimeException e) {
+            // An unreadable baseline is treated as no baseline
+            medians.clear();
+        }
+        return medians;
+    }
+}
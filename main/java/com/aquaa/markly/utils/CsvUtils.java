@@ -0,0 +1,588 @@
+package com.aquaa.markly.utils;
+
+import android.database.Cursor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Calendar;
+import java.util.List;
+
+/**
+ * Utility class for importing and exporting student and attendance data as CSV (RFC 4180).
+ * One file holds one table; the header row tells which table it is.
+ * Reading goes through a buffered NIO channel and a hand-written tokenizer, writing goes
+ * straight from database cursors through a reusable buffer, so neither side builds a document in memory.
+ */
+public class CsvUtils {
+
+    private static final String TAG = "CsvUtils"; // Tag for logging
+
+    public static final String TABLE_STUDENTS = "students";
+    public static final String TABLE_ATTENDANCE = "attendance";
+
+    // Header names match the JSON backup so files can be moved between both formats
+    private static final String COL_STUDENT_ID = "Student ID";
+    private static final String COL_NAME = "Name";
+    private static final String COL_GENDER = "Gender";
+    private static final String COL_MOBILE = "Mobile";
+    private static final String COL_GUARDIAN_MOBILE = "Guardian Mobile";
+    private static final String COL_CURRENT_SEMESTER = "Current Semester";
+    private static final String COL_SECTION = "Section";
+    private static final String COL_UUID = "UUID"; // Marks a students file exported by Markly
+    private static final String COL_ATTENDANCE_ID = "Attendance ID";
+    private static final String COL_DATE = "Date (Timestamp)";
+    private static final String COL_IS_PRESENT = "Is Present";
+
+    /**
+     * SQL used to stream the students table in CSV column order.
+     */
+    public static final String STUDENTS_EXPORT_QUERY =
+            "SELECT student_id, name, gender, mobile, guardian_mobile, current_semester, section, uuid FROM students ORDER BY name ASC";
+
+    /**
+     * SQL used to stream the attendance table in CSV column order.
+     */
+    public static final String ATTENDANCE_EXPORT_QUERY =
+            "SELECT attendance_id, student_id, date, is_present FROM attendance ORDER BY date ASC, student_id ASC";
+
+    /**
+     * Writes the rows of STUDENTS_EXPORT_QUERY to CSV, including the header row.
+     * @param cursor A cursor over STUDENTS_EXPORT_QUERY. Not closed by this method.
+     * @param outputStream The stream to write UTF-8 CSV to.
+     * @return The number of data rows written.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static int exportStudentsToCSV(Cursor cursor, OutputStream outputStream) throws IOException {
+        CsvWriter writer = new CsvWriter(outputStream);
+        writer.field(COL_STUDENT_ID).field(COL_NAME).field(COL_GENDER).field(COL_MOBILE)
+                .field(COL_GUARDIAN_MOBILE).field(COL_CURRENT_SEMESTER).field(COL_SECTION).field(COL_UUID).endRow();
+        int rows = 0;
+        while (cursor.moveToNext()) {
+            writer.field(cursor.getLong(0))
+                    .field(cursor.getString(1))
+                    .field(cursor.getString(2))
+                    .field(cursor.getString(3))
+                    .field(cursor.getString(4))
+                    .field(cursor.getLong(5))
+                    .field(cursor.getString(6))
+                    .field(cursor.getString(7))
+                    .endRow();
+            rows++;
+        }
+        writer.flush();
+        return rows;
+    }
+
+    /**
+     * Writes the rows of ATTENDANCE_EXPORT_QUERY to CSV, including the header row.
+     * @param cursor A cursor over ATTENDANCE_EXPORT_QUERY. Not closed by this method.
+     * @param outputStream The stream to write UTF-8 CSV to.
+     * @return The number of data rows written.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static int exportAttendanceToCSV(Cursor cursor, OutputStream outputStream) throws IOException {
+        CsvWriter writer = new CsvWriter(outputStream);
+        writer.field(COL_ATTENDANCE_ID).field(COL_STUDENT_ID).field(COL_DATE).field(COL_IS_PRESENT).endRow();
+        int rows = 0;
+        while (cursor.moveToNext()) {
+            writer.field(cursor.getLong(0))
+                    .field(cursor.getLong(1))
+                    .field(cursor.getLong(2))
+                    .field(cursor.getLong(3) != 0 ? "TRUE" : "FALSE")
+                    .endRow();
+            rows++;
+        }
+        writer.flush();
+        return rows;
+    }
+
+    /**
+     * Reads one CSV file into import rows. The table is detected from the header row, and columns
+     * are located by header name so their order in the file does not matter.
+     * @param inputStream The CSV file.
+     * @param students Receives the rows of a students file.
+     * @param attendances Receives the rows of an attendance file.
+     * @param problems Receives a description of every row that could not be read.
+     * @return TABLE_STUDENTS or TABLE_ATTENDANCE.
+     * @throws IOException If the file cannot be read or its header is not recognised.
+     */
+    public static String importDataFromCSV(InputStream inputStream,
+                                           List<ExcelUtils.StudentImport> students,
+                                           List<ExcelUtils.AttendanceImport> attendances,
+                                           List<String> problems) throws IOException {
+        try (CsvReader reader = new CsvReader(inputStream)) {
+            if (!reader.next()) {
+                throw new IOException("The CSV file is empty.");
+            }
+            int studentIdCol = reader.indexOf(COL_STUDENT_ID);
+            int nameCol = reader.indexOf(COL_NAME);
+            int guardianCol = reader.indexOf(COL_GUARDIAN_MOBILE);
+            int dateCol = reader.indexOf(COL_DATE);
+            if (dateCol < 0) {
+                dateCol = reader.indexOf("Date");
+            }
+            int presentCol = reader.indexOf(COL_IS_PRESENT);
+
+            if (nameCol >= 0 && guardianCol >= 0) {
+                int genderCol = reader.indexOf(COL_GENDER);
+                int mobileCol = reader.indexOf(COL_MOBILE);
+                int semesterCol = reader.indexOf(COL_CURRENT_SEMESTER);
+                int sectionCol = reader.indexOf(COL_SECTION);
+                int uuidCol = reader.indexOf(COL_UUID);
+                while (reader.next()) {
+                    if (reader.isBlank()) {
+                        continue;
+                    }
+                    try {
+                        // Files without a Student ID column get the negated row number: unique within the file
+                        // and never equal to a real (positive) student_id
+                        long oldStudentId = studentIdCol >= 0 ? reader.getLong(studentIdCol) : -reader.getRecordNumber();
+                        ExcelUtils.StudentImport student = new ExcelUtils.StudentImport(oldStudentId,
+                                reader.getString(nameCol),
+                                reader.getString(genderCol),
+                                reader.getString(mobileCol),
+                                reader.getString(guardianCol),
+                                (int) reader.getLong(semesterCol),
+                                reader.getString(sectionCol));
+                        student.uuid = uuidCol >= 0 ? emptyToNull(reader.getString(uuidCol)) : null;
+                        students.add(student);
+                    } catch (NumberFormatException e) {
+                        problems.add("Students row " + reader.getRecordNumber() + " (" + e.getMessage() + ")");
+                    }
+                }
+                MarklyLog.i(TAG, "Read {} student rows from CSV, {} problems.", students.size(), problems.size());
+                return TABLE_STUDENTS;
+            }
+
+            if (studentIdCol >= 0 && dateCol >= 0 && presentCol >= 0) {
+                Calendar calendar = Calendar.getInstance();
+                while (reader.next()) {
+                    if (reader.isBlank()) {
+                        continue;
+                    }
+                    try {
+                        attendances.add(new ExcelUtils.AttendanceImport(reader.getLong(studentIdCol),
+                                reader.getDate(dateCol, calendar),
+                                reader.getBoolean(presentCol)));
+                    } catch (NumberFormatException e) {
+                        problems.add("Attendance row " + reader.getRecordNumber() + " (" + e.getMessage() + ")");
+                    }
+                }
+                MarklyLog.i(TAG, "Read {} attendance rows from CSV, {} problems.", attendances.size(), problems.size());
+                return TABLE_ATTENDANCE;
+            }
+        }
+        throw new IOException("Unrecognised CSV header. Expected a students file (Name, Guardian Mobile, ...) or an attendance file (Student ID, Date (Timestamp), Is Present).");
+    }
+
+    /**
+     * Streaming RFC 4180 tokenizer over a buffered NIO channel.
+     * Records are decoded into a single reusable char buffer; Strings are only created for fields
+     * that are asked for as text, numeric fields are parsed in place.
+     */
+    public static final class CsvReader implements Closeable {
+        private static final int BUFFER_SIZE = 64 * 1024;
+
+        private final ReadableByteChannel channel;
+        private final ByteBuffer byteBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final CharBuffer charBuffer = CharBuffer.allocate(BUFFER_SIZE);
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private boolean endOfInput = false;
+        private boolean flushed = false;
+        private int pushback = -2; // -2 means empty; -1 is a valid pushed-back EOF
+
+        // Current record: field i spans record[fieldStarts[i], fieldEnds[i])
+        private char[] record = new char[1024];
+        private int recordLength;
+        private int[] fieldStarts = new int[16];
+        private int[] fieldEnds = new int[16];
+        private int fieldCount;
+        private long recordNumber = 0;
+        private String[] header;
+
+        public CsvReader(InputStream inputStream) {
+            this(Channels.newChannel(inputStream));
+        }
+
+        public CsvReader(ReadableByteChannel channel) {
+            this.channel = channel;
+            charBuffer.flip(); // Start empty
+        }
+
+        /**
+         * Advances to the next record. The first record is kept as the header for indexOf().
+         * @return False at end of input.
+         * @throws IOException If the input cannot be read or ends inside a quoted field.
+         */
+        public boolean next() throws IOException {
+            int c = read();
+            if (c == -1) {
+                return false;
+            }
+            if (recordNumber == 0 && c == '\uFEFF') {
+                c = read(); // Byte order mark written by spreadsheet apps
+            }
+            recordLength = 0;
+            fieldCount = 0;
+            startField();
+            boolean inQuotes = false;
+            boolean atFieldStart = true;
+            while (true) {
+                if (c == -1) {
+                    if (inQuotes) {
+                        throw new IOException("Unterminated quoted field in record " + (recordNumber + 1));
+                    }
+                    endField();
+                    break;
+                }
+                char ch = (char) c;
+                if (inQuotes) {
+                    if (ch == '"') {
+                        int following = read();
+                        if (following == '"') {
+                            append('"'); // Escaped quote
+                        } else {
+                            inQuotes = false;
+                            c = following;
+                            continue;
+                        }
+                    } else {
+                        append(ch); // Commas and line breaks are data inside quotes
+                    }
+                } else if (ch == '"' && atFieldStart) {
+                    inQuotes = true;
+                    atFieldStart = false;
+                } else if (ch == ',') {
+                    endField();
+                    startField();
+                    atFieldStart = true;
+                } else if (ch == '\r') {
+                    int following = read();
+                    if (following != '\n') {
+                        pushback = following; // Bare CR line ending
+                    }
+                    endField();
+                    break;
+                } else if (ch == '\n') {
+                    endField();
+                    break;
+                } else {
+                    append(ch);
+                    atFieldStart = false;
+                }
+                c = read();
+            }
+            recordNumber++;
+            if (header == null) {
+                header = new String[fieldCount];
+                for (int i = 0; i < fieldCount; i++) {
+                    header[i] = getString(i).trim();
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return The 1-based number of the current record, the header being record 1.
+         */
+        public long getRecordNumber() {
+            return recordNumber;
+        }
+
+        public int getFieldCount() {
+            return fieldCount;
+        }
+
+        /**
+         * @return True if the current record is an empty line.
+         */
+        public boolean isBlank() {
+            return fieldCount == 1 && fieldEnds[0] == fieldStarts[0];
+        }
+
+        /**
+         * Finds a column by its header name, ignoring case.
+         * @return The column index, or -1 if the header has no such column.
+         */
+        public int indexOf(String columnName) {
+            if (header == null) {
+                return -1;
+            }
+            for (int i = 0; i < header.length; i++) {
+                if (header[i].equalsIgnoreCase(columnName)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return The trimmed field, or an empty string if the column is missing from this record.
+         */
+        public String getString(int index) {
+            if (index < 0 || index >= fieldCount) {
+                return "";
+            }
+            int start = fieldStarts[index];
+            int end = fieldEnds[index];
+            while (start < end && record[start] <= ' ') start++;
+            while (end > start && record[end - 1] <= ' ') end--;
+            return new String(record, start, end - start);
+        }
+
+        /**
+         * Parses an integer field in place. A trailing ".0" written by spreadsheets is accepted.
+         * @throws NumberFormatException If the field is missing, empty or not a whole number.
+         */
+        public long getLong(int index) {
+            if (index < 0 || index >= fieldCount) {
+                throw new NumberFormatException("missing column " + index);
+            }
+            int i = fieldStarts[index];
+            int end = fieldEnds[index];
+            while (i < end && record[i] <= ' ') i++;
+            while (end > i && record[end - 1] <= ' ') end--;
+            boolean negative = false;
+            if (i < end && (record[i] == '-' || record[i] == '+')) {
+                negative = record[i] == '-';
+                i++;
+            }
+            if (i >= end) {
+                throw new NumberFormatException("empty number in column " + index);
+            }
+            long value = 0;
+            for (; i < end; i++) {
+                char ch = record[i];
+                if (ch >= '0' && ch <= '9') {
+                    value = value * 10 + (ch - '0');
+                } else if (ch == '.') {
+                    for (int j = i + 1; j < end; j++) {
+                        if (record[j] != '0') {
+                            throw new NumberFormatException("not a whole number: " + getString(index));
+                        }
+                    }
+                    break;
+                } else {
+                    throw new NumberFormatException("not a number: " + getString(index));
+                }
+            }
+            return negative ? -value : value;
+        }
+
+        /**
+         * Accepts TRUE/FALSE, 1/0, YES/NO and P/A (present/absent).
+         * @throws NumberFormatException If the value is not one of those.
+         */
+        public boolean getBoolean(int index) {
+            String value = getString(index);
+            if (value.equalsIgnoreCase("TRUE") || value.equals("1") || value.equalsIgnoreCase("YES")
+                    || value.equalsIgnoreCase("P") || value.equalsIgnoreCase("PRESENT")) {
+                return true;
+            }
+            if (value.equalsIgnoreCase("FALSE") || value.equals("0") || value.equalsIgnoreCase("NO")
+                    || value.equalsIgnoreCase("A") || value.equalsIgnoreCase("ABSENT")) {
+                return false;
+            }
+            throw new NumberFormatException("not a present/absent value: " + value);
+        }
+
+        /**
+         * Reads a date column holding either a millisecond timestamp or an ISO yyyy-MM-dd date.
+         * ISO dates resolve to local midnight, which is how attendance dates are stored.
+         * @param calendar A calendar reused across calls.
+         * @throws NumberFormatException If the value is neither.
+         */
+        public long getDate(int index, Calendar calendar) {
+            String value = getString(index);
+            if (value.length() == 10 && value.charAt(4) == '-' && value.charAt(7) == '-') {
+                try {
+                    int year = Integer.parseInt(value.substring(0, 4));
+                    int month = Integer.parseInt(value.substring(5, 7));
+                    int day = Integer.parseInt(value.substring(8, 10));
+                    calendar.clear();
+                    calendar.set(year, month - 1, day, 0, 0, 0);
+                    return calendar.getTimeInMillis();
+                } catch (NumberFormatException e) {
+                    throw new NumberFormatException("not a date: " + value);
+                }
+            }
+            return getLong(index);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        private void startField() {
+            if (fieldCount == fieldStarts.length) {
+                int[] starts = new int[fieldCount * 2];
+                int[] ends = new int[fieldCount * 2];
+                System.arraycopy(fieldStarts, 0, starts, 0, fieldCount);
+                System.arraycopy(fieldEnds, 0, ends, 0, fieldCount);
+                fieldStarts = starts;
+                fieldEnds = ends;
+            }
+            fieldStarts[fieldCount] = recordLength;
+        }
+
+        private void endField() {
+            fieldEnds[fieldCount] = recordLength;
+            fieldCount++;
+        }
+
+        private void append(char ch) {
+            if (recordLength == record.length) {
+                char[] grown = new char[record.length * 2];
+                System.arraycopy(record, 0, grown, 0, recordLength);
+                record = grown;
+            }
+            record[recordLength++] = ch;
+        }
+
+        private int read() throws IOException {
+            if (pushback != -2) {
+                int c = pushback;
+                pushback = -2;
+                return c;
+            }
+            if (!charBuffer.hasRemaining() && !fill()) {
+                return -1;
+            }
+            return charBuffer.get();
+        }
+
+        /**
+         * Decodes the next chunk of the channel into the char buffer.
+         * @return False once the input is exhausted.
+         */
+        private boolean fill() throws IOException {
+            if (flushed) {
+                return false;
+            }
+            charBuffer.clear();
+            while (charBuffer.position() == 0) {
+                if (!endOfInput && channel.read(byteBuffer) < 0) {
+                    endOfInput = true;
+                }
+                byteBuffer.flip();
+                CoderResult coderResult = decoder.decode(byteBuffer, charBuffer, endOfInput);
+                byteBuffer.compact();
+                if (coderResult.isError()) {
+                    coderResult.throwException();
+                }
+                if (endOfInput) {
+                    decoder.flush(charBuffer);
+                    flushed = true;
+                    break;
+                }
+            }
+            charBuffer.flip();
+            return charBuffer.hasRemaining();
+        }
+    }
+
+    /**
+     * RFC 4180 writer that assembles rows in a reusable StringBuilder and hands it to the
+     * underlying writer in large chunks. Fields are quoted only when they need to be.
+     */
+    public static final class CsvWriter {
+        private static final int FLUSH_THRESHOLD = 32 * 1024;
+
+        private final Writer out;
+        private final StringBuilder buffer = new StringBuilder(FLUSH_THRESHOLD + 1024);
+        private char[] chunk = new char[FLUSH_THRESHOLD + 1024];
+        private boolean rowHasFields = false;
+
+        public CsvWriter(OutputStream outputStream) {
+            this.out = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
+        }
+
+        public CsvWriter field(String value) {
+            separator();
+            if (value == null || value.isEmpty()) {
+                return this;
+            }
+            boolean needsQuotes = false;
+            for (int i = 0; i < value.length(); i++) {
+                char ch = value.charAt(i);
+                if (ch == ',' || ch == '"' || ch == '\n' || ch == '\r') {
+                    needsQuotes = true;
+                    break;
+                }
+            }
+            // Leading/trailing spaces and leading zeros in phone numbers survive without quoting
+            if (!needsQuotes) {
+                buffer.append(value);
+                return this;
+            }
+            buffer.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char ch = value.charAt(i);
+                if (ch == '"') {
+                    buffer.append('"');
+                }
+                buffer.append(ch);
+            }
+            buffer.append('"');
+            return this;
+        }
+
+        public CsvWriter field(long value) {
+            separator();
+            buffer.append(value);
+            return this;
+        }
+
+        public void endRow() throws IOException {
+            buffer.append("\r\n");
+            rowHasFields = false;
+            if (buffer.length() >= FLUSH_THRESHOLD) {
+                drain();
+            }
+        }
+
+        public void flush() throws IOException {
+            drain();
+            out.flush();
+        }
+
+        private void separator() {
+            if (rowHasFields) {
+                buffer.append(',');
+            }
+            rowHasFields = true;
+        }
+
+        private void drain() throws IOException {
+            int length = buffer.length();
+            if (length == 0) {
+                return;
+            }
+            if (chunk.length < length) {
+                chunk = new char[length];
+            }
+            buffer.getChars(0, length, chunk, 0);
+            out.write(chunk, 0, length);
+            buffer.setLength(0);
+        }
+    }
+
+    private CsvUtils() {
+        // Utility class
+    }
+}
@@ -0,0 +1,86 @@
+package com.aquaa.markly.utils;
+
+/**
+ * Class attendance of one calendar year as present and recorded counts per day, indexed by day of the year.
+ * Two int arrays instead of a list of rows, under 3 KB for a year, so any month, half year or the whole year
+ * is read from memory without going back to the database.
+ * Plain Java with no Android dependencies so that it can be benchmarked on the JVM.
+ */
+public final class DailyAttendance {
+
+    private static final int[] DAYS_IN_MONTH = {31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+
+    public final int year;
+    private final int[] present;
+    private final int[] recorded;
+
+    public DailyAttendance(int year) {
+        this.year = year;
+        int days = isLeapYear(year) ? 366 : 365;
+        this.present = new int[days];
+        this.recorded = new int[days];
+    }
+
+    public static boolean isLeapYear(int year) {
+        return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+    }
+
+    /**
+     * @param month 0 for January, as in java.util.Calendar.
+     */
+    public static int daysInMonth(int year, int month) {
+        return month == 1 && isLeapYear(year) ? 29 : DAYS_IN_MONTH[month];
+    }
+
+    /**
+     * @param month 0 for January.
+     * @param dayOfMonth 1 for the first day.
+     * @return The 0-based day of the year.
+     */
+    public int dayIndex(int month, int dayOfMonth) {
+        int index = dayOfMonth - 1;
+        for (int m = 0; m < month; m++) {
+            index += daysInMonth(year, m);
+        }
+        return index;
+    }
+
+    /**
+     * Adds the counts of one day; called while loading, before the object is shared.
+     */
+    public void add(int month, int dayOfMonth, int presentCount, int recordedCount) {
+        int index = dayIndex(month, dayOfMonth);
+        present[index] += presentCount;
+        recorded[index] += recordedCount;
+    }
+
+    public int getPresent(int dayIndex) {
+        return present[dayIndex];
+    }
+
+    public int getRecorded(int dayIndex) {
+        return recorded[dayIndex];
+    }
+
+    /**
+     * @return Present records over all records of the day, from 0 to 1, or -1 if nothing was recorded.
+     */
+    public float getRate(int dayIndex) {
+        return recorded[dayIndex] == 0 ? -1f : (float) present[dayIndex] / recorded[dayIndex];
+    }
+
+    /**
+     * @return Present and recorded counts of the months [fromMonth, fromMonth + monthCount), as {present, recorded}.
+     */
+    public long[] totals(int fromMonth, int monthCount) {
+        int from = dayIndex(fromMonth, 1);
+        int to = fromMonth + monthCount >= 12 ? present.length : dayIndex(fromMonth + monthCount, 1);
+        long presentTotal = 0;
+        long recordedTotal = 0;
+        for (int i = from; i < to; i++) {
+            presentTotal += present[i];
+            recordedTotal += recorded[i];
+        }
+        return new long[]{presentTotal, recordedTotal};
+    }
+}
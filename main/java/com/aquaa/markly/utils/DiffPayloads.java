@@ -0,0 +1,42 @@
+package com.aquaa.markly.utils;
+
+import java.util.List;
+
+/**
+ * Change payloads for list adapters. A DiffUtil callback returns a bit mask of the fields that changed between two
+ * versions of a row, and onBindViewHolder then only touches the views of those fields instead of rebinding the row.
+ */
+public final class DiffPayloads {
+
+    // Every field, for a full bind
+    public static final int ALL = -1;
+
+    private DiffPayloads() {
+        // Static helpers
+    }
+
+    /**
+     * @return The fields changed across all payloads queued for a row, or ALL for a full bind.
+     */
+    public static int merge(List<Object> payloads) {
+        if (payloads.isEmpty()) {
+            return ALL;
+        }
+        int changes = 0;
+        for (int i = 0; i < payloads.size(); i++) {
+            Object payload = payloads.get(i);
+            if (!(payload instanceof Integer)) {
+                return ALL; // Not one of ours, e.g. an item animator payload
+            }
+            changes |= (Integer) payload;
+        }
+        return changes;
+    }
+
+    /**
+     * @return True if the field is part of the changes.
+     */
+    public static boolean has(int changes, int field) {
+        return (changes & field) != 0;
+    }
+}
@@ -0,0 +1,72 @@
+package com.aquaa.markly.utils;
+
+/**
+ * Where a student stands against the minimum attendance for exam eligibility, projected from their present and
+ * absent days so far and the working days of the term. Days without a record count as still to come.
+ * Plain Java with no Android dependencies.
+ */
+public final class EligibilityProjection {
+
+    // Statuses, from worst to best
+    public static final int STATUS_UNREACHABLE = 0; // Cannot reach the minimum even attending every remaining day
+    public static final int STATUS_AT_RISK = 1; // Can afford no more than AT_RISK_SLACK_DAYS further absences
+    public static final int STATUS_ON_TRACK = 2;
+    public static final int STATUS_SECURED = 3; // Already attended enough days
+
+    // Absences a student can still afford before they are flagged at risk
+    public static final int AT_RISK_SLACK_DAYS = 3;
+
+    public final int presentDays;
+    public final int absentDays;
+    public final int remainingDays; // Working days left without a record
+    public final int requiredDays; // Present days needed over the whole term
+    public final int neededDays; // Present days still needed, 0 once secured
+    public final int slackDays; // Further absences the student can afford, negative if unreachable
+    public final int status;
+
+    private EligibilityProjection(int presentDays, int absentDays, int remainingDays, int requiredDays) {
+        this.presentDays = presentDays;
+        this.absentDays = absentDays;
+        this.remainingDays = remainingDays;
+        this.requiredDays = requiredDays;
+        this.neededDays = Math.max(0, requiredDays - presentDays);
+        this.slackDays = remainingDays - neededDays;
+        if (neededDays == 0) {
+            status = STATUS_SECURED;
+        } else if (slackDays < 0) {
+            status = STATUS_UNREACHABLE;
+        } else if (slackDays <= AT_RISK_SLACK_DAYS) {
+            status = STATUS_AT_RISK;
+        } else {
+            status = STATUS_ON_TRACK;
+        }
+    }
+
+    /**
+     * @param workingDays Working days of the whole term.
+     * @param minPercent Minimum attendance for eligibility, e.g. 75.
+     */
+    public static EligibilityProjection project(int presentDays, int absentDays, int workingDays, int minPercent) {
+        int remainingDays = Math.max(0, workingDays - presentDays - absentDays);
+        return new EligibilityProjection(presentDays, absentDays, remainingDays, requiredDays(workingDays, minPercent));
+    }
+
+    /**
+     * @return Present days needed over a term of workingDays for minPercent, rounded up.
+     */
+    public static int requiredDays(int workingDays, int minPercent) {
+        return (workingDays * minPercent + 99) / 100;
+    }
+
+    /**
+     * @return The fewest absences that leave a student at most AT_RISK_SLACK_DAYS of slack. While every working day
+     * so far has a record, slack only shrinks with absences, so this bounds the at-risk list by absent days alone.
+     */
+    public static int minAbsentDaysAtRisk(int workingDays, int minPercent) {
+        return Math.max(1, workingDays - requiredDays(workingDays, minPercent) - AT_RISK_SLACK_DAYS);
+    }
+
+    public boolean isAtRisk() {
+        return status <= STATUS_AT_RISK;
+    }
+}
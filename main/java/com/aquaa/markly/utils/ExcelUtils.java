@@ -14,7 +14,6 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import android.util.Log; // Import Log
 
 /**
  * Utility class for importing and exporting student and attendance data to/from Excel files.
@@ -36,7 +35,7 @@ public class ExcelUtils {
      * @throws IOException If an I/O error occurs.
      */
     public static void exportDataToXLSX(List<Student> students, List<Attendance> attendances, OutputStream outputStream) throws IOException {
-        Log.d(TAG, "Starting export to XLSX...");
+        MarklyLog.d(TAG, "Starting export to XLSX...");
         Workbook workbook = new XSSFWorkbook();
 
         // 1. Create Students Sheet
@@ -62,9 +61,11 @@ public class ExcelUtils {
             row.createCell(4).setCellValue(student.getGuardianMobile()); // Keep as string to preserve leading zeros
             row.createCell(5).setCellValue(student.getCurrentSemester());
             row.createCell(6).setCellValue(student.getSection());
-            Log.d(TAG, "Exported student row: " + student.getName() + ", ID: " + student.getStudentId());
+            if (MarklyLog.isDebugEnabled()) {
+                MarklyLog.d(TAG, "Exported student row: " + student.getName() + ", ID: " + student.getStudentId());
+            }
         }
-        Log.d(TAG, "Students sheet exported. Total students: " + students.size());
+        MarklyLog.d(TAG, "Students sheet exported. Total students: {}", students.size());
 
         // 2. Create Attendance Sheet
         Sheet attendanceSheet = workbook.createSheet(ATTENDANCE_SHEET_NAME);
@@ -83,13 +84,15 @@ public class ExcelUtils {
             row.createCell(1).setCellValue(attendance.getStudentId()); // Export original student ID
             row.createCell(2).setCellValue(attendance.getDate()); // Export timestamp (long)
             row.createCell(3).setCellValue(attendance.isPresent() ? "TRUE" : "FALSE"); // Store as string for clarity
-            Log.d(TAG, "Exported attendance row: Student ID " + attendance.getStudentId() + ", Date: " + attendance.getDate() + ", Present: " + attendance.isPresent());
+            if (MarklyLog.isDebugEnabled()) {
+                MarklyLog.d(TAG, "Exported attendance row: Student ID " + attendance.getStudentId() + ", Date: " + attendance.getDate() + ", Present: " + attendance.isPresent());
+            }
         }
-        Log.d(TAG, "Attendance sheet exported. Total attendance records: " + attendances.size());
+        MarklyLog.d(TAG, "Attendance sheet exported. Total attendance records: {}", attendances.size());
 
         workbook.write(outputStream);
         workbook.close();
-        Log.d(TAG, "Export completed successfully.");
+        MarklyLog.d(TAG, "Export completed successfully.");
     }
 
     /**
@@ -102,7 +105,7 @@ public class ExcelUtils {
      * @throws IOException If an I/O error occurs.
      */
     public static Map<String, Object> importDataFromXLSX(InputStream inputStream) throws IOException {
-        Log.d(TAG, "Starting import from XLSX...");
+        MarklyLog.d(TAG, "Starting import from XLSX...");
         Workbook workbook = new XSSFWorkbook(inputStream);
         Map<String, Object> importedData = new HashMap<>();
 
@@ -115,7 +118,7 @@ public class ExcelUtils {
         // 1. Read Students Sheet
         Sheet studentsSheet = workbook.getSheet(STUDENTS_SHEET_NAME);
         if (studentsSheet != null) {
-            Log.d(TAG, "Reading Students sheet.");
+            MarklyLog.d(TAG, "Reading Students sheet.");
             Iterator<Row> rowIterator = studentsSheet.iterator();
             if (rowIterator.hasNext()) {
                 rowIterator.next(); // Skip header row
@@ -125,7 +128,7 @@ public class ExcelUtils {
                 int rowNum = currentRow.getRowNum();
 
                 if (isRowEmpty(currentRow)) {
-                    Log.w(TAG, "Skipping empty row " + rowNum + " in Students sheet.");
+                    MarklyLog.w(TAG, "Skipping empty row {} in Students sheet.", rowNum);
                     continue;
                 }
 
@@ -139,21 +142,23 @@ public class ExcelUtils {
                     String section = parseStringCell(currentRow.getCell(6), dataFormatter, evaluator, rowNum, "Section");
 
                     importedStudents.add(new StudentImport(oldStudentId, name, gender, mobile, guardianMobile, currentSemester, section));
-                    Log.d(TAG, "Imported student data from row " + rowNum + ": " + name + ", Old ID: " + oldStudentId);
+                    if (MarklyLog.isDebugEnabled()) {
+                        MarklyLog.d(TAG, "Imported student data from row " + rowNum + ": " + name + ", Old ID: " + oldStudentId);
+                    }
                 } catch (Exception e) {
-                    Log.e(TAG, "Error reading student row " + rowNum + " in Students sheet: " + e.getMessage(), e);
+                    MarklyLog.e(TAG, "Error reading student row " + rowNum + " in Students sheet: " + e.getMessage(), e);
                 }
             }
         } else {
-            Log.w(TAG, "Students sheet not found in the Excel file.");
+            MarklyLog.w(TAG, "Students sheet not found in the Excel file.");
         }
-        Log.d(TAG, "Finished reading Students sheet. Imported " + importedStudents.size() + " students.");
+        MarklyLog.d(TAG, "Finished reading Students sheet. Imported {} students.", importedStudents.size());
 
 
         // 2. Read Attendance Sheet
         Sheet attendanceSheet = workbook.getSheet(ATTENDANCE_SHEET_NAME);
         if (attendanceSheet != null) {
-            Log.d(TAG, "Reading Attendance sheet.");
+            MarklyLog.d(TAG, "Reading Attendance sheet.");
             Iterator<Row> rowIterator = attendanceSheet.iterator();
             if (rowIterator.hasNext()) {
                 rowIterator.next(); // Skip header row
@@ -163,7 +168,7 @@ public class ExcelUtils {
                 int rowNum = currentRow.getRowNum();
 
                 if (isRowEmpty(currentRow)) {
-                    Log.w(TAG, "Skipping empty row " + rowNum + " in Attendance sheet.");
+                    MarklyLog.w(TAG, "Skipping empty row {} in Attendance sheet.", rowNum);
                     continue;
                 }
 
@@ -174,27 +179,31 @@ public class ExcelUtils {
                     boolean isPresent = parseStringCell(currentRow.getCell(3), dataFormatter, evaluator, rowNum, "Is Present").equalsIgnoreCase("TRUE");
 
                     importedAttendances.add(new AttendanceImport(oldStudentId, date, isPresent));
-                    Log.d(TAG, "Imported attendance data from row " + rowNum + ": Old Student ID " + oldStudentId + ", Date: " + date + ", Present: " + isPresent);
+                    if (MarklyLog.isDebugEnabled()) {
+                        MarklyLog.d(TAG, "Imported attendance data from row " + rowNum + ": Old Student ID " + oldStudentId + ", Date: " + date + ", Present: " + isPresent);
+                    }
                 } catch (Exception e) {
-                    Log.e(TAG, "Error reading attendance row " + rowNum + " in Attendance sheet: " + e.getMessage(), e);
+                    MarklyLog.e(TAG, "Error reading attendance row " + rowNum + " in Attendance sheet: " + e.getMessage(), e);
                 }
             }
         } else {
-            Log.w(TAG, "Attendance sheet not found in the Excel file.");
+            MarklyLog.w(TAG, "Attendance sheet not found in the Excel file.");
         }
-        Log.d(TAG, "Finished reading Attendance sheet. Imported " + importedAttendances.size() + " attendance records.");
+        MarklyLog.d(TAG, "Finished reading Attendance sheet. Imported {} attendance records.", importedAttendances.size());
 
         workbook.close();
         importedData.put("students", importedStudents);
         importedData.put("attendances", importedAttendances);
-        Log.d(TAG, "Import process completed.");
+        MarklyLog.d(TAG, "Import process completed.");
         return importedData;
     }
 
     /** Helper to get string value from cell, handling null cells and different types. */
     private static String parseStringCell(Cell cell, DataFormatter dataFormatter, FormulaEvaluator evaluator, int rowNum, String columnName) {
         if (cell == null) {
-            Log.d(TAG, "Cell is null (Col: " + columnName + ", Row: " + rowNum + "), returning empty string.");
+            if (MarklyLog.isDebugEnabled()) {
+                MarklyLog.d(TAG, "Cell is null (Col: " + columnName + ", Row: " + rowNum + "), returning empty string.");
+            }
             return "";
         }
         try {
@@ -204,10 +213,12 @@ public class ExcelUtils {
             } else {
                 value = dataFormatter.formatCellValue(cell);
             }
-            Log.d(TAG, "Read string cell (Col: " + columnName + ", Row: " + rowNum + "): '" + value + "'");
+            if (MarklyLog.isDebugEnabled()) {
+                MarklyLog.d(TAG, "Read string cell (Col: " + columnName + ", Row: " + rowNum + "): '" + value + "'");
+            }
             return value;
         } catch (Exception e) {
-            Log.e(TAG, "Error reading string cell (Col: " + columnName + ", Row: " + rowNum + "): " + e.getMessage(), e);
+            MarklyLog.e(TAG, "Error reading string cell (Col: " + columnName + ", Row: " + rowNum + "): " + e.getMessage(), e);
             return "";
         }
     }
@@ -215,13 +226,17 @@ public class ExcelUtils {
     /** Helper to get numeric value from cell, handling null cells and different types. */
     private static double parseNumericCell(Cell cell, DataFormatter dataFormatter, FormulaEvaluator evaluator, int rowNum, String columnName) throws NumberFormatException {
         if (cell == null) {
-            Log.d(TAG, "Numeric cell is null (Col: " + columnName + ", Row: " + rowNum + "), returning 0.0.");
+            if (MarklyLog.isDebugEnabled()) {
+                MarklyLog.d(TAG, "Numeric cell is null (Col: " + columnName + ", Row: " + rowNum + "), returning 0.0.");
+            }
             return 0.0;
         }
         try {
             if (cell.getCellType() == CellType.NUMERIC) {
                 double numericValue = cell.getNumericCellValue();
-                Log.d(TAG, "Read numeric cell (Col: " + columnName + ", Row: " + rowNum + "): " + numericValue + " (Type: NUMERIC)");
+                if (MarklyLog.isDebugEnabled()) {
+                    MarklyLog.d(TAG, "Read numeric cell (Col: " + columnName + ", Row: " + rowNum + "): " + numericValue + " (Type: NUMERIC)");
+                }
                 return numericValue;
             } else {
                 String stringValue;
@@ -230,23 +245,27 @@ public class ExcelUtils {
                 } else {
                     stringValue = dataFormatter.formatCellValue(cell);
                 }
-                Log.d(TAG, "Attempting to parse string for numeric cell (Col: " + columnName + ", Row: " + rowNum + "): '" + stringValue + "'");
+                if (MarklyLog.isDebugEnabled()) {
+                    MarklyLog.d(TAG, "Attempting to parse string for numeric cell (Col: " + columnName + ", Row: " + rowNum + "): '" + stringValue + "'");
+                }
                 // Remove any non-digit characters except for '-' and '.' which might be present in numbers.
                 // This is specifically important for mobile numbers that might be read as general text.
                 stringValue = stringValue.replaceAll("[^\\d.-]", "");
                 if (stringValue.isEmpty()) {
-                    Log.w(TAG, "Cleaned string for numeric cell (Col: " + columnName + ", Row: " + rowNum + ") is empty. Returning 0.0.");
+                    MarklyLog.w(TAG, "Cleaned string for numeric cell (Col: " + columnName + ", Row: " + rowNum + ") is empty. Returning 0.0.");
                     return 0.0;
                 }
                 double parsedValue = Double.parseDouble(stringValue);
-                Log.d(TAG, "Parsed string to numeric: " + parsedValue);
+                if (MarklyLog.isDebugEnabled()) {
+                    MarklyLog.d(TAG, "Parsed string to numeric: " + parsedValue);
+                }
                 return parsedValue;
             }
         } catch (NumberFormatException e) {
-            Log.e(TAG, "NumberFormatException parsing numeric cell (Col: " + columnName + ", Row: " + rowNum + "): " + e.getMessage(), e);
+            MarklyLog.e(TAG, "NumberFormatException parsing numeric cell (Col: " + columnName + ", Row: " + rowNum + "): " + e.getMessage(), e);
             throw e;
         } catch (Exception e) {
-            Log.e(TAG, "Error reading numeric cell (Col: " + columnName + ", Row: " + rowNum + "): " + e.getMessage(), e);
+            MarklyLog.e(TAG, "Error reading numeric cell (Col: " + columnName + ", Row: " + rowNum + "): " + e.getMessage(), e);
             throw new NumberFormatException("Could not parse numeric value from cell: " + e.getMessage());
         }
     }
@@ -280,6 +299,8 @@ public class ExcelUtils {
         public String guardianMobile;
         public int currentSemester;
         public String section;
+        // The student's sync uuid, only carried by Markly's own exports; null for any other file
+        public String uuid;
 
         public StudentImport(long oldStudentId, String name, String gender, String mobile, String guardianMobile, int currentSemester, String section) {
             this.oldStudentId = oldStudentId;
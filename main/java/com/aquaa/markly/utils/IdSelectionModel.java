@@ -0,0 +1,94 @@
+package com.aquaa.markly.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Selection state of a bulk-action list screen, keyed by student id rather than by Student object or row.
+ * Checking a row, binding a row and reading the selection are O(1) per row, select-all takes a plain id array
+ * (e.g. from an id-only DAO query), and the selection survives the list being reloaded.
+ * Owned by the screen's ViewModel so that it also survives configuration changes. Main thread only.
+ */
+public final class IdSelectionModel {
+
+    /**
+     * Notified after every change, e.g. to update a "3 selected" label.
+     */
+    public interface Listener {
+        void onSelectionChanged(IdSelectionModel selection);
+    }
+
+    private final LongHashSet selectedIds = new LongHashSet();
+    private final List<Listener> listeners = new ArrayList<>();
+
+    public boolean isSelected(long id) {
+        return selectedIds.contains(id);
+    }
+
+    public void setSelected(long id, boolean selected) {
+        boolean changed = selected ? selectedIds.add(id) : selectedIds.remove(id);
+        if (changed) {
+            notifyListeners();
+        }
+    }
+
+    public void toggle(long id) {
+        setSelected(id, !isSelected(id));
+    }
+
+    /**
+     * Adds all the given ids to the selection, for "select all" or "select all matching a filter".
+     */
+    public void selectAll(long[] ids) {
+        selectedIds.addAll(ids);
+        notifyListeners();
+    }
+
+    public void clear() {
+        if (!selectedIds.isEmpty()) {
+            selectedIds.clear();
+            notifyListeners();
+        }
+    }
+
+    /**
+     * Drops selected ids that are no longer in the list, so that a bulk action never reaches rows the user
+     * can no longer see. Rows that are still present stay selected.
+     */
+    public void retainOnly(long[] visibleIds) {
+        LongHashSet visible = new LongHashSet(visibleIds.length);
+        visible.addAll(visibleIds);
+        if (selectedIds.retainAll(visible) > 0) {
+            notifyListeners();
+        }
+    }
+
+    public int size() {
+        return selectedIds.size();
+    }
+
+    public boolean isEmpty() {
+        return selectedIds.isEmpty();
+    }
+
+    /**
+     * @return A copy of the selected ids, in no particular order.
+     */
+    public long[] toArray() {
+        return selectedIds.toArray();
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private void notifyListeners() {
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).onSelectionChanged(this);
+        }
+    }
+}
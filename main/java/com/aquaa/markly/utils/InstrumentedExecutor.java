@@ -0,0 +1,52 @@
+package com.aquaa.markly.utils;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor wrapper that reports how long tasks wait in the queue and how long they run.
+ * Metrics are named "executor.&lt;name&gt;.wait", "executor.&lt;name&gt;.run" and "executor.&lt;name&gt;.depth"
+ * (queue depth seen by each new task), so a saturated pool shows up as wait time rather than slow DAOs.
+ */
+public class InstrumentedExecutor implements Executor {
+
+    private final Executor delegate;
+    private final Metrics.Timer waitTimer;
+    private final Metrics.Timer runTimer;
+    private final Metrics.Histogram depthHistogram;
+    private final Metrics.Counter failureCounter;
+    private final AtomicInteger pending = new AtomicInteger();
+
+    public InstrumentedExecutor(String name, Executor delegate) {
+        this.delegate = delegate;
+        this.waitTimer = Metrics.timer("executor." + name + ".wait");
+        this.runTimer = Metrics.timer("executor." + name + ".run");
+        this.depthHistogram = Metrics.histogram("executor." + name + ".depth");
+        this.failureCounter = Metrics.counter("executor." + name + ".failures");
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        final long enqueuedAt = System.nanoTime();
+        depthHistogram.record(pending.incrementAndGet());
+        Runnable instrumented = () -> {
+            long startedAt = System.nanoTime();
+            pending.decrementAndGet();
+            waitTimer.record(startedAt - enqueuedAt);
+            try {
+                command.run();
+            } catch (RuntimeException e) {
+                failureCounter.increment();
+                throw e;
+            } finally {
+                runTimer.record(System.nanoTime() - startedAt);
+            }
+        };
+        try {
+            delegate.execute(instrumented);
+        } catch (RuntimeException e) {
+            pending.decrementAndGet(); // Rejected, it will never run
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.aquaa.markly.utils;
+
+import java.util.Arrays;
+
+/**
+ * A set of primitive longs: open addressing with linear probing, no boxing and no per-entry objects.
+ * add(), remove() and contains() are O(1) on average. Not thread-safe.
+ * Plain Java with no Android dependencies.
+ */
+public final class LongHashSet {
+
+    private static final long EMPTY = 0L; // 0 is tracked separately in containsZero
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private int mask;
+    private int size; // Entries in keys, not counting 0
+    private boolean containsZero;
+    private int resizeAt;
+
+    public LongHashSet() {
+        this(16);
+    }
+
+    public LongHashSet(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    public int size() {
+        return size + (containsZero ? 1 : 0);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public boolean contains(long value) {
+        if (value == EMPTY) {
+            return containsZero;
+        }
+        int slot = slot(value);
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == value) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * @return True if the value was not in the set yet.
+     */
+    public boolean add(long value) {
+        if (value == EMPTY) {
+            boolean added = !containsZero;
+            containsZero = true;
+            return added;
+        }
+        int slot = slot(value);
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == value) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = value;
+        if (++size >= resizeAt) {
+            rehash(keys.length * 2);
+        }
+        return true;
+    }
+
+    public void addAll(long[] values) {
+        for (long value : values) {
+            add(value);
+        }
+    }
+
+    /**
+     * @return True if the value was in the set.
+     */
+    public boolean remove(long value) {
+        if (value == EMPTY) {
+            boolean removed = containsZero;
+            containsZero = false;
+            return removed;
+        }
+        int slot = slot(value);
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == value) {
+                shiftBack(slot);
+                size--;
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Removes every value that is not in the given set.
+     * @return The number of values removed.
+     */
+    public int retainAll(LongHashSet other) {
+        int removed = 0;
+        if (containsZero && !other.contains(EMPTY)) {
+            containsZero = false;
+            removed++;
+        }
+        // Removing while iterating would move entries around, so collect first
+        long[] values = toArray();
+        for (long value : values) {
+            if (value != EMPTY && !other.contains(value) && remove(value)) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+        containsZero = false;
+    }
+
+    /**
+     * @return The values in no particular order.
+     */
+    public long[] toArray() {
+        long[] values = new long[size()];
+        int i = 0;
+        if (containsZero) {
+            values[i++] = EMPTY;
+        }
+        for (long key : keys) {
+            if (key != EMPTY) {
+                values[i++] = key;
+            }
+        }
+        return values;
+    }
+
+    // Backward-shift deletion keeps probe sequences intact without tombstones
+    private void shiftBack(int slot) {
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (keys[next] != EMPTY) {
+            int home = slot(keys[next]);
+            // Move the entry into the gap unless its home lies cyclically in (gap, next]
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[gap] = EMPTY;
+    }
+
+    private int slot(long value) {
+        long hash = value * 0x9E3779B97F4A7C15L; // Fibonacci hashing spreads sequential ids over the table
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private void rehash(int capacity) {
+        long[] old = keys;
+        allocate(capacity);
+        size = 0;
+        for (long key : old) {
+            if (key != EMPTY) {
+                int slot = slot(key);
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                size++;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        mask = capacity - 1;
+        resizeAt = Math.max(1, (int) (capacity * LOAD_FACTOR));
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        int capacity = 16;
+        while (capacity * LOAD_FACTOR <= expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
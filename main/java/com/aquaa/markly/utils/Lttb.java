@@ -0,0 +1,68 @@
+package com.aquaa.markly.utils;
+
+/**
+ * Largest-Triangle-Three-Buckets downsampling (Steinarsson, 2013). Keeps the first and last point and, from each of
+ * threshold - 2 equal buckets in between, the point forming the largest triangle with the point kept before it and
+ * the average of the next bucket. Peaks and dips survive, which plain averaging or every-nth sampling would flatten.
+ * One pass, O(n), no allocations besides the result.
+ */
+public final class Lttb {
+
+    private Lttb() {
+        // Static helpers
+    }
+
+    /**
+     * @param x Ascending x values.
+     * @param y The y value of each x.
+     * @param threshold The number of points to keep, at least 3.
+     * @return The indices of the kept points in ascending order; all indices if there are no more than threshold points.
+     */
+    public static int[] select(long[] x, float[] y, int threshold) {
+        int n = x.length;
+        if (threshold >= n || threshold < 3) {
+            int[] all = new int[n];
+            for (int i = 0; i < n; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+        int[] kept = new int[threshold];
+        double bucketSize = (double) (n - 2) / (threshold - 2);
+        int previous = 0;
+        kept[0] = 0;
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            // Average of the next bucket, or the last point for the last bucket
+            int nextStart = (int) ((bucket + 1) * bucketSize) + 1;
+            int nextEnd = Math.min((int) ((bucket + 2) * bucketSize) + 1, n);
+            double averageX = 0;
+            double averageY = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                averageX += x[i];
+                averageY += y[i];
+            }
+            int nextCount = nextEnd - nextStart;
+            averageX /= nextCount;
+            averageY /= nextCount;
+
+            int start = (int) (bucket * bucketSize) + 1;
+            int end = (int) ((bucket + 1) * bucketSize) + 1;
+            double previousX = x[previous];
+            double previousY = y[previous];
+            double maxArea = -1;
+            int chosen = start;
+            for (int i = start; i < end; i++) {
+                // Twice the triangle's area, the factor does not change which one is largest
+                double area = Math.abs((previousX - averageX) * (y[i] - previousY) - (previousX - x[i]) * (averageY - previousY));
+                if (area > maxArea) {
+                    maxArea = area;
+                    chosen = i;
+                }
+            }
+            kept[bucket + 1] = chosen;
+            previous = chosen;
+        }
+        kept[threshold - 1] = n - 1;
+        return kept;
+    }
+}
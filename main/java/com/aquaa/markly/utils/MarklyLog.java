@@ -0,0 +1,249 @@
+package com.aquaa.markly.utils;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.util.Log;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Logging facade for Markly.
+ * Messages below the current level cost nothing: parameterised calls only format when the level is
+ * enabled, and bulk loops should wrap their calls in isDebugEnabled() so that no argument is boxed either.
+ * Debug output is enabled only for debuggable builds (see init).
+ * Every message that is logged is also kept in a fixed-size ring buffer that can be dumped for support.
+ */
+public final class MarklyLog {
+
+    private static final int RING_CAPACITY = 256;
+
+    private static volatile int minLevel = Log.INFO; // Until init() says this is a debuggable build
+
+    // Ring buffer of the most recent events, guarded by RING_LOCK
+    private static final Object RING_LOCK = new Object();
+    private static final long[] ringTimes = new long[RING_CAPACITY];
+    private static final int[] ringLevels = new int[RING_CAPACITY];
+    private static final String[] ringTags = new String[RING_CAPACITY];
+    private static final String[] ringMessages = new String[RING_CAPACITY];
+    private static int ringNext = 0;
+    private static int ringSize = 0;
+
+    /**
+     * Supplies a message lazily, for messages that are expensive to build.
+     */
+    public interface MessageSupplier {
+        String get();
+    }
+
+    private MarklyLog() {
+        // Static facade
+    }
+
+    /**
+     * Enables debug logging for debuggable builds. Safe to call more than once.
+     * @param context Any context of this application.
+     */
+    public static void init(Context context) {
+        boolean debuggable = (context.getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+        minLevel = debuggable ? Log.DEBUG : Log.INFO;
+    }
+
+    public static boolean isDebugEnabled() {
+        return minLevel <= Log.DEBUG;
+    }
+
+    public static boolean isLoggable(int level) {
+        return level >= minLevel;
+    }
+
+    // --- Debug ---
+
+    public static void d(String tag, String message) {
+        if (minLevel <= Log.DEBUG) {
+            write(Log.DEBUG, tag, message, null);
+        }
+    }
+
+    public static void d(String tag, String format, Object arg) {
+        if (minLevel <= Log.DEBUG) {
+            write(Log.DEBUG, tag, format(format, arg, null, null, 1), null);
+        }
+    }
+
+    public static void d(String tag, String format, long arg) {
+        if (minLevel <= Log.DEBUG) {
+            write(Log.DEBUG, tag, formatLong(format, arg), null);
+        }
+    }
+
+    public static void d(String tag, String format, Object arg1, Object arg2) {
+        if (minLevel <= Log.DEBUG) {
+            write(Log.DEBUG, tag, format(format, arg1, arg2, null, 2), null);
+        }
+    }
+
+    public static void d(String tag, String format, Object arg1, Object arg2, Object arg3) {
+        if (minLevel <= Log.DEBUG) {
+            write(Log.DEBUG, tag, format(format, arg1, arg2, arg3, 3), null);
+        }
+    }
+
+    public static void d(String tag, MessageSupplier supplier) {
+        if (minLevel <= Log.DEBUG) {
+            write(Log.DEBUG, tag, supplier.get(), null);
+        }
+    }
+
+    // --- Info ---
+
+    public static void i(String tag, String message) {
+        if (minLevel <= Log.INFO) {
+            write(Log.INFO, tag, message, null);
+        }
+    }
+
+    public static void i(String tag, String format, Object arg) {
+        if (minLevel <= Log.INFO) {
+            write(Log.INFO, tag, format(format, arg, null, null, 1), null);
+        }
+    }
+
+    public static void i(String tag, String format, Object arg1, Object arg2) {
+        if (minLevel <= Log.INFO) {
+            write(Log.INFO, tag, format(format, arg1, arg2, null, 2), null);
+        }
+    }
+
+    public static void i(String tag, String format, Object arg1, Object arg2, Object arg3) {
+        if (minLevel <= Log.INFO) {
+            write(Log.INFO, tag, format(format, arg1, arg2, arg3, 3), null);
+        }
+    }
+
+    // --- Warning ---
+
+    public static void w(String tag, String message) {
+        write(Log.WARN, tag, message, null);
+    }
+
+    public static void w(String tag, String format, Object arg) {
+        write(Log.WARN, tag, format(format, arg, null, null, 1), null);
+    }
+
+    public static void w(String tag, String format, Object arg1, Object arg2) {
+        write(Log.WARN, tag, format(format, arg1, arg2, null, 2), null);
+    }
+
+    public static void w(String tag, String message, Throwable throwable) {
+        write(Log.WARN, tag, message, throwable);
+    }
+
+    // --- Error ---
+
+    public static void e(String tag, String message) {
+        write(Log.ERROR, tag, message, null);
+    }
+
+    public static void e(String tag, String message, Throwable throwable) {
+        write(Log.ERROR, tag, message, throwable);
+    }
+
+    /**
+     * Returns the buffered events, oldest first, one per line.
+     * @return A plain-text dump suitable for sharing with support.
+     */
+    public static String dump() {
+        SimpleDateFormat timeFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.US);
+        StringBuilder builder = new StringBuilder();
+        synchronized (RING_LOCK) {
+            int start = (ringNext - ringSize + RING_CAPACITY) % RING_CAPACITY;
+            for (int i = 0; i < ringSize; i++) {
+                int index = (start + i) % RING_CAPACITY;
+                builder.append(timeFormat.format(new Date(ringTimes[index])))
+                        .append(' ').append(levelLetter(ringLevels[index]))
+                        .append('/').append(ringTags[index])
+                        .append(": ").append(ringMessages[index])
+                        .append('\n');
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Empties the ring buffer.
+     */
+    public static void clear() {
+        synchronized (RING_LOCK) {
+            for (int i = 0; i < RING_CAPACITY; i++) {
+                ringTags[i] = null;
+                ringMessages[i] = null;
+            }
+            ringNext = 0;
+            ringSize = 0;
+        }
+    }
+
+    private static void write(int level, String tag, String message, Throwable throwable) {
+        if (throwable != null) {
+            Log.println(level, tag, message + '\n' + Log.getStackTraceString(throwable));
+        } else {
+            Log.println(level, tag, message);
+        }
+        String buffered = throwable != null ? message + " (" + throwable + ")" : message;
+        synchronized (RING_LOCK) {
+            ringTimes[ringNext] = System.currentTimeMillis();
+            ringLevels[ringNext] = level;
+            ringTags[ringNext] = tag;
+            ringMessages[ringNext] = buffered;
+            ringNext = (ringNext + 1) % RING_CAPACITY;
+            if (ringSize < RING_CAPACITY) {
+                ringSize++;
+            }
+        }
+    }
+
+    /**
+     * Replaces each "{}" in the format with the next argument.
+     */
+    private static String format(String format, Object arg1, Object arg2, Object arg3, int argCount) {
+        StringBuilder builder = new StringBuilder(format.length() + 32);
+        int argIndex = 0;
+        int from = 0;
+        int placeholder;
+        while (argIndex < argCount && (placeholder = format.indexOf("{}", from)) >= 0) {
+            builder.append(format, from, placeholder);
+            builder.append(argIndex == 0 ? arg1 : argIndex == 1 ? arg2 : arg3);
+            argIndex++;
+            from = placeholder + 2;
+        }
+        builder.append(format, from, format.length());
+        return builder.toString();
+    }
+
+    /**
+     * Primitive variant of format() so that IDs and timestamps are not boxed.
+     */
+    private static String formatLong(String format, long arg) {
+        int placeholder = format.indexOf("{}");
+        if (placeholder < 0) {
+            return format;
+        }
+        return new StringBuilder(format.length() + 20)
+                .append(format, 0, placeholder)
+                .append(arg)
+                .append(format, placeholder + 2, format.length())
+                .toString();
+    }
+
+    private static char levelLetter(int level) {
+        switch (level) {
+            case Log.VERBOSE: return 'V';
+            case Log.DEBUG: return 'D';
+            case Log.INFO: return 'I';
+            case Log.WARN: return 'W';
+            default: return 'E';
+        }
+    }
+}
@@ -0,0 +1,351 @@
+package com.aquaa.markly.utils;
+
+import android.os.SystemClock;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * In-process metrics registry: counters, timers and histograms looked up by name.
+ * Recording is lock-free (atomics only) so it can stay on in release builds and be read from the
+ * hidden diagnostics screen. Names are dotted, e.g. "dao.attendance.getAllAttendanceRecordsSync".
+ */
+public final class Metrics {
+
+    private static final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private static final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private static final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    private static volatile long resetAtElapsed = SystemClock.elapsedRealtime();
+
+    private Metrics() {
+        // Static registry
+    }
+
+    /**
+     * A call whose duration is recorded by Timer.time(). Unlike Callable it throws no checked exception.
+     */
+    public interface TimedCall<T> {
+        T call();
+    }
+
+    public static Counter counter(String name) {
+        Counter counter = counters.get(name);
+        if (counter == null) {
+            Counter created = new Counter();
+            counter = counters.putIfAbsent(name, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        return counter;
+    }
+
+    public static Timer timer(String name) {
+        Timer timer = timers.get(name);
+        if (timer == null) {
+            Timer created = new Timer();
+            timer = timers.putIfAbsent(name, created);
+            if (timer == null) {
+                timer = created;
+            }
+        }
+        return timer;
+    }
+
+    public static Histogram histogram(String name) {
+        Histogram histogram = histograms.get(name);
+        if (histogram == null) {
+            Histogram created = new Histogram();
+            histogram = histograms.putIfAbsent(name, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Zeroes every registered metric. Metrics keep their identity, so cached references stay valid.
+     */
+    public static void reset() {
+        for (Counter counter : counters.values()) {
+            counter.value.set(0);
+        }
+        for (Timer timer : timers.values()) {
+            timer.nanos.reset();
+        }
+        for (Histogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+        resetAtElapsed = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Monotonically increasing count of events.
+     */
+    public static final class Counter {
+        private final AtomicLong value = new AtomicLong();
+
+        public void increment() {
+            value.incrementAndGet();
+        }
+
+        public void add(long delta) {
+            value.addAndGet(delta);
+        }
+
+        public long get() {
+            return value.get();
+        }
+    }
+
+    /**
+     * Records durations into a nanosecond histogram.
+     */
+    public static final class Timer {
+        private final Histogram nanos = new Histogram();
+
+        /**
+         * @return A start token to pass to stop().
+         */
+        public long start() {
+            return System.nanoTime();
+        }
+
+        public void stop(long startNanos) {
+            nanos.record(System.nanoTime() - startNanos);
+        }
+
+        public void record(long durationNanos) {
+            nanos.record(durationNanos);
+        }
+
+        public <T> T time(TimedCall<T> call) {
+            long start = System.nanoTime();
+            try {
+                return call.call();
+            } finally {
+                nanos.record(System.nanoTime() - start);
+            }
+        }
+
+        public void time(Runnable runnable) {
+            long start = System.nanoTime();
+            try {
+                runnable.run();
+            } finally {
+                nanos.record(System.nanoTime() - start);
+            }
+        }
+
+        public Histogram getHistogram() {
+            return nanos;
+        }
+    }
+
+    /**
+     * Log-linear histogram of non-negative longs in the spirit of HdrHistogram: every power of two is
+     * split into SUB_BUCKETS linear buckets, so any recorded value is reported within 12.5% of its
+     * true value while the whole long range fits in under 500 counters.
+     */
+    public static final class Histogram {
+        private static final int SUB_BUCKET_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int BUCKET_COUNT = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+        private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+        public void record(long value) {
+            if (value < 0) {
+                value = 0; // Clock adjustments, never expected with nanoTime
+            }
+            buckets.incrementAndGet(bucketIndex(value));
+            count.incrementAndGet();
+            sum.addAndGet(value);
+            long current;
+            while (value < (current = min.get()) && !min.compareAndSet(current, value)) {
+                // Retry
+            }
+            while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+                // Retry
+            }
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getSum() {
+            return sum.get();
+        }
+
+        public long getMin() {
+            return count.get() == 0 ? 0 : min.get();
+        }
+
+        public long getMax() {
+            return count.get() == 0 ? 0 : max.get();
+        }
+
+        public double getMean() {
+            long n = count.get();
+            return n == 0 ? 0 : (double) sum.get() / n;
+        }
+
+        /**
+         * @param percentile A value between 0 and 100.
+         * @return The upper bound of the bucket holding the given percentile, capped at the maximum seen.
+         */
+        public long getPercentile(double percentile) {
+            long n = count.get();
+            if (n == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * n));
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return Math.min(bucketUpperBound(i), getMax());
+                }
+            }
+            return getMax();
+        }
+
+        private void reset() {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                buckets.set(i, 0);
+            }
+            count.set(0);
+            sum.set(0);
+            min.set(Long.MAX_VALUE);
+            max.set(Long.MIN_VALUE);
+        }
+
+        static int bucketIndex(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+        }
+
+        static long bucketUpperBound(int index) {
+            if (index < SUB_BUCKETS) {
+                return index;
+            }
+            if (index == BUCKET_COUNT - 1) {
+                return Long.MAX_VALUE;
+            }
+            return bucketLowerBound(index + 1) - 1;
+        }
+
+        private static long bucketLowerBound(int index) {
+            if (index < SUB_BUCKETS) {
+                return index;
+            }
+            int exponent = (index - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+            int subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+            return (long) (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+        }
+    }
+
+    // --- Export ---
+
+    /**
+     * @return Every metric as pretty-printed JSON, timers in milliseconds.
+     */
+    public static String toJson() {
+        JsonObject root = new JsonObject();
+        root.addProperty("capturedAt", System.currentTimeMillis());
+        root.addProperty("windowMs", SystemClock.elapsedRealtime() - resetAtElapsed);
+
+        JsonObject counterJson = new JsonObject();
+        for (Map.Entry<String, Counter> entry : new TreeMap<>(counters).entrySet()) {
+            counterJson.addProperty(entry.getKey(), entry.getValue().get());
+        }
+        root.add("counters", counterJson);
+
+        JsonObject timerJson = new JsonObject();
+        for (Map.Entry<String, Timer> entry : new TreeMap<>(timers).entrySet()) {
+            Histogram h = entry.getValue().nanos;
+            JsonObject t = new JsonObject();
+            t.addProperty("count", h.getCount());
+            t.addProperty("totalMs", h.getSum() / 1e6);
+            t.addProperty("meanMs", h.getMean() / 1e6);
+            t.addProperty("p50Ms", h.getPercentile(50) / 1e6);
+            t.addProperty("p95Ms", h.getPercentile(95) / 1e6);
+            t.addProperty("p99Ms", h.getPercentile(99) / 1e6);
+            t.addProperty("maxMs", h.getMax() / 1e6);
+            timerJson.add(entry.getKey(), t);
+        }
+        root.add("timers", timerJson);
+
+        JsonObject histogramJson = new JsonObject();
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(histograms).entrySet()) {
+            Histogram h = entry.getValue();
+            JsonObject o = new JsonObject();
+            o.addProperty("count", h.getCount());
+            o.addProperty("min", h.getMin());
+            o.addProperty("mean", h.getMean());
+            o.addProperty("p50", h.getPercentile(50));
+            o.addProperty("p95", h.getPercentile(95));
+            o.addProperty("p99", h.getPercentile(99));
+            o.addProperty("max", h.getMax());
+            histogramJson.add(entry.getKey(), o);
+        }
+        root.add("histograms", histogramJson);
+
+        return new GsonBuilder().setPrettyPrinting().create().toJson(root);
+    }
+
+    /**
+     * @return A compact, human readable report for the diagnostics screen, slowest timers first.
+     */
+    public static String toText() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("Window: ").append((SystemClock.elapsedRealtime() - resetAtElapsed) / 1000).append(" s\n\n");
+
+        builder.append("TIMERS (count, mean / p95 / max ms)\n");
+        List<Map.Entry<String, Timer>> byTotal = new ArrayList<>(timers.entrySet());
+        Collections.sort(byTotal, (a, b) -> Long.compare(b.getValue().nanos.getSum(), a.getValue().nanos.getSum()));
+        for (Map.Entry<String, Timer> entry : byTotal) {
+            Histogram h = entry.getValue().nanos;
+            if (h.getCount() == 0) {
+                continue;
+            }
+            builder.append(String.format(Locale.US, "%s  %d, %.2f / %.2f / %.2f\n", entry.getKey(), h.getCount(),
+                    h.getMean() / 1e6, h.getPercentile(95) / 1e6, h.getMax() / 1e6));
+        }
+
+        builder.append("\nCOUNTERS\n");
+        for (Map.Entry<String, Counter> entry : new TreeMap<>(counters).entrySet()) {
+            builder.append(entry.getKey()).append("  ").append(entry.getValue().get()).append('\n');
+        }
+
+        builder.append("\nHISTOGRAMS (count, p50 / p95 / max)\n");
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(histograms).entrySet()) {
+            Histogram h = entry.getValue();
+            builder.append(entry.getKey()).append("  ").append(h.getCount()).append(", ")
+                    .append(h.getPercentile(50)).append(" / ").append(h.getPercentile(95)).append(" / ")
+                    .append(h.getMax()).append('\n');
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,148 @@
+package com.aquaa.markly.utils;
+
+import android.content.Context;
+
+import com.aquaa.markly.data.database.AppDatabase;
+import com.aquaa.markly.data.database.Notification;
+import com.aquaa.markly.data.database.NotificationDao;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single entry point for in-app and system notifications. Events are collected for a short window and events with
+ * the same category, title and type are coalesced into one, so adding 200 students one by one ends in one
+ * notification row and one system notification instead of 200 of each. Each window is written with one batched
+ * insert and shown as one group of system notifications.
+ * Events still waiting in the current window are lost if the process dies, which is at most WINDOW_MILLIS of them.
+ */
+public final class NotificationBus {
+
+    private static final String TAG = "NotificationBus";
+
+    // A window closes after this long without new events, but never later than MAX_DELAY_MILLIS after it opened
+    private static final long WINDOW_MILLIS = 1_500L;
+    private static final long MAX_DELAY_MILLIS = 5_000L;
+
+    private static volatile NotificationBus INSTANCE;
+
+    private final Context context;
+    private final NotificationDao notificationDao;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+    // Only touched on the executor thread
+    private final Map<String, Event> pending = new LinkedHashMap<>();
+    private long windowOpenedAt;
+    private ScheduledFuture<?> scheduledFlush;
+
+    private NotificationBus(Context context) {
+        this.context = context.getApplicationContext();
+        notificationDao = AppDatabase.getDatabase(this.context).notificationDao();
+    }
+
+    public static NotificationBus getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (NotificationBus.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new NotificationBus(context);
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * One notification, or several coalesced ones.
+     */
+    public static final class Event {
+        public final int category;
+        public final String title;
+        public final String type;
+        public String message; // The latest message
+        public long timestamp; // Of the latest message
+        public int count;
+
+        Event(int category, String title, String type) {
+            this.category = category;
+            this.title = title;
+            this.type = type;
+        }
+
+        public String getDisplayTitle() {
+            return count > 1 ? title + " (" + count + ")" : title;
+        }
+
+        public String getDisplayMessage() {
+            return count > 1 ? count + " similar notifications. Latest: " + message : message;
+        }
+    }
+
+    /**
+     * Records a notification. Safe to call from any thread, returns immediately.
+     * @param category One of the NotificationHelper.CATEGORY_ constants; CATEGORY_IN_APP skips the system notification.
+     * @param type "SUCCESS", "ERROR", "WARNING" or "INFO".
+     */
+    public void post(int category, String title, String message, String type) {
+        long timestamp = System.currentTimeMillis();
+        Metrics.counter("notifications.posted").increment();
+        executor.execute(() -> {
+            String key = category + "|" + title + "|" + type;
+            Event event = pending.get(key);
+            if (event == null) {
+                event = new Event(category, title, type);
+                pending.put(key, event);
+            }
+            event.message = message;
+            event.timestamp = timestamp;
+            event.count++;
+            scheduleFlush();
+        });
+    }
+
+    private void scheduleFlush() {
+        long now = System.currentTimeMillis();
+        if (scheduledFlush == null) {
+            windowOpenedAt = now;
+        } else {
+            scheduledFlush.cancel(false);
+        }
+        long delay = Math.max(0, Math.min(WINDOW_MILLIS, windowOpenedAt + MAX_DELAY_MILLIS - now));
+        scheduledFlush = executor.schedule(this::flush, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void flush() {
+        scheduledFlush = null;
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<Event> events = new ArrayList<>(pending.values());
+        pending.clear();
+
+        List<Notification> rows = new ArrayList<>(events.size());
+        for (Event event : events) {
+            rows.add(new Notification(event.getDisplayTitle(), event.getDisplayMessage(), event.timestamp, false, event.type));
+        }
+        try {
+            Metrics.timer("dao.notification.insertAll").time(() -> notificationDao.insertAll(rows));
+        } catch (Exception e) {
+            MarklyLog.e(TAG, "Failed to store " + rows.size() + " notification(s)", e);
+        }
+        NotificationHelper.sendGroupedNotifications(context, events);
+        Metrics.counter("notifications.flushed").increment();
+        MarklyLog.d(TAG, "Flushed {} notification(s) as {} row(s)", countOf(events), rows.size());
+    }
+
+    private static int countOf(List<Event> events) {
+        int count = 0;
+        for (Event event : events) {
+            count += event.count;
+        }
+        return count;
+    }
+}
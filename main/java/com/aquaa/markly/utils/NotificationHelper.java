@@ -11,6 +11,8 @@ import androidx.core.app.NotificationManagerCompat; // For managing notification
 
 import com.aquaa.markly.R; // Make sure your R class is accessible
 
+import java.util.List;
+
 /**
  * Helper class for creating and managing Android system notifications.
  * Handles notification channels for Android O (API 26) and above.
@@ -23,11 +25,20 @@ public class NotificationHelper {
     public static final String CHANNEL_ID_REPORTS = "markly_reports_channel";
     public static final String CHANNEL_ID_ALERTS = "markly_alerts_channel";
 
-    // Define unique notification IDs for different notifications to update or clear them later
-    private static final int NOTIFICATION_ID_IMPORT_EXPORT = 1;
-    private static final int NOTIFICATION_ID_ATTENDANCE_REPORT = 2;
-    private static final int NOTIFICATION_ID_SMS_REPORT = 3;
-    private static final int NOTIFICATION_ID_PROMOTE_REPORT = 4;
+    // Categories of NotificationBus events, they decide the channel of the system notification
+    public static final int CATEGORY_IN_APP = 0; // Only listed in the app, no system notification
+    public static final int CATEGORY_IMPORT_EXPORT = 1;
+    public static final int CATEGORY_ATTENDANCE_REPORT = 2;
+    public static final int CATEGORY_SMS_REPORT = 3;
+    public static final int CATEGORY_PROMOTE_REPORT = 4;
+
+    // All system notifications are bundled under one summary
+    private static final String GROUP_KEY = "com.aquaa.markly.NOTIFICATIONS";
+    private static final int NOTIFICATION_ID_SUMMARY = 100;
+    // Children cycle through a fixed range of IDs, so older entries are replaced instead of piling up without limit
+    private static final int NOTIFICATION_ID_FIRST_CHILD = 101;
+    private static final int MAX_CHILDREN = 20;
+    private static int nextChild;
 
 
     /**
@@ -89,8 +100,12 @@ public class NotificationHelper {
                 .setContentText(message)
                 .setStyle(new NotificationCompat.BigTextStyle().bigText(message)) // Allow long messages to expand
                 .setPriority(priority)
+                .setGroup(GROUP_KEY)
                 .setAutoCancel(true); // Dismisses the notification when the user taps it
+        notify(context, notificationId, builder, title);
+    }
 
+    private static void notify(Context context, int notificationId, NotificationCompat.Builder builder, String title) {
         NotificationManagerCompat notificationManager = NotificationManagerCompat.from(context);
         try {
             notificationManager.notify(notificationId, builder.build());
@@ -103,53 +118,46 @@ public class NotificationHelper {
         }
     }
 
-    // --- Specific Notification Methods ---
-
-    public static void sendImportExportNotification(Context context, String title, String message, String type) {
-        String channel = CHANNEL_ID_REPORTS;
-        int priority = NotificationCompat.PRIORITY_HIGH;
-        if ("ERROR".equalsIgnoreCase(type)) {
-            channel = CHANNEL_ID_ALERTS;
-            priority = NotificationCompat.PRIORITY_MAX;
-        } else if ("WARNING".equalsIgnoreCase(type)) {
-            priority = NotificationCompat.PRIORITY_HIGH;
-        }
-        sendNotification(context, title, message, NOTIFICATION_ID_IMPORT_EXPORT, channel, priority);
-    }
-
-    public static void sendAttendanceReportNotification(Context context, String message, String type) {
-        String channel = CHANNEL_ID_REPORTS;
-        int priority = NotificationCompat.PRIORITY_DEFAULT;
-        if ("ERROR".equalsIgnoreCase(type)) {
-            channel = CHANNEL_ID_ALERTS;
-            priority = NotificationCompat.PRIORITY_HIGH;
+    /**
+     * Posts one system notification per event and a summary that bundles them.
+     * Called by NotificationBus on its own thread once per window.
+     */
+    static void sendGroupedNotifications(Context context, List<NotificationBus.Event> events) {
+        NotificationCompat.InboxStyle summaryStyle = new NotificationCompat.InboxStyle();
+        int posted = 0;
+        boolean alert = false;
+        for (NotificationBus.Event event : events) {
+            if (event.category == CATEGORY_IN_APP) {
+                continue;
+            }
+            boolean error = "ERROR".equalsIgnoreCase(event.type);
+            sendNotification(context, event.getDisplayTitle(), event.getDisplayMessage(), NOTIFICATION_ID_FIRST_CHILD + nextChild,
+                    error ? CHANNEL_ID_ALERTS : CHANNEL_ID_REPORTS, priorityFor(event.category, event.type));
+            nextChild = (nextChild + 1) % MAX_CHILDREN;
+            summaryStyle.addLine(event.getDisplayTitle() + ": " + event.message);
+            alert |= error;
+            posted++;
         }
-        sendNotification(context, "Attendance Report", message, NOTIFICATION_ID_ATTENDANCE_REPORT, channel, priority);
-    }
-
-    public static void sendSmsReportNotification(Context context, String message, String type) {
-        String channel = CHANNEL_ID_REPORTS;
-        int priority = NotificationCompat.PRIORITY_HIGH;
-        if ("ERROR".equalsIgnoreCase(type)) {
-            channel = CHANNEL_ID_ALERTS;
-            priority = NotificationCompat.PRIORITY_MAX;
-        } else if ("WARNING".equalsIgnoreCase(type)) {
-            priority = NotificationCompat.PRIORITY_HIGH;
+        if (posted == 0) {
+            return;
         }
-        sendNotification(context, "SMS Sending Report", message, NOTIFICATION_ID_SMS_REPORT, channel, priority);
+        String summaryText = posted + " new notification(s)";
+        NotificationCompat.Builder summary = new NotificationCompat.Builder(context, alert ? CHANNEL_ID_ALERTS : CHANNEL_ID_REPORTS)
+                .setSmallIcon(R.drawable.ic_notification)
+                .setContentTitle("Markly")
+                .setContentText(summaryText)
+                .setStyle(summaryStyle.setSummaryText(summaryText))
+                .setGroup(GROUP_KEY)
+                .setGroupSummary(true)
+                .setAutoCancel(true);
+        notify(context, NOTIFICATION_ID_SUMMARY, summary, "Summary");
     }
 
-    public static void sendPromoteReportNotification(Context context, String message, String type) {
-        String channel = CHANNEL_ID_REPORTS;
-        int priority = NotificationCompat.PRIORITY_HIGH;
-        if ("ERROR".equalsIgnoreCase(type)) {
-            channel = CHANNEL_ID_ALERTS;
-            priority = NotificationCompat.PRIORITY_MAX;
-        } else if ("WARNING".equalsIgnoreCase(type)) {
-            priority = NotificationCompat.PRIORITY_HIGH;
+    private static int priorityFor(int category, String type) {
+        boolean error = "ERROR".equalsIgnoreCase(type);
+        if (category == CATEGORY_ATTENDANCE_REPORT) {
+            return error ? NotificationCompat.PRIORITY_HIGH : NotificationCompat.PRIORITY_DEFAULT;
         }
-        sendNotification(context, "Student Promotion Report", message, NOTIFICATION_ID_PROMOTE_REPORT, channel, priority);
+        return error ? NotificationCompat.PRIORITY_MAX : NotificationCompat.PRIORITY_HIGH;
     }
-
-    // You can add more specific methods for other types of notifications as needed
 }
@@ -0,0 +1,163 @@
+package com.aquaa.markly.utils;
+
+import com.aquaa.markly.data.database.Student;
+
+/**
+ * Top-k and bottom-k students of a Tally by attendance percentage, for the analytics leaderboard.
+ * One pass with two bounded int heaps, O(n log k) and no boxing, instead of sorting every student.
+ * Ties are broken by name (case-insensitive), then by student id, so the order is stable between runs.
+ * Plain Java with no Android dependencies so that it can be benchmarked on the JVM (see AggregationBenchmark).
+ */
+public final class RankingEngine {
+
+    private RankingEngine() {
+        // Static helpers
+    }
+
+    /**
+     * Positions in tally.students. When there are no more than 2k eligible students, top holds all of them and
+     * bottom is empty, so no student is listed twice.
+     */
+    public static final class Ranking {
+        public final AttendanceAggregator.Tally tally;
+        public final int[] top; // Best first
+        public final int[] bottom; // Worst first
+        public final int eligibleCount;
+
+        Ranking(AttendanceAggregator.Tally tally, int[] top, int[] bottom, int eligibleCount) {
+            this.tally = tally;
+            this.top = top;
+            this.bottom = bottom;
+            this.eligibleCount = eligibleCount;
+        }
+    }
+
+    /**
+     * @param k Students per end of the ranking.
+     * @param minRecordedDays Students with fewer recorded days are left out, so that nobody tops or bottoms the
+     *                        board on one or two days.
+     * @param section Only students of this section (case-insensitive), or null for all.
+     */
+    public static Ranking rank(AttendanceAggregator.Tally tally, int k, int minRecordedDays, String section) {
+        IntComparator ranksAbove = (a, b) -> compare(tally, a, b);
+        // Root is the kept student that would be dropped first: the lowest ranked for top, the highest for bottom
+        IntHeap top = new IntHeap(2 * k, (a, b) -> ranksAbove.compare(b, a));
+        IntHeap bottom = new IntHeap(k, ranksAbove);
+        int eligibleCount = 0;
+        for (int i = 0; i < tally.students.size(); i++) {
+            if (tally.presentDays[i] + tally.absentDays[i] < minRecordedDays) {
+                continue;
+            }
+            if (section != null && !section.equalsIgnoreCase(tally.students.get(i).getSection())) {
+                continue;
+            }
+            eligibleCount++;
+            top.offer(i);
+            bottom.offer(i);
+        }
+        int[] best = top.drainMostWantedFirst();
+        if (eligibleCount <= 2 * k) {
+            return new Ranking(tally, best, new int[0], eligibleCount);
+        }
+        int[] topK = new int[k];
+        System.arraycopy(best, 0, topK, 0, k);
+        return new Ranking(tally, topK, bottom.drainMostWantedFirst(), eligibleCount);
+    }
+
+    /**
+     * @return Negative if the a-th student ranks above the b-th.
+     */
+    static int compare(AttendanceAggregator.Tally tally, int a, int b) {
+        int byPercentage = Double.compare(tally.getPercentage(b), tally.getPercentage(a));
+        if (byPercentage != 0) {
+            return byPercentage;
+        }
+        Student studentA = tally.students.get(a);
+        Student studentB = tally.students.get(b);
+        int byName = compareNames(studentA.getName(), studentB.getName());
+        return byName != 0 ? byName : Long.compare(studentA.getStudentId(), studentB.getStudentId());
+    }
+
+    private static int compareNames(String a, String b) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : 1) : -1; // Missing names last
+        }
+        return String.CASE_INSENSITIVE_ORDER.compare(a, b);
+    }
+
+    interface IntComparator {
+        int compare(int a, int b);
+    }
+
+    /**
+     * Binary heap of ints with a fixed capacity. The root is the minimum by the given order, the value that is
+     * replaced first once the heap is full.
+     */
+    static final class IntHeap {
+        private final int[] values;
+        private final IntComparator order;
+        private int size;
+
+        IntHeap(int capacity, IntComparator order) {
+            this.values = new int[Math.max(0, capacity)];
+            this.order = order;
+        }
+
+        void offer(int value) {
+            if (size < values.length) {
+                values[size] = value;
+                siftUp(size++);
+            } else if (size > 0 && order.compare(value, values[0]) > 0) {
+                values[0] = value;
+                siftDown(0);
+            }
+        }
+
+        /**
+         * Empties the heap.
+         * @return The values from the last to be replaced to the first.
+         */
+        int[] drainMostWantedFirst() {
+            int[] drained = new int[size];
+            for (int i = drained.length - 1; i >= 0; i--) {
+                drained[i] = values[0];
+                values[0] = values[--size];
+                siftDown(0);
+            }
+            return drained;
+        }
+
+        private void siftUp(int index) {
+            int value = values[index];
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (order.compare(value, values[parent]) >= 0) {
+                    break;
+                }
+                values[index] = values[parent];
+                index = parent;
+            }
+            values[index] = value;
+        }
+
+        private void siftDown(int index) {
+            if (size == 0) {
+                return;
+            }
+            int value = values[index];
+            int half = size >>> 1;
+            while (index < half) {
+                int child = 2 * index + 1;
+                if (child + 1 < size && order.compare(values[child + 1], values[child]) < 0) {
+                    child++;
+                }
+                if (order.compare(value, values[child]) <= 0) {
+                    break;
+                }
+                values[index] = values[child];
+                index = child;
+            }
+            values[index] = value;
+        }
+    }
+}
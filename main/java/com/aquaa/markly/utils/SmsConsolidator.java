@@ -0,0 +1,156 @@
+package com.aquaa.markly.utils;
+
+import com.aquaa.markly.data.database.AttendanceDao;
+import com.aquaa.markly.data.database.Student;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Groups pending absences by guardian mobile, so that siblings and several missed days reach a guardian as one
+ * (possibly multipart) SMS instead of one message per student per day.
+ * Plain Java with no Android dependencies.
+ */
+public final class SmsConsolidator {
+
+    // One ward in the combined default message, "Asha on 1 Jul and 2 Jul"
+    private static final SmsTemplate WARD_CLAUSE = SmsTemplate.compile("{name} on {dates}");
+
+    private SmsConsolidator() {
+        // Static helpers
+    }
+
+    /**
+     * One student absent on one date.
+     */
+    public static final class Absence {
+        public final Student student;
+        public final long date;
+
+        public Absence(Student student, long date) {
+            this.student = student;
+            this.date = date;
+        }
+    }
+
+    /**
+     * Everything one guardian should be told, in the order the absences were given.
+     */
+    public static final class Group {
+        public final String phoneNumber;
+        public final List<Absence> absences = new ArrayList<>();
+        // Text to send, set by render()
+        public String message;
+        // Distinct students, each with their dates in order
+        final Map<Long, List<Long>> datesByStudent = new LinkedHashMap<>();
+        final Map<Long, Student> students = new LinkedHashMap<>();
+
+        Group(String phoneNumber) {
+            this.phoneNumber = phoneNumber;
+        }
+
+        public int getStudentCount() {
+            return students.size();
+        }
+
+        void add(Absence absence) {
+            long studentId = absence.student.getStudentId();
+            List<Long> dates = datesByStudent.get(studentId);
+            if (dates == null) {
+                dates = new ArrayList<>();
+                datesByStudent.put(studentId, dates);
+                students.put(studentId, absence.student);
+            }
+            if (!dates.contains(absence.date)) {
+                dates.add(absence.date);
+                absences.add(absence);
+            }
+        }
+    }
+
+    /**
+     * Groups absences by guardian mobile. Numbers that only differ in formatting or country prefix
+     * ("+91 98300-12345" and "9830012345") end up in the same group. Absences without a number are dropped.
+     */
+    public static List<Group> group(List<Absence> absences) {
+        Map<String, Group> groups = new LinkedHashMap<>();
+        for (Absence absence : absences) {
+            String phoneNumber = absence.student.getGuardianMobile();
+            String key = normalize(phoneNumber);
+            if (key.isEmpty()) {
+                continue;
+            }
+            Group group = groups.get(key);
+            if (group == null) {
+                group = new Group(phoneNumber.trim());
+                groups.put(key, group);
+            }
+            group.add(absence);
+        }
+        return new ArrayList<>(groups.values());
+    }
+
+    /**
+     * @return The digits of the number, without a country prefix when the number is longer than ten digits.
+     */
+    static String normalize(String phoneNumber) {
+        if (phoneNumber == null) {
+            return "";
+        }
+        StringBuilder digits = new StringBuilder(phoneNumber.length());
+        for (int i = 0; i < phoneNumber.length(); i++) {
+            char c = phoneNumber.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            }
+        }
+        return digits.length() > 10 ? digits.substring(digits.length() - 10) : digits.toString();
+    }
+
+    /**
+     * Renders the message of a group into group.message. A template without placeholders is sent as typed.
+     * With a single student the template is rendered once; with several, the default template turns into one
+     * sentence naming every ward, and any other template is rendered once per student, one line each.
+     * @param stats Attendance figures per student id for {attendance} and {streak}, may be empty.
+     */
+    public static void render(Group group, SmsTemplate template, SmsTemplate.Renderer renderer,
+                              Map<Long, AttendanceDao.StudentAttendanceStats> stats) {
+        if (!template.isPersonalised()) {
+            group.message = template.getSource();
+            return;
+        }
+        renderer.reset();
+        boolean combined = group.students.size() > 1 && SmsTemplate.DEFAULT_TEXT.equals(template.getSource());
+        if (combined) {
+            renderer.append("Dear guardian, your wards were absent: ");
+        }
+        boolean first = true;
+        for (Map.Entry<Long, List<Long>> entry : group.datesByStudent.entrySet()) {
+            if (!first) {
+                renderer.append(combined ? "; " : "\n");
+            }
+            fill(renderer.values(), group.students.get(entry.getKey()), entry.getValue(), stats.get(entry.getKey()));
+            renderer.render(combined ? WARD_CLAUSE : template);
+            first = false;
+        }
+        if (combined) {
+            renderer.append(".");
+        }
+        group.message = renderer.toString();
+    }
+
+    private static void fill(SmsTemplate.Values values, Student student, List<Long> dates, AttendanceDao.StudentAttendanceStats stats) {
+        values.name = student.getName();
+        values.semester = student.getCurrentSemester();
+        values.section = student.getSection();
+        for (int i = 0; i < dates.size(); i++) {
+            values.addDate(dates.get(i));
+        }
+        if (stats != null) {
+            values.attendancePercentage = stats.getPercentage();
+            values.streak = stats.absenceStreak;
+        }
+    }
+}
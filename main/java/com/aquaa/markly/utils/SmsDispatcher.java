@@ -0,0 +1,452 @@
+package com.aquaa.markly.utils;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+import com.aquaa.markly.data.database.AppDatabase;
+import com.aquaa.markly.data.database.AttendanceDao;
+import com.aquaa.markly.data.database.SmsOutboxCoverage;
+import com.aquaa.markly.data.database.SmsOutboxDao;
+import com.aquaa.markly.data.database.SmsOutboxMessage;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Works off the sms_outbox table in the background, independent of any screen.
+ * Messages go out through a token bucket (a short burst, then a steady rate) so that large batches do not
+ * flood the radio or trip the platform's premium-SMS confirmation. Failures are retried with exponential
+ * backoff, and a message only counts as sent once the radio confirms every part of it, which is also when the is_sms_sent flags
+ * of all attendance records it covers are set, in the same transaction. Everything runs on one thread, so outbox state changes never race.
+ * The queue lives in the database: pending messages left over when the process dies are picked up by start(). A
+ * message already handed to the radio is never sent again on restart, its sent result may still come in (the result
+ * broadcast can itself be what starts the process); if it never arrives (receiver killed, radio reset) the attempt
+ * counts as failed after a timeout.
+ */
+public final class SmsDispatcher {
+
+    private static final String TAG = "SmsDispatcher";
+
+    static final int MAX_ATTEMPTS = 5;
+    private static final long BASE_BACKOFF_MILLIS = 30_000L;
+    private static final long MAX_BACKOFF_MILLIS = 30 * 60_000L;
+    private static final int DUE_PAGE_SIZE = 20;
+    private static final long HISTORY_MILLIS = 30L * 24 * 60 * 60 * 1000; // Finished rows are kept this long
+    // The radio reports within seconds; after this long without a sent result the attempt is given up
+    private static final long SENDING_TIMEOUT_MILLIS = 10 * 60_000L;
+
+    // Default rate: a burst of 5, then one message every 1.5 seconds
+    private static final int DEFAULT_BURST = 5;
+    private static final long DEFAULT_REFILL_MILLIS = 1_500L;
+
+    private static volatile SmsDispatcher INSTANCE;
+
+    private final Context context;
+    private final AppDatabase database;
+    private final SmsOutboxDao outboxDao;
+    private final AttendanceDao attendanceDao;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private final Random random = new Random();
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
+
+    private volatile SmsSender sender = new SmsSender.Telephony();
+    private volatile TokenBucket tokenBucket = new TokenBucket(DEFAULT_BURST, DEFAULT_REFILL_MILLIS);
+
+    // Only touched on the executor thread
+    private ScheduledFuture<?> scheduledDrain;
+    private boolean historyPurged;
+    // Parts of multipart messages confirmed so far in their current attempt, by outbox id
+    private final Map<Long, Set<Integer>> sentParts = new HashMap<>();
+    private final Map<Long, Set<Integer>> deliveredParts = new HashMap<>();
+
+    private SmsDispatcher(Context context) {
+        this.context = context.getApplicationContext();
+        database = AppDatabase.getDatabase(this.context);
+        outboxDao = database.smsOutboxDao();
+        attendanceDao = database.attendanceDao();
+    }
+
+    public static SmsDispatcher getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (SmsDispatcher.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new SmsDispatcher(context);
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Replaces the transport, e.g. with a fake that reports success without sending anything.
+     */
+    public void setSender(SmsSender sender) {
+        this.sender = sender;
+    }
+
+    /**
+     * @param burst Messages that may go out back to back.
+     * @param refillMillis Time after which one more message may be sent.
+     */
+    public void setRateLimit(int burst, long refillMillis) {
+        this.tokenBucket = new TokenBucket(burst, refillMillis);
+    }
+
+    /**
+     * Resumes whatever the outbox still holds, e.g. after the process was killed mid-batch.
+     */
+    public void start() {
+        executor.execute(this::drain);
+    }
+
+    /**
+     * Stores one message per guardian group, together with every absence it covers, and starts sending them.
+     * Must not be called on the main thread.
+     * @param batchId Shared by all messages of this send, for the report.
+     * @param groups Groups whose message text has been set.
+     */
+    public void enqueue(long batchId, List<SmsConsolidator.Group> groups) {
+        long start = System.nanoTime();
+        database.runInTransaction(() -> {
+            for (SmsConsolidator.Group group : groups) {
+                SmsConsolidator.Absence first = group.absences.get(0);
+                long outboxId = outboxDao.insert(new SmsOutboxMessage(batchId, first.student.getStudentId(), first.date,
+                        group.phoneNumber, group.message, System.currentTimeMillis()));
+                List<SmsOutboxCoverage> coverage = new ArrayList<>(group.absences.size());
+                for (SmsConsolidator.Absence absence : group.absences) {
+                    coverage.add(new SmsOutboxCoverage(outboxId, absence.student.getStudentId(), absence.date));
+                }
+                outboxDao.insertCoverage(coverage);
+            }
+        });
+        Metrics.timer("dao.smsOutbox.enqueue").stop(start);
+        Metrics.counter("sms.queued").add(groups.size());
+        executor.execute(this::drain);
+    }
+
+    /**
+     * Result for the whole message, e.g. from a fake sender.
+     */
+    public void onSent(long outboxId, boolean success, String error, Runnable done) {
+        onSent(outboxId, Part.WHOLE, success, error, done);
+    }
+
+    /**
+     * Result of one part's sent PendingIntent. The message is sent once every part of the attempt succeeded,
+     * and fails this attempt as soon as one part does.
+     * @param done Run once the result has been stored, e.g. to finish a BroadcastReceiver's pending result.
+     */
+    public void onSent(long outboxId, Part part, boolean success, String error, Runnable done) {
+        executor.execute(() -> {
+            try {
+                SmsOutboxMessage message = outboxDao.getById(outboxId);
+                if (message == null) {
+                    sentParts.remove(outboxId);
+                    return; // Deleted together with its student
+                }
+                if (!part.isOf(message)) {
+                    MarklyLog.d(TAG, "Ignoring a sent result of attempt {} of outbox message {}, now at attempt {}",
+                            part.attempt, outboxId, message.attempts);
+                    return;
+                }
+                long now = System.currentTimeMillis();
+                if (success) {
+                    if (!allPartsIn(sentParts, outboxId, part)) {
+                        return;
+                    }
+                    // The message and every absence it covers are flagged together or not at all
+                    boolean marked = database.runInTransaction(() -> {
+                        if (outboxDao.markSent(outboxId, now) == 0) {
+                            return false;
+                        }
+                        attendanceDao.setSmsSentForOutbox(outboxId);
+                        return true;
+                    });
+                    if (marked) {
+                        Metrics.counter("sms.sent").increment();
+                        Metrics.timer("sms.queueLatency").record((now - message.createdAt) * 1_000_000L);
+                        reportIfBatchFinished(message.batchId);
+                    }
+                } else {
+                    sentParts.remove(outboxId);
+                    // Only the first failed part counts against the attempt, the rest of the message went with it
+                    if (message.status == SmsOutboxMessage.STATUS_SENDING) {
+                        handleFailure(message, part.count > 1 ? "Part " + (part.index + 1) + " of " + part.count + ": " + error : error);
+                        drain(); // Picks up the retry time
+                    }
+                }
+            } catch (RuntimeException e) {
+                MarklyLog.e(TAG, "Error storing the sent result of outbox message " + outboxId, e);
+            } finally {
+                done.run();
+            }
+        });
+    }
+
+    /**
+     * Delivery report for the whole message, e.g. from a fake sender.
+     */
+    public void onDelivered(long outboxId, Runnable done) {
+        onDelivered(outboxId, Part.WHOLE, done);
+    }
+
+    /**
+     * Result of one part's delivered PendingIntent. The message is delivered once every part of the attempt is.
+     */
+    public void onDelivered(long outboxId, Part part, Runnable done) {
+        executor.execute(() -> {
+            try {
+                SmsOutboxMessage message = outboxDao.getById(outboxId);
+                if (message == null) {
+                    deliveredParts.remove(outboxId);
+                    return;
+                }
+                if (!part.isOf(message) || !allPartsIn(deliveredParts, outboxId, part)) {
+                    return;
+                }
+                boolean marked = database.runInTransaction(() -> {
+                    if (outboxDao.markDelivered(outboxId, System.currentTimeMillis()) == 0) {
+                        return false;
+                    }
+                    if (message.status == SmsOutboxMessage.STATUS_PENDING || message.status == SmsOutboxMessage.STATUS_SENDING) {
+                        attendanceDao.setSmsSentForOutbox(outboxId); // The delivery report overtook the sent result
+                    }
+                    return true;
+                });
+                if (!marked) {
+                    return;
+                }
+                Metrics.counter("sms.delivered").increment();
+                if (message.status == SmsOutboxMessage.STATUS_PENDING || message.status == SmsOutboxMessage.STATUS_SENDING) {
+                    reportIfBatchFinished(message.batchId);
+                }
+            } catch (RuntimeException e) {
+                MarklyLog.e(TAG, "Error storing the delivery report of outbox message " + outboxId, e);
+            } finally {
+                done.run();
+            }
+        });
+    }
+
+    /**
+     * Sends everything that is due as fast as the token bucket allows, then schedules itself for the next
+     * token or the next retry time.
+     */
+    private void drain() {
+        try {
+            long now = System.currentTimeMillis();
+            if (!historyPurged) {
+                historyPurged = true;
+                int purged = outboxDao.deleteFinishedBefore(now - HISTORY_MILLIS);
+                if (purged > 0) {
+                    MarklyLog.i(TAG, "Outbox history: {} old rows removed", purged);
+                }
+            }
+            if (scheduledDrain != null) {
+                scheduledDrain.cancel(false);
+                scheduledDrain = null;
+            }
+
+            List<SmsOutboxMessage> stale;
+            while (!(stale = outboxDao.getStaleSending(now - SENDING_TIMEOUT_MILLIS, DUE_PAGE_SIZE)).isEmpty()) {
+                for (SmsOutboxMessage message : stale) {
+                    handleFailure(message, "No sent result within " + (SENDING_TIMEOUT_MILLIS / 60_000L) + " minutes");
+                }
+            }
+
+            List<SmsOutboxMessage> due;
+            while (!(due = outboxDao.getDueMessages(System.currentTimeMillis(), DUE_PAGE_SIZE)).isEmpty()) {
+                for (SmsOutboxMessage message : due) {
+                    long waitMillis = tokenBucket.tryAcquire();
+                    if (waitMillis > 0) {
+                        schedule(waitMillis);
+                        return;
+                    }
+                    dispatch(message);
+                }
+            }
+
+            Long nextAttempt = outboxDao.getNextAttemptTime();
+            Long oldestSending = outboxDao.getOldestSendingTime();
+            if (oldestSending != null) {
+                // Wake up to time out a message whose result never comes, even with nothing else to send
+                long timeoutAt = oldestSending + SENDING_TIMEOUT_MILLIS;
+                nextAttempt = nextAttempt != null ? Math.min(nextAttempt, timeoutAt) : timeoutAt;
+            }
+            if (nextAttempt != null) {
+                schedule(Math.max(0, nextAttempt - System.currentTimeMillis()));
+            }
+        } catch (RuntimeException e) {
+            MarklyLog.e(TAG, "Error working off the SMS outbox", e);
+            schedule(BASE_BACKOFF_MILLIS);
+        }
+    }
+
+    private void dispatch(SmsOutboxMessage message) {
+        if (outboxDao.markSending(message.outboxId, System.currentTimeMillis()) == 0) {
+            return;
+        }
+        message.attempts++;
+        // Every attempt sends all parts again
+        sentParts.remove(message.outboxId);
+        deliveredParts.remove(message.outboxId);
+        long start = System.nanoTime();
+        try {
+            sender.send(context, message);
+            Metrics.timer("sms.send").stop(start);
+            if (MarklyLog.isDebugEnabled()) {
+                MarklyLog.d(TAG, "Outbox message " + message.outboxId + " handed to the sender, attempt " + message.attempts);
+            }
+        } catch (Exception e) {
+            handleFailure(message, e.getMessage());
+        }
+    }
+
+    private void handleFailure(SmsOutboxMessage message, String error) {
+        long now = System.currentTimeMillis();
+        if (message.attempts >= MAX_ATTEMPTS) {
+            outboxDao.markFailed(message.outboxId, error, now);
+            Metrics.counter("sms.failed").increment();
+            MarklyLog.w(TAG, "Giving up on outbox message " + message.outboxId + " after " + message.attempts + " attempts: " + error);
+            reportIfBatchFinished(message.batchId);
+        } else {
+            outboxDao.scheduleRetry(message.outboxId, now + backoffMillis(message.attempts), error, now);
+            Metrics.counter("sms.retried").increment();
+            MarklyLog.w(TAG, "Outbox message {} failed ({}), retrying later", message.outboxId, error);
+        }
+    }
+
+    /**
+     * Adds a confirmed part of a message, true once all parts of it are confirmed.
+     */
+    private static boolean allPartsIn(Map<Long, Set<Integer>> confirmed, long outboxId, Part part) {
+        if (part.count <= 1) {
+            return true;
+        }
+        Set<Integer> parts = confirmed.get(outboxId);
+        if (parts == null) {
+            parts = new HashSet<>();
+            confirmed.put(outboxId, parts);
+        }
+        parts.add(part.index);
+        if (parts.size() < part.count) {
+            return false;
+        }
+        confirmed.remove(outboxId);
+        return true;
+    }
+
+    /**
+     * 30 s, 1 min, 2 min, ... capped at 30 min, with +-20% jitter so that retries of a batch spread out.
+     */
+    private long backoffMillis(int attempts) {
+        long delay = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.min(attempts - 1, 16));
+        return (long) (delay * (0.8 + random.nextDouble() * 0.4));
+    }
+
+    private void schedule(long delayMillis) {
+        if (scheduledDrain != null) {
+            scheduledDrain.cancel(false);
+        }
+        scheduledDrain = executor.schedule(this::drain, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Posts the SMS report, in-app and as a system notification, once no message of the batch is pending.
+     */
+    private void reportIfBatchFinished(long batchId) {
+        if (outboxDao.countUnfinishedInBatch(batchId) > 0) {
+            return;
+        }
+        int sent = 0;
+        int failed = 0;
+        for (SmsOutboxDao.StatusCount statusCount : outboxDao.getBatchStatusCounts(batchId)) {
+            if (statusCount.status == SmsOutboxMessage.STATUS_SENT || statusCount.status == SmsOutboxMessage.STATUS_DELIVERED) {
+                sent += statusCount.count;
+            } else if (statusCount.status == SmsOutboxMessage.STATUS_FAILED) {
+                failed += statusCount.count;
+            }
+        }
+        String batchDate = dateFormat.format(new Date(batchId));
+        String message;
+        String type;
+        if (failed == 0) {
+            message = "Successfully sent SMS to " + sent + " student(s) (queued " + batchDate + ").";
+            type = "SUCCESS";
+        } else if (sent > 0) {
+            message = "Sent SMS to " + sent + " student(s), " + failed + " failed after " + MAX_ATTEMPTS + " attempts (queued " + batchDate + ").";
+            type = "WARNING";
+        } else {
+            message = "Failed to send SMS to all " + failed + " selected student(s) (queued " + batchDate + ").";
+            type = "ERROR";
+        }
+        NotificationBus.getInstance(context).post(NotificationHelper.CATEGORY_SMS_REPORT, "SMS Sending Report", message, type);
+        MarklyLog.i(TAG, "SMS batch {} finished: {}", batchId, message);
+    }
+
+    /**
+     * Which part of which attempt a sent or delivered result is for.
+     */
+    public static final class Part {
+        // A result standing for the whole message of its current attempt
+        static final Part WHOLE = new Part(-1, 0, 1);
+
+        final int attempt; // -1 if unknown
+        final int index;
+        final int count;
+
+        public Part(int attempt, int index, int count) {
+            this.attempt = attempt;
+            this.index = index;
+            this.count = Math.max(1, count);
+        }
+
+        // Results of an earlier attempt must not count towards a retry
+        boolean isOf(SmsOutboxMessage message) {
+            return attempt < 0 || attempt == message.attempts;
+        }
+    }
+
+    /**
+     * Classic token bucket on the monotonic clock: holds up to capacity tokens and gains one every refillMillis.
+     */
+    static final class TokenBucket {
+        private final int capacity;
+        private final long refillMillis;
+        private double tokens;
+        private long lastRefill;
+
+        TokenBucket(int capacity, long refillMillis) {
+            this.capacity = Math.max(1, capacity);
+            this.refillMillis = Math.max(1, refillMillis);
+            this.tokens = this.capacity;
+            this.lastRefill = SystemClock.elapsedRealtime();
+        }
+
+        /**
+         * @return 0 if a token was taken, otherwise the milliseconds until one will be available.
+         */
+        synchronized long tryAcquire() {
+            long now = SystemClock.elapsedRealtime();
+            tokens = Math.min(capacity, tokens + (now - lastRefill) / (double) refillMillis);
+            lastRefill = now;
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            return (long) Math.ceil((1 - tokens) * refillMillis);
+        }
+    }
+}
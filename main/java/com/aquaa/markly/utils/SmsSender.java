@@ -0,0 +1,69 @@
+package com.aquaa.markly.utils;
+
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Build;
+import android.telephony.SmsManager;
+
+import com.aquaa.markly.data.database.SmsOutboxMessage;
+
+import java.util.ArrayList;
+
+/**
+ * Hands one outbox message to whatever actually transmits it. SmsDispatcher only talks to this interface,
+ * so a local fake can stand in for the radio while developing or measuring the queue.
+ * Implementations report the outcome asynchronously through SmsDispatcher.onSent() and onDelivered().
+ */
+public interface SmsSender {
+
+    /**
+     * Starts sending. Throwing means the message was not accepted at all and is retried later.
+     */
+    void send(Context context, SmsOutboxMessage message) throws Exception;
+
+    /**
+     * Sends through SmsManager, as a multipart message when the text does not fit one SMS. The sent and delivered
+     * results of every part come back as broadcasts to SmsStatusReceiver, which also works after the process has
+     * been restarted; SmsDispatcher only counts the message as sent once all parts are.
+     */
+    class Telephony implements SmsSender {
+        @Override
+        public void send(Context context, SmsOutboxMessage message) {
+            SmsManager smsManager = Build.VERSION.SDK_INT >= Build.VERSION_CODES.S
+                    ? context.getSystemService(SmsManager.class) : SmsManager.getDefault();
+            ArrayList<String> parts = smsManager.divideMessage(message.getMessage());
+            Metrics.counter("sms.parts").add(parts.size());
+            if (parts.size() <= 1) {
+                smsManager.sendTextMessage(message.getPhoneNumber(), null, message.getMessage(),
+                        statusIntent(context, SmsStatusReceiver.ACTION_SENT, message, 0, 1),
+                        statusIntent(context, SmsStatusReceiver.ACTION_DELIVERED, message, 0, 1));
+                return;
+            }
+            // Any part can fail on its own, so each reports its result
+            ArrayList<PendingIntent> sentIntents = new ArrayList<>(parts.size());
+            ArrayList<PendingIntent> deliveredIntents = new ArrayList<>(parts.size());
+            for (int i = 0; i < parts.size(); i++) {
+                sentIntents.add(statusIntent(context, SmsStatusReceiver.ACTION_SENT, message, i, parts.size()));
+                deliveredIntents.add(statusIntent(context, SmsStatusReceiver.ACTION_DELIVERED, message, i, parts.size()));
+            }
+            smsManager.sendMultipartTextMessage(message.getPhoneNumber(), null, parts, sentIntents, deliveredIntents);
+        }
+
+        static PendingIntent statusIntent(Context context, String action, SmsOutboxMessage message, int part, int partCount) {
+            Intent intent = new Intent(context, SmsStatusReceiver.class)
+                    .setAction(action)
+                    // Extras do not tell PendingIntents apart, the data does: one per message, attempt and part
+                    .setData(Uri.parse("markly-sms://outbox/" + message.getOutboxId() + "/" + message.getAttempts() + "/" + part))
+                    .putExtra(SmsStatusReceiver.EXTRA_OUTBOX_ID, message.getOutboxId())
+                    .putExtra(SmsStatusReceiver.EXTRA_ATTEMPT, message.getAttempts())
+                    .putExtra(SmsStatusReceiver.EXTRA_PART, part)
+                    .putExtra(SmsStatusReceiver.EXTRA_PART_COUNT, partCount);
+            // Distinct request codes per message and action, otherwise the system would reuse one PendingIntent
+            int requestCode = (int) (message.getOutboxId() * 2 + (SmsStatusReceiver.ACTION_SENT.equals(action) ? 0 : 1));
+            return PendingIntent.getBroadcast(context, requestCode, intent,
+                    PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+        }
+    }
+}
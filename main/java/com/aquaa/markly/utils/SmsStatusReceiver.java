@@ -0,0 +1,59 @@
+package com.aquaa.markly.utils;
+
+import android.app.Activity;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.telephony.SmsManager;
+
+/**
+ * Receives the sent and delivered results of messages sent by SmsSender.Telephony and passes them to SmsDispatcher.
+ * Declared in the manifest so that results arriving after the process was killed are not lost.
+ */
+public class SmsStatusReceiver extends BroadcastReceiver {
+
+    public static final String ACTION_SENT = "com.aquaa.markly.SMS_SENT";
+    public static final String ACTION_DELIVERED = "com.aquaa.markly.SMS_DELIVERED";
+    public static final String EXTRA_OUTBOX_ID = "outbox_id";
+    public static final String EXTRA_ATTEMPT = "attempt";
+    public static final String EXTRA_PART = "part";
+    public static final String EXTRA_PART_COUNT = "part_count";
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        long outboxId = intent.getLongExtra(EXTRA_OUTBOX_ID, -1);
+        if (outboxId < 0) {
+            return;
+        }
+        int resultCode = getResultCode();
+        // Results of intents created before parts were reported one by one stand for the whole message
+        SmsDispatcher.Part part = new SmsDispatcher.Part(intent.getIntExtra(EXTRA_ATTEMPT, -1),
+                intent.getIntExtra(EXTRA_PART, 0), intent.getIntExtra(EXTRA_PART_COUNT, 1));
+        PendingResult pendingResult = goAsync(); // The database work happens on the dispatcher's thread
+        SmsDispatcher dispatcher = SmsDispatcher.getInstance(context);
+        if (ACTION_SENT.equals(intent.getAction())) {
+            dispatcher.onSent(outboxId, part, resultCode == Activity.RESULT_OK, describe(resultCode), pendingResult::finish);
+        } else if (ACTION_DELIVERED.equals(intent.getAction())) {
+            dispatcher.onDelivered(outboxId, part, pendingResult::finish);
+        } else {
+            pendingResult.finish();
+        }
+    }
+
+    private static String describe(int resultCode) {
+        switch (resultCode) {
+            case Activity.RESULT_OK:
+                return null;
+            case SmsManager.RESULT_ERROR_GENERIC_FAILURE:
+                return "Generic failure";
+            case SmsManager.RESULT_ERROR_NO_SERVICE:
+                return "No service";
+            case SmsManager.RESULT_ERROR_NULL_PDU:
+                return "Null PDU";
+            case SmsManager.RESULT_ERROR_RADIO_OFF:
+                return "Radio off";
+            default:
+                return "Error code " + resultCode;
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package com.aquaa.markly.utils;
+
+import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A message template with per-recipient placeholders, for example
+ * "Dear guardian, {name} of semester {semester} was absent on {dates}. Attendance: {attendance}."
+ * The text is parsed once by compile() into literal and field segments; rendering then only appends to a
+ * reused StringBuilder. Unknown placeholders are kept as typed.
+ * Plain Java with no Android dependencies.
+ */
+public final class SmsTemplate {
+
+    public static final int FIELD_NAME = 0;
+    public static final int FIELD_DATE = 1; // The most recent absence
+    public static final int FIELD_DATES = 2; // All absences of the student in the message, "1 Jul, 2 Jul and 4 Jul"
+    public static final int FIELD_SEMESTER = 3;
+    public static final int FIELD_SECTION = 4;
+    public static final int FIELD_ATTENDANCE = 5; // Attendance percentage, "82%"
+    public static final int FIELD_STREAK = 6; // Consecutive absences up to the date
+
+    private static final String[] FIELD_NAMES = {"name", "date", "dates", "semester", "section", "attendance", "streak"};
+    private static final int LITERAL = -1;
+
+    public static final String DEFAULT_TEXT = "Dear guardian, your ward {name} was absent on {dates}.";
+
+    private final String source;
+    // fields[i] == LITERAL means literals[i] is appended as it is
+    private final int[] fields;
+    private final String[] literals;
+    private final int usedFields; // Bit mask of the FIELD_ constants that occur
+    private final int literalLength;
+
+    private SmsTemplate(String source, int[] fields, String[] literals, int usedFields, int literalLength) {
+        this.source = source;
+        this.fields = fields;
+        this.literals = literals;
+        this.usedFields = usedFields;
+        this.literalLength = literalLength;
+    }
+
+    /**
+     * Parses the template. Placeholders are matched case-insensitively.
+     */
+    public static SmsTemplate compile(String text) {
+        List<Integer> fields = new ArrayList<>();
+        List<String> literals = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int usedFields = 0;
+        int literalLength = 0;
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            int close = c == '{' ? text.indexOf('}', i + 1) : -1;
+            int field = close > 0 ? fieldOf(text.substring(i + 1, close)) : LITERAL;
+            if (field == LITERAL) {
+                literal.append(c);
+                i++;
+                continue;
+            }
+            if (literal.length() > 0) {
+                fields.add(LITERAL);
+                literals.add(literal.toString());
+                literalLength += literal.length();
+                literal.setLength(0);
+            }
+            fields.add(field);
+            literals.add(null);
+            usedFields |= 1 << field;
+            i = close + 1;
+        }
+        if (literal.length() > 0) {
+            fields.add(LITERAL);
+            literals.add(literal.toString());
+            literalLength += literal.length();
+        }
+        int[] fieldArray = new int[fields.size()];
+        for (int j = 0; j < fieldArray.length; j++) {
+            fieldArray[j] = fields.get(j);
+        }
+        return new SmsTemplate(text, fieldArray, literals.toArray(new String[0]), usedFields, literalLength);
+    }
+
+    private static int fieldOf(String name) {
+        String key = name.trim().toLowerCase(Locale.ROOT);
+        for (int i = 0; i < FIELD_NAMES.length; i++) {
+            if (FIELD_NAMES[i].equals(key)) {
+                return i;
+            }
+        }
+        return LITERAL;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public boolean uses(int field) {
+        return (usedFields & (1 << field)) != 0;
+    }
+
+    /**
+     * @return True if the template contains at least one placeholder, i.e. the text differs per student.
+     */
+    public boolean isPersonalised() {
+        return usedFields != 0;
+    }
+
+    /**
+     * The values of one student. Renderer.values() hands out a single instance to be refilled per student.
+     */
+    public static final class Values {
+        public String name;
+        public int semester;
+        public String section;
+        // Absence dates of the student, only the first dateCount entries are used
+        public long[] dates = new long[8];
+        public int dateCount;
+        public double attendancePercentage = -1; // Negative if unknown
+        public int streak = -1; // Negative if unknown
+
+        public void clear() {
+            name = null;
+            semester = 0;
+            section = null;
+            dateCount = 0;
+            attendancePercentage = -1;
+            streak = -1;
+        }
+
+        public void addDate(long date) {
+            if (dateCount == dates.length) {
+                long[] grown = new long[dates.length * 2];
+                System.arraycopy(dates, 0, grown, 0, dateCount);
+                dates = grown;
+            }
+            dates[dateCount++] = date;
+        }
+    }
+
+    /**
+     * Renders templates into one reused buffer. Each renderer owns its DateFormat, so it is not shared between
+     * threads; formatted dates are cached because a bulk send mentions the same few days over and over.
+     */
+    public static final class Renderer {
+        private final DateFormat dateFormat;
+        private final StringBuilder buffer = new StringBuilder(160);
+        private final Values values = new Values();
+        private final Map<Long, String> formattedDates = new HashMap<>();
+        private final Date scratchDate = new Date();
+
+        public Renderer(DateFormat dateFormat) {
+            this.dateFormat = (DateFormat) dateFormat.clone(); // The caller's instance may be used elsewhere
+        }
+
+        /**
+         * @return The Values instance to fill before the next render(), cleared.
+         */
+        public Values values() {
+            values.clear();
+            return values;
+        }
+
+        /**
+         * Empties the buffer, for the start of the next message.
+         */
+        public Renderer reset() {
+            buffer.setLength(0);
+            return this;
+        }
+
+        /**
+         * Appends the template rendered with the current values to the buffer.
+         */
+        public Renderer render(SmsTemplate template) {
+            buffer.ensureCapacity(buffer.length() + template.literalLength + 32);
+            for (int i = 0; i < template.fields.length; i++) {
+                int field = template.fields[i];
+                if (field == LITERAL) {
+                    buffer.append(template.literals[i]);
+                } else {
+                    appendField(field);
+                }
+            }
+            return this;
+        }
+
+        public Renderer append(String text) {
+            buffer.append(text);
+            return this;
+        }
+
+        public StringBuilder buffer() {
+            return buffer;
+        }
+
+        @Override
+        public String toString() {
+            return buffer.toString();
+        }
+
+        private void appendField(int field) {
+            switch (field) {
+                case FIELD_NAME:
+                    buffer.append(values.name != null ? values.name : "");
+                    break;
+                case FIELD_DATE:
+                    if (values.dateCount > 0) {
+                        buffer.append(formatDate(values.dates[values.dateCount - 1]));
+                    }
+                    break;
+                case FIELD_DATES:
+                    for (int i = 0; i < values.dateCount; i++) {
+                        if (i > 0) {
+                            buffer.append(i == values.dateCount - 1 ? " and " : ", ");
+                        }
+                        buffer.append(formatDate(values.dates[i]));
+                    }
+                    break;
+                case FIELD_SEMESTER:
+                    buffer.append(values.semester);
+                    break;
+                case FIELD_SECTION:
+                    buffer.append(values.section != null ? values.section : "");
+                    break;
+                case FIELD_ATTENDANCE:
+                    if (values.attendancePercentage >= 0) {
+                        buffer.append(Math.round(values.attendancePercentage)).append('%');
+                    }
+                    break;
+                case FIELD_STREAK:
+                    if (values.streak >= 0) {
+                        buffer.append(values.streak);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private String formatDate(long date) {
+            String formatted = formattedDates.get(date);
+            if (formatted == null) {
+                scratchDate.setTime(date);
+                formatted = dateFormat.format(scratchDate);
+                formattedDates.put(date, formatted);
+            }
+            return formatted;
+        }
+    }
+
+    /**
+     * How a text is split into SMS segments. Text using only the GSM 7-bit alphabet fits 160 characters into one
+     * SMS, or 153 per part when concatenated; anything else is sent as UCS-2 with 70, or 67 per part.
+     * Characters of the GSM extension table (such as "{", "€") take two units.
+     */
+    public static final class Segments {
+        public final boolean unicode;
+        public final int length; // Characters, or 7-bit units for GSM text
+        public final int count;
+
+        private Segments(boolean unicode, int length, int count) {
+            this.unicode = unicode;
+            this.length = length;
+            this.count = count;
+        }
+
+        public static Segments of(CharSequence text) {
+            int units = 0;
+            boolean unicode = false;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (GSM_BASIC.indexOf(c) >= 0) {
+                    units++;
+                } else if (GSM_EXTENSION.indexOf(c) >= 0) {
+                    units += 2;
+                } else {
+                    unicode = true;
+                    break;
+                }
+            }
+            if (unicode) {
+                int length = text.length();
+                return new Segments(true, length, length <= 70 ? 1 : (length + 66) / 67);
+            }
+            return new Segments(false, units, units <= 160 ? 1 : (units + 152) / 153);
+        }
+
+        public String describe() {
+            return length + " chars, " + count + " SMS" + (unicode ? " (Unicode)" : "");
+        }
+    }
+
+    private static final String GSM_BASIC = "@£$¥èéùìòÇ\nØø\rÅåΔ_ΦΓΛΩΠΨΣΘΞÆæßÉ !\"#¤%&'()*+,-./0123456789:;<=>?"
+            + "¡ABCDEFGHIJKLMNOPQRSTUVWXYZÄÖÑÜ§¿abcdefghijklmnopqrstuvwxyzäöñüà";
+    private static final String GSM_EXTENSION = "\f^{}\\[~]|€";
+}
@@ -0,0 +1,178 @@
+package com.aquaa.markly.utils;
+
+import com.aquaa.markly.data.database.Attendance;
+import com.aquaa.markly.data.database.Notification;
+import com.aquaa.markly.data.database.Student;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Deterministic generator of realistic-looking Markly data for benchmarks: the same seed and sizes always
+ * produce the same students, attendance and notification history.
+ * Students are spread over 8 semesters and 4 sections, siblings share a guardian mobile, attendance is only
+ * taken on school days (no Sundays, a few holidays), and absences are streaky with a minority of chronic absentees.
+ * Rows are streamed to a Sink so that large data sets can be written to a database without being held in memory.
+ * Student IDs are assigned 1..studentCount in generation order.
+ */
+public final class SyntheticDataGenerator {
+
+    public static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    public static final long FIRST_DAY = 1_672_531_200_000L; // 2023-01-01 00:00 UTC, fixed so runs are comparable
+
+    private static final String[] FIRST_NAMES = {"Aarav", "Ananya", "Arjun", "Diya", "Ishaan", "Kavya", "Rohan", "Saanvi",
+            "Vihaan", "Meera", "Aditya", "Priya", "Kabir", "Riya", "Dev", "Nisha", "Farhan", "Zara", "Tenzin", "Lhamo"};
+    private static final String[] LAST_NAMES = {"Sharma", "Das", "Roy", "Khan", "Iyer", "Singh", "Bose", "Patel",
+            "Ghosh", "Nair", "Mehta", "Sarkar", "Reddy", "Paul", "Gupta", "Sen"};
+    private static final String[] SECTIONS = {"A", "B", "C", "D"};
+    private static final int SEMESTERS = 8;
+
+    private final int studentCount;
+    private final int dayCount;
+    private final long seed;
+
+    /**
+     * Receives generated rows in order: all students first, then attendance by day, then notifications.
+     */
+    public interface Sink {
+        void student(Student student);
+
+        void attendance(long studentId, long date, boolean isPresent, boolean isSmsSent);
+
+        void notification(Notification notification);
+    }
+
+    /**
+     * @param studentCount Number of students.
+     * @param dayCount Number of calendar days from FIRST_DAY; only school days get attendance.
+     * @param seed Random seed.
+     */
+    public SyntheticDataGenerator(int studentCount, int dayCount, long seed) {
+        this.studentCount = studentCount;
+        this.dayCount = dayCount;
+        this.seed = seed;
+    }
+
+    public long getLastDay() {
+        return FIRST_DAY + (dayCount - 1) * DAY_MILLIS;
+    }
+
+    /**
+     * @return True if attendance is taken on the given day (not a Sunday and not one of the generated holidays).
+     */
+    public boolean isSchoolDay(int day) {
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.setTimeInMillis(FIRST_DAY + day * DAY_MILLIS);
+        if (calendar.get(Calendar.DAY_OF_WEEK) == Calendar.SUNDAY) {
+            return false;
+        }
+        // Roughly 15 holidays a year, stable for a given day index
+        return Math.floorMod(day * 0x9E3779B1 + 7, 365) >= 15;
+    }
+
+    /**
+     * Streams the whole data set to the sink.
+     */
+    public void generate(Sink sink) {
+        Random random = new Random(seed);
+
+        // --- Students ---
+        double[] absenceRate = new double[studentCount];
+        String guardianMobile = null;
+        for (int i = 0; i < studentCount; i++) {
+            // One in ten students is the younger sibling of the previous one
+            if (guardianMobile == null || random.nextInt(10) != 0) {
+                guardianMobile = String.valueOf(8_000_000_000L + (long) (random.nextDouble() * 999_999_999L));
+            }
+            String name = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " " + LAST_NAMES[random.nextInt(LAST_NAMES.length)]
+                    + " " + (i + 1);
+            Student student = new Student(name, random.nextBoolean() ? "Male" : "Female",
+                    String.valueOf(9_000_000_000L + (long) (random.nextDouble() * 999_999_999L)), guardianMobile,
+                    1 + random.nextInt(SEMESTERS), SECTIONS[random.nextInt(SECTIONS.length)]);
+            student.setStudentId(i + 1);
+            sink.student(student);
+
+            // Most students miss 3-10% of days, about 8% are chronic absentees missing 20-40%
+            absenceRate[i] = random.nextInt(100) < 8 ? 0.2 + random.nextDouble() * 0.2 : 0.03 + random.nextDouble() * 0.07;
+        }
+
+        // --- Attendance ---
+        boolean[] absentYesterday = new boolean[studentCount];
+        long lastDay = getLastDay();
+        for (int day = 0; day < dayCount; day++) {
+            if (!isSchoolDay(day)) {
+                continue;
+            }
+            long date = FIRST_DAY + day * DAY_MILLIS;
+            boolean recent = lastDay - date < 3 * DAY_MILLIS; // SMS still pending for the last few days
+            double dayFactor = random.nextInt(40) == 0 ? 3.0 : 1.0; // Occasional bad-weather or festival days
+            for (int i = 0; i < studentCount; i++) {
+                // Absences come in streaks: being absent yesterday makes today much more likely
+                double p = absenceRate[i] * dayFactor * (absentYesterday[i] ? 4.0 : 1.0);
+                boolean present = random.nextDouble() >= Math.min(0.9, p);
+                absentYesterday[i] = !present;
+                sink.attendance(i + 1, date, present, !present && !recent && random.nextInt(10) != 0);
+            }
+        }
+
+        // --- Notifications: a report per attendance day and SMS batch, and the odd failure ---
+        for (int day = 0; day < dayCount; day++) {
+            if (!isSchoolDay(day)) {
+                continue;
+            }
+            long timestamp = FIRST_DAY + day * DAY_MILLIS + 9 * 60 * 60 * 1000L + random.nextInt(3_600_000);
+            boolean read = lastDay - timestamp > 7 * DAY_MILLIS || random.nextBoolean();
+            sink.notification(new Notification("Attendance Report", "Attendance saved for " + studentCount + " students.",
+                    timestamp, read, "SUCCESS"));
+            if (random.nextInt(4) != 0) {
+                sink.notification(new Notification("SMS Sending Report", "SMS sent to absent students' guardians.",
+                        timestamp + 600_000, read, random.nextInt(20) == 0 ? "WARNING" : "SUCCESS"));
+            }
+            if (random.nextInt(60) == 0) {
+                sink.notification(new Notification("Data Backup", "Error backing up data: No space left on device",
+                        timestamp + 1_200_000, read, "ERROR"));
+            }
+        }
+    }
+
+    /**
+     * In-memory data set, for benchmarks that do not touch the database.
+     */
+    public static final class InMemory {
+        public final List<Student> students = new ArrayList<>();
+        public final List<Attendance> attendance = new ArrayList<>();
+        public final List<Notification> notifications = new ArrayList<>();
+    }
+
+    /**
+     * Generates the data set into lists. Only use for sizes that comfortably fit in the heap.
+     */
+    public InMemory generateInMemory() {
+        InMemory data = new InMemory();
+        generate(new Sink() {
+            private long nextAttendanceId = 1;
+
+            @Override
+            public void student(Student student) {
+                data.students.add(student);
+            }
+
+            @Override
+            public void attendance(long studentId, long date, boolean isPresent, boolean isSmsSent) {
+                Attendance record = new Attendance(studentId, date, isPresent);
+                record.setAttendanceId(nextAttendanceId++);
+                record.setSmsSent(isSmsSent);
+                data.attendance.add(record);
+            }
+
+            @Override
+            public void notification(Notification notification) {
+                data.notifications.add(notification);
+            }
+        });
+        return data;
+    }
+}
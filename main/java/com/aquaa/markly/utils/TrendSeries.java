@@ -0,0 +1,44 @@
+package com.aquaa.markly.utils;
+
+/**
+ * Attendance rate over time: one point per day, week or month, in date order.
+ * Plain Java with no Android dependencies so that it can be benchmarked on the JVM (see AggregationBenchmark).
+ */
+public final class TrendSeries {
+
+    public final long[] bucketStart; // Start of each day, week or month (Unix timestamp in milliseconds)
+    public final float[] rate; // Percentage of records present, 0 to 100
+    public final int[] recorded; // Records behind each point
+    public final int sourceSize; // Points before downsampling
+
+    public TrendSeries(long[] bucketStart, float[] rate, int[] recorded, int sourceSize) {
+        this.bucketStart = bucketStart;
+        this.rate = rate;
+        this.recorded = recorded;
+        this.sourceSize = sourceSize;
+    }
+
+    public int size() {
+        return bucketStart.length;
+    }
+
+    /**
+     * @return This series if it has no more than maxPoints points, otherwise its most telling maxPoints points
+     * picked by Lttb. Every kept point is an actual bucket, nothing is interpolated.
+     */
+    public TrendSeries downsample(int maxPoints) {
+        if (size() <= maxPoints) {
+            return this;
+        }
+        int[] kept = Lttb.select(bucketStart, rate, maxPoints);
+        long[] keptStart = new long[kept.length];
+        float[] keptRate = new float[kept.length];
+        int[] keptRecorded = new int[kept.length];
+        for (int i = 0; i < kept.length; i++) {
+            keptStart[i] = bucketStart[kept[i]];
+            keptRate[i] = rate[kept[i]];
+            keptRecorded[i] = recorded[kept[i]];
+        }
+        return new TrendSeries(keptStart, keptRate, keptRecorded, sourceSize);
+    }
+}